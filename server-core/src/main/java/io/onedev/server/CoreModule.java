@@ -89,7 +89,11 @@ import io.onedev.commons.utils.ExplicitException;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.buildspec.job.DefaultJobManager;
 import io.onedev.server.buildspec.job.JobManager;
+import io.onedev.server.buildspec.job.cache.DefaultJobCacheManager;
+import io.onedev.server.buildspec.job.cache.JobCacheManager;
+import io.onedev.server.buildspec.job.log.DefaultLogIndexManager;
 import io.onedev.server.buildspec.job.log.DefaultLogManager;
+import io.onedev.server.buildspec.job.log.LogIndexManager;
 import io.onedev.server.buildspec.job.log.LogManager;
 import io.onedev.server.buildspec.job.log.instruction.LogInstruction;
 import io.onedev.server.code.CodeProblem;
@@ -239,7 +243,9 @@ import io.onedev.server.ssh.DefaultSshAuthenticator;
 import io.onedev.server.ssh.SshAuthenticator;
 import io.onedev.server.ssh.SshCommandCreator;
 import io.onedev.server.ssh.SshServerLauncher;
+import io.onedev.server.storage.ArtifactStorageManager;
 import io.onedev.server.storage.AttachmentStorageManager;
+import io.onedev.server.storage.DefaultArtifactStorageManager;
 import io.onedev.server.storage.DefaultAttachmentStorageManager;
 import io.onedev.server.storage.DefaultStorageManager;
 import io.onedev.server.storage.StorageManager;
@@ -358,6 +364,8 @@ public class CoreModule extends AbstractPluginModule {
 		bind(BuildDependenceManager.class).to(DefaultBuildDependenceManager.class);
 		bind(JobManager.class).to(DefaultJobManager.class);
 		bind(LogManager.class).to(DefaultLogManager.class);
+		bind(JobCacheManager.class).to(DefaultJobCacheManager.class);
+		bind(LogIndexManager.class).to(DefaultLogIndexManager.class);
 		bind(MailManager.class).to(DefaultMailManager.class);
 		bind(IssueManager.class).to(DefaultIssueManager.class);
 		bind(IssueFieldManager.class).to(DefaultIssueFieldManager.class);
@@ -374,6 +382,7 @@ public class CoreModule extends AbstractPluginModule {
 		bind(PullRequestChangeManager.class).to(DefaultPullRequestChangeManager.class);
 		bind(CodeCommentReplyManager.class).to(DefaultCodeCommentReplyManager.class);
 		bind(AttachmentStorageManager.class).to(DefaultAttachmentStorageManager.class);
+		bind(ArtifactStorageManager.class).to(DefaultArtifactStorageManager.class);
 		bind(PullRequestInfoManager.class).to(DefaultPullRequestInfoManager.class);
 		bind(WorkExecutor.class).to(DefaultWorkExecutor.class);
 		bind(PullRequestNotificationManager.class);
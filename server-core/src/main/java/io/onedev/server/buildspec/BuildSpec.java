@@ -3,6 +3,7 @@ package io.onedev.server.buildspec;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -10,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
 import javax.validation.ConstraintValidatorContext;
@@ -17,6 +19,7 @@ import javax.validation.Valid;
 import javax.validation.ValidationException;
 
 import org.apache.commons.lang3.SerializationUtils;
+import org.eclipse.jgit.lib.ObjectId;
 import org.yaml.snakeyaml.DumperOptions.FlowStyle;
 import org.yaml.snakeyaml.nodes.MappingNode;
 import org.yaml.snakeyaml.nodes.Node;
@@ -25,8 +28,11 @@ import org.yaml.snakeyaml.nodes.ScalarNode;
 import org.yaml.snakeyaml.nodes.SequenceNode;
 import org.yaml.snakeyaml.nodes.Tag;
 
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 
@@ -38,6 +44,7 @@ import io.onedev.server.buildspec.job.action.PostBuildAction;
 import io.onedev.server.buildspec.job.paramsupply.ParamSupply;
 import io.onedev.server.buildspec.job.retrycondition.RetryCondition;
 import io.onedev.server.buildspec.job.trigger.JobTrigger;
+import io.onedev.server.git.Blob;
 import io.onedev.server.migration.VersionedYamlDoc;
 import io.onedev.server.migration.XmlBuildSpecMigrator;
 import io.onedev.server.util.validation.Validatable;
@@ -50,6 +57,8 @@ public class BuildSpec implements Serializable, Validatable {
 
 	private static final long serialVersionUID = 1L;
 	
+	private static final int MAX_SHARED_BUILD_SPECS = 1000;
+	
 	private static final LoadingCache<String, byte[]> parseCache =  CacheBuilder.newBuilder().softValues().build(new CacheLoader<String, byte[]>() {
 	        
 		@Override
@@ -66,6 +75,9 @@ public class BuildSpec implements Serializable, Validatable {
 	        
 	});
 	
+	private static final Cache<ObjectId, Optional<BuildSpec>> sharedCache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_SHARED_BUILD_SPECS).recordStats().build();
+	
 	public static final String BLOB_PATH = ".onedev-buildspec.yml";
 	
 	public static final String PROP_JOBS = "jobs";
@@ -99,22 +111,46 @@ public class BuildSpec implements Serializable, Validatable {
 
 	public Map<String, Job> getJobMap() {
 		if (jobMap == null) { 
-			jobMap = new LinkedHashMap<>();
+			Map<String, Job> jobMap = new LinkedHashMap<>();
 			for (Job job: jobs)
 				jobMap.put(job.getName(), job);
+			this.jobMap = jobMap;
 		}
 		return jobMap;
 	}
 	
 	public Map<String, String> getPropertyMap() {
 		if (propertyMap == null) { 
-			propertyMap = new LinkedHashMap<>();
+			Map<String, String> propertyMap = new LinkedHashMap<>();
 			for (Property property: properties)
 				propertyMap.put(property.getName(), property.getValue());
+			this.propertyMap = propertyMap;
 		}
 		return propertyMap;
 	}
 	
+	/**
+	 * Get a copy of this build spec which can be modified freely. This should be used 
+	 * to modify build spec returned by {@link #get(Blob)}
+	 */
+	public BuildSpec copy() {
+		BuildSpec copy = SerializationUtils.clone(this);
+		copy.jobs = new ArrayList<>(copy.jobs);
+		copy.properties = new ArrayList<>(copy.properties);
+		return copy;
+	}
+	
+	/*
+	 * Make job and property list unmodifiable, and build lookup maps ahead so that 
+	 * concurrent readers of a shared build spec do not race on them
+	 */
+	private void freeze() {
+		jobs = Collections.unmodifiableList(jobs);
+		properties = Collections.unmodifiableList(properties);
+		jobMap = Collections.unmodifiableMap(getJobMap());
+		propertyMap = Collections.unmodifiableMap(getPropertyMap());
+	}
+	
 	@Override
 	public boolean isValid(ConstraintValidatorContext context) {
 		boolean valid = true;
@@ -252,6 +288,48 @@ public class BuildSpec implements Serializable, Validatable {
 		}
 	}
 	
+	/**
+	 * Get build spec of specified blob. Unlike {@link #parse(byte[])}, returned instance is 
+	 * shared by all callers reading the same blob, and must be treated as read-only. Call 
+	 * {@link #copy()} to get a modifiable instance
+	 * 
+	 * @param blob
+	 * 			blob containing build spec
+	 * @return
+	 * 			shared build spec of specified blob, or <tt>null</tt> if blob is blank
+	 * @throws
+	 * 			InvalidBuildSpecException if blob content is not a valid build spec
+	 */
+	@Nullable
+	public static BuildSpec get(Blob blob) {
+		try {
+			return sharedCache.get(blob.getBlobId().copy(), new Callable<Optional<BuildSpec>>() {
+	
+				@Override
+				public Optional<BuildSpec> call() {
+					BuildSpec buildSpec = parse(blob.getBytes());
+					if (buildSpec != null)
+						buildSpec.freeze();
+					return Optional.fromNullable(buildSpec);
+				}
+				
+			}).orNull();
+		} catch (Exception e) {
+			InvalidBuildSpecException invalidBuildSpecException = ExceptionUtils.find(e, InvalidBuildSpecException.class);
+			if (invalidBuildSpecException != null)
+				throw invalidBuildSpecException;
+			else 
+				throw ExceptionUtils.unchecked(e);
+		}
+	}
+	
+	/**
+	 * Get hit and load statistics of shared build specs returned by {@link #get(Blob)}
+	 */
+	public static CacheStats getSharedCacheStats() {
+		return sharedCache.stats();
+	}
+	
 	@SuppressWarnings("unused")
 	private void migrate1(VersionedYamlDoc doc, Stack<Integer> versions) {
 		for (NodeTuple specTuple: doc.getValue()) {
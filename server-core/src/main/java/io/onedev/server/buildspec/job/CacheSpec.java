@@ -3,6 +3,7 @@ package io.onedev.server.buildspec.job;
 import java.io.Serializable;
 import java.util.List;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import io.onedev.commons.codeassist.InputSuggestion;
@@ -16,9 +17,13 @@ public class CacheSpec implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 	
+	private static final int ADDRESS_DIGEST_LEN = 12;
+	
 	private String key;
 	
 	private String path;
+	
+	private boolean shared;
 
 	@Editable(order=100, description="Specify key of the cache. Caches with same key can be reused by different jobs")
 	@Interpolative(variableSuggester="suggestVariables")
@@ -45,6 +50,44 @@ public class CacheSpec implements Serializable {
 		this.path = path;
 	}
 	
+	@Editable(order=300, name="Share Across Projects", description="By default caches are only reused by jobs "
+			+ "of the same project. Enable this to reuse the cache by jobs of all projects defining cache "
+			+ "with same key and path, for instance to share downloaded Maven or npm packages. Only enable "
+			+ "this if the cache does not contain sensitive data")
+	public boolean isShared() {
+		return shared;
+	}
+
+	public void setShared(boolean shared) {
+		this.shared = shared;
+	}
+
+	/**
+	 * Get address identifying content of this cache. Caches with same address are 
+	 * interchangeable, and are stored only once for each job executor host
+	 * 
+	 * @param projectName
+	 * 			name of the project defining this cache. Not taken into account if 
+	 * 			cache is shared across projects
+	 */
+	public String getAddress(String projectName) {
+		String scope = shared? "": projectName;
+		return key + "-" + DigestUtils.sha256Hex(scope + "\n" + path).substring(0, ADDRESS_DIGEST_LEN);
+	}
+	
+	/**
+	 * Get cache key from specified cache address
+	 * 
+	 * @param address
+	 * 			cache address returned by {@link #getAddress(String)}
+	 */
+	public static String getKey(String address) {
+		if (address.length() > ADDRESS_DIGEST_LEN + 1)
+			return address.substring(0, address.length() - ADDRESS_DIGEST_LEN - 1);
+		else
+			return address;
+	}
+	
 	@SuppressWarnings("unused")
 	private static List<InputSuggestion> suggestVariables(String matchWith) {
 		return Job.suggestVariables(matchWith);
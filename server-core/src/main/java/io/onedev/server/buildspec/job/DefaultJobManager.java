@@ -3,15 +3,13 @@ package io.onedev.server.buildspec.job;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
@@ -19,11 +17,12 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
-import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -36,11 +35,15 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.subject.Subject;
 import org.apache.shiro.util.ThreadContext;
 import org.eclipse.jgit.lib.ObjectId;
+import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import io.onedev.commons.launcher.loader.Listen;
@@ -48,19 +51,21 @@ import io.onedev.commons.launcher.loader.ListenerRegistry;
 import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.ExplicitException;
 import io.onedev.commons.utils.FileUtils;
-import io.onedev.commons.utils.LockUtils;
 import io.onedev.k8shelper.CacheInstance;
 import io.onedev.k8shelper.CloneInfo;
 import io.onedev.server.OneDev;
 import io.onedev.server.buildspec.BuildSpec;
 import io.onedev.server.buildspec.job.action.PostBuildAction;
 import io.onedev.server.buildspec.job.action.condition.ActionCondition;
+import io.onedev.server.buildspec.job.cache.JobCacheManager;
 import io.onedev.server.buildspec.job.log.LogManager;
 import io.onedev.server.buildspec.job.paramspec.ParamSpec;
 import io.onedev.server.buildspec.job.paramspec.SecretParam;
 import io.onedev.server.buildspec.job.paramsupply.ParamSupply;
 import io.onedev.server.buildspec.job.retrycondition.RetryCondition;
+import io.onedev.server.buildspec.job.trigger.JobTriggerIndex;
 import io.onedev.server.entitymanager.BuildManager;
+import io.onedev.server.entitymanager.BuildMetricManager;
 import io.onedev.server.entitymanager.BuildParamManager;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.SettingManager;
@@ -71,9 +76,11 @@ import io.onedev.server.event.build.BuildPending;
 import io.onedev.server.event.build.BuildRetrying;
 import io.onedev.server.event.build.BuildRunning;
 import io.onedev.server.event.build.BuildSubmitted;
+import io.onedev.server.event.build.BuildsSubmitted;
 import io.onedev.server.event.entity.EntityPersisted;
 import io.onedev.server.event.system.SystemStarted;
 import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.git.Blob;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.Build.Status;
 import io.onedev.server.model.BuildDependence;
@@ -103,14 +110,49 @@ import io.onedev.server.util.script.identity.ScriptIdentity;
 @Singleton
 public class DefaultJobManager implements JobManager, Runnable, CodePullAuthorizationSource {
 
-	private static final int CHECK_INTERVAL = 1000; // check internal in milli-seconds
+	private static final long RECONCILE_INTERVAL = 60000; // reconcile interval in milli-seconds
 	
 	private static final Logger logger = LoggerFactory.getLogger(DefaultJobManager.class);
 	
+	private static final int MAX_SUBMIT_ATTEMPTS = 3;
+	
+	private static final int MAX_TRIGGER_INDEXES = 1000;
+	
 	private final Map<String, JobContext> jobContexts = new ConcurrentHashMap<>();
 	
 	private final Map<Long, JobExecution> jobExecutions = new ConcurrentHashMap<>();
 	
+	/*
+	 * Builds requested to be checked by scheduler thread, mapping build id to time of 
+	 * the request. Access should be synchronized on the map itself
+	 */
+	private final Map<Long, Long> checkRequests = new LinkedHashMap<>();
+	
+	/*
+	 * Unfinished dependencies of waiting builds. This is rebuilt from database on startup, 
+	 * as the first reconcile requests checks of all unfinished builds
+	 */
+	private final DependencyTracker dependencyTracker = new DependencyTracker();
+	
+	/*
+	 * Trigger indexes keyed by project id and blob id of build spec, so that build spec 
+	 * does not need to be parsed and walked for every project event
+	 */
+	private final Cache<String, JobTriggerIndex> triggerIndexes = CacheBuilder.newBuilder()
+			.maximumSize(MAX_TRIGGER_INDEXES).build();
+	
+	private final AtomicLong lastSchedulingLatency = new AtomicLong(0);
+	
+	private final AtomicLong totalSchedulingLatency = new AtomicLong(0);
+	
+	private final AtomicLong schedulingCount = new AtomicLong(0);
+	
+	private final AtomicLong lastQueueWait = new AtomicLong(0);
+	
+	private final AtomicLong totalQueueWait = new AtomicLong(0);
+	
+	private final AtomicLong queueWaitCount = new AtomicLong(0);
+	
 	private final ProjectManager projectManager;
 	
 	private final BuildManager buildManager;
@@ -133,6 +175,10 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 	
 	private final Validator validator;
 	
+	private final BuildMetricManager buildMetricManager;
+	
+	private final JobCacheManager jobCacheManager;
+	
 	private volatile List<JobExecutor> jobExecutors;
 	
 	private volatile Thread thread;
@@ -141,7 +187,8 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 	public DefaultJobManager(BuildManager buildManager, UserManager userManager, ListenerRegistry listenerRegistry, 
 			SettingManager settingManager, TransactionManager transactionManager, LogManager logManager, 
 			ExecutorService executorService, SessionManager sessionManager, BuildParamManager buildParamManager, 
-			ProjectManager projectManager, Validator validator) {
+			ProjectManager projectManager, Validator validator, BuildMetricManager buildMetricManager, 
+			JobCacheManager jobCacheManager) {
 		this.settingManager = settingManager;
 		this.buildManager = buildManager;
 		this.userManager = userManager;
@@ -153,6 +200,8 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 		this.buildParamManager = buildParamManager;
 		this.projectManager = projectManager;
 		this.validator = validator;
+		this.buildMetricManager = buildMetricManager;
+		this.jobCacheManager = jobCacheManager;
 	}
 
 	private void validate(Project project, ObjectId commitId) {
@@ -168,34 +217,105 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 		}
 	}
 	
-	@Transactional
+	/*
+	 * Run specified submission in its own transaction. Same build (by project, commit, job, 
+	 * ref name and params) submitted concurrently fails all but one transaction with unique 
+	 * constraint violation. Submission is retried in a fresh transaction in this case, which 
+	 * finds the winning build via BuildManager.find. Session is cleared before retrying as 
+	 * it still holds builds failed to be created 
+	 */
+	private <T> T submit(Callable<T> submission) {
+		int attempts = 0;
+		while (true) {
+			boolean inTransaction = transactionManager.getTransaction().isActive();
+			try {
+				return transactionManager.call(submission);
+			} catch (Throwable e) {
+				if (!inTransaction && ++attempts < MAX_SUBMIT_ATTEMPTS 
+						&& ExceptionUtils.find(e, ConstraintViolationException.class) != null) {
+					logger.debug("Same build submitted concurrently, retrying...", e);
+					sessionManager.getSession().clear();
+				} else {
+					throw ExceptionUtils.unchecked(e);
+				}
+			}
+		}
+	}
+	
+	@Sessional
 	@Override
 	public Build submit(Project project, ObjectId commitId, String jobName, 
 			Map<String, List<String>> paramMap, SubmitReason reason) {
-    	Lock lock = LockUtils.getLock("job-manager: " + project.getId() + "-" + commitId.name());
-    	transactionManager.mustRunAfterTransaction(new Runnable() {
+		Long projectId = project.getId();
+		return submit(new Callable<Build>() {
 
 			@Override
-			public void run() {
-				lock.unlock();
+			public Build call() throws Exception {
+				Project project = projectManager.load(projectId);
+				validate(project, commitId);
+				return submit(project, commitId, jobName, paramMap, reason, new LinkedHashSet<>(), null);
+			}
+			
+		});
+	}
+	
+	@Sessional
+	@Override
+	public List<Build> submit(Project project, ObjectId commitId, String jobName, 
+			List<Map<String, List<String>>> paramMaps, SubmitReason reason) {
+		Long projectId = project.getId();
+		return submit(new Callable<List<Build>>() {
+
+			@Override
+			public List<Build> call() throws Exception {
+				Project project = projectManager.load(projectId);
+				validate(project, commitId);
+				
+				List<Build> pendingBuilds = new ArrayList<>();
+				List<Build> builds = new ArrayList<>();
+				for (Map<String, List<String>> paramMap: paramMaps) {
+					builds.add(submit(project, commitId, jobName, paramMap, reason, 
+							new LinkedHashSet<>(), pendingBuilds));
+				}
+				
+				if (!pendingBuilds.isEmpty()) {
+					buildManager.create(pendingBuilds);
+					listenerRegistry.post(new BuildsSubmitted(project, pendingBuilds));
+					requestChecksAfterCommit(pendingBuilds.stream().map(it->it.getId()).collect(Collectors.toList()));
+				}
+				return builds;
+			}
+			
+		});
+	}
+	
+	/*
+	 * Find build among builds pending to be created in current batch, using the same 
+	 * matching rule as BuildManager.find
+	 */
+	@Nullable
+	private Build findPendingBuild(Collection<Build> pendingBuilds, Project project, ObjectId commitId, 
+			String jobName, String refName, String paramsHash) {
+		for (Build build: pendingBuilds) {
+			if (build.getProject().equals(project) 
+					&& build.getCommitHash().equals(commitId.name())
+					&& build.getJobName().equals(jobName)
+					&& build.getRefName().equals(refName)
+					&& build.getParamsHash().equals(paramsHash)) {
+				return build;
 			}
-    		
-    	});
-    	
-		// Lock to guarantee uniqueness of build (by project, commit, job and parameters)
-    	try {
-        	lock.lockInterruptibly();
-        	
-        	validate(project, commitId);
-        	
-			return submit(project, commitId, jobName, paramMap, reason, new LinkedHashSet<>()); 
-    	} catch (Throwable e) {
-    		throw ExceptionUtils.unchecked(e);
 		}
+		return null;
 	}
 	
+	/*
+	 * @param pendingBuilds
+	 * 			if not null, new builds will be added to this list to be created in a batch, 
+	 * 			instead of being created immediately
+	 */
 	private Build submit(Project project, ObjectId commitId, String jobName, 
-			Map<String, List<String>> paramMap, SubmitReason reason, Set<String> checkedJobNames) {
+			Map<String, List<String>> paramMap, SubmitReason reason, Set<String> checkedJobNames, 
+			@Nullable List<Build> pendingBuilds) {
 		
 		ScriptIdentity.push(new JobIdentity(project, commitId));
 		try {
@@ -217,17 +337,28 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 				throw new ExplicitException(message);
 			}
 	
-			Map<String, List<String>> paramMapToQuery = new HashMap<>(paramMap);
+			Map<String, List<String>> paramMapToHash = new HashMap<>(paramMap);
 			for (ParamSpec paramSpec: build.getJob().getParamSpecs()) {
 				if (paramSpec instanceof SecretParam)
-					paramMapToQuery.remove(paramSpec.getName());
+					paramMapToHash.remove(paramSpec.getName());
 			}
+			build.setParamsHash(Build.getParamsHash(paramMapToHash));
 	
-			Collection<Build> builds = buildManager.query(project, commitId, jobName, 
-					reason.getRefName(), Optional.ofNullable(reason.getPullRequest()), 
-					paramMapToQuery);
+			if (pendingBuilds != null) {
+				Build pendingBuild = findPendingBuild(pendingBuilds, project, commitId, jobName, 
+						reason.getRefName(), build.getParamsHash());
+				if (pendingBuild != null)
+					return pendingBuild;
+			}
+			
+			/*
+			 * Pull request is not checked as it is implied by ref name. Uniqueness is 
+			 * guaranteed by database in case same build is submitted concurrently
+			 */
+			Build existingBuild = buildManager.find(project, commitId, jobName, 
+					reason.getRefName(), build.getParamsHash());
 			
-			if (builds.isEmpty()) {
+			if (existingBuild == null) {
 				for (Map.Entry<String, List<String>> entry: paramMap.entrySet()) {
 					ParamSpec paramSpec = Preconditions.checkNotNull(build.getJob().getParamSpecMap().get(entry.getKey()));
 					if (!entry.getValue().isEmpty()) {
@@ -256,7 +387,7 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 							@Override
 							public void run(Map<String, List<String>> params) {
 								Build dependencyBuild = submit(project, commitId, dependency.getJobName(), 
-										params, reason, new LinkedHashSet<>(checkedJobNames));
+										params, reason, new LinkedHashSet<>(checkedJobNames), pendingBuilds);
 								BuildDependence dependence = new BuildDependence();
 								dependence.setDependency(dependencyBuild);
 								dependence.setDependent(build);
@@ -312,11 +443,16 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 					build.getDependencies().add(dependence);
 				}
 	
-				buildManager.create(build);
-				listenerRegistry.post(new BuildSubmitted(build));
+				if (pendingBuilds != null) {
+					pendingBuilds.add(build);
+				} else {
+					buildManager.create(build);
+					listenerRegistry.post(new BuildSubmitted(build));
+					requestChecksAfterCommit(Lists.newArrayList(build.getId()));
+				}
 				return build;
 			} else {
-				return builds.iterator().next();
+				return existingBuild;
 			}
 		} finally {
 			ScriptIdentity.pop();
@@ -352,7 +488,7 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 				CloneInfo cloneInfo = job.getCloneCredential().newCloneInfo(build, jobToken);
 				
 				AtomicReference<JobExecution> executionRef = new AtomicReference<>(null);
-				executionRef.set(new JobExecution(executorService.submit(new Runnable() {
+				FutureTask<Void> future = new FutureTask<Void>(new Runnable() {
 
 					@Override
 					public void run() {
@@ -417,7 +553,8 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 													serverWorkspace, job.getCommands(), job.isRetrieveSource(), job.getCloneDepth(), 
 													cloneInfo, job.getCpuRequirement(), job.getMemoryRequirement(), 
 													commitId, caches, new PatternSet(includeFiles, excludeFiles), 
-													executor.getCacheTTL(), retried.get(), services, jobLogger) {
+													executor.getCacheTTL(), executor.getCacheSizeLimit(), retried.get(), 
+													services, jobLogger) {
 												
 												@Override
 												public void notifyJobRunning() {
@@ -524,6 +661,9 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 									}
 								} finally {
 									jobContexts.remove(jobToken);
+									for (File tempFile: jobContext.getTempFiles())
+										FileUtils.deleteFile(tempFile);
+									jobCacheManager.release(jobToken);
 								}
 							}
 						} catch (Throwable e) {
@@ -559,7 +699,16 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 						}
 					}
 					
-				}), job.getTimeout() * 1000L));
+				}, null) {
+
+					@Override
+					protected void done() {
+						requestCheck(buildId);
+					}
+					
+				};
+				executionRef.set(new JobExecution(future, job.getTimeout() * 1000L));
+				executorService.execute(future);
 				
 				return executionRef.get();
 			} else {
@@ -605,6 +754,26 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 		listenerRegistry.post(new BuildFinished(build));
 	}
 	
+	@Nullable
+	private JobTriggerIndex getTriggerIndex(Project project, ObjectId commitId) {
+		Blob blob = project.getBuildSpecBlob(commitId);
+		if (blob != null) {
+			String key = project.getId() + ":" + blob.getBlobId().name();
+			JobTriggerIndex triggerIndex = triggerIndexes.getIfPresent(key);
+			if (triggerIndex == null) {
+				BuildSpec buildSpec = project.getBuildSpec(commitId);
+				if (buildSpec != null)
+					triggerIndex = new JobTriggerIndex(buildSpec.getJobs());
+				else
+					triggerIndex = new JobTriggerIndex(new ArrayList<>());
+				triggerIndexes.put(key, triggerIndex);
+			}
+			return triggerIndex;
+		} else {
+			return null;
+		}
+	}
+	
 	@Sessional
 	@Listen
 	public void on(ProjectEvent event) {
@@ -613,48 +782,41 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 			if (!commitId.equals(ObjectId.zeroId())) {
 				ScriptIdentity.push(new JobIdentity(event.getProject(), commitId));
 				try {
-					BuildSpec buildSpec = event.getProject().getBuildSpec(commitId);
-					if (buildSpec != null) {
-						for (Job job: buildSpec.getJobs()) {
-							JobTriggerMatch match = job.getTriggerMatch(event);
-							if (match != null) {
-								Map<String, List<List<String>>> paramMatrix = 
-										ParamSupply.getParamMatrix(match.getTrigger().getParams(), null);						
-								Long projectId = event.getProject().getId();
-								
-								// run asynchrously as session may get closed due to exception
-								transactionManager.runAfterCommit(new Runnable() {
+					JobTriggerIndex triggerIndex = getTriggerIndex(event.getProject(), commitId);
+					if (triggerIndex != null) {
+						for (Map.Entry<Job, JobTriggerMatch> entry: triggerIndex.getMatches(event).entrySet()) {
+							Job job = entry.getKey();
+							JobTriggerMatch match = entry.getValue();
+							Map<String, List<List<String>>> paramMatrix = 
+									ParamSupply.getParamMatrix(match.getTrigger().getParams(), null);						
+							Long projectId = event.getProject().getId();
+							
+							// run asynchrously as session may get closed due to exception
+							transactionManager.runAfterCommit(new Runnable() {
 
-									@Override
-									public void run() {
-										sessionManager.runAsync(new Runnable() {
+								@Override
+								public void run() {
+									sessionManager.runAsync(new Runnable() {
+										
+										@Override
+										public void run() {
+											ThreadContext.bind(userManager.getSystem().asSubject());
 											
-											@Override
-											public void run() {
-												ThreadContext.bind(userManager.getSystem().asSubject());
-												
-												Project project = projectManager.load(projectId);
-												try {
-													new MatrixRunner<List<String>>(paramMatrix) {
-														
-														@Override
-														public void run(Map<String, List<String>> paramMap) {
-															submit(project, commitId, job.getName(), paramMap, match.getReason()); 
-														}
-														
-													}.run();
-												} catch (Throwable e) {
-													String message = String.format("Error submitting build (project: %s, commit: %s, job: %s)", 
-															project.getName(), commitId.name(), job.getName());
-													logger.error(message, e);
-												}
+											Project project = projectManager.load(projectId);
+											try {
+												submit(project, commitId, job.getName(), 
+														MatrixRunner.getCombinations(paramMatrix), match.getReason());
+											} catch (Throwable e) {
+												String message = String.format("Error submitting build (project: %s, commit: %s, job: %s)", 
+														project.getName(), commitId.name(), job.getName());
+												logger.error(message, e);
 											}
-											
-										});
-									}
-									
-								});
-							}
+										}
+										
+									});
+								}
+								
+							});
 						}
 					}
 				} catch (Throwable e) {
@@ -673,6 +835,42 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 	public void resubmit(Build build, Map<String, List<String>> paramMap) {
 		if (build.isFinished()) {
         	validate(build.getProject(), build.getCommitId());
+        	
+			Map<String, List<String>> paramMapToHash = new HashMap<>(paramMap);
+			for (ParamSpec paramSpec: build.getJob().getParamSpecs()) {
+				if (paramSpec instanceof SecretParam)
+					paramMapToHash.remove(paramSpec.getName());
+			}
+			String paramsHash = Build.getParamsHash(paramMapToHash);
+			
+			/*
+			 * Check before modifying the build, as otherwise the modification might be 
+			 * flushed before the query, violating the unique constraint
+			 */
+			Build existingBuild = buildManager.find(build.getProject(), build.getCommitId(), 
+					build.getJobName(), build.getRefName(), paramsHash);
+			if (existingBuild != null && !existingBuild.equals(build)) {
+				throw new ExplicitException("Build #" + existingBuild.getNumber() 
+						+ " with same params already exists");
+			}
+			
+        	/*
+        	 * Metrics of the build are retained, and should no longer be counted 
+        	 * in rollups of the day it finished previously
+        	 */
+			Long projectId = build.getProject().getId();
+			String jobName = build.getJobName();
+			Integer finishDay = build.getFinishDay();
+			if (finishDay != null) {
+				transactionManager.runAfterCommit(new Runnable() {
+
+					@Override
+					public void run() {
+						buildMetricManager.refreshRollups(projectId, jobName, finishDay);
+					}
+					
+				});
+			}
 			
 			build.setStatus(Build.Status.WAITING);
 			build.setFinishDate(null);
@@ -710,8 +908,10 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 					buildParamManager.save(param);
 				}
 			}
+			build.setParamsHash(paramsHash);
 			buildManager.save(build);
 			listenerRegistry.post(new BuildSubmitted(build));
+			requestChecksAfterCommit(Lists.newArrayList(build.getId()));
 		} else {
 			throw new ExplicitException("Build #" + build.getNumber() + " not finished yet");
 		}
@@ -780,105 +980,265 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 		if (thread != null) {
 			Thread copy = thread;
 			thread = null;
+			wakeUp();
 			try {
 				copy.join();
 			} catch (InterruptedException e) {
 			}
 		}
 	}
+	
+	private void requestCheck(Long buildId) {
+		synchronized (checkRequests) {
+			checkRequests.putIfAbsent(buildId, System.currentTimeMillis());
+			checkRequests.notifyAll();
+		}
+	}
+	
+	/*
+	 * Request checks of specified builds in a single step after current transaction 
+	 * is committed
+	 */
+	private void requestChecksAfterCommit(Collection<Long> buildIds) {
+		transactionManager.runAfterCommit(new Runnable() {
 
+			@Override
+			public void run() {
+				long now = System.currentTimeMillis();
+				synchronized (checkRequests) {
+					for (Long buildId: buildIds)
+						checkRequests.putIfAbsent(buildId, now);
+					checkRequests.notifyAll();
+				}
+			}
+			
+		});
+	}
+	
+	private void wakeUp() {
+		synchronized (checkRequests) {
+			checkRequests.notifyAll();
+		}
+	}
+	
+	/*
+	 * Scheduler only checks builds affected by events (build submitted, dependency 
+	 * finished, execution done or timed out, etc). Database is scanned periodically 
+	 * to pick up builds whose events are missed, for instance builds left unfinished 
+	 * by last server run
+	 */
 	@Override
 	public void run() {
+		long nextReconcileTime = 0;
 		while (!jobExecutions.isEmpty() || thread != null) {
 			try {
-				synchronized (this) {
-					transactionManager.run(new Runnable() {
-		
-						@Override
-						public void run() {
-							for (Build build: buildManager.queryUnfinished()) {
-								if (build.getStatus() == Build.Status.RUNNING || build.getStatus() == Build.Status.PENDING) {
-									JobExecution execution = jobExecutions.get(build.getId());
-									if (execution != null) {
-										if (execution.isTimedout())
-											execution.cancel(null);
-									} else if (thread != null) {
-										try {
-											jobExecutions.put(build.getId(), execute(build));
-										} catch (Throwable t) {
-											if (t instanceof ExplicitException)
-												markBuildError(build, t.getMessage());
-											else
-												markBuildError(build, Throwables.getStackTraceAsString(t));
-										}
-									}
-								} else if (build.getStatus() == Build.Status.WAITING) {
-									if (build.getRetryDate() != null) {
-										JobExecution execution = jobExecutions.get(build.getId());
-										if (execution == null && thread != null) {
-											build.setStatus(Build.Status.PENDING);
-											build.setPendingDate(new Date());
-											listenerRegistry.post(new BuildPending(build));
-										}
-									} else if (build.getDependencies().stream().anyMatch(it -> it.isRequireSuccessful() 
-											&& it.getDependency().isFinished() 
-											&& it.getDependency().getStatus() != Build.Status.SUCCESSFUL)) {
-										markBuildError(build, "Some dependencies are required to be successful but failed");
-									} else if (build.getDependencies().stream().allMatch(it->it.getDependency().isFinished())) {
-										build.setStatus(Build.Status.PENDING);
-										build.setPendingDate(new Date());
-										listenerRegistry.post(new BuildPending(build));
-									}
-								} 
-							}
-							for (Iterator<Map.Entry<Long, JobExecution>> it = jobExecutions.entrySet().iterator(); it.hasNext();) {
-								Map.Entry<Long, JobExecution> entry = it.next();
-								Build build = buildManager.get(entry.getKey());
-								JobExecution execution = entry.getValue();
-								if (build == null || build.isFinished()) {
-									it.remove();
-									execution.cancel(null);
-								} else if (execution.isDone()) {
-									it.remove();
-									try {
-										execution.check();
-										build.setStatus(Build.Status.SUCCESSFUL);
-									} catch (TimeoutException e) {
-										build.setStatus(Build.Status.TIMED_OUT);
-									} catch (CancellationException e) {
-										if (e instanceof CancellerAwareCancellationException) {
-											Long cancellerId = ((CancellerAwareCancellationException) e).getCancellerId();
-											if (cancellerId != null)
-												build.setCanceller(userManager.load(cancellerId));
-										}
-										build.setStatus(Build.Status.CANCELLED);
-									} catch (ExecutionException e) {
-										if (e.getCause() instanceof ExplicitException)
-											build.setStatus(Build.Status.FAILED, e.getCause().getMessage());
-										else
-											build.setStatus(Build.Status.FAILED, e.getMessage());
-									} catch (InterruptedException e) {
-									} finally {
-										build.setFinishDate(new Date());
-										listenerRegistry.post(new BuildFinished(build));
-									}
+				if (thread != null && System.currentTimeMillis() >= nextReconcileTime) {
+					reconcile();
+					nextReconcileTime = System.currentTimeMillis() + RECONCILE_INTERVAL;
+				}
+				
+				Map<Long, Long> requests;
+				synchronized (checkRequests) {
+					long wakeUpTime = thread != null? nextReconcileTime: Long.MAX_VALUE;
+					for (JobExecution execution: jobExecutions.values()) {
+						if (!execution.isDone())
+							wakeUpTime = Math.min(wakeUpTime, execution.getTimeoutTime());
+					}
+					long waitTime = wakeUpTime - System.currentTimeMillis();
+					if (checkRequests.isEmpty() && waitTime > 0 && (!jobExecutions.isEmpty() || thread != null))
+						checkRequests.wait(waitTime);
+					requests = new LinkedHashMap<>(checkRequests);
+					checkRequests.clear();
+				}
+				
+				long now = System.currentTimeMillis();
+				for (Map.Entry<Long, JobExecution> entry: jobExecutions.entrySet()) {
+					if (!entry.getValue().isDone() && entry.getValue().isTimedout())
+						requests.putIfAbsent(entry.getKey(), now);
+				}
+				
+				for (Map.Entry<Long, Long> entry: requests.entrySet()) {
+					Long buildId = entry.getKey();
+					long latency = System.currentTimeMillis() - entry.getValue();
+					lastSchedulingLatency.set(latency);
+					totalSchedulingLatency.addAndGet(latency);
+					schedulingCount.incrementAndGet();
+					try {
+						synchronized (this) {
+							transactionManager.run(new Runnable() {
+	
+								@Override
+								public void run() {
+									check(buildId);
 								}
-							}
+								
+							});
 						}
-						
-					});
+					} catch (Throwable e) {
+						logger.error("Error checking build (id: " + buildId + ")", e);
+					}
 				}
-				Thread.sleep(CHECK_INTERVAL);
 			} catch (Throwable e) {
-				logger.error("Error checking unfinished builds", e);
+				logger.error("Error scheduling builds", e);
 			} 
 		}	
 	}
 	
+	private void reconcile() {
+		Set<Long> unfinishedIds = transactionManager.call(new Callable<Set<Long>>() {
+
+			@Override
+			public Set<Long> call() {
+				return buildManager.queryUnfinished().stream().map(it->it.getId()).collect(Collectors.toSet());
+			}
+			
+		});
+		
+		// finish events of some dependencies may be missed for some reason
+		for (Long buildId: dependencyTracker.retain(unfinishedIds))
+			requestCheck(buildId);
+		for (Long buildId: unfinishedIds) {
+			if (!jobExecutions.containsKey(buildId) && !dependencyTracker.isTracked(buildId))
+				requestCheck(buildId);
+		}
+		for (Long buildId: jobExecutions.keySet()) {
+			if (!unfinishedIds.contains(buildId))
+				requestCheck(buildId);
+		}
+	}
+	
+	private void check(Long buildId) {
+		Build build = buildManager.get(buildId);
+		JobExecution execution = jobExecutions.get(buildId);
+		if (build == null || build.isFinished()) {
+			if (execution != null) {
+				jobExecutions.remove(buildId);
+				execution.cancel(null);
+			}
+			dependencyTracker.untrack(buildId);
+			if (build != null) {
+				boolean successful = build.getStatus() == Build.Status.SUCCESSFUL;
+				for (Map.Entry<Long, Boolean> entry: dependencyTracker.onFinished(buildId, successful).entrySet()) {
+					Build dependent = buildManager.get(entry.getKey());
+					if (dependent != null && dependent.getStatus() == Build.Status.WAITING 
+							&& dependent.getRetryDate() == null) {
+						if (entry.getValue())
+							markBuildPending(dependent);
+						else
+							markBuildError(dependent, "Some dependencies are required to be successful but failed");
+					}
+				}
+			} else {
+				for (Long dependentId: dependencyTracker.onDeleted(buildId))
+					requestCheck(dependentId);
+			}
+		} else if (execution != null) {
+			if (execution.isDone()) {
+				jobExecutions.remove(buildId);
+				try {
+					execution.check();
+					build.setStatus(Build.Status.SUCCESSFUL);
+				} catch (TimeoutException e) {
+					build.setStatus(Build.Status.TIMED_OUT);
+				} catch (CancellationException e) {
+					if (e instanceof CancellerAwareCancellationException) {
+						Long cancellerId = ((CancellerAwareCancellationException) e).getCancellerId();
+						if (cancellerId != null)
+							build.setCanceller(userManager.load(cancellerId));
+					}
+					build.setStatus(Build.Status.CANCELLED);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof ExplicitException)
+						build.setStatus(Build.Status.FAILED, e.getCause().getMessage());
+					else
+						build.setStatus(Build.Status.FAILED, e.getMessage());
+				} catch (InterruptedException e) {
+				} finally {
+					build.setFinishDate(new Date());
+					listenerRegistry.post(new BuildFinished(build));
+				}
+			} else if (execution.isTimedout()) {
+				// execution will request another check once it is cancelled
+				execution.cancel(null);
+			}
+		} else if (build.getStatus() == Build.Status.RUNNING || build.getStatus() == Build.Status.PENDING) {
+			if (thread != null) {
+				try {
+					jobExecutions.put(buildId, execute(build));
+					long queueWait = System.currentTimeMillis() - build.getSubmitDate().getTime();
+					lastQueueWait.set(queueWait);
+					totalQueueWait.addAndGet(queueWait);
+					queueWaitCount.incrementAndGet();
+				} catch (Throwable t) {
+					if (t instanceof ExplicitException)
+						markBuildError(build, t.getMessage());
+					else
+						markBuildError(build, Throwables.getStackTraceAsString(t));
+				}
+			}
+		} else if (build.getStatus() == Build.Status.WAITING) {
+			if (build.getRetryDate() != null) {
+				if (thread != null)
+					markBuildPending(build);
+			} else if (dependencyTracker.isTracked(buildId)) {
+				// will be resolved when remaining dependencies finish
+			} else if (build.getDependencies().stream().anyMatch(it -> it.isRequireSuccessful() 
+					&& it.getDependency().isFinished() 
+					&& it.getDependency().getStatus() != Build.Status.SUCCESSFUL)) {
+				markBuildError(build, "Some dependencies are required to be successful but failed");
+			} else if (build.getDependencies().stream().allMatch(it->it.getDependency().isFinished())) {
+				markBuildPending(build);
+			} else {
+				Map<Long, Boolean> unfinishedDependencies = new HashMap<>();
+				for (BuildDependence dependence: build.getDependencies()) {
+					Build dependency = dependence.getDependency();
+					if (!dependency.isFinished()) 
+						unfinishedDependencies.merge(dependency.getId(), dependence.isRequireSuccessful(), Boolean::logicalOr);
+				}
+				dependencyTracker.track(buildId, unfinishedDependencies);
+			}
+		} 
+	}
+	
+	private void markBuildPending(Build build) {
+		build.setStatus(Build.Status.PENDING);
+		build.setPendingDate(new Date());
+		listenerRegistry.post(new BuildPending(build));
+		
+		// Execute in next check to make sure that status change is committed before 
+		// job executor updates the build
+		Long buildId = build.getId();
+		transactionManager.runAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				requestCheck(buildId);
+			}
+			
+		});
+	}
+	
+	@Override
+	public Collection<Long> getRemainingDependencies(Long buildId) {
+		return dependencyTracker.getRemainingDependencies(buildId);
+	}
+	
+	@Override
+	public SchedulerStats getSchedulerStats() {
+		int pendingChecks;
+		synchronized (checkRequests) {
+			pendingChecks = checkRequests.size();
+		}
+		long schedulingCount = this.schedulingCount.get();
+		long queueWaitCount = this.queueWaitCount.get();
+		return new SchedulerStats(pendingChecks, jobExecutions.size(), lastSchedulingLatency.get(), 
+				schedulingCount!=0? totalSchedulingLatency.get()/schedulingCount: 0, 
+				lastQueueWait.get(), queueWaitCount!=0? totalQueueWait.get()/queueWaitCount: 0);
+	}
+	
 	@Listen
 	public void on(BuildSubmitted event) {
-		Build build = event.getBuild();
-		FileUtils.deleteDir(build.getPublishDir());
+		FileUtils.deleteDir(event.getBuild().getPublishDir());
 	}
 
 	@Transactional
@@ -896,6 +1256,7 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 
 			@Override
 			public void run() {
+				requestCheck(buildId);
 				OneDev.getInstance(SessionManager.class).runAsync(new Runnable() {
 
 					@Override
@@ -935,90 +1296,15 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 
 	@Override
 	public Map<CacheInstance, String> allocateJobCaches(String jobToken, Date currentTime, 
-			Map<CacheInstance, Date> cacheInstances) {
-		synchronized (jobContexts) {
-			JobContext jobContext = getJobContext(jobToken, true);
-			
-			List<CacheInstance> sortedInstances = new ArrayList<>(cacheInstances.keySet());
-			sortedInstances.sort(new Comparator<CacheInstance>() {
-	
-				@Override
-				public int compare(CacheInstance o1, CacheInstance o2) {
-					return cacheInstances.get(o2).compareTo(cacheInstances.get(o1));
-				}
-				
-			});
-		
-			Collection<String> allAllocated = new HashSet<>();
-			for (JobContext each: jobContexts.values())
-				allAllocated.addAll(each.getAllocatedCaches());
-			Map<CacheInstance, String> allocations = new HashMap<>();
-			for (CacheSpec cacheSpec: jobContext.getCacheSpecs()) {
-				Optional<CacheInstance> result = sortedInstances
-						.stream()
-						.filter(it->it.getCacheKey().equals(cacheSpec.getKey()))
-						.filter(it->!allAllocated.contains(it.getName()))
-						.findFirst();
-				CacheInstance allocation;
-				if (result.isPresent()) 
-					allocation = result.get();
-				else
-					allocation = new CacheInstance(UUID.randomUUID().toString(), cacheSpec.getKey());
-				allocations.put(allocation, cacheSpec.getPath());
-				jobContext.getAllocatedCaches().add(allocation.getName());
-				allAllocated.add(allocation.getName());
-			}
-			
-			Consumer<CacheInstance> deletionMarker = new Consumer<CacheInstance>() {
-	
-				@Override
-				public void accept(CacheInstance instance) {
-					long ellapsed = currentTime.getTime() - cacheInstances.get(instance).getTime();
-					if (ellapsed > jobContext.getCacheTTL() * 24L * 3600L * 1000L) {
-						allocations.put(instance, null);
-						jobContext.getAllocatedCaches().add(instance.getName());
-						allAllocated.add(instance.getName());
-					}
-				}
-				
-			};
-			
-			cacheInstances.keySet()
-					.stream()
-					.filter(it->!allAllocated.contains(it.getName()))
-					.forEach(deletionMarker);
-			
-			updateCacheCounts(jobContext, cacheInstances.keySet(), allAllocated);
-			
-			return allocations;
-		}
+			Map<CacheInstance, Date> cacheInstances, @Nullable Map<CacheInstance, Long> cacheSizes) {
+		JobContext jobContext = getJobContext(jobToken, true);
+		return jobCacheManager.allocate(jobToken, jobContext, currentTime, cacheInstances, cacheSizes);
 	}
 	
-	private void updateCacheCounts(JobContext jobContext, Collection<CacheInstance> cacheInstances, 
-			Collection<String> allAllocated) {
-		for (CacheInstance cacheInstance: cacheInstances) {
-			if (!allAllocated.contains(cacheInstance.getName())) {
-				String cacheKey = cacheInstance.getCacheKey();
-				Integer cacheCount = jobContext.getCacheCounts().get(cacheKey);
-				if (cacheCount == null)
-					cacheCount = 0;
-				cacheCount++;
-				jobContext.getCacheCounts().put(cacheKey, cacheCount);
-			}
-		}
-	}
-
 	@Override
 	public void reportJobCaches(String jobToken, Collection<CacheInstance> cacheInstances) {
-		synchronized (jobContexts) {
-			JobContext jobContext = getJobContext(jobToken, true);
-			Collection<String> allAllocated = new HashSet<>();
-			for (JobContext each: jobContexts.values()) {
-				if (each != jobContext)
-					allAllocated.addAll(each.getAllocatedCaches());
-			}
-			updateCacheCounts(jobContext, cacheInstances, allAllocated);
-		}
+		JobContext jobContext = getJobContext(jobToken, true);
+		jobCacheManager.report(jobToken, jobContext, cacheInstances);
 	}
 
-}
\ No newline at end of file
+}
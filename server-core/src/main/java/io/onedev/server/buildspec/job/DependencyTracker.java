@@ -0,0 +1,167 @@
+package io.onedev.server.buildspec.job;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks unfinished dependencies of waiting builds, so that a waiting build can be
+ * resolved as soon as its last dependency finishes, or a required dependency fails,
+ * without rescanning dependencies of all waiting builds. Remaining dependencies of a
+ * waiting build serve both as its counter and as a view of what it is waiting on.
+ */
+public class DependencyTracker {
+
+	/*
+	 * Map of waiting build id to its unfinished dependencies, with each dependency id
+	 * mapped to whether it is required to be successful
+	 */
+	private final Map<Long, Map<Long, Boolean>> remainingDependencies = new HashMap<>();
+
+	/*
+	 * Map of unfinished dependency id to ids of waiting builds depending on it
+	 */
+	private final Map<Long, Set<Long>> dependents = new HashMap<>();
+
+	/**
+	 * Track specified waiting build. Previously tracked dependencies of the build will
+	 * be replaced
+	 *
+	 * @param unfinishedDependencies
+	 * 			unfinished dependencies of the build, mapped to whether they are required
+	 * 			to be successful. Must not be empty
+	 */
+	public synchronized void track(Long buildId, Map<Long, Boolean> unfinishedDependencies) {
+		untrack(buildId);
+		remainingDependencies.put(buildId, new LinkedHashMap<>(unfinishedDependencies));
+		for (Long dependencyId: unfinishedDependencies.keySet())
+			dependents.computeIfAbsent(dependencyId, k->new HashSet<>()).add(buildId);
+	}
+
+	public synchronized void untrack(Long buildId) {
+		Map<Long, Boolean> dependencies = remainingDependencies.remove(buildId);
+		if (dependencies != null) {
+			for (Long dependencyId: dependencies.keySet()) {
+				Set<Long> dependentIds = dependents.get(dependencyId);
+				if (dependentIds != null) {
+					dependentIds.remove(buildId);
+					if (dependentIds.isEmpty())
+						dependents.remove(dependencyId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record that specified dependency is finished
+	 *
+	 * @param successful
+	 * 			whether the dependency is finished successfully
+	 * @return
+	 * 			resolved waiting builds, mapped to <tt>true</tt> if all dependencies of the
+	 * 			build are finished, or <tt>false</tt> if some dependency required to be
+	 * 			successful failed. Resolved builds are no longer tracked
+	 */
+	public synchronized Map<Long, Boolean> onFinished(Long dependencyId, boolean successful) {
+		Map<Long, Boolean> resolved = new LinkedHashMap<>();
+		Set<Long> dependentIds = dependents.remove(dependencyId);
+		if (dependentIds != null) {
+			for (Long dependentId: dependentIds) {
+				Map<Long, Boolean> dependencies = remainingDependencies.get(dependentId);
+				Boolean requireSuccessful = dependencies.remove(dependencyId);
+				if (!successful && requireSuccessful) {
+					untrack(dependentId);
+					resolved.put(dependentId, false);
+				} else if (dependencies.isEmpty()) {
+					remainingDependencies.remove(dependentId);
+					resolved.put(dependentId, true);
+				}
+			}
+		}
+		return resolved;
+	}
+
+	/**
+	 * Record that specified dependency is deleted
+	 * 
+	 * @return
+	 * 			ids of waiting builds depending on the deleted dependency. These builds are
+	 * 			no longer tracked and should be checked again
+	 */
+	public synchronized Collection<Long> onDeleted(Long dependencyId) {
+		List<Long> checkIds = new ArrayList<>();
+		Set<Long> dependentIds = dependents.remove(dependencyId);
+		if (dependentIds != null) {
+			for (Long dependentId: dependentIds) {
+				untrack(dependentId);
+				checkIds.add(dependentId);
+			}
+		}
+		return checkIds;
+	}
+
+	/**
+	 * Drop tracked builds and dependencies no longer unfinished, in case their finish
+	 * events are missed
+	 *
+	 * @return
+	 * 			ids of waiting builds which should be checked again as some of their
+	 * 			dependencies are dropped
+	 */
+	public synchronized Collection<Long> retain(Set<Long> unfinishedIds) {
+		remainingDependencies.keySet().retainAll(unfinishedIds);
+		Set<Long> affectedIds = new HashSet<>();
+		for (Iterator<Map.Entry<Long, Set<Long>>> it = dependents.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Long, Set<Long>> entry = it.next();
+			entry.getValue().retainAll(remainingDependencies.keySet());
+			if (!unfinishedIds.contains(entry.getKey())) {
+				it.remove();
+				affectedIds.addAll(entry.getValue());
+			} else if (entry.getValue().isEmpty()) {
+				it.remove();
+			}
+		}
+		List<Long> checkIds = new ArrayList<>();
+		for (Long affectedId: affectedIds) {
+			untrack(affectedId);
+			checkIds.add(affectedId);
+		}
+		return checkIds;
+	}
+
+	public synchronized boolean isTracked(Long buildId) {
+		return remainingDependencies.containsKey(buildId);
+	}
+
+	/**
+	 * @return
+	 * 			ids of unfinished dependencies specified build is waiting on, or empty if
+	 * 			the build is not tracked
+	 */
+	public synchronized Collection<Long> getRemainingDependencies(Long buildId) {
+		Map<Long, Boolean> dependencies = remainingDependencies.get(buildId);
+		if (dependencies != null)
+			return new ArrayList<>(dependencies.keySet());
+		else
+			return new ArrayList<>();
+	}
+
+	/**
+	 * @return
+	 * 			map of tracked waiting build id to ids of unfinished dependencies it is
+	 * 			waiting on
+	 */
+	public synchronized Map<Long, Collection<Long>> getRemainingDependencies() {
+		Map<Long, Collection<Long>> view = new HashMap<>();
+		for (Map.Entry<Long, Map<Long, Boolean>> entry: remainingDependencies.entrySet())
+			view.put(entry.getKey(), new ArrayList<>(entry.getValue().keySet()));
+		return view;
+	}
+
+}
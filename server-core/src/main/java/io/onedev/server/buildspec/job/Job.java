@@ -40,7 +40,6 @@ import io.onedev.server.buildspec.job.gitcredential.GitCredential;
 import io.onedev.server.buildspec.job.paramspec.ParamSpec;
 import io.onedev.server.buildspec.job.paramsupply.ParamSupply;
 import io.onedev.server.buildspec.job.trigger.JobTrigger;
-import io.onedev.server.event.ProjectEvent;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
@@ -396,16 +395,6 @@ public class Job implements Serializable, Validatable {
 		this.postBuildActions = postBuildActions;
 	}
 	
-	@Nullable
-	public JobTriggerMatch getTriggerMatch(ProjectEvent event) {
-		for (JobTrigger trigger: getTriggers()) {
-			SubmitReason reason = trigger.matches(event, this);
-			if (reason != null)
-				return new JobTriggerMatch(trigger, reason);
-		}
-		return null;
-	}
-
 	@Override
 	public boolean isValid(ConstraintValidatorContext context) {
 		Set<String> keys = new HashSet<>();
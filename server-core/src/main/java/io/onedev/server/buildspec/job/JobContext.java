@@ -2,7 +2,6 @@ package io.onedev.server.buildspec.job;
 
 import java.io.File;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -47,20 +46,22 @@ public abstract class JobContext {
 	
 	private final int cacheTTL;
 	
+	private final int cacheSizeLimit;
+	
 	private final int retried;
 	
 	private final SimpleLogger logger;	
 	
-	private final Collection<String> allocatedCaches = new HashSet<>();
-	
 	private final Map<String, Integer> cacheCounts = new ConcurrentHashMap<>();
 	
+	private final Collection<File> tempFiles = ConcurrentHashMap.newKeySet();
+	
 	public JobContext(String projectName, Long buildNumber, 
 			File projectGitDir, String image, File workspace, List<String> commands, 
 			boolean retrieveSource, Integer cloneDepth, CloneInfo cloneInfo, 
 			String cpuRequirement, String memoryRequirement, ObjectId commitId, 
 			Collection<CacheSpec> caches, PatternSet collectFiles, int cacheTTL, 
-			int retried, List<JobService> services, SimpleLogger logger) {
+			int cacheSizeLimit, int retried, List<JobService> services, SimpleLogger logger) {
 		this.projectName = projectName;
 		this.buildNumber = buildNumber;
 		this.projectGitDir = projectGitDir;
@@ -76,6 +77,7 @@ public abstract class JobContext {
 		this.cacheSpecs = caches;
 		this.collectFiles = collectFiles;
 		this.cacheTTL = cacheTTL;
+		this.cacheSizeLimit = cacheSizeLimit;
 		this.retried = retried;
 		this.services = services;
 		this.logger = logger;
@@ -101,6 +103,17 @@ public abstract class JobContext {
 		return serverWorkspace;
 	}
 
+	/**
+	 * Register specified file to be deleted when job context is dropped
+	 */
+	public void addTempFile(File tempFile) {
+		tempFiles.add(tempFile);
+	}
+
+	public Collection<File> getTempFiles() {
+		return tempFiles;
+	}
+
 	public List<String> getCommands() {
 		return commands;
 	}
@@ -144,15 +157,20 @@ public abstract class JobContext {
 	public int getCacheTTL() {
 		return cacheTTL;
 	}
+	
+	/**
+	 * @return
+	 * 			maximum total size of job caches in gigabytes on each host, or <tt>0</tt> 
+	 * 			if not limited
+	 */
+	public int getCacheSizeLimit() {
+		return cacheSizeLimit;
+	}
 
 	public int getRetried() {
 		return retried;
 	}
 
-	public Collection<String> getAllocatedCaches() {
-		return allocatedCaches;
-	}
-
 	public List<JobService> getServices() {
 		return services;
 	}
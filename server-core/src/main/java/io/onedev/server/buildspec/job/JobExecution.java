@@ -35,6 +35,14 @@ public class JobExecution {
 		return System.currentTimeMillis() - beginTime > timeout;
 	}
 	
+	/**
+	 * @return
+	 * 			time in milliseconds after which this execution will be considered as timed out
+	 */
+	public long getTimeoutTime() {
+		return beginTime + timeout;
+	}
+	
 	public void updateBeginTime() {
 		beginTime = System.currentTimeMillis();
 	}
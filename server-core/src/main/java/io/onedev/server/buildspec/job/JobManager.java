@@ -5,6 +5,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import org.eclipse.jgit.lib.ObjectId;
 
 import io.onedev.k8shelper.CacheInstance;
@@ -16,15 +18,50 @@ public interface JobManager {
 	Build submit(Project project, ObjectId commitId, String jobName, 
 			Map<String, List<String>> paramMap, SubmitReason reason);
 	
+	/**
+	 * Submit builds of specified job for a batch of param maps, for instance combinations 
+	 * of a param matrix. New builds are created in a batch and are scheduled in a single 
+	 * step
+	 * 
+	 * @return
+	 * 			builds of specified param maps in same order. Existing build will be returned 
+	 * 			if a param map is already built 
+	 */
+	List<Build> submit(Project project, ObjectId commitId, String jobName, 
+			List<Map<String, List<String>>> paramMaps, SubmitReason reason);
+	
 	void resubmit(Build build, Map<String, List<String>> paramMap);
 	
 	void cancel(Build build);
 	
 	JobContext getJobContext(String jobToken, boolean mustExist);
 	
+	/**
+	 * Allocate caches for specified job
+	 * 
+	 * @param cacheInstances
+	 * 			cache instances on host running the job, mapped to their last access time
+	 * @param cacheSizes
+	 * 			cache instances on host running the job, mapped to their size in bytes, or 
+	 * 			<tt>null</tt> if sizes are not available
+	 * @return
+	 * 			allocated cache instances mapped to path of the cache. Instances mapped to 
+	 * 			<tt>null</tt> should be deleted from the host
+	 */
 	Map<CacheInstance, String> allocateJobCaches(String jobToken, Date currentTime, 
-			Map<CacheInstance, Date> cacheInstances);
+			Map<CacheInstance, Date> cacheInstances, @Nullable Map<CacheInstance, Long> cacheSizes);
 	
 	void reportJobCaches(String jobToken, Collection<CacheInstance> cacheInstances);
 	
+	/**
+	 * Get unfinished dependencies specified waiting build is waiting on
+	 * 
+	 * @return
+	 * 			ids of unfinished dependencies, or empty if the build is not waiting on 
+	 * 			any dependency
+	 */
+	Collection<Long> getRemainingDependencies(Long buildId);
+	
+	SchedulerStats getSchedulerStats();
+	
 }
@@ -0,0 +1,82 @@
+package io.onedev.server.buildspec.job;
+
+import java.io.Serializable;
+
+public class SchedulerStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int pendingChecks;
+
+	private final int runningExecutions;
+
+	private final long lastSchedulingLatency;
+
+	private final long averageSchedulingLatency;
+
+	private final long lastQueueWait;
+
+	private final long averageQueueWait;
+
+	public SchedulerStats(int pendingChecks, int runningExecutions, long lastSchedulingLatency,
+			long averageSchedulingLatency, long lastQueueWait, long averageQueueWait) {
+		this.pendingChecks = pendingChecks;
+		this.runningExecutions = runningExecutions;
+		this.lastSchedulingLatency = lastSchedulingLatency;
+		this.averageSchedulingLatency = averageSchedulingLatency;
+		this.lastQueueWait = lastQueueWait;
+		this.averageQueueWait = averageQueueWait;
+	}
+
+	/**
+	 * @return
+	 * 			number of builds waiting to be checked by the scheduler
+	 */
+	public int getPendingChecks() {
+		return pendingChecks;
+	}
+
+	/**
+	 * @return
+	 * 			number of builds being executed by job executors
+	 */
+	public int getRunningExecutions() {
+		return runningExecutions;
+	}
+
+	/**
+	 * @return
+	 * 			latency in milliseconds between a build being requested to be checked
+	 * 			(for instance when it is submitted or one of its dependencies is finished)
+	 * 			and the check actually happens, for the most recent check
+	 */
+	public long getLastSchedulingLatency() {
+		return lastSchedulingLatency;
+	}
+
+	/**
+	 * @return
+	 * 			average scheduling latency in milliseconds since server is started
+	 */
+	public long getAverageSchedulingLatency() {
+		return averageSchedulingLatency;
+	}
+
+	/**
+	 * @return
+	 * 			time in milliseconds between submission of most recently executed build
+	 * 			and the time it is handed over to job executor
+	 */
+	public long getLastQueueWait() {
+		return lastQueueWait;
+	}
+
+	/**
+	 * @return
+	 * 			average queue wait time in milliseconds since server is started
+	 */
+	public long getAverageQueueWait() {
+		return averageQueueWait;
+	}
+
+}
@@ -2,7 +2,6 @@ package io.onedev.server.buildspec.job.action;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import javax.validation.Valid;
 import javax.validation.ValidationException;
@@ -86,34 +85,27 @@ public class RunJobAction extends PostBuildAction {
 	
 	@Override
 	public void execute(Build build) {
-		new MatrixRunner<List<String>>(ParamSupply.getParamMatrix(getJobParams(), build)) {
-			
+		SubmitReason reason = new SubmitReason() {
+
+			@Override
+			public String getRefName() {
+				return build.getRefName();
+			}
+
+			@Override
+			public PullRequest getPullRequest() {
+				return build.getRequest();
+			}
+
 			@Override
-			public void run(Map<String, List<String>> paramMap) {
-				SubmitReason reason = new SubmitReason() {
-
-					@Override
-					public String getRefName() {
-						return build.getRefName();
-					}
-
-					@Override
-					public PullRequest getPullRequest() {
-						return build.getRequest();
-					}
-
-					@Override
-					public String getDescription() {
-						return "Post build action of job '" + build.getJobName() + "'";
-					}
-					
-				};
-				JobManager jobManager = OneDev.getInstance(JobManager.class);
-				jobManager.submit(build.getProject(), build.getCommitId(), getJobName(), 
-						paramMap, reason); 
+			public String getDescription() {
+				return "Post build action of job '" + build.getJobName() + "'";
 			}
 			
-		}.run();
+		};
+		JobManager jobManager = OneDev.getInstance(JobManager.class);
+		jobManager.submit(build.getProject(), build.getCommitId(), getJobName(), 
+				MatrixRunner.getCombinations(ParamSupply.getParamMatrix(getJobParams(), build)), reason); 
 	}
 
 	@Override
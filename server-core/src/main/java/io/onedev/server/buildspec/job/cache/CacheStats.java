@@ -0,0 +1,56 @@
+package io.onedev.server.buildspec.job.cache;
+
+import java.io.Serializable;
+
+public class CacheStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long hits;
+
+	private final long misses;
+
+	private final long evictions;
+
+	public CacheStats(long hits, long misses, long evictions) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+	}
+
+	/**
+	 * @return
+	 * 			number of times an existing cache is allocated to a job since server is 
+	 * 			started
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return
+	 * 			number of times a new cache has to be created for a job since server is 
+	 * 			started
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return
+	 * 			number of caches removed due to TTL or size limit since server is started
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return
+	 * 			ratio of hits to all allocations, or <tt>0</tt> if no caches are allocated 
+	 * 			yet
+	 */
+	public double getHitRatio() {
+		return hits+misses!=0? hits*1.0/(hits+misses): 0;
+	}
+
+}
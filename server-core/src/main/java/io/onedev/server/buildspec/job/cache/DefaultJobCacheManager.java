@@ -0,0 +1,221 @@
+package io.onedev.server.buildspec.job.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.Nullable;
+import javax.inject.Singleton;
+
+import com.google.common.util.concurrent.Striped;
+
+import io.onedev.k8shelper.CacheInstance;
+import io.onedev.server.buildspec.job.CacheSpec;
+import io.onedev.server.buildspec.job.JobContext;
+
+@Singleton
+public class DefaultJobCacheManager implements JobCacheManager {
+
+	private static final int LOCK_STRIPES = 64;
+
+	/*
+	 * Allocation of caches with different addresses never conflicts, so we lock by
+	 * address instead of using a global lock
+	 */
+	private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+
+	/*
+	 * Map of cache instance name to token of the job it is allocated to
+	 */
+	private final Map<String, String> allocations = new ConcurrentHashMap<>();
+
+	/*
+	 * Map of cache key to counters. Counters are maintained by key instead of by address, 
+	 * as addresses of the same key differ by project and path and are not meaningful to 
+	 * users 
+	 */
+	private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+	@Override
+	public Map<CacheInstance, String> allocate(String jobToken, JobContext jobContext, Date currentTime,
+			Map<CacheInstance, Date> cacheInstances, @Nullable Map<CacheInstance, Long> cacheSizes) {
+		Map<String, List<CacheInstance>> instancesByAddress = new HashMap<>();
+		for (CacheInstance instance: cacheInstances.keySet()) {
+			List<CacheInstance> instancesOfAddress = instancesByAddress.get(instance.getCacheKey());
+			if (instancesOfAddress == null) {
+				instancesOfAddress = new ArrayList<>();
+				instancesByAddress.put(instance.getCacheKey(), instancesOfAddress);
+			}
+			instancesOfAddress.add(instance);
+		}
+
+		// Most recently used instances first
+		Comparator<CacheInstance> comparator = new Comparator<CacheInstance>() {
+
+			@Override
+			public int compare(CacheInstance o1, CacheInstance o2) {
+				return cacheInstances.get(o2).compareTo(cacheInstances.get(o1));
+			}
+
+		};
+
+		Map<CacheInstance, String> result = new HashMap<>();
+		for (CacheSpec cacheSpec: jobContext.getCacheSpecs()) {
+			String address = cacheSpec.getAddress(jobContext.getProjectName());
+			Counters countersOfKey = getCounters(cacheSpec.getKey());
+			CacheInstance allocation = null;
+			Lock lock = locks.get(address);
+			lock.lock();
+			try {
+				List<CacheInstance> instancesOfAddress = instancesByAddress.get(address);
+				if (instancesOfAddress != null) {
+					instancesOfAddress.sort(comparator);
+					for (CacheInstance instance: instancesOfAddress) {
+						if (allocations.putIfAbsent(instance.getName(), jobToken) == null) {
+							allocation = instance;
+							break;
+						}
+					}
+				}
+				if (allocation != null) {
+					countersOfKey.hits.incrementAndGet();
+				} else {
+					allocation = new CacheInstance(UUID.randomUUID().toString(), address);
+					allocations.put(allocation.getName(), jobToken);
+					countersOfKey.misses.incrementAndGet();
+				}
+			} finally {
+				lock.unlock();
+			}
+			result.put(allocation, cacheSpec.getPath());
+		}
+
+		evict(jobToken, jobContext, currentTime, cacheInstances, cacheSizes, result);
+
+		for (CacheInstance instance: cacheInstances.keySet()) {
+			if (!allocations.containsKey(instance.getName()))
+				increaseCacheCount(jobContext, instance);
+		}
+
+		return result;
+	}
+
+	/*
+	 * Mark idle instances for deletion if they expire, or if total size of caches on
+	 * the host exceeds the limit, in which case least recently used instances are
+	 * deleted first. Marked instances are allocated to current job to prevent other
+	 * jobs from using them
+	 */
+	private void evict(String jobToken, JobContext jobContext, Date currentTime,
+			Map<CacheInstance, Date> cacheInstances, @Nullable Map<CacheInstance, Long> cacheSizes,
+			Map<CacheInstance, String> result) {
+		long ttl = jobContext.getCacheTTL() * 24L * 3600L * 1000L;
+		long sizeLimit = jobContext.getCacheSizeLimit() * 1024L * 1024L * 1024L;
+
+		long totalSize = 0;
+		if (cacheSizes != null) {
+			for (Long size: cacheSizes.values())
+				totalSize += size;
+		}
+
+		List<CacheInstance> idleInstances = new ArrayList<>();
+		for (CacheInstance instance: cacheInstances.keySet()) {
+			if (!allocations.containsKey(instance.getName()))
+				idleInstances.add(instance);
+		}
+		idleInstances.sort(new Comparator<CacheInstance>() {
+
+			@Override
+			public int compare(CacheInstance o1, CacheInstance o2) {
+				return cacheInstances.get(o1).compareTo(cacheInstances.get(o2));
+			}
+
+		});
+
+		for (CacheInstance instance: idleInstances) {
+			boolean expired = currentTime.getTime() - cacheInstances.get(instance).getTime() > ttl;
+			boolean oversized = cacheSizes != null && sizeLimit != 0 && totalSize > sizeLimit;
+			if (expired || oversized) {
+				Lock lock = locks.get(instance.getCacheKey());
+				lock.lock();
+				try {
+					if (allocations.putIfAbsent(instance.getName(), jobToken) == null) {
+						result.put(instance, null);
+						if (cacheSizes != null) {
+							Long size = cacheSizes.get(instance);
+							if (size != null)
+								totalSize -= size;
+						}
+						getCounters(CacheSpec.getKey(instance.getCacheKey())).evictions.incrementAndGet();
+					}
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	private Counters getCounters(String cacheKey) {
+		Counters countersOfKey = counters.get(cacheKey);
+		if (countersOfKey == null) {
+			countersOfKey = new Counters();
+			Counters existing = counters.putIfAbsent(cacheKey, countersOfKey);
+			if (existing != null)
+				countersOfKey = existing;
+		}
+		return countersOfKey;
+	}
+
+	private void increaseCacheCount(JobContext jobContext, CacheInstance cacheInstance) {
+		String cacheKey = cacheInstance.getCacheKey();
+		Integer cacheCount = jobContext.getCacheCounts().get(cacheKey);
+		if (cacheCount == null)
+			cacheCount = 0;
+		cacheCount++;
+		jobContext.getCacheCounts().put(cacheKey, cacheCount);
+	}
+
+	@Override
+	public void report(String jobToken, JobContext jobContext, Collection<CacheInstance> cacheInstances) {
+		for (CacheInstance instance: cacheInstances) {
+			String allocatedTo = allocations.get(instance.getName());
+			if (allocatedTo == null || allocatedTo.equals(jobToken))
+				increaseCacheCount(jobContext, instance);
+		}
+	}
+
+	@Override
+	public void release(String jobToken) {
+		allocations.values().removeIf(it->it.equals(jobToken));
+	}
+
+	@Override
+	public Map<String, CacheStats> getStats() {
+		Map<String, CacheStats> stats = new HashMap<>();
+		for (Map.Entry<String, Counters> entry: counters.entrySet()) {
+			Counters countersOfKey = entry.getValue();
+			stats.put(entry.getKey(), new CacheStats(countersOfKey.hits.get(),
+					countersOfKey.misses.get(), countersOfKey.evictions.get()));
+		}
+		return stats;
+	}
+
+	private static class Counters {
+
+		final AtomicLong hits = new AtomicLong(0);
+
+		final AtomicLong misses = new AtomicLong(0);
+
+		final AtomicLong evictions = new AtomicLong(0);
+
+	}
+
+}
@@ -0,0 +1,49 @@
+package io.onedev.server.buildspec.job.cache;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import io.onedev.k8shelper.CacheInstance;
+import io.onedev.server.buildspec.job.JobContext;
+
+/**
+ * Allocates job caches from cache instances available on job executor hosts. Cache 
+ * instances are identified by {@link io.onedev.server.buildspec.job.CacheSpec#getAddress(String) 
+ * cache address}, so that identical caches are stored once per host, and are shared 
+ * across projects if desired.
+ */
+public interface JobCacheManager {
+
+	/**
+	 * Allocate caches for specified job
+	 * 
+	 * @param cacheInstances
+	 * 			cache instances on host running the job, mapped to their last access time
+	 * @param cacheSizes
+	 * 			cache instances on host running the job, mapped to their size in bytes, or 
+	 * 			<tt>null</tt> if job executor can not measure cache sizes, in which case 
+	 * 			cache size limit is not enforced
+	 * @return
+	 * 			allocated cache instances mapped to path of the cache. Instances mapped to 
+	 * 			<tt>null</tt> should be deleted from the host 
+	 */
+	Map<CacheInstance, String> allocate(String jobToken, JobContext jobContext, Date currentTime, 
+			Map<CacheInstance, Date> cacheInstances, @Nullable Map<CacheInstance, Long> cacheSizes);
+	
+	void report(String jobToken, JobContext jobContext, Collection<CacheInstance> cacheInstances);
+	
+	/**
+	 * Release caches allocated to specified job so that they can be allocated to other jobs
+	 */
+	void release(String jobToken);
+	
+	/**
+	 * @return
+	 * 			cache stats keyed by {@link io.onedev.server.buildspec.job.CacheSpec#getKey() cache key}
+	 */
+	Map<String, CacheStats> getStats();
+	
+}
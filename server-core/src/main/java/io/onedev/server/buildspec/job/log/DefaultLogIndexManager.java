@@ -0,0 +1,360 @@
+package io.onedev.server.buildspec.job.log;
+
+import static io.onedev.server.search.code.IndexConstants.NGRAM_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.server.event.build.BuildSubmitted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.Build;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.search.code.NGramAnalyzer;
+import io.onedev.server.search.code.query.TooGeneralQueryException;
+import io.onedev.server.search.code.query.regex.RegexLiterals;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.ServerConfig;
+
+@Singleton
+public class DefaultLogIndexManager implements LogIndexManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultLogIndexManager.class);
+
+	private static final String INDEX_DIR = "log-index";
+
+	private static final String FIELD_BUILD = "build";
+
+	private static final String FIELD_BLOCK = "block";
+
+	private static final String FIELD_TEXT = "text";
+
+	private final StorageManager storageManager;
+
+	private final ServerConfig serverConfig;
+
+	private final TransactionManager transactionManager;
+
+	private final Map<Long, ProjectLogIndex> indexes = new ConcurrentHashMap<>();
+
+	@Inject
+	public DefaultLogIndexManager(StorageManager storageManager, ServerConfig serverConfig,
+			TransactionManager transactionManager) {
+		this.storageManager = storageManager;
+		this.serverConfig = serverConfig;
+		this.transactionManager = transactionManager;
+	}
+
+	private Directory openDirectory(Long projectId) throws IOException {
+		File indexDir = new File(storageManager.getProjectInfoDir(projectId), INDEX_DIR);
+		if (serverConfig.isIndexMMap())
+			return new MMapDirectory(indexDir.toPath());
+		else
+			return FSDirectory.open(indexDir.toPath());
+	}
+
+	@Nullable
+	private ProjectLogIndex getIndex(Long projectId, boolean createIfNotExist) throws IOException {
+		ProjectLogIndex index = indexes.get(projectId);
+		if (index == null) synchronized (indexes) {
+			index = indexes.get(projectId);
+			if (index == null) {
+				Directory directory = openDirectory(projectId);
+				if (createIfNotExist || DirectoryReader.indexExists(directory)) {
+					try {
+						index = new ProjectLogIndex(directory);
+					} catch (Exception e) {
+						directory.close();
+						throw e;
+					}
+					indexes.put(projectId, index);
+				} else {
+					directory.close();
+				}
+			}
+		}
+		return index;
+	}
+
+	private void closeIndex(Long projectId) {
+		synchronized (indexes) {
+			ProjectLogIndex index = indexes.remove(projectId);
+			if (index != null)
+				index.close();
+		}
+	}
+
+	@Nullable
+	private Query getTextQuery(Pattern pattern) {
+		// pattern string is not a regular expression in literal mode, and may contain
+		// white spaces and comments not to be matched in comments mode
+		if ((pattern.flags() & (Pattern.LITERAL | Pattern.COMMENTS)) != 0)
+			return null;
+		try {
+			return new RegexLiterals(pattern.pattern()).asNGramQuery(FIELD_TEXT, NGRAM_SIZE);
+		} catch (TooGeneralQueryException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void index(Long projectId, Long buildId, LogFile logFile) {
+		if (serverConfig.isLogIndexEnabled()) {
+			try {
+				long time = System.currentTimeMillis();
+				getIndex(projectId, true).index(buildId, logFile);
+				logger.debug("Indexed log of build (id: {}, time: {} ms)",
+						buildId, System.currentTimeMillis()-time);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	@Override
+	public Collection<Integer> getCandidateBlocks(Long projectId, Long buildId, Pattern pattern) {
+		if (!serverConfig.isLogIndexEnabled())
+			return null;
+		Query textQuery = getTextQuery(pattern);
+		if (textQuery == null)
+			return null;
+
+		try {
+			ProjectLogIndex index = getIndex(projectId, false);
+			if (index == null)
+				return null;
+
+			IndexSearcher searcher = index.searcherManager.acquire();
+			try {
+				Query buildQuery = new TermQuery(new Term(FIELD_BUILD, String.valueOf(buildId)));
+				if (searcher.count(buildQuery) == 0)
+					return null;
+
+				BooleanQuery.Builder builder = new BooleanQuery.Builder();
+				builder.add(buildQuery, Occur.FILTER);
+				builder.add(textQuery, Occur.MUST);
+
+				Set<Integer> blocks = new TreeSet<>();
+				searcher.search(builder.build(), new SimpleCollector() {
+
+					private int docBase;
+
+					@Override
+					public void collect(int doc) throws IOException {
+						blocks.add(searcher.doc(docBase+doc).getField(FIELD_BLOCK).numericValue().intValue());
+					}
+
+					@Override
+					protected void doSetNextReader(LeafReaderContext context) throws IOException {
+						docBase = context.docBase;
+					}
+
+					@Override
+					public boolean needsScores() {
+						return false;
+					}
+
+				});
+				return blocks;
+			} finally {
+				index.searcherManager.release(searcher);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void delete(Long projectId, Collection<Long> buildIds) {
+		try {
+			ProjectLogIndex index = getIndex(projectId, false);
+			if (index != null)
+				index.delete(buildIds);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void deleteAfterCommit(Long projectId, Long buildId) {
+		transactionManager.runAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					delete(projectId, Collections.singleton(buildId));
+				} catch (Exception e) {
+					logger.error("Error deleting log index of build (id: " + buildId + ")", e);
+				}
+			}
+
+		});
+	}
+
+	/*
+	 * Log of a resubmitted build is recreated, and will be indexed again when finished
+	 */
+	@Transactional
+	@Listen
+	public void on(BuildSubmitted event) {
+		Build build = event.getBuild();
+		deleteAfterCommit(build.getProject().getId(), build.getId());
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			closeIndex(event.getEntity().getId());
+		} else if (event.getEntity() instanceof Build) {
+			Build build = (Build) event.getEntity();
+			deleteAfterCommit(build.getProject().getId(), build.getId());
+		}
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		synchronized (indexes) {
+			for (ProjectLogIndex index: indexes.values())
+				index.close();
+			indexes.clear();
+		}
+	}
+
+	private static class ProjectLogIndex {
+
+		private final Directory directory;
+
+		private final IndexWriter writer;
+
+		private final SearcherManager searcherManager;
+
+		public ProjectLogIndex(Directory directory) throws IOException {
+			this.directory = directory;
+
+			IndexWriterConfig writerConfig = new IndexWriterConfig(new NGramAnalyzer(NGRAM_SIZE, NGRAM_SIZE));
+			writerConfig.setOpenMode(OpenMode.CREATE_OR_APPEND);
+			writer = new IndexWriter(directory, writerConfig);
+			try {
+				searcherManager = new SearcherManager(writer, null);
+			} catch (Exception e) {
+				writer.close();
+				throw e;
+			}
+		}
+
+		/*
+		 * Build is indexed under the lock, so that documents of the build are committed
+		 * and made visible to searchers all at once
+		 */
+		public synchronized void index(Long buildId, LogFile logFile) throws IOException {
+			Term buildTerm = new Term(FIELD_BUILD, String.valueOf(buildId));
+			try {
+				writer.deleteDocuments(buildTerm);
+				if (logFile.exists()) {
+					try (LogFile.Reader reader = logFile.openReader(0)) {
+						StringBuilder text = new StringBuilder();
+						int block = 0;
+						int blockEntries = 0;
+						while (reader.next()) {
+							text.append(reader.getMessage()).append("\n");
+							if (++blockEntries == LogFile.INDEX_INTERVAL) {
+								writer.addDocument(newDocument(buildTerm, block++, text.toString()));
+								text.setLength(0);
+								blockEntries = 0;
+							}
+						}
+						if (blockEntries != 0)
+							writer.addDocument(newDocument(buildTerm, block, text.toString()));
+					}
+				}
+				writer.commit();
+			} catch (Exception e) {
+				// leave the build unindexed so that its log is scanned instead
+				writer.deleteDocuments(buildTerm);
+				writer.commit();
+				throw ExceptionUtils.unchecked(e);
+			}
+			searcherManager.maybeRefreshBlocking();
+		}
+
+		private Document newDocument(Term buildTerm, int block, String text) {
+			Document document = new Document();
+			document.add(new StringField(FIELD_BUILD, buildTerm.text(), Field.Store.YES));
+			document.add(new StoredField(FIELD_BLOCK, block));
+			document.add(new TextField(FIELD_TEXT, text, Field.Store.NO));
+			return document;
+		}
+
+		public synchronized void delete(Collection<Long> buildIds) throws IOException {
+			Term[] terms = new Term[buildIds.size()];
+			int index = 0;
+			for (Long buildId: buildIds)
+				terms[index++] = new Term(FIELD_BUILD, String.valueOf(buildId));
+			writer.deleteDocuments(terms);
+			writer.commit();
+			searcherManager.maybeRefreshBlocking();
+		}
+
+		public void close() {
+			try {
+				searcherManager.close();
+			} catch (Exception e) {
+				logger.error("Error closing searcher manager", e);
+			}
+			try {
+				writer.close();
+			} catch (AlreadyClosedException e) {
+				// writer already rolled back
+			} catch (Exception e) {
+				logger.error("Error closing index writer", e);
+			}
+			try {
+				directory.close();
+			} catch (Exception e) {
+				logger.error("Error closing index directory", e);
+			}
+		}
+
+	}
+
+}
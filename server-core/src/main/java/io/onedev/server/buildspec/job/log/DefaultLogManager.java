@@ -1,23 +1,23 @@
 package io.onedev.server.buildspec.job.log;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.regex.Pattern;
 
@@ -25,11 +25,11 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.antlr.v4.runtime.tree.TerminalNode;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,15 +44,20 @@ import io.onedev.server.buildspec.job.log.instruction.LogInstructionParser.Instr
 import io.onedev.server.buildspec.job.log.instruction.LogInstructionParser.ParamContext;
 import io.onedev.server.entitymanager.BuildManager;
 import io.onedev.server.event.build.BuildFinished;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.model.Build;
-import io.onedev.server.model.support.inputspec.SecretInput;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.SimpleLogger;
+import io.onedev.server.util.concurrent.PrioritizedCallable;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
+import io.onedev.server.util.work.WorkExecutor;
 import io.onedev.server.web.websocket.WebSocketManager;
 
 @Singleton
-public class DefaultLogManager implements LogManager {
+public class DefaultLogManager implements LogManager, SchedulableTask {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultLogManager.class);
 	
@@ -60,11 +65,13 @@ public class DefaultLogManager implements LogManager {
 
 	private static final int MAX_CACHE_ENTRIES = 10000;
 	
-	private static final String LOG_FILE = "build.log";
-	
 	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormat.forPattern("HH:mm:ss");	
 	
 	private static final Pattern EOL_PATTERN = Pattern.compile("\r?\n");
+	
+	private static final int NOTIFY_INTERVAL = 250; // notify interval of log change in milli-seconds
+	
+	private static final int VERIFY_PRIORITY = 5;
 
 	private final StorageManager storageManager;
 	
@@ -72,19 +79,67 @@ public class DefaultLogManager implements LogManager {
 	
 	private final BuildManager buildManager;
 	
-	private final Map<Long, LogSnippet> recentSnippets = new ConcurrentHashMap<>();
+	private final TaskScheduler taskScheduler;
+	
+	private final ExecutorService executorService;
+	
+	private final WorkExecutor workExecutor;
+	
+	private final LogIndexManager logIndexManager;
+	
+	private final Map<Long, LogBuffer> recentEntries = new ConcurrentHashMap<>();
+	
+	private final Set<Long> changedBuildIds = ConcurrentHashMap.newKeySet();
+	
+	private final AtomicLong compressedLogs = new AtomicLong(0);
+	
+	private final AtomicLong uncompressedBytes = new AtomicLong(0);
+	
+	private final AtomicLong compressedBytes = new AtomicLong(0);
+	
+	private final AtomicLong lastReadLatency = new AtomicLong(0);
+	
+	private final AtomicLong totalReadLatency = new AtomicLong(0);
+	
+	private final AtomicLong readCount = new AtomicLong(0);
+	
+	private String taskId;
 	
 	@Inject
 	public DefaultLogManager(StorageManager storageManager, WebSocketManager webSocketManager, 
-			BuildManager buildManager) {
+			BuildManager buildManager, TaskScheduler taskScheduler, ExecutorService executorService, 
+			WorkExecutor workExecutor, LogIndexManager logIndexManager) {
 		this.storageManager = storageManager;
 		this.webSocketManager = webSocketManager;
 		this.buildManager = buildManager;
+		this.taskScheduler = taskScheduler;
+		this.executorService = executorService;
+		this.workExecutor = workExecutor;
+		this.logIndexManager = logIndexManager;
 	}
 	
-	private File getLogFile(Long projectId, Long buildNumber) {
+	private LogFile getLogFile(Long projectId, Long buildId, Long buildNumber) {
 		File buildDir = storageManager.getBuildDir(projectId, buildNumber);
-		return new File(buildDir, LOG_FILE);
+		File legacyFile = LogFile.getLegacyFile(buildDir);
+		if (legacyFile != null) {
+			Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).writeLock();
+			lock.lock();
+			try {
+				if (legacyFile.exists()) {
+					long time = System.currentTimeMillis();
+					new LogFile(buildDir).migrate(legacyFile);
+					logger.debug("Migrated log of build (id: {}, time: {} ms)", 
+							buildId, System.currentTimeMillis()-time);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return new LogFile(buildDir);
+	}
+	
+	private LogFile getLogFile(Build build) {
+		return getLogFile(build.getProject().getId(), build.getId(), build.getNumber());
 	}
 	
 	@Override
@@ -94,39 +149,30 @@ public class DefaultLogManager implements LogManager {
 		Long buildNumber = build.getNumber();
 		Collection<String> secretValuesToMask = build.getSecretValuesToMask();
 		secretValuesToMask.addAll(jobSecretsToMask);
+		SecretMasker secretMasker = new SecretMasker(secretValuesToMask);
+		Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).writeLock();
 		return new SimpleLogger() {
 			
 			private void doLog(String message) {
-				for (String maskSecret: secretValuesToMask)
-					message = StringUtils.replace(message, maskSecret, SecretInput.MASK);
+				JobLogEntry entry = new JobLogEntry(new Date(), secretMasker.mask(message));
 				
-				Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).writeLock();
 				lock.lock();
 				try {
-					LogSnippet snippet = recentSnippets.get(buildId);
-					if (snippet == null) {
-						File logFile = getLogFile(projectId, buildNumber);
+					LogBuffer buffer = recentEntries.get(buildId);
+					if (buffer == null) {
+						LogFile logFile = getLogFile(projectId, buildId, buildNumber);
 						if (!logFile.exists())	{
-							snippet = new LogSnippet();
-							recentSnippets.put(buildId, snippet);
+							buffer = new LogBuffer(MAX_CACHE_ENTRIES);
+							recentEntries.put(buildId, buffer);
 						}
 					}
-					if (snippet != null) {
-						snippet.entries.add(new JobLogEntry(new Date(), message));
-						if (snippet.entries.size() > MAX_CACHE_ENTRIES) {
-							File logFile = getLogFile(projectId, buildNumber);
-							try (ObjectOutputStream oos = newOutputStream(logFile)) {
-								while (snippet.entries.size() > MIN_CACHE_ENTRIES) {
-									JobLogEntry entry = snippet.entries.remove(0);
-									oos.writeObject(entry);
-									snippet.offset++;
-								}
-							} catch (IOException e) {
-								throw new RuntimeException(e);
-							}
+					if (buffer != null) {
+						if (buffer.isFull()) {
+							getLogFile(projectId, buildId, buildNumber).append(
+									buffer.removeFirst(MAX_CACHE_ENTRIES - MIN_CACHE_ENTRIES));
 						}
-						
-						webSocketManager.notifyObservableChange(Build.getLogWebSocketObservable(buildId));
+						buffer.add(entry);
+						changedBuildIds.add(buildId);
 					}
 				} finally {
 					lock.unlock();
@@ -190,196 +236,272 @@ public class DefaultLogManager implements LogManager {
 
 	@Override
 	public boolean matches(Build build, Pattern pattern) {
+		LogFile logFile = getLogFile(build);
+		long fromTime = build.getRetryDate()!=null? build.getRetryDate().getTime(): 0;
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 		lock.lock();
 		try {
-			LogSnippet snippet = recentSnippets.get(build.getId());
-			if (snippet != null) {
-				for (JobLogEntry entry: snippet.entries) {
-					if ((build.getRetryDate() == null || !entry.getDate().before(build.getRetryDate())) 
-							&& pattern.matcher(entry.getMessage()).find()) {
+			LogBuffer buffer = recentEntries.get(build.getId());
+			if (buffer != null) {
+				for (JobLogEntry entry: buffer.get(0, 0)) {
+					if (entry.getDate().getTime() >= fromTime && pattern.matcher(entry.getMessage()).find()) 
 						return true;
-					}
 				}
 			}
 			
-			File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-			
 			if (logFile.exists()) {
-				try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
-					while (true) {
-						JobLogEntry entry  = (JobLogEntry) ois.readObject();
-						if ((build.getRetryDate() == null || !entry.getDate().before(build.getRetryDate())) 
-								&& pattern.matcher(entry.getMessage()).find()) {
-							return true;
-						}
-					}
-				} catch (EOFException e) {
-				} catch (IOException|ClassNotFoundException e) {
-					throw new RuntimeException(e);
+				Collection<Integer> blocks = logIndexManager.getCandidateBlocks(
+						build.getProject().getId(), build.getId(), pattern);
+				if (blocks == null) {
+					blocks = new ArrayList<>();
+					int count = logFile.count();
+					for (int i=0; i*LogFile.INDEX_INTERVAL<count; i++)
+						blocks.add(i);
 				}
+				return matches(logFile, blocks, fromTime, pattern);
+			} else {
+				return false;
 			}
-			return false;
 		} finally {
 			lock.unlock();
 		}
 	}
 	
-	private List<JobLogEntry> readLogEntries(File logFile, int from, int count) {
-		List<JobLogEntry> entries = new ArrayList<>();
-		if (logFile.exists()) {
-			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
-				int numOfReadEntries = 0;
-				while (numOfReadEntries < from) {
-					ois.readObject();
-					numOfReadEntries++;
-				}
-				while (count == 0 || numOfReadEntries - from < count) {
-					entries.add((JobLogEntry) ois.readObject());
-					numOfReadEntries++;
-				}
-			} catch (EOFException e) {
-			} catch (IOException | ClassNotFoundException e) {
-				throw new RuntimeException(e);
+	/*
+	 * Verify blocks of the log in parallel. Caller holds read lock of the log, so that 
+	 * the log is not modified while being read by verifiers
+	 */
+	private boolean matches(LogFile logFile, Collection<Integer> blocks, long fromTime, Pattern pattern) {
+		if (blocks.size() <= 1) {
+			for (int block: blocks) {
+				if (matches(logFile, block, fromTime, pattern, new AtomicBoolean(false)))
+					return true;
 			}
+			return false;
 		}
-		return entries;
-	}
-	
-	private LogSnippet readLogSnippetReversely(File logFile, int count) {
-		LogSnippet snippet = new LogSnippet();
-		if (logFile.exists()) {
-			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
-				while (true) {
-					snippet.entries.add((JobLogEntry) ois.readObject());
-					if (snippet.entries.size() > count) {
-						snippet.entries.remove(0);
-						snippet.offset ++;
-					}
+		
+		AtomicBoolean matched = new AtomicBoolean(false);
+		List<PrioritizedCallable<Boolean>> verifiers = new ArrayList<>();
+		for (int block: blocks) {
+			verifiers.add(new PrioritizedCallable<Boolean>(VERIFY_PRIORITY) {
+
+				@Override
+				public Boolean call() throws Exception {
+					return matches(logFile, block, fromTime, pattern, matched);
 				}
-			} catch (EOFException e) {
-			} catch (IOException | ClassNotFoundException e) {
-				throw new RuntimeException(e);
+				
+			});
+		}
+		
+		try {
+			for (Future<Boolean> future: workExecutor.invokeAll(verifiers)) {
+				if (future.get())
+					return true;
 			}
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else
+				throw new RuntimeException(e.getCause());
 		}
-		return snippet;
 	}
 	
-	private List<JobLogEntry> readLogEntries(List<JobLogEntry> cachedEntries, int from, int count) {
-		if (from < cachedEntries.size()) {
-			int to = from + count;
-			if (to == from || to > cachedEntries.size())
-				to = cachedEntries.size();
-			return new ArrayList<>(cachedEntries.subList(from, to));
-		} else {
-			return new ArrayList<>();
+	private boolean matches(LogFile logFile, int block, long fromTime, Pattern pattern, AtomicBoolean matched) {
+		try (LogFile.Reader reader = logFile.openReader(block*LogFile.INDEX_INTERVAL)) {
+			for (int i=0; i<LogFile.INDEX_INTERVAL && !matched.get() && reader.next(); i++) {
+				if (reader.getTime() >= fromTime && pattern.matcher(reader.getMessage()).find()) {
+					matched.set(true);
+					return true;
+				}
+			}
 		}
+		return false;
 	}
 	
 	@Sessional
 	@Override
 	public List<JobLogEntry> readLogEntries(Build build, int from, int count) {
+		long time = System.currentTimeMillis();
+		LogFile logFile = getLogFile(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 		lock.lock();
 		try {
-			File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-			LogSnippet snippet = recentSnippets.get(build.getId());
-			if (snippet != null) {
-				if (from >= snippet.offset) {
-					return readLogEntries(snippet.entries, from - snippet.offset, count);
+			LogBuffer buffer = recentEntries.get(build.getId());
+			if (buffer != null) {
+				if (from >= buffer.getOffset()) {
+					return buffer.get(from - buffer.getOffset(), count);
 				} else {
 					List<JobLogEntry> entries = new ArrayList<>();
-					entries.addAll(readLogEntries(logFile, from, count));
+					entries.addAll(logFile.read(from, count));
 					if (count == 0)
-						entries.addAll(snippet.entries);
+						entries.addAll(buffer.get(0, 0));
 					else if (entries.size() < count) 
-						entries.addAll(readLogEntries(snippet.entries, 0, count - entries.size()));
+						entries.addAll(buffer.get(0, count - entries.size()));
 					return entries;
 				}
 			} else {
-				return readLogEntries(logFile, from, count);
+				return logFile.read(from, count);
 			}
 		} finally {
 			lock.unlock();
+			recordReadLatency(System.currentTimeMillis() - time);
 		}
 	}
 
 	@Sessional
 	@Override
 	public LogSnippet readLogSnippetReversely(Build build, int count) {
+		long time = System.currentTimeMillis();
+		LogFile logFile = getLogFile(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 		lock.lock();
 		try {
-			File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-			LogSnippet recentSnippet = recentSnippets.get(build.getId());
-			if (recentSnippet != null) {
+			LogBuffer buffer = recentEntries.get(build.getId());
+			if (buffer != null) {
 				LogSnippet snippet = new LogSnippet();
-				if (count <= recentSnippet.entries.size()) {
-					snippet.entries.addAll(recentSnippet.entries.subList(
-							recentSnippet.entries.size()-count, recentSnippet.entries.size()));
+				if (count <= buffer.size()) {
+					snippet.entries.addAll(buffer.get(buffer.size()-count, count));
 				} else {
-					snippet.entries.addAll(readLogSnippetReversely(logFile, count - recentSnippet.entries.size()).entries);
-					snippet.entries.addAll(recentSnippet.entries);
+					snippet.entries.addAll(logFile.readTail(count - buffer.size()).entries);
+					snippet.entries.addAll(buffer.get(0, 0));
 				}
-				snippet.offset = recentSnippet.entries.size() + recentSnippet.offset - snippet.entries.size();
+				snippet.offset = buffer.size() + buffer.getOffset() - snippet.entries.size();
 				return snippet;
 			} else {
-				return readLogSnippetReversely(logFile, count);
+				return logFile.readTail(count);
 			}
 		} finally {
 			lock.unlock();
+			recordReadLatency(System.currentTimeMillis() - time);
 		}
 	}
 	
-	private ObjectOutputStream newOutputStream(File logFile) {
-		try {
-			if (logFile.exists()) {
-				return new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true))) {
-
-					@Override
-					protected void writeStreamHeader() throws IOException {
-						reset();
-					}
-					
-				};
-			} else {
-				return new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(logFile)));
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+	private void recordReadLatency(long latency) {
+		lastReadLatency.set(latency);
+		totalReadLatency.addAndGet(latency);
+		readCount.incrementAndGet();
 	}
 	
 	@Sessional
 	@Listen
 	public void on(BuildFinished event) {
 		Build build = event.getBuild();
+		LogFile logFile = getLogFile(build);
 		Lock lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).writeLock();
 		lock.lock();
 		try {
-			LogSnippet snippet = recentSnippets.remove(build.getId());
-			if (snippet != null) {
-				File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-				try (ObjectOutputStream oos = newOutputStream(logFile)) {
-					for (JobLogEntry entry: snippet.entries)
-						oos.writeObject(entry);
-				} catch (IOException e) {
-					throw new RuntimeException(e);
-				} 
+			LogBuffer buffer = recentEntries.remove(build.getId());
+			if (buffer != null) 
+				logFile.append(buffer.get(0, 0));
+		} finally {
+			lock.unlock();
+		}
+		
+		Long projectId = build.getProject().getId();
+		Long buildId = build.getId();
+		executorService.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					compress(logFile, buildId);
+				} catch (Exception e) {
+					logger.error("Error compressing log of build (id: " + buildId + ")", e);
+				}
+				try {
+					index(logFile, projectId, buildId);
+				} catch (Exception e) {
+					logger.error("Error indexing log of build (id: " + buildId + ")", e);
+				}
+			}
+			
+		});
+	}
+	
+	private void compress(LogFile logFile, Long buildId) {
+		Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).writeLock();
+		lock.lock();
+		try {
+			if (logFile.exists() && !logFile.isCompressed() && !recentEntries.containsKey(buildId)) {
+				long time = System.currentTimeMillis();
+				long uncompressedSize = logFile.size();
+				logFile.compress();
+				long compressedSize = logFile.size();
+				compressedLogs.incrementAndGet();
+				uncompressedBytes.addAndGet(uncompressedSize);
+				compressedBytes.addAndGet(compressedSize);
+				logger.debug("Compressed log of build (id: {}, ratio: {}, time: {} ms)", buildId, 
+						compressedSize!=0? String.format("%.2f", uncompressedSize*1.0/compressedSize): "n/a", 
+						System.currentTimeMillis()-time);
 			}
 		} finally {
 			lock.unlock();
 		}
 	}
+	
+	private void index(LogFile logFile, Long projectId, Long buildId) {
+		Lock lock = LockUtils.getReadWriteLock(getLockKey(buildId)).readLock();
+		lock.lock();
+		try {
+			if (!recentEntries.containsKey(buildId))
+				logIndexManager.index(projectId, buildId, logFile);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public LogStats getLogStats() {
+		long readCount = this.readCount.get();
+		return new LogStats(compressedLogs.get(), uncompressedBytes.get(), compressedBytes.get(), 
+				lastReadLatency.get(), readCount!=0? totalReadLatency.get()/readCount: 0);
+	}
+	
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+	
+	@Listen
+	public void on(SystemStopping event) {
+		if (taskId != null)
+			taskScheduler.unschedule(taskId);
+	}
+	
+	/*
+	 * Log changes are notified periodically instead of for every log entry to avoid 
+	 * flooding web socket connections when builds are chatty
+	 */
+	@Override
+	public void execute() {
+		for (Iterator<Long> it = changedBuildIds.iterator(); it.hasNext();) {
+			Long buildId = it.next();
+			it.remove();
+			webSocketManager.notifyObservableChange(Build.getLogWebSocketObservable(buildId));
+		}
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return SimpleScheduleBuilder.simpleSchedule()
+				.withIntervalInMilliseconds(NOTIFY_INTERVAL).repeatForever();
+	}
 
 	@Override
 	public InputStream openLogStream(Build build) {
 		return new LogStream(build);
 	}
 
+	/*
+	 * Stream log as text by rendering records of log file one by one
+	 */
 	class LogStream extends InputStream {
 
-		private ObjectInputStream ois;
+		private LogFile.Reader reader;
 		
 		private final Lock lock;
 
@@ -390,19 +512,18 @@ public class DefaultLogManager implements LogManager {
 		private int pos = 0;
 		
 		public LogStream(Build build) {
+			LogFile logFile = getLogFile(build);
 			lock = LockUtils.getReadWriteLock(getLockKey(build.getId())).readLock();
 			lock.lock();
 			try {
-				File logFile = getLogFile(build.getProject().getId(), build.getNumber());
-				
 				if (logFile.exists())
-					ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+					reader = logFile.openReader(0);
 				
-				LogSnippet snippet = recentSnippets.get(build.getId());
-				if (snippet != null) {
+				LogBuffer buffer = recentEntries.get(build.getId());
+				if (buffer != null) {
 					StringBuilder builder = new StringBuilder();
-					for (JobLogEntry entry: snippet.entries)
-						builder.append(renderAsText(entry) + "\n");
+					for (JobLogEntry entry: buffer.get(0, 0))
+						builder.append(renderAsText(entry.getDate().getTime(), entry.getMessage()) + "\n");
 					recentBuffer = builder.toString().getBytes(StandardCharsets.UTF_8);
 				}
 			} catch (Exception e) {
@@ -411,10 +532,10 @@ public class DefaultLogManager implements LogManager {
 			}
 		}
 		
-		private String renderAsText(JobLogEntry entry) {
-			String prefix = DATE_FORMATTER.print(new DateTime(entry.getDate())) + " ";
+		private String renderAsText(long time, String message) {
+			String prefix = DATE_FORMATTER.print(new DateTime(time)) + " ";
 			StringBuilder builder = new StringBuilder();
-			for (String line: Splitter.on(EOL_PATTERN).split(entry.getMessage())) {
+			for (String line: Splitter.on(EOL_PATTERN).split(message)) {
 				if (builder.length() == 0) {
 					builder.append(prefix).append(line);
 				} else {
@@ -430,20 +551,18 @@ public class DefaultLogManager implements LogManager {
 		@Override
 		public int read() throws IOException {
 			if (pos == buffer.length) {
-				if (ois != null) {
-					try {
-						buffer = (renderAsText((JobLogEntry) ois.readObject()) + "\n").getBytes(StandardCharsets.UTF_8);
-					} catch (EOFException e) {
-						IOUtils.closeQuietly(ois);
-						ois = null;
+				if (reader != null) {
+					if (reader.next()) {
+						buffer = (renderAsText(reader.getTime(), reader.getMessage()) + "\n").getBytes(StandardCharsets.UTF_8);
+					} else {
+						reader.close();
+						reader = null;
 						if (recentBuffer != null) {
 							buffer = recentBuffer;
 							recentBuffer = null;
 						} else {
 							return -1;
 						}
-					} catch (ClassNotFoundException e) {
-						throw new RuntimeException(e);
 					}
 				} else if (recentBuffer != null) {
 					buffer = recentBuffer;
@@ -460,7 +579,8 @@ public class DefaultLogManager implements LogManager {
 		
 		@Override
 		public void close() throws IOException {
-			IOUtils.closeQuietly(ois);
+			if (reader != null)
+				reader.close();
 			lock.unlock();
 		}
 				
@@ -0,0 +1,81 @@
+package io.onedev.server.buildspec.job.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring buffer holding most recent log entries of a running build. Access should be
+ * synchronized by caller.
+ */
+class LogBuffer {
+
+	private final JobLogEntry[] entries;
+
+	private int head;
+
+	private int size;
+
+	private int offset;
+
+	public LogBuffer(int capacity) {
+		entries = new JobLogEntry[capacity];
+	}
+
+	/**
+	 * @return
+	 * 			index of first buffered entry in the whole log
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size == entries.length;
+	}
+
+	public void add(JobLogEntry entry) {
+		if (isFull())
+			throw new IllegalStateException("Log buffer is full");
+		entries[(head + size) % entries.length] = entry;
+		size++;
+	}
+
+	/**
+	 * Get buffered entries
+	 *
+	 * @param from
+	 * 			index of first entry to get relative to the buffer
+	 * @param count
+	 * 			number of entries to get, <tt>0</tt> to get all entries since <tt>from</tt>
+	 */
+	public List<JobLogEntry> get(int from, int count) {
+		int to = count!=0? Math.min(from + count, size): size;
+		List<JobLogEntry> result = new ArrayList<>(Math.max(0, to-from));
+		for (int i=from; i<to; i++)
+			result.add(entries[(head + i) % entries.length]);
+		return result;
+	}
+
+	/**
+	 * Remove specified number of oldest entries from the buffer
+	 *
+	 * @return
+	 * 			removed entries
+	 */
+	public List<JobLogEntry> removeFirst(int count) {
+		List<JobLogEntry> removed = new ArrayList<>();
+		while (removed.size() < count && size > removed.size()) {
+			removed.add(entries[head]);
+			entries[head] = null;
+			head = (head + 1) % entries.length;
+		}
+		size -= removed.size();
+		offset += removed.size();
+		return removed;
+	}
+
+}
@@ -0,0 +1,694 @@
+package io.onedev.server.buildspec.job.log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import io.onedev.commons.utils.FileUtils;
+
+/**
+ * Append-only log file of a build. Each log entry is stored as a length-prefixed record
+ * containing entry time and UTF-8 encoded message. Byte offset of every
+ * {@link #INDEX_INTERVAL}th entry is stored in a sidecar index file, so that entries
+ * at arbitrary position (including the tail) can be read without scanning the whole
+ * log.
+ * <p>
+ * Once the build is finished, the log can be compressed with {@link #compress()}. Records
+ * of each index interval are then deflated into a separate block, and a block index
+ * records offset and entry count of each block, so that reading a range of entries only
+ * needs to inflate blocks containing them.
+ * <p>
+ * Callers are responsible for synchronizing access of the same log file.
+ */
+public class LogFile {
+
+	static final int INDEX_INTERVAL = 1000;
+
+	private static final String DATA_FILE = "log.dat";
+
+	private static final String INDEX_FILE = "log.idx";
+
+	private static final String COMPRESSED_DATA_FILE = "log.zdat";
+
+	private static final String COMPRESSED_INDEX_FILE = "log.zidx";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	// length of an entry in block index: block offset and entry count
+	private static final int BLOCK_INDEX_ENTRY_LENGTH = 12;
+
+	private static final String LEGACY_FILE = "build.log";
+
+	// length of time field in a record
+	private static final int TIME_LENGTH = 8;
+
+	private final File dataFile;
+
+	private final File indexFile;
+
+	private final File compressedDataFile;
+
+	private final File compressedIndexFile;
+
+	public LogFile(File dir) {
+		dataFile = new File(dir, DATA_FILE);
+		indexFile = new File(dir, INDEX_FILE);
+		compressedDataFile = new File(dir, COMPRESSED_DATA_FILE);
+		compressedIndexFile = new File(dir, COMPRESSED_INDEX_FILE);
+	}
+
+	public boolean exists() {
+		return dataFile.exists() || isCompressed();
+	}
+
+	/**
+	 * @return
+	 * 			whether or not the log is compressed. Presence of block index marks
+	 * 			completion of compression
+	 */
+	public boolean isCompressed() {
+		return compressedIndexFile.exists();
+	}
+
+	public File getDataFile() {
+		return dataFile;
+	}
+
+	public File getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * @return
+	 * 			number of entries in the log
+	 */
+	public int count() {
+		if (isCompressed()) {
+			int count = 0;
+			for (Block block: readBlocks())
+				count += block.entries;
+			return count;
+		} else {
+			return getState().count;
+		}
+	}
+
+	/**
+	 * @return
+	 * 			size of log on disk in bytes
+	 */
+	public long size() {
+		if (isCompressed())
+			return compressedDataFile.length() + compressedIndexFile.length();
+		else
+			return dataFile.length() + indexFile.length();
+	}
+
+	public void append(Collection<JobLogEntry> entries) {
+		if (isCompressed())
+			decompress();
+
+		State state = getState();
+		try {
+			if (dataFile.exists() && dataFile.length() > state.length) {
+				// partial record left by previous crash
+				try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+					raf.setLength(state.length);
+				}
+			}
+			if (!state.indexValid)
+				writeIndex();
+
+			List<Long> indexedOffsets = new ArrayList<>();
+			try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(dataFile, true)))) {
+				int count = state.count;
+				long offset = state.length;
+				for (JobLogEntry entry: entries) {
+					if (count % INDEX_INTERVAL == 0)
+						indexedOffsets.add(offset);
+					byte[] messageBytes = entry.getMessage().getBytes(StandardCharsets.UTF_8);
+					os.writeInt(TIME_LENGTH + messageBytes.length);
+					os.writeLong(entry.getDate().getTime());
+					os.write(messageBytes);
+					offset += 4 + TIME_LENGTH + messageBytes.length;
+					count++;
+				}
+			}
+			if (!indexedOffsets.isEmpty()) {
+				try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(indexFile, true)))) {
+					for (Long indexedOffset: indexedOffsets)
+						os.writeLong(indexedOffset);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Read entries of the log
+	 *
+	 * @param from
+	 * 			index of first entry to read
+	 * @param count
+	 * 			number of entries to read, <tt>0</tt> to read all entries since <tt>from</tt>
+	 */
+	public List<JobLogEntry> read(int from, int count) {
+		List<JobLogEntry> entries = new ArrayList<>();
+		if (exists()) {
+			try (Reader reader = openReader(from)) {
+				while ((count == 0 || entries.size() < count) && reader.next())
+					entries.add(new JobLogEntry(new Date(reader.getTime()), reader.getMessage()));
+			}
+		}
+		return entries;
+	}
+
+	public LogSnippet readTail(int count) {
+		LogSnippet snippet = new LogSnippet();
+		if (exists()) {
+			snippet.offset = Math.max(0, count() - count);
+			try (Reader reader = openReader(snippet.offset)) {
+				while (reader.next())
+					snippet.entries.add(new JobLogEntry(new Date(reader.getTime()), reader.getMessage()));
+			}
+		}
+		return snippet;
+	}
+
+	/**
+	 * Open a reader to read entries sequentially. Entries appended after the reader is
+	 * opened will not be read
+	 *
+	 * @param from
+	 * 			index of first entry to read
+	 */
+	public Reader openReader(int from) {
+		if (isCompressed())
+			return new CompressedReader(from);
+		else if (dataFile.exists())
+			return new RawReader(seek(from), getState().length);
+		else
+			return new RawReader(0, 0);
+	}
+
+	/**
+	 * Compress the log into deflated blocks. Log should not be appended while compressing
+	 */
+	public void compress() {
+		if (isCompressed()) {
+			FileUtils.deleteFile(dataFile);
+			FileUtils.deleteFile(indexFile);
+			return;
+		} else if (!dataFile.exists()) {
+			return;
+		}
+
+		File tempDataFile = new File(compressedDataFile.getParentFile(), COMPRESSED_DATA_FILE + TEMP_SUFFIX);
+		File tempIndexFile = new File(compressedIndexFile.getParentFile(), COMPRESSED_INDEX_FILE + TEMP_SUFFIX);
+		Deflater deflater = new Deflater();
+		try (	Reader reader = openReader(0);
+				CountingOutputStream dataOs = new CountingOutputStream(new BufferedOutputStream(
+						new FileOutputStream(tempDataFile)));
+				DataOutputStream indexOs = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(tempIndexFile)))) {
+			ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+			DataOutputStream blockOs = new DataOutputStream(blockBytes);
+			int blockEntries = 0;
+			while (true) {
+				boolean hasNext = reader.next();
+				if (hasNext) {
+					blockOs.writeInt(TIME_LENGTH + reader.getMessageLength());
+					blockOs.writeLong(reader.getTime());
+					blockOs.write(reader.getMessageBytes(), 0, reader.getMessageLength());
+					blockEntries++;
+				}
+				if (blockEntries == INDEX_INTERVAL || !hasNext && blockEntries != 0) {
+					indexOs.writeLong(dataOs.getByteCount());
+					indexOs.writeInt(blockEntries);
+					deflater.reset();
+					DeflaterOutputStream deflaterOs = new DeflaterOutputStream(dataOs, deflater);
+					blockBytes.writeTo(deflaterOs);
+					deflaterOs.finish();
+					blockBytes.reset();
+					blockEntries = 0;
+				}
+				if (!hasNext)
+					break;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			deflater.end();
+		}
+
+		try {
+			Files.move(tempDataFile.toPath(), compressedDataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tempIndexFile.toPath(), compressedIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		FileUtils.deleteFile(dataFile);
+		FileUtils.deleteFile(indexFile);
+	}
+
+	/*
+	 * Stream records of compressed blocks into temp files, and move them in place before 
+	 * removing compressed files. Compressed files remain authoritative until block index 
+	 * is removed, so the log survives crash at any point
+	 */
+	private void decompress() {
+		File tempDataFile = new File(dataFile.getParentFile(), DATA_FILE + TEMP_SUFFIX);
+		File tempIndexFile = new File(indexFile.getParentFile(), INDEX_FILE + TEMP_SUFFIX);
+		try (	Reader reader = openReader(0);
+				DataOutputStream dataOs = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(tempDataFile)));
+				DataOutputStream indexOs = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(tempIndexFile)))) {
+			long offset = 0;
+			int count = 0;
+			while (reader.next()) {
+				if (count % INDEX_INTERVAL == 0)
+					indexOs.writeLong(offset);
+				dataOs.writeInt(TIME_LENGTH + reader.getMessageLength());
+				dataOs.writeLong(reader.getTime());
+				dataOs.write(reader.getMessageBytes(), 0, reader.getMessageLength());
+				offset += 4 + TIME_LENGTH + reader.getMessageLength();
+				count++;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		try {
+			Files.move(tempIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			Files.move(tempDataFile.toPath(), dataFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		FileUtils.deleteFile(compressedIndexFile);
+		FileUtils.deleteFile(compressedDataFile);
+	}
+
+	private List<Block> readBlocks() {
+		List<Block> blocks = new ArrayList<>();
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(compressedIndexFile)))) {
+			long blockCount = compressedIndexFile.length() / BLOCK_INDEX_ENTRY_LENGTH;
+			for (int i=0; i<blockCount; i++)
+				blocks.add(new Block(is.readLong(), is.readInt()));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Convert log file of legacy format (chained Java serialized {@link JobLogEntry}
+	 * objects) to this format
+	 */
+	public void migrate(File legacyFile) {
+		File tempDir = FileUtils.createTempDir("log-migration");
+		try {
+			LogFile tempLogFile = new LogFile(tempDir);
+			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(
+					new FileInputStream(legacyFile)))) {
+				List<JobLogEntry> entries = new ArrayList<>();
+				while (true) {
+					try {
+						entries.add((JobLogEntry) ois.readObject());
+					} catch (EOFException e) {
+						break;
+					}
+					if (entries.size() == INDEX_INTERVAL) {
+						tempLogFile.append(entries);
+						entries.clear();
+					}
+				}
+				tempLogFile.append(entries);
+			} catch (IOException | ClassNotFoundException e) {
+				throw new RuntimeException(e);
+			}
+			FileUtils.deleteFile(dataFile);
+			FileUtils.deleteFile(indexFile);
+			FileUtils.deleteFile(compressedDataFile);
+			FileUtils.deleteFile(compressedIndexFile);
+			try {
+				if (tempLogFile.getIndexFile().exists())
+					Files.move(tempLogFile.getIndexFile().toPath(), indexFile.toPath());
+				if (tempLogFile.getDataFile().exists())
+					Files.move(tempLogFile.getDataFile().toPath(), dataFile.toPath());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			FileUtils.deleteFile(legacyFile);
+		} finally {
+			FileUtils.deleteDir(tempDir);
+		}
+	}
+
+	private long seek(int entryIndex) {
+		if (!dataFile.exists())
+			return 0;
+
+		long offset = 0;
+		int skip = entryIndex;
+		State state = getState();
+		if (state.indexValid) {
+			int indexCount = (int) (indexFile.length() / 8);
+			int indexPos = Math.min(entryIndex / INDEX_INTERVAL, indexCount - 1);
+			if (indexPos >= 0) {
+				try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+					raf.seek(indexPos * 8L);
+					offset = raf.readLong();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				skip = entryIndex - indexPos * INDEX_INTERVAL;
+			}
+		}
+		try (DataInputStream is = openDataStream(offset)) {
+			while (skip-- > 0 && offset < state.length) {
+				int recordLength = is.readInt();
+				IOUtils.skipFully(is, recordLength);
+				offset += 4 + recordLength;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return offset;
+	}
+
+	private DataInputStream openDataStream(long offset) throws IOException {
+		FileInputStream fis = new FileInputStream(dataFile);
+		try {
+			fis.getChannel().position(offset);
+			return new DataInputStream(new BufferedInputStream(fis));
+		} catch (IOException e) {
+			fis.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Figure out number of entries and length of complete records by scanning records
+	 * after last indexed offset
+	 */
+	private State getState() {
+		State state = new State();
+		if (!dataFile.exists())
+			return state;
+
+		long dataLength = dataFile.length();
+		int indexCount = indexFile.exists()? (int) (indexFile.length() / 8): 0;
+		long offset = 0;
+		if (indexCount != 0) {
+			try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+				raf.seek((indexCount-1) * 8L);
+				offset = raf.readLong();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			if (offset > dataLength || indexFile.length() % 8 != 0) {
+				// index is ahead of data, rescan from beginning
+				indexCount = 0;
+				offset = 0;
+				state.indexValid = false;
+			} else {
+				state.count = (indexCount-1) * INDEX_INTERVAL;
+			}
+		}
+
+		try (DataInputStream is = openDataStream(offset)) {
+			int scanned = 0;
+			while (offset + 4 <= dataLength) {
+				int recordLength = is.readInt();
+				if (recordLength < TIME_LENGTH || offset + 4 + recordLength > dataLength)
+					break;
+				IOUtils.skipFully(is, recordLength);
+				offset += 4 + recordLength;
+				scanned++;
+			}
+			state.count += scanned;
+			
+			// Index should point to first record of each interval, and should not miss 
+			// any interval
+			if (indexCount == 0 && scanned != 0 || indexCount != 0 && scanned == 0 
+					|| scanned > INDEX_INTERVAL) {
+				state.indexValid = false;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		state.length = offset;
+		return state;
+	}
+
+	private void writeIndex() throws IOException {
+		long length = getState().length;
+		try (	DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
+				DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			long offset = 0;
+			int count = 0;
+			while (offset < length) {
+				if (count % INDEX_INTERVAL == 0)
+					os.writeLong(offset);
+				int recordLength = is.readInt();
+				IOUtils.skipFully(is, recordLength);
+				offset += 4 + recordLength;
+				count++;
+			}
+		}
+	}
+
+	private static class State {
+
+		int count;
+
+		long length;
+
+		boolean indexValid = true;
+
+	}
+
+	private static class Block {
+
+		final long offset;
+
+		final int entries;
+
+		Block(long offset, int entries) {
+			this.offset = offset;
+			this.entries = entries;
+		}
+
+	}
+
+	public abstract class Reader implements Closeable {
+
+		private long time;
+
+		private byte[] messageBytes = new byte[256];
+
+		private int messageLength;
+
+		/**
+		 * @return
+		 * 			stream positioned at next record, or <tt>null</tt> if there are no
+		 * 			more records
+		 */
+		@Nullable
+		protected abstract DataInputStream nextRecord() throws IOException;
+
+		/**
+		 * Move to next entry
+		 *
+		 * @return
+		 * 			<tt>false</tt> if there are no more entries
+		 */
+		public boolean next() {
+			try {
+				DataInputStream is = nextRecord();
+				if (is == null)
+					return false;
+				int recordLength = is.readInt();
+				time = is.readLong();
+				messageLength = recordLength - TIME_LENGTH;
+				if (messageBytes.length < messageLength)
+					messageBytes = new byte[Math.max(messageLength, messageBytes.length*2)];
+				is.readFully(messageBytes, 0, messageLength);
+				recordRead(recordLength);
+				return true;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		protected void recordRead(int recordLength) {
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public String getMessage() {
+			return new String(messageBytes, 0, messageLength, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @return
+		 * 			UTF-8 bytes of current message. Only the first {@link #getMessageLength()}
+		 * 			bytes are valid, and content will be overwritten when moving to next entry
+		 */
+		public byte[] getMessageBytes() {
+			return messageBytes;
+		}
+
+		public int getMessageLength() {
+			return messageLength;
+		}
+
+		@Override
+		public abstract void close();
+
+	}
+
+	private class RawReader extends Reader {
+
+		private final long length;
+
+		private DataInputStream is;
+
+		private long offset;
+
+		RawReader(long offset, long length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		protected DataInputStream nextRecord() throws IOException {
+			if (offset >= length)
+				return null;
+			if (is == null)
+				is = openDataStream(offset);
+			return is;
+		}
+
+		@Override
+		protected void recordRead(int recordLength) {
+			offset += 4 + recordLength;
+		}
+
+		@Override
+		public void close() {
+			IOUtils.closeQuietly(is);
+		}
+
+	}
+
+	private class CompressedReader extends Reader {
+
+		private final List<Block> blocks;
+
+		private final RandomAccessFile raf;
+
+		private final Inflater inflater = new Inflater();
+
+		private int blockIndex;
+
+		private int remainingEntries;
+
+		private int skip;
+
+		private DataInputStream is;
+
+		CompressedReader(int from) {
+			blocks = readBlocks();
+			blockIndex = from / INDEX_INTERVAL;
+			skip = from - blockIndex * INDEX_INTERVAL;
+			try {
+				raf = new RandomAccessFile(compressedDataFile, "r");
+			} catch (IOException e) {
+				inflater.end();
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		protected DataInputStream nextRecord() throws IOException {
+			while (remainingEntries == 0 || skip != 0) {
+				if (remainingEntries == 0) {
+					if (blockIndex >= blocks.size())
+						return null;
+					Block block = blocks.get(blockIndex);
+					long end = blockIndex+1<blocks.size()? blocks.get(blockIndex+1).offset: raf.length();
+					byte[] compressed = new byte[(int) (end - block.offset)];
+					raf.seek(block.offset);
+					raf.readFully(compressed);
+					inflater.reset();
+					is = new DataInputStream(new BufferedInputStream(new InflaterInputStream(
+							new ByteArrayInputStream(compressed), inflater)));
+					remainingEntries = block.entries;
+					blockIndex++;
+				}
+				if (skip != 0) {
+					if (skip >= remainingEntries) {
+						skip -= remainingEntries;
+						remainingEntries = 0;
+					} else {
+						for (; skip>0; skip--) {
+							IOUtils.skipFully(is, is.readInt());
+							remainingEntries--;
+						}
+					}
+				}
+			}
+			remainingEntries--;
+			return is;
+		}
+
+		@Override
+		public void close() {
+			IOUtils.closeQuietly(raf);
+			inflater.end();
+		}
+
+	}
+
+	@Nullable
+	static File getLegacyFile(File dir) {
+		File legacyFile = new File(dir, LEGACY_FILE);
+		return legacyFile.exists()? legacyFile: null;
+	}
+
+}
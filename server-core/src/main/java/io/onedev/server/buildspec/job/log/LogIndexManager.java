@@ -0,0 +1,36 @@
+package io.onedev.server.buildspec.job.log;
+
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+/**
+ * Optional n-gram index of finished build logs, maintained per project. Build logs are
+ * indexed in blocks of {@link LogFile#INDEX_INTERVAL} entries, so that only blocks possibly
+ * matching a regular expression need to be verified. Index is only maintained if enabled
+ * via {@link io.onedev.server.util.ServerConfig#isLogIndexEnabled()}.
+ */
+public interface LogIndexManager {
+
+	/**
+	 * Index log of specified build, replacing existing index of the build if any. Caller
+	 * should make sure that the log is not modified while being indexed
+	 */
+	void index(Long projectId, Long buildId, LogFile logFile);
+
+	/**
+	 * Get blocks of specified build log possibly matching specified pattern
+	 *
+	 * @return
+	 * 			ascending block numbers, with block <tt>n</tt> containing log entries from
+	 * 			<tt>n*LogFile.INDEX_INTERVAL</tt>, or <tt>null</tt> if log of the build is
+	 * 			not indexed or the pattern can not be looked up from the index, in which
+	 * 			case whole log should be scanned
+	 */
+	@Nullable
+	Collection<Integer> getCandidateBlocks(Long projectId, Long buildId, Pattern pattern);
+
+	void delete(Long projectId, Collection<Long> buildIds);
+
+}
@@ -45,4 +45,6 @@ public interface LogManager {
 	
 	InputStream openLogStream(Build build);
 	
+	LogStats getLogStats();
+	
 }
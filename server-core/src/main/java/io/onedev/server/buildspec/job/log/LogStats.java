@@ -0,0 +1,77 @@
+package io.onedev.server.buildspec.job.log;
+
+import java.io.Serializable;
+
+public class LogStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long compressedLogs;
+
+	private final long uncompressedBytes;
+
+	private final long compressedBytes;
+
+	private final long lastReadLatency;
+
+	private final long averageReadLatency;
+
+	public LogStats(long compressedLogs, long uncompressedBytes, long compressedBytes,
+			long lastReadLatency, long averageReadLatency) {
+		this.compressedLogs = compressedLogs;
+		this.uncompressedBytes = uncompressedBytes;
+		this.compressedBytes = compressedBytes;
+		this.lastReadLatency = lastReadLatency;
+		this.averageReadLatency = averageReadLatency;
+	}
+
+	/**
+	 * @return
+	 * 			number of build logs compressed since server is started
+	 */
+	public long getCompressedLogs() {
+		return compressedLogs;
+	}
+
+	/**
+	 * @return
+	 * 			size in bytes of compressed logs before compression
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+
+	/**
+	 * @return
+	 * 			size in bytes of compressed logs after compression
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes;
+	}
+
+	/**
+	 * @return
+	 * 			ratio of uncompressed size to compressed size, or <tt>0</tt> if no logs
+	 * 			are compressed yet
+	 */
+	public double getCompressionRatio() {
+		return compressedBytes!=0? uncompressedBytes*1.0/compressedBytes: 0;
+	}
+
+	/**
+	 * @return
+	 * 			latency in milliseconds of most recent log read
+	 */
+	public long getLastReadLatency() {
+		return lastReadLatency;
+	}
+
+	/**
+	 * @return
+	 * 			average latency in milliseconds of log reads since server is started
+	 */
+	public long getAverageReadLatency() {
+		return averageReadLatency;
+	}
+
+}
@@ -0,0 +1,140 @@
+package io.onedev.server.buildspec.job.log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+import io.onedev.server.model.support.inputspec.SecretInput;
+
+/**
+ * Mask occurrences of a set of secrets in text with a single pass over the text. Secrets
+ * are compiled into an Aho-Corasick automaton, and character ranges covered by any secret
+ * occurrence are merged and replaced by {@link SecretInput#MASK}, so that fragments of
+ * overlapping secrets are never exposed.
+ */
+public class SecretMasker {
+
+	private final Node root = new Node();
+
+	private final boolean empty;
+
+	public SecretMasker(Collection<String> secrets) {
+		boolean empty = true;
+		for (String secret: secrets) {
+			if (secret != null && secret.length() != 0) {
+				Node node = root;
+				for (int i=0; i<secret.length(); i++) {
+					char c = secret.charAt(i);
+					Node child = node.getChild(c);
+					if (child == null)
+						child = node.addChild(c);
+					node = child;
+				}
+				node.matchLength = secret.length();
+				empty = false;
+			}
+		}
+		this.empty = empty;
+
+		Queue<Node> queue = new ArrayDeque<>();
+		for (int i=0; i<root.childCount; i++) {
+			root.children[i].fail = root;
+			queue.add(root.children[i]);
+		}
+		while (!queue.isEmpty()) {
+			Node node = queue.remove();
+			for (int i=0; i<node.childCount; i++) {
+				Node child = node.children[i];
+				char c = node.chars[i];
+				Node fail = node.fail;
+				while (fail != root && fail.getChild(c) == null)
+					fail = fail.fail;
+				Node failChild = fail.getChild(c);
+				child.fail = failChild!=null? failChild: root;
+
+				// a secret ending at fail node is a suffix of current path, and the
+				// longest one is enough to figure out the covered range
+				child.matchLength = Math.max(child.matchLength, child.fail.matchLength);
+				queue.add(child);
+			}
+		}
+	}
+
+	public String mask(String text) {
+		if (empty)
+			return text;
+
+		List<int[]> ranges = null;
+		Node node = root;
+		for (int i=0; i<text.length(); i++) {
+			char c = text.charAt(i);
+			Node child;
+			while ((child = node.getChild(c)) == null && node != root)
+				node = node.fail;
+			node = child!=null? child: root;
+			if (node.matchLength != 0) {
+				int start = i + 1 - node.matchLength;
+				int end = i + 1;
+				if (ranges == null)
+					ranges = new ArrayList<>();
+				// merge with previous ranges overlapping or adjacent to this one
+				while (!ranges.isEmpty() && ranges.get(ranges.size()-1)[1] >= start) {
+					int[] last = ranges.remove(ranges.size()-1);
+					start = Math.min(start, last[0]);
+				}
+				ranges.add(new int[] {start, end});
+			}
+		}
+
+		if (ranges == null)
+			return text;
+
+		StringBuilder builder = new StringBuilder(text.length());
+		int pos = 0;
+		for (int[] range: ranges) {
+			builder.append(text, pos, range[0]).append(SecretInput.MASK);
+			pos = range[1];
+		}
+		builder.append(text, pos, text.length());
+		return builder.toString();
+	}
+
+	private static class Node {
+
+		char[] chars = new char[0];
+
+		Node[] children = new Node[0];
+
+		int childCount;
+
+		Node fail;
+
+		int matchLength;
+
+		Node getChild(char c) {
+			for (int i=0; i<childCount; i++) {
+				if (chars[i] == c)
+					return children[i];
+			}
+			return null;
+		}
+
+		Node addChild(char c) {
+			if (childCount == chars.length) {
+				int capacity = Math.max(2, childCount*2);
+				chars = Arrays.copyOf(chars, capacity);
+				children = Arrays.copyOf(children, capacity);
+			}
+			Node child = new Node();
+			chars[childCount] = c;
+			children[childCount] = child;
+			childCount++;
+			return child;
+		}
+
+	}
+
+}
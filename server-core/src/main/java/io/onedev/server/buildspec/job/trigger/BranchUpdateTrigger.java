@@ -1,6 +1,5 @@
 package io.onedev.server.buildspec.job.trigger;
 
-import java.util.Collection;
 import java.util.List;
 
 import org.eclipse.jgit.lib.ObjectId;
@@ -30,6 +29,10 @@ public class BranchUpdateTrigger extends JobTrigger {
 	
 	private String paths;
 	
+	private transient PatternSet branchPatterns;
+	
+	private transient PatternSet pathPatterns;
+	
 	@Editable(name="Branches", order=100, description="Optionally specify space-separated branches "
 			+ "to check. Use '**', '*' or '?' for <a href='$docRoot/pages/path-wildcard.md' target='_blank'>path wildcard match</a>. "
 			+ "Prefix with '-' to exclude. Leave empty to match all branches")
@@ -41,6 +44,7 @@ public class BranchUpdateTrigger extends JobTrigger {
 
 	public void setBranches(String branches) {
 		this.branches = branches;
+		branchPatterns = null;
 	}
 
 	@SuppressWarnings("unused")
@@ -59,6 +63,7 @@ public class BranchUpdateTrigger extends JobTrigger {
 
 	public void setPaths(String paths) {
 		this.paths = paths;
+		pathPatterns = null;
 	}
 
 	@SuppressWarnings("unused")
@@ -66,6 +71,18 @@ public class BranchUpdateTrigger extends JobTrigger {
 		return SuggestionUtils.suggestBlobs(Project.get(), matchWith);
 	}
 
+	private PatternSet getBranchPatterns() {
+		if (branchPatterns == null)
+			branchPatterns = PatternSet.parse(branches);
+		return branchPatterns;
+	}
+	
+	private PatternSet getPathPatterns() {
+		if (pathPatterns == null)
+			pathPatterns = PatternSet.parse(paths);
+		return pathPatterns;
+	}
+	
 	private boolean touchedFile(RefUpdated refUpdated) {
 		if (getPaths() != null) {
 			if (refUpdated.getOldCommitId().equals(ObjectId.zeroId())) {
@@ -73,11 +90,9 @@ public class BranchUpdateTrigger extends JobTrigger {
 			} else if (refUpdated.getNewCommitId().equals(ObjectId.zeroId())) {
 				return false;
 			} else {
-				Collection<String> changedFiles = GitUtils.getChangedFiles(refUpdated.getProject().getRepository(), 
-						refUpdated.getOldCommitId(), refUpdated.getNewCommitId());
-				PatternSet patternSet = PatternSet.parse(getPaths());
+				PatternSet patternSet = getPathPatterns();
 				Matcher matcher = new PathMatcher();
-				for (String changedFile: changedFiles) {
+				for (String changedFile: refUpdated.getChangedFiles()) {
 					if (patternSet.matches(matcher, changedFile))
 						return true;
 				}
@@ -95,7 +110,7 @@ public class BranchUpdateTrigger extends JobTrigger {
 			String updatedBranch = GitUtils.ref2branch(refUpdated.getRefName());
 			Matcher matcher = new PathMatcher();
 			if (updatedBranch != null 
-					&& (branches == null || PatternSet.parse(branches).matches(matcher, updatedBranch)) 
+					&& (branches == null || getBranchPatterns().matches(matcher, updatedBranch)) 
 					&& touchedFile(refUpdated)) {
 				return new SubmitReason() {
 
@@ -36,6 +36,8 @@ public abstract class JobTrigger implements Serializable {
 	private String projects;
 	
 	private List<ParamSupply> params = new ArrayList<>();
+	
+	private transient PatternSet projectPatterns;
 
 	@Editable(name="Applicable Projects", order=900, description="Optionally specify space-separated projects "
 			+ "applicable for this trigger. This is useful for instance when you want to prevent "
@@ -49,6 +51,7 @@ public abstract class JobTrigger implements Serializable {
 
 	public void setProjects(String projects) {
 		this.projects = projects;
+		projectPatterns = null;
 	}
 	
 	@SuppressWarnings("unused")
@@ -84,12 +87,18 @@ public abstract class JobTrigger implements Serializable {
 	public SubmitReason matches(ProjectEvent event, Job job) {
 		String projectName = event.getProject().getName();
 		Matcher matcher = new StringMatcher();
-		if (projects == null || PatternSet.parse(projects).matches(matcher, projectName)) 
+		if (projects == null || getProjectPatterns().matches(matcher, projectName)) 
 			return matchesWithoutProject(event, job);
 		else 
 			return null;
 	}
 	
+	private PatternSet getProjectPatterns() {
+		if (projectPatterns == null)
+			projectPatterns = PatternSet.parse(projects);
+		return projectPatterns;
+	}
+	
 	public String getDescription() {
 		String description = getDescriptionWithoutProject();
 		if (projects != null)
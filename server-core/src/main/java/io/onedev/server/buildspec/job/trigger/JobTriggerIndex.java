@@ -0,0 +1,109 @@
+package io.onedev.server.buildspec.job.trigger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.buildspec.job.Job;
+import io.onedev.server.buildspec.job.JobTriggerMatch;
+import io.onedev.server.buildspec.job.SubmitReason;
+import io.onedev.server.event.ProjectEvent;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.build.BuildFinished;
+import io.onedev.server.event.pullrequest.PullRequestMergePreviewCalculated;
+import io.onedev.server.git.GitUtils;
+
+/**
+ * Triggers of jobs in a build spec grouped by trigger type, so that a project event only
+ * evaluates triggers possibly matching it. Index of a build spec is meant to be shared
+ * across events, and patterns of indexed triggers will only be parsed once as triggers
+ * cache parsed patterns.
+ */
+public class JobTriggerIndex {
+
+	private final Map<Class<? extends JobTrigger>, List<JobTriggers>> triggersByType = new HashMap<>();
+
+	public JobTriggerIndex(List<Job> jobs) {
+		for (Job job: jobs) {
+			Map<Class<? extends JobTrigger>, JobTriggers> triggersOfJob = new LinkedHashMap<>();
+			for (JobTrigger trigger: job.getTriggers()) {
+				JobTriggers triggersOfType = triggersOfJob.get(trigger.getClass());
+				if (triggersOfType == null) {
+					triggersOfType = new JobTriggers(job);
+					triggersOfJob.put(trigger.getClass(), triggersOfType);
+				}
+				triggersOfType.triggers.add(trigger);
+			}
+			for (Map.Entry<Class<? extends JobTrigger>, JobTriggers> entry: triggersOfJob.entrySet()) {
+				List<JobTriggers> triggersOfType = triggersByType.get(entry.getKey());
+				if (triggersOfType == null) {
+					triggersOfType = new ArrayList<>();
+					triggersByType.put(entry.getKey(), triggersOfType);
+				}
+				triggersOfType.add(entry.getValue());
+			}
+		}
+	}
+
+	@Nullable
+	private static Class<? extends JobTrigger> getTriggerType(ProjectEvent event) {
+		if (event instanceof RefUpdated) {
+			String refName = ((RefUpdated) event).getRefName();
+			if (GitUtils.ref2branch(refName) != null)
+				return BranchUpdateTrigger.class;
+			else if (GitUtils.ref2tag(refName) != null)
+				return TagCreateTrigger.class;
+			else
+				return null;
+		} else if (event instanceof PullRequestMergePreviewCalculated) {
+			return PullRequestTrigger.class;
+		} else if (event instanceof BuildFinished) {
+			return DependencyFinishedTrigger.class;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Get trigger matches of specified event
+	 *
+	 * @return
+	 * 			map of job to its first matching trigger, in order of jobs in build spec
+	 */
+	public Map<Job, JobTriggerMatch> getMatches(ProjectEvent event) {
+		Map<Job, JobTriggerMatch> matches = new LinkedHashMap<>();
+		Class<? extends JobTrigger> triggerType = getTriggerType(event);
+		if (triggerType != null) {
+			List<JobTriggers> triggersOfType = triggersByType.get(triggerType);
+			if (triggersOfType != null) {
+				for (JobTriggers jobTriggers: triggersOfType) {
+					for (JobTrigger trigger: jobTriggers.triggers) {
+						SubmitReason reason = trigger.matches(event, jobTriggers.job);
+						if (reason != null) {
+							matches.put(jobTriggers.job, new JobTriggerMatch(trigger, reason));
+							break;
+						}
+					}
+				}
+			}
+		}
+		return matches;
+	}
+
+	private static class JobTriggers {
+
+		final Job job;
+
+		final List<JobTrigger> triggers = new ArrayList<>();
+
+		JobTriggers(Job job) {
+			this.job = job;
+		}
+
+	}
+
+}
@@ -1,16 +1,12 @@
 package io.onedev.server.buildspec.job.trigger;
 
-import java.util.Collection;
 import java.util.List;
 
-import org.eclipse.jgit.lib.ObjectId;
-
 import io.onedev.commons.codeassist.InputSuggestion;
 import io.onedev.server.buildspec.job.Job;
 import io.onedev.server.buildspec.job.SubmitReason;
 import io.onedev.server.event.ProjectEvent;
 import io.onedev.server.event.pullrequest.PullRequestMergePreviewCalculated;
-import io.onedev.server.git.GitUtils;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.util.match.Matcher;
@@ -30,6 +26,10 @@ public class PullRequestTrigger extends JobTrigger {
 	
 	private String paths;
 	
+	private transient PatternSet branchPatterns;
+	
+	private transient PatternSet pathPatterns;
+	
 	@Editable(name="Target Branches", order=100, description="Optionally specify space-separated "
 			+ "target branches of the pull requests to check. Use '**', '*' or '?' for <a href='$docRoot/pages/path-wildcard.md' target='_blank'>path wildcard match</a>. "
 			+ "Prefix with '-' to exclude. Leave empty to match all branches")
@@ -41,6 +41,7 @@ public class PullRequestTrigger extends JobTrigger {
 
 	public void setBranches(String branches) {
 		this.branches = branches;
+		branchPatterns = null;
 	}
 
 	@SuppressWarnings("unused")
@@ -59,6 +60,7 @@ public class PullRequestTrigger extends JobTrigger {
 
 	public void setPaths(String paths) {
 		this.paths = paths;
+		pathPatterns = null;
 	}
 
 	@SuppressWarnings("unused")
@@ -66,13 +68,23 @@ public class PullRequestTrigger extends JobTrigger {
 		return SuggestionUtils.suggestBlobs(Project.get(), matchWith);
 	}
 
-	private boolean touchedFile(PullRequest request) {
+	private PatternSet getBranchPatterns() {
+		if (branchPatterns == null)
+			branchPatterns = PatternSet.parse(branches);
+		return branchPatterns;
+	}
+	
+	private PatternSet getPathPatterns() {
+		if (pathPatterns == null)
+			pathPatterns = PatternSet.parse(paths);
+		return pathPatterns;
+	}
+	
+	private boolean touchedFile(PullRequestMergePreviewCalculated mergePreviewCalculated) {
 		if (getPaths() != null) {
-			Collection<String> changedFiles = GitUtils.getChangedFiles(request.getTargetProject().getRepository(), 
-					request.getTarget().getObjectId(), ObjectId.fromString(request.getLastMergePreview().getMergeCommitHash()));
-			PatternSet patternSet = PatternSet.parse(getPaths());
+			PatternSet patternSet = getPathPatterns();
 			Matcher matcher = new PathMatcher();
-			for (String changedFile: changedFiles) {
+			for (String changedFile: mergePreviewCalculated.getChangedFiles()) {
 				if (patternSet.matches(matcher, changedFile))
 					return true;
 			}
@@ -89,8 +101,8 @@ public class PullRequestTrigger extends JobTrigger {
 			PullRequest request = mergePreviewCalculated.getRequest();
 			String targetBranch = request.getTargetBranch();
 			Matcher matcher = new PathMatcher();
-			if ((branches == null || PatternSet.parse(branches).matches(matcher, targetBranch)) 
-					&& touchedFile(request)) {
+			if ((branches == null || getBranchPatterns().matches(matcher, targetBranch)) 
+					&& touchedFile(mergePreviewCalculated)) {
 				return new SubmitReason() {
 
 					@Override
@@ -28,6 +28,10 @@ public class TagCreateTrigger extends JobTrigger {
 	
 	private String branches;
 	
+	private transient PatternSet tagPatterns;
+	
+	private transient PatternSet branchPatterns;
+	
 	@Editable(name="Tags", order=100, description="Optionally specify space-separated tags to check. "
 			+ "Use '**', '*' or '?' for <a href='$docRoot/pages/path-wildcard.md' target='_blank'>path wildcard match</a>. "
 			+ "Prefix with '-' to exclude. Leave empty to match all tags")
@@ -39,6 +43,7 @@ public class TagCreateTrigger extends JobTrigger {
 
 	public void setTags(String tags) {
 		this.tags = tags;
+		tagPatterns = null;
 	}
 	
 	@SuppressWarnings("unused")
@@ -58,6 +63,7 @@ public class TagCreateTrigger extends JobTrigger {
 
 	public void setBranches(String branches) {
 		this.branches = branches;
+		branchPatterns = null;
 	}
 
 	@SuppressWarnings("unused")
@@ -65,6 +71,18 @@ public class TagCreateTrigger extends JobTrigger {
 		return SuggestionUtils.suggestBranches(Project.get(), matchWith);
 	}
 	
+	private PatternSet getTagPatterns() {
+		if (tagPatterns == null)
+			tagPatterns = PatternSet.parse(tags);
+		return tagPatterns;
+	}
+	
+	private PatternSet getBranchPatterns() {
+		if (branchPatterns == null)
+			branchPatterns = PatternSet.parse(branches);
+		return branchPatterns;
+	}
+	
 	@Override
 	public SubmitReason matchesWithoutProject(ProjectEvent event, Job job) {
 		if (event instanceof RefUpdated) {
@@ -73,8 +91,8 @@ public class TagCreateTrigger extends JobTrigger {
 			ObjectId commitId = refUpdated.getNewCommitId();
 			Project project = event.getProject();
 			if (updatedTag != null && !commitId.equals(ObjectId.zeroId()) 
-					&& (tags == null || PatternSet.parse(tags).matches(new PathMatcher(), updatedTag))
-					&& (branches == null || project.isCommitOnBranches(commitId, branches))) {
+					&& (tags == null || getTagPatterns().matches(new PathMatcher(), updatedTag))
+					&& (branches == null || project.isCommitOnBranches(commitId, getBranchPatterns()))) {
 				return new SubmitReason() {
 
 					@Override
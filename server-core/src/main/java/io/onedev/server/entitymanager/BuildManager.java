@@ -34,6 +34,16 @@ public interface BuildManager extends EntityManager<Build> {
 
 	Collection<Long> queryStreamPreviousNumbers(Build build, @Nullable Build.Status status, int limit);
 
+	/**
+	 * Find build with exactly specified params via params hash. This is preferred over 
+	 * querying with params, as it does not need to join build params
+	 * 
+	 * @param paramsHash
+	 * 			hash of non-secret params, refer to {@link Build#getParamsHash(Map)}
+	 */
+	@Nullable
+	Build find(Project project, ObjectId commitId, String jobName, String refName, String paramsHash);
+	
 	Collection<Build> query(Project project, ObjectId commitId, @Nullable String jobName, 
 			@Nullable String refName, @Nullable Optional<PullRequest> request, 
 			Map<String, List<String>> params);
@@ -45,6 +55,12 @@ public interface BuildManager extends EntityManager<Build> {
 	Map<ObjectId, Map<String, Collection<StatusInfo>>> queryStatus(Project project, Collection<ObjectId> commitIds);
 
 	void create(Build build);
+	
+	/**
+	 * Create specified builds in a batch. Builds should be ordered so that dependencies 
+	 * come before their dependents
+	 */
+	void create(Collection<Build> builds);
 
 	Collection<Build> queryUnfinished();
 
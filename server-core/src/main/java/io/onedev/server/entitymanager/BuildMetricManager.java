@@ -13,4 +13,14 @@ public interface BuildMetricManager {
 	
 	Map<String, Collection<String>> getAccessibleReportNames(Project project, Class<?> metricClass);
 	
+	/**
+	 * Request to refresh daily metric rollups of specified job at specified day. Rollups 
+	 * are refreshed asynchronously from metrics of finished builds. This should be called 
+	 * after commit if metrics or builds are changed or deleted bypassing entity events
+	 * 
+	 * @param day
+	 * 			value of {@link io.onedev.server.util.Day} the build finishes at
+	 */
+	void refreshRollups(Long projectId, String jobName, int day);
+	
 }
@@ -6,11 +6,16 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -19,6 +24,7 @@ import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Join;
@@ -26,6 +32,7 @@ import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.EntityType;
 
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -46,8 +53,10 @@ import com.google.common.collect.Sets;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.buildspec.job.log.LogIndexManager;
 import io.onedev.server.entitymanager.BuildDependenceManager;
 import io.onedev.server.entitymanager.BuildManager;
+import io.onedev.server.entitymanager.BuildMetricManager;
 import io.onedev.server.entitymanager.BuildParamManager;
 import io.onedev.server.entitymanager.GroupManager;
 import io.onedev.server.entitymanager.ProjectManager;
@@ -66,6 +75,7 @@ import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.Role;
 import io.onedev.server.model.User;
 import io.onedev.server.model.UserAuthorization;
+import io.onedev.server.model.support.BuildMetric;
 import io.onedev.server.model.support.build.BuildPreservation;
 import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.TransactionManager;
@@ -93,7 +103,11 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 
 	private static final int STATUS_QUERY_BATCH = 500;
 	
-	private static final int CLEANUP_BATCH = 5000;
+	private static final int CLEANUP_BATCH = 500;
+	
+	private static final int CREATE_BATCH = 100;
+	
+	private static final int CLEANUP_CONCURRENCY = Math.max(1, Runtime.getRuntime().availableProcessors()/2);
 	
 	private static final Logger logger = LoggerFactory.getLogger(DefaultBuildManager.class);
 	
@@ -113,6 +127,10 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 	
 	private final TransactionManager transactionManager;
 	
+	private final LogIndexManager logIndexManager;
+	
+	private final BuildMetricManager buildMetricManager;
+	
 	private final Map<Long, BuildFacade> builds = new HashMap<>();
 	
 	private final ReadWriteLock buildsLock = new ReentrantReadWriteLock();
@@ -121,6 +139,10 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 	
 	private final ReadWriteLock jobNamesLock = new ReentrantReadWriteLock();
 	
+	private final ThreadPoolExecutor cleanupExecutor = new ThreadPoolExecutor(
+			CLEANUP_CONCURRENCY, CLEANUP_CONCURRENCY, 
+			60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+	
 	private String taskId;
 	
 	@Inject
@@ -128,7 +150,8 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 			TaskScheduler taskScheduler, BuildDependenceManager buildDependenceManager,
 			GroupManager groupManager, StorageManager storageManager, 
 			ProjectManager projectManager, SessionManager sessionManager, 
-			TransactionManager transactionManager) {
+			TransactionManager transactionManager, LogIndexManager logIndexManager, 
+			BuildMetricManager buildMetricManager) {
 		super(dao);
 		this.buildParamManager = buildParamManager;
 		this.buildDependenceManager = buildDependenceManager;
@@ -138,6 +161,9 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 		this.taskScheduler = taskScheduler;
 		this.sessionManager = sessionManager;
 		this.transactionManager = transactionManager;
+		this.logIndexManager = logIndexManager;
+		this.buildMetricManager = buildMetricManager;
+		cleanupExecutor.allowCoreThreadTimeOut(true);
 	}
 
 	@Transactional
@@ -256,6 +282,18 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 		return query(project, commitId, jobName, null, null, new HashMap<>());
 	}
 	
+	@Sessional
+	@Override
+	public Build find(Project project, ObjectId commitId, String jobName, String refName, String paramsHash) {
+		EntityCriteria<Build> criteria = newCriteria();
+		criteria.add(Restrictions.eq(Build.PROP_PROJECT, project));
+		criteria.add(Restrictions.eq(Build.PROP_COMMIT, commitId.name()));
+		criteria.add(Restrictions.eq(Build.PROP_JOB, jobName));
+		criteria.add(Restrictions.eq(Build.PROP_REF_NAME, refName));
+		criteria.add(Restrictions.eq(Build.PROP_PARAMS_HASH, paramsHash));
+		return find(criteria);
+	}
+	
 	@Sessional
 	@Override
 	public Collection<Build> query(Project project, ObjectId commitId, String jobName, 
@@ -393,18 +431,79 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 	@Transactional
 	@Override
 	public void create(Build build) {
-		Preconditions.checkArgument(build.isNew());
-		build.setNumberScope(build.getProject().getForkRoot());
-		Query<?> query = getSession().createQuery(String.format("select max(%s) from Build where %s=:numberScope", 
-				Build.PROP_NUMBER, Build.PROP_NUMBER_SCOPE));
-		query.setParameter("numberScope", build.getNumberScope());
-		build.setNumber(getNextNumber(build.getNumberScope(), query));
+		assignNumber(build);
+		build.updateParamsHash();
 		save(build);
 		for (BuildParam param: build.getParams())
 			buildParamManager.save(param);
 		for (BuildDependence dependence: build.getDependencies())
 			buildDependenceManager.save(dependence);
 	}
+	
+	@Transactional
+	@Override
+	public void create(Collection<Build> builds) {
+		Session session = getSession();
+		Integer jdbcBatchSize = session.getJdbcBatchSize();
+		session.setJdbcBatchSize(CREATE_BATCH);
+		try {
+			/*
+			 * Builds, params and dependences are saved in separate passes so that inserts 
+			 * into the same table are adjacent to be batched
+			 */
+			assignNumbers(builds);
+			for (Build build: builds) {
+				build.updateParamsHash();
+				save(build);
+			}
+			for (Build build: builds) {
+				for (BuildParam param: build.getParams())
+					buildParamManager.save(param);
+			}
+			for (Build build: builds) {
+				for (BuildDependence dependence: build.getDependencies())
+					buildDependenceManager.save(dependence);
+			}
+			session.flush();
+		} finally {
+			session.setJdbcBatchSize(jdbcBatchSize);
+		}
+	}
+	
+	private Query<?> getMaxNumberQuery(Project numberScope) {
+		Query<?> query = getSession().createQuery(String.format("select max(%s) from Build where %s=:numberScope", 
+				Build.PROP_NUMBER, Build.PROP_NUMBER_SCOPE));
+		query.setParameter("numberScope", numberScope);
+		return query;
+	}
+	
+	private void assignNumber(Build build) {
+		Preconditions.checkArgument(build.isNew());
+		build.setNumberScope(build.getProject().getForkRoot());
+		build.setNumber(getNextNumber(build.getNumberScope(), getMaxNumberQuery(build.getNumberScope())));
+	}
+	
+	/*
+	 * Reserve numbers of each number scope in one go instead of build by build
+	 */
+	private void assignNumbers(Collection<Build> builds) {
+		Map<Project, List<Build>> buildsByScope = new LinkedHashMap<>();
+		for (Build build: builds) {
+			Preconditions.checkArgument(build.isNew());
+			build.setNumberScope(build.getProject().getForkRoot());
+			List<Build> buildsOfScope = buildsByScope.get(build.getNumberScope());
+			if (buildsOfScope == null) {
+				buildsOfScope = new ArrayList<>();
+				buildsByScope.put(build.getNumberScope(), buildsOfScope);
+			}
+			buildsOfScope.add(build);
+		}
+		for (Map.Entry<Project, List<Build>> entry: buildsByScope.entrySet()) {
+			long number = getNextNumbers(entry.getKey(), getMaxNumberQuery(entry.getKey()), entry.getValue().size());
+			for (Build build: entry.getValue())
+				build.setNumber(number++);
+		}
+	}
 
 	private Collection<Predicate> getPredicates(@Nullable Project project, Root<Build> root, CriteriaBuilder builder) {
 		Collection<Predicate> predicates = new ArrayList<>();
@@ -603,66 +702,276 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 		return maxId!=null?maxId:0;
 	}
 
-	@Override
-	public void execute() {
-		long maxId = getMaxId();
-		Collection<Long> idsToPreserve = new HashSet<>();
+	@Sessional
+	protected List<Long> queryProjectIds() {
+		CriteriaBuilder builder = getSession().getCriteriaBuilder();
+		CriteriaQuery<Long> query = builder.createQuery(Long.class);
+		Root<Project> root = query.from(Project.class);
+		query.select(root.get(Project.PROP_ID));
+		return getSession().createQuery(query).getResultList();
+	}
+	
+	/**
+	 * Get builds to be preserved of specified project
+	 * 
+	 * @return
+	 * 			builds to be preserved, or <tt>null</tt> if all builds of the project should 
+	 * 			be preserved
+	 */
+	@Sessional
+	@Nullable
+	protected List<PreservedBuilds> getPreservedBuilds(Long projectId) {
+		Project project = projectManager.load(projectId);
+		List<BuildPreservation> preservations = project.getBuildSetting().getBuildPreservations();
+		if (preservations.isEmpty())
+			return null;
+		
+		List<PreservedBuilds> preservedBuilds = new ArrayList<>();
+		for (BuildPreservation preservation: preservations) {
+			BuildQuery query;
+			try {
+				query = BuildQuery.parse(project, preservation.getCondition(), false, false);
+			} catch (Exception e) {
+				String message = String.format("Error parsing build preserve condition(project: %s, condition: %s)", 
+						project.getName(), preservation.getCondition());
+				logger.error(message, e);
+				return null;
+			}
+			
+			io.onedev.server.search.entity.EntityCriteria<Build> criteria = query.getCriteria();
+			if (preservation.getCount() == null) {
+				preservedBuilds.add(new PreservedBuilds(criteria, null, null));
+			} else if (preservation.getCount() <= 0) {
+				// count is validated to be positive, but may still be zero in settings saved before
+				continue;
+			} else if (query.getSorts().isEmpty()) {
+				/*
+				 * Builds are ordered by id descendingly by default, so preserved builds 
+				 * can be identified by id of the last one in database
+				 */
+				List<Long> lastIds = queryPreservedIds(project, criteria, 
+						new ArrayList<>(), preservation.getCount()-1, 1);
+				if (!lastIds.isEmpty())
+					preservedBuilds.add(new PreservedBuilds(criteria, lastIds.get(0), null));
+				else
+					preservedBuilds.add(new PreservedBuilds(criteria, null, null));
+			} else {
+				preservedBuilds.add(new PreservedBuilds(null, null, 
+						queryPreservedIds(project, criteria, query.getSorts(), 0, preservation.getCount())));
+			}
+		}
+		return preservedBuilds;
+	}
+	
+	private List<Long> queryPreservedIds(Project project, 
+			@Nullable io.onedev.server.search.entity.EntityCriteria<Build> criteria, 
+			List<EntitySort> sorts, int firstResult, int maxResults) {
+		if (maxResults <= 0)
+			return new ArrayList<>();
+		
+		CriteriaBuilder builder = getSession().getCriteriaBuilder();
+		CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
+		Root<Build> root = criteriaQuery.from(Build.class);
+		criteriaQuery.select(root.get(Build.PROP_ID));
+		
+		List<Predicate> predicates = new ArrayList<>();
+		predicates.add(builder.equal(root.get(Build.PROP_PROJECT), project));
+		if (criteria != null)
+			predicates.add(criteria.getPredicate(root, builder));
+		criteriaQuery.where(predicates.toArray(new Predicate[0]));
+		
+		List<javax.persistence.criteria.Order> orders = new ArrayList<>();
+		for (EntitySort sort: sorts) {
+			if (sort.getDirection() == Direction.ASCENDING)
+				orders.add(builder.asc(BuildQuery.getPath(root, Build.ORDER_FIELDS.get(sort.getField()))));
+			else
+				orders.add(builder.desc(BuildQuery.getPath(root, Build.ORDER_FIELDS.get(sort.getField()))));
+		}
+		orders.add(builder.desc(root.get(Build.PROP_ID)));
+		criteriaQuery.orderBy(orders);
 		
-		sessionManager.run(new Runnable() {
+		Query<Long> query = getSession().createQuery(criteriaQuery);
+		query.setFirstResult(firstResult);
+		query.setMaxResults(maxResults);
+		return query.getResultList();
+	}
+	
+	/**
+	 * Query next batch of deletable builds with id larger than specified id. Paging by id 
+	 * instead of offset keeps each query cheap regardless of number of builds already 
+	 * scanned and deleted
+	 * 
+	 * @return
+	 * 			id, number, job name and finish day of deletable builds ordered by id
+	 */
+	@Sessional
+	protected List<Object[]> queryDeletableBuilds(Long projectId, List<PreservedBuilds> preservedBuilds, 
+			long afterId, long maxId) {
+		CriteriaBuilder builder = getSession().getCriteriaBuilder();
+		CriteriaQuery<Object[]> criteriaQuery = builder.createQuery(Object[].class);
+		Root<Build> root = criteriaQuery.from(Build.class);
+		criteriaQuery.multiselect(root.get(Build.PROP_ID), root.get(Build.PROP_NUMBER), 
+				root.get(Build.PROP_JOB), root.get(Build.PROP_FINISH_DAY));
+		
+		List<Predicate> predicates = new ArrayList<>();
+		predicates.add(builder.equal(root.get(Build.PROP_PROJECT), projectManager.load(projectId)));
+		predicates.add(root.get(Build.PROP_STATUS).in(Status.SUCCESSFUL, Status.FAILED, Status.CANCELLED, Status.TIMED_OUT));
+		predicates.add(builder.greaterThan(root.get(Build.PROP_ID), afterId));
+		predicates.add(builder.lessThanOrEqualTo(root.get(Build.PROP_ID), maxId));
+		for (PreservedBuilds each: preservedBuilds) {
+			Predicate predicate = each.getPredicate(root, builder);
+			if (predicate != null)
+				predicates.add(builder.not(predicate));
+		}
+		criteriaQuery.where(predicates.toArray(new Predicate[0]));
+		criteriaQuery.orderBy(builder.asc(root.get(Build.PROP_ID)));
+		
+		Query<Object[]> query = getSession().createQuery(criteriaQuery);
+		query.setMaxResults(CLEANUP_BATCH);
+		return query.getResultList();
+	}
+	
+	/*
+	 * Delete builds and their associated entities with bulk statements instead of loading 
+	 * and removing them one by one
+	 */
+	@Transactional
+	protected void deleteBuilds(Long projectId, List<Object[]> deletableBuilds) {
+		Collection<Long> buildIds = new ArrayList<>();
+		Collection<Long> buildNumbers = new ArrayList<>();
+		Map<String, Set<Integer>> jobFinishDays = new HashMap<>();
+		for (Object[] fields: deletableBuilds) {
+			buildIds.add((Long) fields[0]);
+			buildNumbers.add((Long) fields[1]);
+			if (fields[3] != null) {
+				Set<Integer> finishDays = jobFinishDays.get((String) fields[2]);
+				if (finishDays == null) {
+					finishDays = new HashSet<>();
+					jobFinishDays.put((String) fields[2], finishDays);
+				}
+				finishDays.add((Integer) fields[3]);
+			}
+		}
+		
+		Session session = getSession();
+		EntityManagerFactory emf = (EntityManagerFactory) session.getEntityManagerFactory();
+		for (EntityType<?> entityType: emf.getMetamodel().getEntities()) {
+			Class<?> entityClass = entityType.getJavaType();
+			if (BuildMetric.class.isAssignableFrom(entityClass)) {
+				session.createQuery(String.format("delete from %s where %s.id in (:buildIds)", 
+						entityClass.getSimpleName(), BuildMetric.PROP_BUILD))
+						.setParameter("buildIds", buildIds)
+						.executeUpdate();
+			}
+		}
+		session.createQuery(String.format("delete from %s where %s.id in (:buildIds)", 
+				BuildParam.class.getSimpleName(), BuildParam.PROP_BUILD))
+				.setParameter("buildIds", buildIds)
+				.executeUpdate();
+		session.createQuery(String.format("delete from %s where %s.id in (:buildIds) or %s.id in (:buildIds)", 
+				BuildDependence.class.getSimpleName(), BuildDependence.PROP_DEPENDENT, BuildDependence.PROP_DEPENDENCY))
+				.setParameter("buildIds", buildIds)
+				.executeUpdate();
+		session.createQuery(String.format("delete from %s where %s in (:buildIds)", 
+				Build.class.getSimpleName(), Build.PROP_ID))
+				.setParameter("buildIds", buildIds)
+				.executeUpdate();
+		
+		transactionManager.runAfterCommit(new Runnable() {
 
 			@Override
 			public void run() {
-				for (Project project: projectManager.query()) {
-					logger.debug("Populating preserved build ids of project '" + project.getName() + "'...");
-					List<BuildPreservation> preservations = project.getBuildSetting().getBuildPreservations();
-					if (preservations.isEmpty()) {
-						idsToPreserve.addAll(queryIds(project, new BuildQuery(), 0, Integer.MAX_VALUE));
-					} else {
-						for (BuildPreservation preservation: preservations) {
-							try {
-								BuildQuery query = BuildQuery.parse(project, preservation.getCondition(), false, false);
-								int count;
-								if (preservation.getCount() != null)
-									count = preservation.getCount();
-								else
-									count = Integer.MAX_VALUE;
-								idsToPreserve.addAll(queryIds(project, query, 0, count));
-							} catch (Exception e) {
-								String message = String.format("Error parsing build preserve condition(project: %s, condition: %s)", 
-										project.getName(), preservation.getCondition());
-								logger.error(message, e);
-								idsToPreserve.addAll(queryIds(project, new BuildQuery(), 0, Integer.MAX_VALUE));
-							}
-						}
-					}
+				buildsLock.writeLock().lock();
+				try {
+					for (Long buildId: buildIds)
+						builds.remove(buildId);
+				} finally {
+					buildsLock.writeLock().unlock();
+				}
+				for (Long buildNumber: buildNumbers)
+					FileUtils.deleteDir(storageManager.getBuildDir(projectId, buildNumber));
+				logIndexManager.delete(projectId, buildIds);
+				for (Map.Entry<String, Set<Integer>> entry: jobFinishDays.entrySet()) {
+					for (Integer finishDay: entry.getValue())
+						buildMetricManager.refreshRollups(projectId, entry.getKey(), finishDay);
 				}
 			}
 			
 		});
-
-		EntityCriteria<Build> criteria = newCriteria();
-		AtomicInteger firstResult = new AtomicInteger(0);
+	}
+	
+	private int cleanup(Long projectId, long maxId) {
+		List<PreservedBuilds> preservedBuilds = getPreservedBuilds(projectId);
+		if (preservedBuilds == null)
+			return 0;
+		
+		int deleted = 0;
+		long afterId = 0;
+		while (true) {
+			List<Object[]> deletableBuilds = queryDeletableBuilds(projectId, preservedBuilds, afterId, maxId);
+			if (deletableBuilds.isEmpty())
+				break;
+			deleteBuilds(projectId, deletableBuilds);
+			deleted += deletableBuilds.size();
+			afterId = (Long) deletableBuilds.get(deletableBuilds.size()-1)[0];
+			logger.debug("Deleted {} builds of project (id: {})", deleted, projectId);
+			if (deletableBuilds.size() < CLEANUP_BATCH)
+				break;
+		}
+		return deleted;
+	}
+	
+	/*
+	 * Projects are cleaned up in parallel, with deletable builds of each project 
+	 * calculated and deleted batch by batch in database, so that memory usage does 
+	 * not grow with number of builds
+	 */
+	@Override
+	public void execute() {
+		long time = System.currentTimeMillis();
+		long maxId = getMaxId();
+		List<Long> projectIds = queryProjectIds();
+		logger.info("Cleaning up builds of {} projects...", projectIds.size());
 		
-		while (transactionManager.call(new Callable<Boolean>() {
+		AtomicInteger processedProjects = new AtomicInteger(0);
+		AtomicInteger deletedBuilds = new AtomicInteger(0);
+		int progressInterval = Math.max(1, projectIds.size()/10);
+		
+		List<Future<?>> futures = new ArrayList<>();
+		for (Long projectId: projectIds) {
+			futures.add(cleanupExecutor.submit(new Runnable() {
 
-			@Override
-			public Boolean call() {
-				List<Build> builds = query(criteria, firstResult.get(), CLEANUP_BATCH);
-				if (!builds.isEmpty()) {
-					logger.debug("Checking build preservation: {}->{}", 
-							firstResult.get()+1, firstResult.get()+builds.size());
-				}
-				for (Build build: builds) {
-					if (build.isFinished() && build.getId() <= maxId && !idsToPreserve.contains(build.getId())) {
-						logger.debug("Deleting build " + build.getFQN() + "...");
-						delete(build);
+				@Override
+				public void run() {
+					try {
+						deletedBuilds.addAndGet(cleanup(projectId, maxId));
+					} catch (Exception e) {
+						logger.error("Error cleaning up builds of project (id: " + projectId + ")", e);
+					}
+					int processed = processedProjects.incrementAndGet();
+					if (processed % progressInterval == 0 && processed != projectIds.size()) {
+						logger.info("Cleaning up builds: {}/{} projects processed, {} builds deleted", 
+								processed, projectIds.size(), deletedBuilds.get());
 					}
 				}
-				firstResult.set(firstResult.get() + CLEANUP_BATCH);
-				return builds.size() == CLEANUP_BATCH;
-			}
-			
-		})) {}
+				
+			}));
+		}
+		
+		try {
+			for (Future<?> future: futures)
+				future.get();
+		} catch (InterruptedException e) {
+			for (Future<?> future: futures)
+				future.cancel(true);
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		
+		logger.info("Cleaned up builds (projects: {}, deleted builds: {}, time: {} ms)", 
+				projectIds.size(), deletedBuilds.get(), System.currentTimeMillis()-time);
 	}
 
 	@Override
@@ -688,6 +997,7 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 	@Listen
 	public void on(SystemStopping event) {
 		taskScheduler.unschedule(taskId);
+		cleanupExecutor.shutdownNow();
 	}
 
 	@Transactional
@@ -966,4 +1276,47 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 			build.getRequest().getBuilds().add(build);
 	}
 	
+	/*
+	 * Builds matching criteria with id not less than specified id, or builds with 
+	 * specified ids
+	 */
+	static class PreservedBuilds {
+		
+		private final io.onedev.server.search.entity.EntityCriteria<Build> criteria;
+		
+		private final Long minId;
+		
+		private final Collection<Long> ids;
+		
+		public PreservedBuilds(@Nullable io.onedev.server.search.entity.EntityCriteria<Build> criteria, 
+				@Nullable Long minId, @Nullable Collection<Long> ids) {
+			this.criteria = criteria;
+			this.minId = minId;
+			this.ids = ids;
+		}
+		
+		/**
+		 * @return
+		 * 			predicate matching preserved builds, or <tt>null</tt> if nothing is 
+		 * 			preserved
+		 */
+		@Nullable
+		public Predicate getPredicate(Root<Build> root, CriteriaBuilder builder) {
+			if (ids != null) {
+				if (!ids.isEmpty())
+					return root.get(Build.PROP_ID).in(ids);
+				else
+					return null;
+			} else {
+				List<Predicate> predicates = new ArrayList<>();
+				if (criteria != null)
+					predicates.add(criteria.getPredicate(root, builder));
+				if (minId != null)
+					predicates.add(builder.greaterThanOrEqualTo(root.get(Build.PROP_ID), minId));
+				return builder.and(predicates.toArray(new Predicate[0]));
+			}
+		}
+		
+	}
+	
 }
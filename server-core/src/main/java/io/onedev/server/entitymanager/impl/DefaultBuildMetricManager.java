@@ -10,9 +10,14 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.EntityManagerFactory;
@@ -20,6 +25,7 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Selection;
@@ -36,6 +42,8 @@ import com.google.common.base.Preconditions;
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.server.entitymanager.BuildMetricManager;
 import io.onedev.server.entitymanager.GroupManager;
+import io.onedev.server.entitymanager.SettingManager;
+import io.onedev.server.event.build.BuildFinished;
 import io.onedev.server.event.entity.EntityPersisted;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.system.SystemStarted;
@@ -45,9 +53,12 @@ import io.onedev.server.model.Group;
 import io.onedev.server.model.GroupAuthorization;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.Role;
+import io.onedev.server.model.Setting;
+import io.onedev.server.model.Setting.Key;
 import io.onedev.server.model.User;
 import io.onedev.server.model.UserAuthorization;
 import io.onedev.server.model.support.BuildMetric;
+import io.onedev.server.model.support.BuildMetricRollup;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.annotation.Transactional;
@@ -58,42 +69,59 @@ import io.onedev.server.security.permission.AccessBuildReports;
 import io.onedev.server.security.permission.JobPermission;
 import io.onedev.server.util.BeanUtils;
 import io.onedev.server.util.MetricIndicator;
+import io.onedev.server.util.ReflectionUtils;
 
 @Singleton
 public class DefaultBuildMetricManager implements BuildMetricManager {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultBuildMetricManager.class);
 	
+	private static final int BACKFILL_BATCH = 1000;
+	
 	private final Dao dao;
 	
 	private final TransactionManager transactionManager;
 	
 	private final GroupManager groupManager;
 	
+	private final SettingManager settingManager;
+	
 	private final Map<Key, Map<String, Collection<String>>> reportNames = new HashMap<>();
 	
 	private final ReadWriteLock reportNamesLock = new ReentrantReadWriteLock();
 	
+	private final ExecutorService executorService;
+	
+	private final Map<Class<?>, Class<? extends BuildMetricRollup<?>>> rollupClasses = new HashMap<>();
+	
+	private final Set<Class<?>> readyRollupClasses = ConcurrentHashMap.newKeySet();
+	
+	private final Set<RollupKey> pendingRollups = ConcurrentHashMap.newKeySet();
+	
+	private final AtomicBoolean rollupScheduled = new AtomicBoolean(false);
+	
+	private final Object rollupLock = new Object();
+	
 	@Inject
-	public DefaultBuildMetricManager(Dao dao, TransactionManager transactionManager, GroupManager groupManager) {
+	public DefaultBuildMetricManager(Dao dao, TransactionManager transactionManager, GroupManager groupManager, 
+			SettingManager settingManager, ExecutorService executorService) {
 		this.dao = dao;
 		this.transactionManager = transactionManager;
 		this.groupManager = groupManager;
+		this.settingManager = settingManager;
+		this.executorService = executorService;
 	}
 	
-	@SuppressWarnings("resource")
-	@Sessional
-	@Override
-	public <T extends AbstractEntity> Map<Integer, T> queryStats(Project project, Class<T> metricClass, BuildMetricQuery query) {
-		CriteriaBuilder builder = dao.getSession().getCriteriaBuilder();
-		CriteriaQuery<Object[]> criteriaQuery = builder.createQuery(Object[].class);
-		Root<T> metricRoot = criteriaQuery.from(metricClass);
-
-		List<Predicate> predicates = new ArrayList<>();
-		
-		Join<?, ?> buildJoin = metricRoot.join(BuildMetric.PROP_BUILD, JoinType.INNER);
-		predicates.add(builder.equal(buildJoin.get(Build.PROP_PROJECT), project));
-		
+	/**
+	 * Get predicate restricting metrics to accessible jobs and reports
+	 * 
+	 * @return
+	 * 			predicate restricting metrics, or <tt>null</tt> if all metrics of the 
+	 * 			project are accessible
+	 */
+	@Nullable
+	private Predicate getAccessPredicate(Project project, Class<?> metricClass, 
+			Path<String> jobAttribute, Path<String> reportAttribute, CriteriaBuilder builder) {
 		if (!SecurityUtils.canManageBuilds(project)) {
 			reportNamesLock.readLock().lock();
 			try {
@@ -107,13 +135,13 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 						if (availableReportNamesOfJob != null) {
 							if (entry.getValue().containsAll(availableReportNamesOfJob)) {
 								jobsWithAllReports.add(entry.getKey());
-								jobPredicates.add(builder.equal(buildJoin.get(Build.PROP_JOB), entry.getKey()));
+								jobPredicates.add(builder.equal(jobAttribute, entry.getKey()));
 							} else {
 								List<Predicate> reportPredicates = new ArrayList<>();
 								for (String reportName: entry.getValue()) 
-									reportPredicates.add(builder.equal(metricRoot.get(BuildMetric.PROP_REPORT), reportName));
+									reportPredicates.add(builder.equal(reportAttribute, reportName));
 								jobPredicates.add(builder.and(
-										builder.equal(buildJoin.get(Build.PROP_JOB), entry.getKey()), 
+										builder.equal(jobAttribute, entry.getKey()), 
 										builder.or(reportPredicates.toArray(new Predicate[reportPredicates.size()]))));
 							}
 						} else {
@@ -121,12 +149,39 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 						}
 					}
 					if (!jobsWithAllReports.containsAll(availableReportNames.keySet()))
-						predicates.add(builder.or(jobPredicates.toArray(new Predicate[jobPredicates.size()])));
+						return builder.or(jobPredicates.toArray(new Predicate[jobPredicates.size()]));
 				}
 			} finally {
 				reportNamesLock.readLock().unlock();
 			}
 		}
+		return null;
+	}
+	
+	@SuppressWarnings("resource")
+	@Sessional
+	@Override
+	public <T extends AbstractEntity> Map<Integer, T> queryStats(Project project, Class<T> metricClass, BuildMetricQuery query) {
+		Class<? extends BuildMetricRollup<?>> rollupClass = rollupClasses.get(metricClass);
+		if (rollupClass != null && readyRollupClasses.contains(metricClass)) {
+			Map<Integer, T> stats = queryRollupStats(project, metricClass, rollupClass, query);
+			if (stats != null)
+				return stats;
+		}
+		
+		CriteriaBuilder builder = dao.getSession().getCriteriaBuilder();
+		CriteriaQuery<Object[]> criteriaQuery = builder.createQuery(Object[].class);
+		Root<T> metricRoot = criteriaQuery.from(metricClass);
+
+		List<Predicate> predicates = new ArrayList<>();
+		
+		Join<?, ?> buildJoin = metricRoot.join(BuildMetric.PROP_BUILD, JoinType.INNER);
+		predicates.add(builder.equal(buildJoin.get(Build.PROP_PROJECT), project));
+		
+		Predicate accessPredicate = getAccessPredicate(project, metricClass, 
+				buildJoin.<String>get(Build.PROP_JOB), metricRoot.<String>get(BuildMetric.PROP_REPORT), builder);
+		if (accessPredicate != null)
+			predicates.add(accessPredicate);
 		
 		if (query.getCriteria() != null)
 			predicates.add(query.getCriteria().getPredicate(metricRoot, buildJoin, builder));
@@ -164,6 +219,232 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 		}
 		return metrics;
 	}
+	
+	/**
+	 * Query stats from daily rollups
+	 * 
+	 * @return
+	 * 			stats of each day, or <tt>null</tt> if query criteria can not be evaluated 
+	 * 			against rollups
+	 */
+	@Nullable
+	private <T extends AbstractEntity> Map<Integer, T> queryRollupStats(Project project, Class<T> metricClass, 
+			Class<? extends BuildMetricRollup<?>> rollupClass, BuildMetricQuery query) {
+		CriteriaBuilder builder = dao.getSession().getCriteriaBuilder();
+		CriteriaQuery<Object[]> criteriaQuery = builder.createQuery(Object[].class);
+		Root<?> rollupRoot = criteriaQuery.from(rollupClass);
+		
+		List<Predicate> predicates = new ArrayList<>();
+		predicates.add(builder.equal(rollupRoot.get(BuildMetricRollup.PROP_PROJECT), project));
+		
+		Predicate accessPredicate = getAccessPredicate(project, metricClass, 
+				rollupRoot.<String>get(BuildMetricRollup.PROP_JOB), rollupRoot.<String>get(BuildMetricRollup.PROP_REPORT), builder);
+		if (accessPredicate != null)
+			predicates.add(accessPredicate);
+		
+		if (query.getCriteria() != null) {
+			Predicate criteriaPredicate = query.getCriteria().getRollupPredicate(rollupRoot, builder);
+			if (criteriaPredicate == null)
+				return null;
+			predicates.add(criteriaPredicate);
+		}
+		
+		criteriaQuery.where(predicates.toArray(new Predicate[0]));
+		criteriaQuery.groupBy(rollupRoot.get(BuildMetricRollup.PROP_DAY));
+		
+		List<Method> setters = new ArrayList<>();
+		List<Selection<?>> selections = new ArrayList<>();
+		for (Method getter: getIndicatorGetters(metricClass)) {
+			selections.add(builder.sum(rollupRoot.<Long>get(BeanUtils.getPropertyName(getter))));
+			setters.add(Preconditions.checkNotNull(BeanUtils.findSetter(getter)));
+		}
+		selections.add(builder.sum(rollupRoot.<Integer>get(BuildMetricRollup.PROP_COUNT)));
+		selections.add(rollupRoot.get(BuildMetricRollup.PROP_DAY));
+		
+		criteriaQuery.multiselect(selections);
+		
+		Map<Integer, T> metrics = new HashMap<>();
+		for (Object[] fields: dao.getSession().createQuery(criteriaQuery).list()) {
+			try {
+				long count = ((Number)fields[setters.size()]).longValue();
+				if (count != 0) {
+					T metric = metricClass.newInstance();
+					int index = 0;
+					for (Method setter: setters) {
+						double value = ((Number)fields[index++]).doubleValue() / count;
+						setter.invoke(metric, (int)value);
+					}
+					metrics.put((int)fields[setters.size()+1], metric);
+				}
+			} catch (Exception e) {
+				throw unchecked(e);
+			}
+		}
+		return metrics;
+	}
+	
+	private List<Method> getIndicatorGetters(Class<?> metricClass) {
+		List<Method> getters = new ArrayList<>();
+		for (Method getter: BeanUtils.findGetters(metricClass)) {
+			if (getter.getAnnotation(MetricIndicator.class) != null) 
+				getters.add(getter);
+		}
+		return getters;
+	}
+	
+	@Override
+	public void refreshRollups(Long projectId, String jobName, int day) {
+		pendingRollups.add(new RollupKey(projectId, jobName, day));
+		if (rollupScheduled.compareAndSet(false, true)) {
+			executorService.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (rollupLock) {
+						rollupScheduled.set(false);
+						for (Iterator<RollupKey> it = pendingRollups.iterator(); it.hasNext();) {
+							RollupKey key = it.next();
+							it.remove();
+							try {
+								rollup(key);
+							} catch (Exception e) {
+								logger.error("Error rolling up build metrics (project id: " + key.projectId 
+										+ ", job: " + key.jobName + ", day: " + key.day + ")", e);
+							}
+						}
+					}
+				}
+				
+			});
+		}
+	}
+	
+	private void refreshRollupsAfterCommit(Long projectId, String jobName, int day) {
+		transactionManager.runAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				refreshRollups(projectId, jobName, day);
+			}
+			
+		});
+	}
+	
+	/*
+	 * Recalculate rollups of specified key from metrics, instead of adjusting them 
+	 * incrementally, so that rollups are always consistent with metrics no matter how 
+	 * metrics and builds are changed
+	 */
+	@SuppressWarnings("unchecked")
+	@Transactional
+	protected void rollup(RollupKey key) {
+		Project project = dao.get(Project.class, key.projectId);
+		for (Map.Entry<Class<?>, Class<? extends BuildMetricRollup<?>>> entry: rollupClasses.entrySet()) {
+			Class<?> metricClass = entry.getKey();
+			Class<? extends BuildMetricRollup<?>> rollupClass = entry.getValue();
+			Query<?> query = dao.getSession().createQuery(String.format(
+					"delete from %s where %s.id=:projectId and %s=:jobName and %s=:day", 
+					rollupClass.getSimpleName(), BuildMetricRollup.PROP_PROJECT, 
+					BuildMetricRollup.PROP_JOB, BuildMetricRollup.PROP_DAY));
+			query.setParameter("projectId", key.projectId);
+			query.setParameter("jobName", key.jobName);
+			query.setParameter("day", key.day);
+			query.executeUpdate();
+			
+			if (project != null) {
+				List<Method> getters = getIndicatorGetters(metricClass);
+				query = dao.getSession().createQuery(String.format(
+						"select metric.%s, count(metric)%s from %s metric inner join metric.%s build "
+						+ "where build.%s.id=:projectId and build.%s=:jobName and build.%s=:day group by metric.%s", 
+						BuildMetric.PROP_REPORT, getSumClause(getters), metricClass.getSimpleName(), BuildMetric.PROP_BUILD, 
+						Build.PROP_PROJECT, Build.PROP_JOB, Build.PROP_FINISH_DAY, BuildMetric.PROP_REPORT));
+				query.setParameter("projectId", key.projectId);
+				query.setParameter("jobName", key.jobName);
+				query.setParameter("day", key.day);
+				for (Object[] fields: (List<Object[]>)query.list()) {
+					dao.persist(newRollup(rollupClass, getters, project, key.jobName, 
+							(String)fields[0], key.day, fields, 1));
+				}
+			}
+		}
+	}
+	
+	private String getSumClause(List<Method> indicatorGetters) {
+		StringBuilder builder = new StringBuilder();
+		for (Method getter: indicatorGetters) 
+			builder.append(", sum(metric.").append(BeanUtils.getPropertyName(getter)).append(")");
+		return builder.toString();
+	}
+	
+	private BuildMetricRollup<?> newRollup(Class<? extends BuildMetricRollup<?>> rollupClass, 
+			List<Method> indicatorGetters, Project project, String jobName, String reportName, 
+			int day, Object[] fields, int countIndex) {
+		try {
+			BuildMetricRollup<?> rollup = rollupClass.newInstance();
+			rollup.setProject(project);
+			rollup.setJobName(jobName);
+			rollup.setReportName(reportName);
+			rollup.setDay(day);
+			rollup.setCount(((Number)fields[countIndex]).intValue());
+			int index = countIndex + 1;
+			for (Method getter: indicatorGetters) {
+				Method setter = BeanUtils.getSetter(BeanUtils.getGetter(rollupClass, BeanUtils.getPropertyName(getter)));
+				Number sum = (Number) fields[index++];
+				setter.invoke(rollup, sum!=null? sum.longValue(): 0L);
+			}
+			return rollup;
+		} catch (Exception e) {
+			throw unchecked(e);
+		}
+	}
+	
+	/*
+	 * Build rollups of all existing metrics in a single transaction, so that rollups 
+	 * are either complete or empty. Completion is recorded in the same transaction, as 
+	 * rollups refreshed for recently finished builds might exist before backfill. 
+	 * Rollups of a metric class are not used for queries until they are complete
+	 */
+	@SuppressWarnings("unchecked")
+	@Transactional
+	protected void backfillRollups(Class<?> metricClass, Class<? extends BuildMetricRollup<?>> rollupClass) {
+		Setting setting = settingManager.getSetting(Key.BACKFILLED_METRIC_ROLLUPS);
+		if (setting == null) {
+			setting = new Setting();
+			setting.setKey(Key.BACKFILLED_METRIC_ROLLUPS);
+			setting.setValue(new HashSet<String>());
+		}
+		HashSet<String> backfilledRollups = new HashSet<>((Set<String>) setting.getValue());
+		if (backfilledRollups.contains(rollupClass.getName()))
+			return;
+		
+		// Rollups refreshed before backfill will be rebuilt below
+		dao.getSession().createQuery("delete from " + rollupClass.getSimpleName()).executeUpdate();
+		
+		logger.info("Building rollups of {}...", metricClass.getSimpleName());
+		List<Method> getters = getIndicatorGetters(metricClass);
+		Query<?> query = dao.getSession().createQuery(String.format(
+				"select build.%s.id, build.%s, metric.%s, build.%s, count(metric)%s from %s metric inner join metric.%s build "
+				+ "where build.%s is not null group by build.%s.id, build.%s, metric.%s, build.%s", 
+				Build.PROP_PROJECT, Build.PROP_JOB, BuildMetric.PROP_REPORT, Build.PROP_FINISH_DAY, 
+				getSumClause(getters), metricClass.getSimpleName(), BuildMetric.PROP_BUILD, 
+				Build.PROP_FINISH_DAY, Build.PROP_PROJECT, Build.PROP_JOB, BuildMetric.PROP_REPORT, 
+				Build.PROP_FINISH_DAY));
+		int count = 0;
+		for (Object[] fields: (List<Object[]>)query.list()) {
+			Project project = dao.load(Project.class, (Long)fields[0]);
+			dao.persist(newRollup(rollupClass, getters, project, (String)fields[1], 
+					(String)fields[2], (Integer)fields[3], fields, 4));
+			if (++count % BACKFILL_BATCH == 0) {
+				dao.getSession().flush();
+				dao.getSession().clear();
+			}
+		}
+		logger.info("Built {} rollups of {}", count, metricClass.getSimpleName());
+		
+		backfilledRollups.add(rollupClass.getName());
+		setting.setValue(backfilledRollups);
+		dao.persist(setting);
+	}
 
 	@SuppressWarnings("unchecked")
 	@Listen
@@ -180,13 +461,47 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 				for (Object[] fields: (List<Object[]>)query.list()) 
 					populateReportNames(new Key((Long)fields[0], entityClass), (String)fields[1], (String)fields[2]);
 			}
+			if (BuildMetricRollup.class.isAssignableFrom(entityClass)) {
+				Class<? extends BuildMetricRollup<?>> rollupClass = (Class<? extends BuildMetricRollup<?>>) entityClass;
+				rollupClasses.put(ReflectionUtils.getTypeArguments(BuildMetricRollup.class, rollupClass).get(0), rollupClass);
+			}
+		}
+		
+		for (Map.Entry<Class<?>, Class<? extends BuildMetricRollup<?>>> entry: rollupClasses.entrySet()) {
+			executorService.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (rollupLock) {
+						try {
+							backfillRollups(entry.getKey(), entry.getValue());
+							readyRollupClasses.add(entry.getKey());
+						} catch (Exception e) {
+							logger.error("Error building rollups of " + entry.getKey().getSimpleName(), e);
+						}
+					}
+				}
+				
+			});
 		}
 	}
 	
+	@Transactional
+	@Listen
+	public void on(BuildFinished event) {
+		Build build = event.getBuild();
+		if (build.getFinishDay() != null)
+			refreshRollupsAfterCommit(build.getProject().getId(), build.getJobName(), build.getFinishDay());
+	}
+	
 	@Transactional
 	@Listen
 	public void on(EntityRemoved event) {
-		if (event.getEntity() instanceof Project) {
+		if (event.getEntity() instanceof Build) {
+			Build build = (Build) event.getEntity();
+			if (build.getFinishDay() != null)
+				refreshRollupsAfterCommit(build.getProject().getId(), build.getJobName(), build.getFinishDay());
+		} else if (event.getEntity() instanceof Project) {
 			Long projectId = event.getEntity().getId();
 			transactionManager.runAfterCommit(new Runnable() {
 
@@ -214,6 +529,9 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 			String reportName = buildMetric.getReportName();
 			String jobName = buildMetric.getBuild().getJobName();
 			Key key = new Key(buildMetric.getBuild().getProject().getId(), event.getEntity().getClass());
+			Integer finishDay = buildMetric.getBuild().getFinishDay();
+			if (finishDay != null)
+				refreshRollupsAfterCommit(key.projectId, jobName, finishDay);
 			transactionManager.runAfterCommit(new Runnable() {
 
 				@Override
@@ -341,4 +659,43 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 		
 	}
 	
+	private static class RollupKey {
+		
+		private final Long projectId;
+		
+		private final String jobName;
+		
+		private final int day;
+		
+		public RollupKey(Long projectId, String jobName, int day) {
+			this.projectId = projectId;
+			this.jobName = jobName;
+			this.day = day;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof RollupKey)) 
+				return false;
+			if (this == other)
+				return true;
+			RollupKey otherKey = (RollupKey) other;
+			return new EqualsBuilder()
+				.append(projectId, otherKey.projectId)
+				.append(jobName, otherKey.jobName)
+				.append(day, otherKey.day)
+				.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+				.append(projectId)
+				.append(jobName)
+				.append(day)
+				.toHashCode();
+		}		
+		
+	}
+	
 }
@@ -401,7 +401,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 	public void onDeleteBranch(Project project, String branchName) {
 		for (Iterator<BranchProtection> it = project.getBranchProtections().iterator(); it.hasNext();) { 
 			BranchProtection protection = it.next();
-			PatternSet patternSet = PatternSet.parse(protection.getBranches());
+			PatternSet patternSet = PatternSet.parse(protection.getBranches()).copy();
 			patternSet.getIncludes().remove(branchName);
 			patternSet.getExcludes().remove(branchName);
 			protection.setBranches(patternSet.toString());
@@ -448,7 +448,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 	public void onDeleteTag(Project project, String tagName) {
 		for (Iterator<TagProtection> it = project.getTagProtections().iterator(); it.hasNext();) { 
 			TagProtection protection = it.next();
-			PatternSet patternSet = PatternSet.parse(protection.getTags());
+			PatternSet patternSet = PatternSet.parse(protection.getTags()).copy();
 			patternSet.getIncludes().remove(tagName);
 			patternSet.getExcludes().remove(tagName);
 			protection.setTags(patternSet.toString());
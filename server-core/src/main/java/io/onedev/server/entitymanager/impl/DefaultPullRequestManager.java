@@ -68,6 +68,7 @@ import io.onedev.server.entitymanager.PullRequestReviewManager;
 import io.onedev.server.entitymanager.PullRequestUpdateManager;
 import io.onedev.server.event.RefUpdated;
 import io.onedev.server.event.build.BuildEvent;
+import io.onedev.server.event.build.BuildsSubmitted;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.pullrequest.PullRequestBuildEvent;
 import io.onedev.server.event.pullrequest.PullRequestChangeEvent;
@@ -685,7 +686,17 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest> im
 	@Listen
 	@Transactional
 	public void on(BuildEvent event) {
-		Build build = event.getBuild();
+		postBuildEvent(event.getBuild());
+	}
+	
+	@Listen
+	@Transactional
+	public void on(BuildsSubmitted event) {
+		for (Build build: event.getBuilds())
+			postBuildEvent(build);
+	}
+	
+	private void postBuildEvent(Build build) {
 		if (build.getRequest() != null) {
 			MergePreview mergePreview = build.getRequest().getMergePreview();
 			if (mergePreview != null && build.getCommitHash().equals(mergePreview.getMergeCommitHash()))
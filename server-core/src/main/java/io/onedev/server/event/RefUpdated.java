@@ -1,9 +1,11 @@
 package io.onedev.server.event;
 
+import java.util.Collection;
 import java.util.Date;
 
 import org.eclipse.jgit.lib.ObjectId;
 
+import io.onedev.server.git.GitUtils;
 import io.onedev.server.model.Project;
 import io.onedev.server.util.CommitAware;
 import io.onedev.server.util.ProjectScopedCommit;
@@ -18,6 +20,8 @@ public class RefUpdated extends ProjectEvent implements CommitAware {
 	
 	private transient ProjectScopedCommit commit;
 	
+	private transient Collection<String> changedFiles;
+	
 	public RefUpdated(Project project, String refName, ObjectId oldCommitId, ObjectId newCommitId) {
 		super(null, new Date(), project);
 		this.refName = refName;
@@ -44,6 +48,18 @@ public class RefUpdated extends ProjectEvent implements CommitAware {
 		return commit;
 	}
 
+	/**
+	 * Get files changed between old and new commit. Result is cached so that multiple 
+	 * listeners of this event do not need to calculate changed files repeatedly
+	 */
+	public Collection<String> getChangedFiles() {
+		if (changedFiles == null) {
+			changedFiles = GitUtils.getChangedFiles(getProject().getRepository(), 
+					oldCommitId, newCommitId);
+		}
+		return changedFiles;
+	}
+	
 	@Override
 	public String getActivity(boolean withEntity) {
 		String activity = "Git ref updated";
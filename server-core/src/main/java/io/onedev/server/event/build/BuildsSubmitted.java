@@ -0,0 +1,37 @@
+package io.onedev.server.event.build;
+
+import java.util.Collection;
+
+import io.onedev.server.event.ProjectEvent;
+import io.onedev.server.model.Build;
+import io.onedev.server.model.Project;
+
+/**
+ * Posted once for new builds submitted in a batch, for instance builds of all combinations 
+ * of a param matrix, instead of posting {@link BuildSubmitted} for each of them. Builds of 
+ * a batch belong to the same project, and are submitted by the same user at the same time. 
+ * Listeners not able to handle builds collectively should process each build as if a 
+ * {@link BuildSubmitted} event is received 
+ */
+public class BuildsSubmitted extends ProjectEvent {
+
+	private final Collection<Build> builds;
+	
+	public BuildsSubmitted(Project project, Collection<Build> builds) {
+		super(builds.iterator().next().getSubmitter(), builds.iterator().next().getSubmitDate(), project);
+		this.builds = builds;
+	}
+
+	public Collection<Build> getBuilds() {
+		return builds;
+	}
+
+	@Override
+	public String getActivity(boolean withEntity) {
+		if (withEntity)
+			return builds.size() + " builds are submitted";
+		else
+			return "submitted";
+	}
+
+}
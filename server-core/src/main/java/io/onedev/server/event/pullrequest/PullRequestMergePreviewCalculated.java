@@ -1,9 +1,11 @@
 package io.onedev.server.event.pullrequest;
 
+import java.util.Collection;
 import java.util.Date;
 
 import org.eclipse.jgit.lib.ObjectId;
 
+import io.onedev.server.git.GitUtils;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.support.pullrequest.MergePreview;
 import io.onedev.server.util.CommitAware;
@@ -11,6 +13,8 @@ import io.onedev.server.util.ProjectScopedCommit;
 
 public class PullRequestMergePreviewCalculated extends PullRequestEvent implements CommitAware {
 	
+	private transient Collection<String> changedFiles;
+	
 	public PullRequestMergePreviewCalculated(PullRequest request) {
 		super(null, new Date(), request);
 	}
@@ -23,6 +27,21 @@ public class PullRequestMergePreviewCalculated extends PullRequestEvent implemen
 		return activity;
 	}
 
+	/**
+	 * Get files changed by the pull request against its target branch. Result is cached 
+	 * so that multiple listeners of this event do not need to calculate changed files 
+	 * repeatedly
+	 */
+	public Collection<String> getChangedFiles() {
+		if (changedFiles == null) {
+			PullRequest request = getRequest();
+			changedFiles = GitUtils.getChangedFiles(request.getTargetProject().getRepository(), 
+					request.getTarget().getObjectId(), 
+					ObjectId.fromString(request.getLastMergePreview().getMergeCommitHash()));
+		}
+		return changedFiles;
+	}
+	
 	@Override
 	public ProjectScopedCommit getCommit() {
 		MergePreview mergePreview = getRequest().getMergePreview();
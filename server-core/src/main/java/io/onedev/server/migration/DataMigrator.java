@@ -6,16 +6,21 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.TreeSet;
 import java.util.UUID;
 
 import javax.inject.Singleton;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.dom4j.Element;
@@ -2332,4 +2337,73 @@ public class DataMigrator {
 		}
 	}
 	
+	// Add daily build metric rollups, which are backfilled on startup
+	private void migrate50(File dataDir, Stack<Integer> versions) {
+	}
+	
+	// Add hash of non-secret build params, which is unique with project, commit, job and ref
+	private void migrate51(File dataDir, Stack<Integer> versions) {
+		Map<String, Map<String, List<String>>> buildParams = new HashMap<>();
+		for (File file: dataDir.listFiles()) {
+			if (file.getName().startsWith("BuildParams.xml")) {
+				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
+				for (Element element: dom.getRootElement().elements()) {
+					if (!element.elementTextTrim("type").equals("Secret")) {
+						Map<String, List<String>> paramMap = buildParams.computeIfAbsent(
+								element.elementTextTrim("build"), k->new HashMap<>());
+						paramMap.computeIfAbsent(element.elementText("name"), k->new ArrayList<>())
+								.add(element.elementText("value"));
+					}
+				}
+			}
+		}
+		
+		Set<String> buildKeys = new HashSet<>();
+		for (File file: dataDir.listFiles()) {
+			if (file.getName().startsWith("Builds.xml")) {
+				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
+				for (Element element: dom.getRootElement().elements()) {
+					String buildId = element.elementTextTrim("id");
+					Map<String, List<String>> paramMap = buildParams.get(buildId);
+					if (paramMap == null)
+						paramMap = new HashMap<>();
+					
+					/*
+					 * Hash is calculated the same way as Build.getParamsHash at time 
+					 * of this migration
+					 */
+					StringBuilder builder = new StringBuilder();
+					for (String name: new TreeSet<>(paramMap.keySet())) {
+						List<String> values = new ArrayList<>(paramMap.get(name));
+						if (values.isEmpty())
+							values.add(null);
+						values.sort(Comparator.nullsFirst(Comparator.naturalOrder()));
+						builder.append(name.length()).append(":").append(name).append(values.size()).append(";");
+						for (String value: values) {
+							if (value != null)
+								builder.append(value.length()).append(":").append(value);
+							else
+								builder.append("-;");
+						}
+					}
+					String paramsHash = DigestUtils.sha1Hex(builder.toString());
+					
+					/*
+					 * Builds with same params might exist before, for instance when 
+					 * resubmitted with different params. Make them distinct to satisfy 
+					 * the unique constraint
+					 */
+					String buildKey = element.elementTextTrim("project") + ":" 
+							+ element.elementTextTrim("commitHash") + ":" 
+							+ element.elementText("jobName") + ":" 
+							+ element.elementText("refName") + ":" + paramsHash;
+					if (!buildKeys.add(buildKey))
+						paramsHash += ":" + buildId;
+					element.addElement("paramsHash").setText(paramsHash);
+				}
+				dom.writeToFile(file, false);
+			}
+		}
+	}
+	
 }
@@ -6,6 +6,7 @@ import static io.onedev.server.model.Build.PROP_FINISH_DATE;
 import static io.onedev.server.model.Build.PROP_FINISH_DAY;
 import static io.onedev.server.model.Build.PROP_JOB;
 import static io.onedev.server.model.Build.PROP_NUMBER;
+import static io.onedev.server.model.Build.PROP_PARAMS_HASH;
 import static io.onedev.server.model.Build.PROP_PENDING_DATE;
 import static io.onedev.server.model.Build.PROP_REF_NAME;
 import static io.onedev.server.model.Build.PROP_RUNNING_DATE;
@@ -33,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -48,6 +50,7 @@ import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -77,6 +80,7 @@ import io.onedev.server.model.support.BuildMetric;
 import io.onedev.server.model.support.build.JobSecret;
 import io.onedev.server.model.support.inputspec.SecretInput;
 import io.onedev.server.search.entity.EntityCriteria;
+import io.onedev.server.storage.ArtifactStorageManager;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.BeanUtils;
 import io.onedev.server.util.CollectionUtils;
@@ -110,7 +114,8 @@ import io.onedev.server.web.util.WicketUtils;
 				@Index(columnList=PROP_RUNNING_DATE), @Index(columnList=PROP_FINISH_DATE), 
 				@Index(columnList=PROP_FINISH_DAY), @Index(columnList=PROP_VERSION), 
 				@Index(columnList="o_numberScope_id"), @Index(columnList="o_project_id, " + PROP_COMMIT)},
-		uniqueConstraints={@UniqueConstraint(columnNames={"o_numberScope_id", PROP_NUMBER})}
+		uniqueConstraints={@UniqueConstraint(columnNames={"o_numberScope_id", PROP_NUMBER}), 
+				@UniqueConstraint(columnNames={"o_project_id", PROP_COMMIT, PROP_JOB, PROP_REF_NAME, PROP_PARAMS_HASH})}
 )
 public class Build extends AbstractEntity implements Referenceable {
 
@@ -184,6 +189,8 @@ public class Build extends AbstractEntity implements Referenceable {
 	
 	public static final String PROP_PARAMS = "params";
 	
+	public static final String PROP_PARAMS_HASH = "paramsHash";
+	
 	public static final String NAME_DEPENDENCIES = "Dependencies";
 	
 	public static final String PROP_DEPENDENCIES = "dependencies";
@@ -316,6 +323,13 @@ public class Build extends AbstractEntity implements Referenceable {
 	@OneToMany(mappedBy="build", cascade=CascadeType.REMOVE)
 	private Collection<BuildParam> params = new ArrayList<>();
 	
+	/*
+	 * Hash of non-secret params, so that build with same params can be looked up via 
+	 * index, and is guaranteed to be unique by database
+	 */
+	@Column(nullable=false)
+	private String paramsHash;
+	
 	@OneToMany(mappedBy="dependent", cascade=CascadeType.REMOVE)
 	private Collection<BuildDependence> dependencies = new ArrayList<>();
 	
@@ -559,6 +573,53 @@ public class Build extends AbstractEntity implements Referenceable {
 		this.params = params;
 	}
 	
+	public String getParamsHash() {
+		return paramsHash;
+	}
+
+	public void setParamsHash(String paramsHash) {
+		this.paramsHash = paramsHash;
+	}
+	
+	/**
+	 * Update params hash from current params. This should be called whenever params 
+	 * of the build are changed
+	 */
+	public void updateParamsHash() {
+		Map<String, List<String>> paramMap = new HashMap<>();
+		for (BuildParam param: getParams()) {
+			if (!param.getType().equals(ParamSpec.SECRET))
+				paramMap.computeIfAbsent(param.getName(), k->new ArrayList<>()).add(param.getValue());
+		}
+		paramsHash = getParamsHash(paramMap);
+	}
+	
+	/**
+	 * Calculate canonical hash of specified params. Order of param names and values 
+	 * does not matter, and a param without values is treated the same as a param with 
+	 * a single <tt>null</tt> value, which is how it is stored
+	 * 
+	 * @param paramMap
+	 * 			map of param name to param values. Secret params should be excluded
+	 */
+	public static String getParamsHash(Map<String, List<String>> paramMap) {
+		StringBuilder builder = new StringBuilder();
+		for (String name: new TreeSet<>(paramMap.keySet())) {
+			List<String> values = new ArrayList<>(paramMap.get(name));
+			if (values.isEmpty())
+				values.add(null);
+			values.sort(Comparator.nullsFirst(Comparator.naturalOrder()));
+			builder.append(name.length()).append(":").append(name).append(values.size()).append(";");
+			for (String value: values) {
+				if (value != null)
+					builder.append(value.length()).append(":").append(value);
+				else
+					builder.append("-;");
+			}
+		}
+		return DigestUtils.sha1Hex(builder.toString());
+	}
+	
 	public Collection<BuildDependence> getDependencies() {
 		return dependencies;
 	}
@@ -843,17 +904,10 @@ public class Build extends AbstractEntity implements Referenceable {
 
 			@Override
 			public Void call() throws Exception {
-				File artifactsDir = getArtifactsDir();
-				FileUtils.createDir(artifactsDir);
+				FileUtils.createDir(getArtifactsDir());
 				PatternSet patternSet = PatternSet.parse(artifacts);
-				int baseLen = workspaceDir.getAbsolutePath().length() + 1;
-				for (File file: patternSet.listFiles(workspaceDir)) {
-					try {
-						FileUtils.copyFile(file, new File(artifactsDir, file.getAbsolutePath().substring(baseLen)));
-					} catch (IOException e) {
-						throw new RuntimeException(e);
-					}
-				}
+				OneDev.getInstance(ArtifactStorageManager.class).publish(
+						Build.this, workspaceDir, patternSet.listFiles(workspaceDir));
 				return null;
 			}
 			
@@ -881,26 +935,8 @@ public class Build extends AbstractEntity implements Referenceable {
 	}
 	
 	public void retrieveArtifacts(Build dependency, String artifacts, File workspaceDir) {
-		LockUtils.read(dependency.getArtifactsLockKey(), new Callable<Void>() {
-
-			@Override
-			public Void call() throws Exception {
-				File artifactsDir = dependency.getArtifactsDir();
-				if (artifactsDir.exists()) {
-					PatternSet patternSet = PatternSet.parse(artifacts);
-					int baseLen = artifactsDir.getAbsolutePath().length() + 1;
-					for (File file: patternSet.listFiles(artifactsDir)) {
-						try {
-							FileUtils.copyFile(file, new File(workspaceDir, file.getAbsolutePath().substring(baseLen)));
-						} catch (IOException e) {
-							throw new RuntimeException(e);
-						}
-					}
-				}
-				return null;
-			}
-			
-		});
+		OneDev.getInstance(ArtifactStorageManager.class).retrieve(
+				dependency, PatternSet.parse(artifacts), workspaceDir);
 	}
 	
 	public String getArtifactsLockKey() {
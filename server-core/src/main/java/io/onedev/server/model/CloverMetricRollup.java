@@ -0,0 +1,96 @@
+package io.onedev.server.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import io.onedev.server.model.support.BuildMetricRollup;
+
+@Entity
+@Table(indexes={@Index(columnList="o_project_id"), @Index(columnList=BuildMetricRollup.PROP_JOB), 
+		@Index(columnList=BuildMetricRollup.PROP_REPORT), @Index(columnList=BuildMetricRollup.PROP_DAY)})
+public class CloverMetricRollup extends BuildMetricRollup<CloverMetric> {
+
+	private static final long serialVersionUID = 1L;
+	
+	private long methodCoverage;
+	
+	private long statementCoverage;
+	
+	private long branchCoverage;
+	
+	private long lineCoverage;
+	
+	private long totalMethods;
+	
+	private long totalStatements;
+	
+	private long totalBranches;
+	
+	private long totalLines;
+	
+	public long getMethodCoverage() {
+		return methodCoverage;
+	}
+
+	public void setMethodCoverage(long methodCoverage) {
+		this.methodCoverage = methodCoverage;
+	}
+
+	public long getStatementCoverage() {
+		return statementCoverage;
+	}
+
+	public void setStatementCoverage(long statementCoverage) {
+		this.statementCoverage = statementCoverage;
+	}
+
+	public long getBranchCoverage() {
+		return branchCoverage;
+	}
+
+	public void setBranchCoverage(long branchCoverage) {
+		this.branchCoverage = branchCoverage;
+	}
+
+	public long getLineCoverage() {
+		return lineCoverage;
+	}
+
+	public void setLineCoverage(long lineCoverage) {
+		this.lineCoverage = lineCoverage;
+	}
+
+	public long getTotalMethods() {
+		return totalMethods;
+	}
+
+	public void setTotalMethods(long totalMethods) {
+		this.totalMethods = totalMethods;
+	}
+
+	public long getTotalStatements() {
+		return totalStatements;
+	}
+
+	public void setTotalStatements(long totalStatements) {
+		this.totalStatements = totalStatements;
+	}
+
+	public long getTotalBranches() {
+		return totalBranches;
+	}
+
+	public void setTotalBranches(long totalBranches) {
+		this.totalBranches = totalBranches;
+	}
+
+	public long getTotalLines() {
+		return totalLines;
+	}
+
+	public void setTotalLines(long totalLines) {
+		this.totalLines = totalLines;
+	}
+	
+}
@@ -0,0 +1,66 @@
+package io.onedev.server.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import io.onedev.server.model.support.BuildMetricRollup;
+
+@Entity
+@Table(indexes={@Index(columnList="o_project_id"), @Index(columnList=BuildMetricRollup.PROP_JOB), 
+		@Index(columnList=BuildMetricRollup.PROP_REPORT), @Index(columnList=BuildMetricRollup.PROP_DAY)})
+public class JestTestMetricRollup extends BuildMetricRollup<JestTestMetric> {
+
+	private static final long serialVersionUID = 1L;
+	
+	private long testSuiteSuccessRate;
+	
+	private long testCaseSuccessRate;
+	
+	private long numOfTestSuites;
+	
+	private long numOfTestCases;
+	
+	private long totalTestDuration;
+	
+	public long getTestSuiteSuccessRate() {
+		return testSuiteSuccessRate;
+	}
+
+	public void setTestSuiteSuccessRate(long testSuiteSuccessRate) {
+		this.testSuiteSuccessRate = testSuiteSuccessRate;
+	}
+
+	public long getTestCaseSuccessRate() {
+		return testCaseSuccessRate;
+	}
+
+	public void setTestCaseSuccessRate(long testCaseSuccessRate) {
+		this.testCaseSuccessRate = testCaseSuccessRate;
+	}
+
+	public long getNumOfTestSuites() {
+		return numOfTestSuites;
+	}
+
+	public void setNumOfTestSuites(long numOfTestSuites) {
+		this.numOfTestSuites = numOfTestSuites;
+	}
+
+	public long getNumOfTestCases() {
+		return numOfTestCases;
+	}
+
+	public void setNumOfTestCases(long numOfTestCases) {
+		this.numOfTestCases = numOfTestCases;
+	}
+
+	public long getTotalTestDuration() {
+		return totalTestDuration;
+	}
+
+	public void setTotalTestDuration(long totalTestDuration) {
+		this.totalTestDuration = totalTestDuration;
+	}
+	
+}
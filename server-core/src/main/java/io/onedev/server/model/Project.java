@@ -258,6 +258,12 @@ public class Project extends AbstractEntity {
 	@OneToMany(mappedBy="project", cascade=CascadeType.REMOVE)
 	private Collection<Milestone> milestones = new ArrayList<>();
 	
+	@OneToMany(mappedBy="project", cascade=CascadeType.REMOVE)
+	private Collection<JestTestMetricRollup> jestTestMetricRollups = new ArrayList<>();
+	
+	@OneToMany(mappedBy="project", cascade=CascadeType.REMOVE)
+	private Collection<CloverMetricRollup> cloverMetricRollups = new ArrayList<>();
+	
 	private boolean issueManagementEnabled = true;
 	
 	@Lob
@@ -700,7 +706,9 @@ public class Project extends AbstractEntity {
 	 * 			commit id to get build spec for 
 	 * @return
 	 * 			build spec of specified commit, or <tt>null</tt> if no build spec is defined and 
-	 * 			auto-detection also can not provide an appropriate build spec  
+	 * 			auto-detection also can not provide an appropriate build spec. Returned build 
+	 * 			spec is shared and must not be modified, use {@link BuildSpec#copy()} to get 
+	 * 			a modifiable copy
 	 * @throws
 	 * 			Exception when build spec is defined but not valid
 	 */
@@ -710,21 +718,24 @@ public class Project extends AbstractEntity {
 			buildSpecCache = new HashMap<>();
 		Optional<BuildSpec> buildSpec = buildSpecCache.get(commitId);
 		if (buildSpec == null) {
-			Blob blob = getBlob(new BlobIdent(commitId.name(), BuildSpec.BLOB_PATH, FileMode.TYPE_FILE), false);
-			if (blob != null) {  
-				buildSpec = Optional.fromNullable(BuildSpec.parse(blob.getBytes()));
-			} else { 
-				Blob oldBlob = getBlob(new BlobIdent(commitId.name(), ".onedev-buildspec", FileMode.TYPE_FILE), false);
-				if (oldBlob != null)
-					buildSpec = Optional.fromNullable(BuildSpec.parse(oldBlob.getBytes()));
-				else
-					buildSpec = Optional.absent();
-			}
+			Blob blob = getBuildSpecBlob(commitId);
+			if (blob != null)   
+				buildSpec = Optional.fromNullable(BuildSpec.get(blob));
+			else 
+				buildSpec = Optional.absent();
 			buildSpecCache.put(commitId, buildSpec);
 		}
 		return buildSpec.orNull();
 	}
 	
+	@Nullable
+	public Blob getBuildSpecBlob(ObjectId commitId) {
+		Blob blob = getBlob(new BlobIdent(commitId.name(), BuildSpec.BLOB_PATH, FileMode.TYPE_FILE), false);
+		if (blob == null) 
+			blob = getBlob(new BlobIdent(commitId.name(), ".onedev-buildspec", FileMode.TYPE_FILE), false);
+		return blob;
+	}
+	
 	public List<String> getJobNames() {
 		List<String> jobNames = new ArrayList<>();
 		if (getDefaultBranch() != null) {
@@ -1096,6 +1107,22 @@ public class Project extends AbstractEntity {
 		this.userCommitQuerySettings = userCommitQuerySettings;
 	}
 
+	public Collection<JestTestMetricRollup> getJestTestMetricRollups() {
+		return jestTestMetricRollups;
+	}
+
+	public void setJestTestMetricRollups(Collection<JestTestMetricRollup> jestTestMetricRollups) {
+		this.jestTestMetricRollups = jestTestMetricRollups;
+	}
+
+	public Collection<CloverMetricRollup> getCloverMetricRollups() {
+		return cloverMetricRollups;
+	}
+
+	public void setCloverMetricRollups(Collection<CloverMetricRollup> cloverMetricRollups) {
+		this.cloverMetricRollups = cloverMetricRollups;
+	}
+
 	public Collection<PullRequestQuerySetting> getUserPullRequestQuerySettings() {
 		return userPullRequestQuerySettings;
 	}
@@ -1391,13 +1418,16 @@ public class Project extends AbstractEntity {
 	}
 
 	public boolean isCommitOnBranches(@Nullable ObjectId commitId, String branches) {
+		return isCommitOnBranches(commitId, PatternSet.parse(branches));
+	}
+	
+	public boolean isCommitOnBranches(@Nullable ObjectId commitId, PatternSet branchPatterns) {
 		Matcher matcher = new PathMatcher();
 		if (commitId != null) {
 			CommitInfoManager commitInfoManager = OneDev.getInstance(CommitInfoManager.class);
 			Collection<ObjectId> descendants = commitInfoManager.getDescendants(this, Sets.newHashSet(commitId));
 			descendants.add(commitId);
 		
-			PatternSet branchPatterns = PatternSet.parse(branches);
 			for (RefInfo ref: getBranchRefInfos()) {
 				String branchName = Preconditions.checkNotNull(GitUtils.ref2branch(ref.getRef().getName()));
 				if (descendants.contains(ref.getPeeledObj()) && branchPatterns.matches(matcher, branchName))
@@ -1405,7 +1435,7 @@ public class Project extends AbstractEntity {
 			}
 			return false;
 		} else {
-			return PatternSet.parse(branches).matches(matcher, "master");
+			return branchPatterns.matches(matcher, "master");
 		}
 	}
 	
@@ -0,0 +1,96 @@
+package io.onedev.server.model.support;
+
+import javax.persistence.Column;
+import javax.persistence.FetchType;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.MappedSuperclass;
+
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Project;
+
+/**
+ * Daily rollup of build metrics of type <tt>T</tt>, grouped by project, job and report. 
+ * Subclasses should define a <tt>long</tt> property for each metric indicator of 
+ * <tt>T</tt> with the same name, holding sum of indicator values of metrics in the 
+ * group, so that average of the indicator can be calculated together with 
+ * {@link #getCount()}.
+ */
+@MappedSuperclass
+public abstract class BuildMetricRollup<T extends BuildMetric> extends AbstractEntity {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String PROP_PROJECT = "project";
+	
+	public static final String PROP_JOB = "jobName";
+	
+	public static final String PROP_REPORT = "reportName";
+	
+	public static final String PROP_DAY = "day";
+	
+	public static final String PROP_COUNT = "count";
+	
+	@ManyToOne(fetch=FetchType.LAZY)
+	@JoinColumn(nullable=false)
+	private Project project;
+	
+	@Column(nullable=false)
+	private String jobName;
+	
+	@Column(nullable=false)
+	private String reportName;
+	
+	private int day;
+	
+	private int count;
+
+	public Project getProject() {
+		return project;
+	}
+
+	public void setProject(Project project) {
+		this.project = project;
+	}
+
+	public String getJobName() {
+		return jobName;
+	}
+
+	public void setJobName(String jobName) {
+		this.jobName = jobName;
+	}
+
+	public String getReportName() {
+		return reportName;
+	}
+
+	public void setReportName(String reportName) {
+		this.reportName = reportName;
+	}
+
+	/**
+	 * @return
+	 * 			value of finish day of builds in this rollup, refer to {@link io.onedev.server.util.Day#getValue()}
+	 */
+	public int getDay() {
+		return day;
+	}
+
+	public void setDay(int day) {
+		this.day = day;
+	}
+
+	/**
+	 * @return
+	 * 			number of metrics in this rollup
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(int count) {
+		this.count = count;
+	}
+	
+}
@@ -134,7 +134,7 @@ public class GroovyScript implements Serializable {
 	}
 	
 	public void onRenameProject(String oldName, String newName) {
-		PatternSet patternSet = PatternSet.parse(getAllowedProjects());
+		PatternSet patternSet = PatternSet.parse(getAllowedProjects()).copy();
 		if (patternSet.getIncludes().remove(oldName))
 			patternSet.getIncludes().add(newName);
 		if (patternSet.getExcludes().remove(oldName))
@@ -42,6 +42,7 @@ public class AutoDiscoveredJobExecutor extends JobExecutor {
 					+ EditableUtils.getDisplayName(jobExecutor.getClass()));
 			jobExecutor.setName(getName());
 			jobExecutor.setCacheTTL(getCacheTTL());
+			jobExecutor.setCacheSizeLimit(getCacheSizeLimit());
 			jobExecutor.setEnabled(isEnabled());
 			jobExecutor.setJobMatch(getJobMatch());
 			jobExecutor.execute(jobToken, context);
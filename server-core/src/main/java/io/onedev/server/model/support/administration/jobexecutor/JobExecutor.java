@@ -4,6 +4,8 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.validation.constraints.Min;
+
 import org.hibernate.validator.constraints.NotEmpty;
 
 import edu.emory.mathcs.backport.java.util.Collections;
@@ -33,6 +35,8 @@ public abstract class JobExecutor implements Serializable {
 	
 	private int cacheTTL = 7;
 	
+	private int cacheSizeLimit;
+	
 	public boolean isEnabled() {
 		return enabled;
 	}
@@ -83,6 +87,19 @@ public abstract class JobExecutor implements Serializable {
 		this.cacheTTL = cacheTTL;
 	}
 	
+	@Editable(order=50010, group="More Settings", description="Optionally specify maximum total size of job "
+			+ "caches in gigabytes on each host running jobs. When exceeded, least recently used caches not "
+			+ "in use will be removed. Leave it as <tt>0</tt> to not limit cache size. This setting only "
+			+ "takes effect for executors able to measure cache sizes")
+	@Min(0)
+	public int getCacheSizeLimit() {
+		return cacheSizeLimit;
+	}
+
+	public void setCacheSizeLimit(int cacheSizeLimit) {
+		this.cacheSizeLimit = cacheSizeLimit;
+	}
+	
 	public abstract void execute(String jobToken, JobContext context);
 
 	public final boolean isApplicable(Build build) {
@@ -97,10 +114,7 @@ public abstract class JobExecutor implements Serializable {
 	}
 	
 	public void onRenameProject(String oldName, String newName) {
-		io.onedev.server.util.jobmatch.JobMatch parsedJobMatch = 
-				io.onedev.server.util.jobmatch.JobMatch.parse(this.jobMatch);
-		parsedJobMatch.onRenameProject(oldName, newName);
-		jobMatch = parsedJobMatch.toString();
+		jobMatch = io.onedev.server.util.jobmatch.JobMatch.onRenameProject(jobMatch, oldName, newName);
 	}
 
 	public Usage onDeleteUser(String userName, int executorIndex) {
@@ -111,10 +125,7 @@ public abstract class JobExecutor implements Serializable {
 	}
 	
 	public void onRenameUser(String oldName, String newName) {
-		io.onedev.server.util.jobmatch.JobMatch parsedJobMatch = 
-				io.onedev.server.util.jobmatch.JobMatch.parse(this.jobMatch);
-		parsedJobMatch.onRenameUser(oldName, newName);
-		jobMatch = parsedJobMatch.toString();
+		jobMatch = io.onedev.server.util.jobmatch.JobMatch.onRenameUser(jobMatch, oldName, newName);
 	}
 	
 }
@@ -2,6 +2,8 @@ package io.onedev.server.model.support.build;
 
 import java.io.Serializable;
 
+import javax.validation.constraints.Min;
+
 import io.onedev.server.web.editable.annotation.BuildQuery;
 import io.onedev.server.web.editable.annotation.Editable;
 import io.onedev.server.web.editable.annotation.NameOfEmptyValue;
@@ -28,6 +30,7 @@ public class BuildPreservation implements Serializable {
 
 	@Editable(order=200, description="Number of builds to preserve")
 	@NameOfEmptyValue("Unlimited")
+	@Min(1)
 	public Integer getCount() {
 		return count;
 	}
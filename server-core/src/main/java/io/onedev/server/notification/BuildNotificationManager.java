@@ -12,11 +12,14 @@ import javax.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.entitymanager.UrlManager;
 import io.onedev.server.entitymanager.UserManager;
 import io.onedev.server.event.build.BuildEvent;
+import io.onedev.server.event.build.BuildsSubmitted;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.BuildQuerySetting;
 import io.onedev.server.model.Project;
@@ -72,10 +75,7 @@ public class BuildNotificationManager extends AbstractNotificationManager {
 		mailManager.sendMailAsync(emails, subject, getHtmlBody(null, url), getTextBody(null, url));
 	}
 	
-	@Sessional
-	@Listen
-	public void on(BuildEvent event) {
-		Project project = event.getProject();
+	private Map<User, Collection<String>> getProjectSubscribedQueryStrings(Project project) {
 		Map<User, Collection<String>> subscribedQueryStrings = new HashMap<>();
 		for (BuildQuerySetting setting: project.getUserBuildQuerySettings()) {
 			for (String name: setting.getQuerySubscriptionSupport().getQuerySubscriptions()) {
@@ -87,29 +87,11 @@ public class BuildNotificationManager extends AbstractNotificationManager {
 						NamedQuery.find(setting.getUserQueries(), name));
 			}
 		}
-
-		Build build = event.getBuild();
-		Collection<String> notifyEmails = new HashSet<>();
-		for (Map.Entry<User, Collection<String>> entry: subscribedQueryStrings.entrySet()) {
-			User user = entry.getKey();
-			for (String queryString: entry.getValue()) {
-				User.push(user);
-				try {
-					if (BuildQuery.parse(event.getProject(), queryString, true, true).matches(build)) {
-						notifyEmails.add(user.getEmail());
-						break;
-					}
-				} catch (Exception e) {
-					String message = String.format("Error processing build subscription (user: %s, build: %s, query: %s)", 
-							user.getName(), build.getFQN(), queryString);
-					logger.error(message, e);
-				} finally {
-					User.pop();
-				}
-			}
-		}
-		
-		subscribedQueryStrings.clear();
+		return subscribedQueryStrings;
+	}
+	
+	private Map<User, Collection<String>> getGlobalSubscribedQueryStrings() {
+		Map<User, Collection<String>> subscribedQueryStrings = new HashMap<>();
 		for (User user: userManager.query()) {
 			for (String name: user.getBuildQuerySetting().getQuerySubscriptionSupport().getQuerySubscriptions()) {
 				fillSubscribedQueryStrings(subscribedQueryStrings, user, 
@@ -120,13 +102,17 @@ public class BuildNotificationManager extends AbstractNotificationManager {
 						NamedQuery.find(user.getBuildQuerySetting().getUserQueries(), name));
 			}
 		}
-
+		return subscribedQueryStrings;
+	}
+	
+	private void fillNotifyEmails(Collection<String> notifyEmails, Build build, @Nullable Project project, 
+			Map<User, Collection<String>> subscribedQueryStrings) {
 		for (Map.Entry<User, Collection<String>> entry: subscribedQueryStrings.entrySet()) {
 			User user = entry.getKey();
 			for (String queryString: entry.getValue()) {
 				User.push(user);
 				try {
-					if (BuildQuery.parse(null, queryString, true, true).matches(build)) {
+					if (BuildQuery.parse(project, queryString, true, true).matches(build)) {
 						notifyEmails.add(user.getEmail());
 						break;
 					}
@@ -139,8 +125,32 @@ public class BuildNotificationManager extends AbstractNotificationManager {
 				}
 			}
 		}
-		
-		notify(build, notifyEmails);
+	}
+	
+	private void notify(Project project, Collection<Build> builds) {
+		Map<User, Collection<String>> projectSubscribedQueryStrings = getProjectSubscribedQueryStrings(project);
+		Map<User, Collection<String>> globalSubscribedQueryStrings = getGlobalSubscribedQueryStrings();
+		for (Build build: builds) {
+			Collection<String> notifyEmails = new HashSet<>();
+			fillNotifyEmails(notifyEmails, build, project, projectSubscribedQueryStrings);
+			fillNotifyEmails(notifyEmails, build, null, globalSubscribedQueryStrings);
+			notify(build, notifyEmails);
+		}
+	}
+	
+	@Sessional
+	@Listen
+	public void on(BuildEvent event) {
+		notify(event.getProject(), Lists.newArrayList(event.getBuild()));
+	}
+	
+	/*
+	 * Subscriptions are resolved once for the whole batch instead of once per build
+	 */
+	@Sessional
+	@Listen
+	public void on(BuildsSubmitted event) {
+		notify(event.getProject(), event.getBuilds());
 	}
 	
 }
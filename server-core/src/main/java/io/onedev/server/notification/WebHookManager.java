@@ -25,6 +25,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.server.event.ProjectEvent;
+import io.onedev.server.event.build.BuildSubmitted;
+import io.onedev.server.event.build.BuildsSubmitted;
+import io.onedev.server.model.Build;
 import io.onedev.server.model.support.WebHook;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.util.jackson.RestView;
@@ -50,6 +53,18 @@ public class WebHookManager {
 	@Sessional
 	@Listen
 	public void on(ProjectEvent event) {
+		/*
+		 * Web hook receivers expect one payload per build, so expand the batch 
+		 */
+		if (event instanceof BuildsSubmitted) {
+			for (Build build: ((BuildsSubmitted) event).getBuilds())
+				deliver(new BuildSubmitted(build));
+		} else {
+			deliver(event);
+		}
+	}
+	
+	private void deliver(ProjectEvent event) {
 		String jsonOfEvent;
 		try {
 			jsonOfEvent = mapper.writeValueAsString(event);
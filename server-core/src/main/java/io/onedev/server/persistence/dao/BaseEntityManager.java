@@ -33,6 +33,16 @@ public abstract class BaseEntityManager<T extends AbstractEntity> implements Ent
     }
 	
 	protected long getNextNumber(Project numberScope, Query<?> maxNumberQuery) {
+		return getNextNumbers(numberScope, maxNumberQuery, 1);
+	}
+	
+	/**
+	 * Reserve specified count of consecutive numbers in specified number scope
+	 * 
+	 * @return
+	 * 			first number of the reserved range
+	 */
+	protected long getNextNumbers(Project numberScope, Query<?> maxNumberQuery, int count) {
 		AtomicLong nextNumber;
 		synchronized (nextNumbers) {
 			nextNumber = nextNumbers.get(numberScope.getId());
@@ -58,7 +68,7 @@ public abstract class BaseEntityManager<T extends AbstractEntity> implements Ent
 				}
 			}
 		} 
-		return nextNumber.getAndIncrement();
+		return nextNumber.getAndAdd(count);
 	}
 	
 	@Override
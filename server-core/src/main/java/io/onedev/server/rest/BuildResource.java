@@ -1,5 +1,6 @@
 package io.onedev.server.rest;
 
+import java.util.ArrayList;
 import java.util.Collection;
 
 import javax.inject.Inject;
@@ -18,6 +19,7 @@ import javax.ws.rs.core.UriInfo;
 import org.apache.shiro.authz.UnauthorizedException;
 import org.hibernate.criterion.Restrictions;
 
+import io.onedev.server.buildspec.job.JobManager;
 import io.onedev.server.entitymanager.BuildManager;
 import io.onedev.server.model.Build;
 import io.onedev.server.persistence.dao.EntityCriteria;
@@ -32,9 +34,12 @@ public class BuildResource {
 
 	private final BuildManager buildManager;
 	
+	private final JobManager jobManager;
+	
 	@Inject
-	public BuildResource(BuildManager buildManager) {
+	public BuildResource(BuildManager buildManager, JobManager jobManager) {
 		this.buildManager = buildManager;
+		this.jobManager = jobManager;
 	}
 	
 	@ValidQueryParams
@@ -76,4 +81,20 @@ public class BuildResource {
     		return build;
     }
 	
+	@Path("/{buildId}/remaining-dependencies")
+    @GET
+    public Collection<Build> getRemainingDependencies(@PathParam("buildId") Long buildId) {
+    	Build build = buildManager.load(buildId);
+    	if (!SecurityUtils.canAccess(build.getProject()))
+			throw new UnauthorizedException("Unauthorized access to project " + build.getProject().getName());
+    	
+    	Collection<Build> dependencies = new ArrayList<>();
+    	for (Long dependencyId: jobManager.getRemainingDependencies(buildId)) {
+    		Build dependency = buildManager.get(dependencyId);
+    		if (dependency != null)
+    			dependencies.add(dependency);
+    	}
+    	return dependencies;
+    }
+	
 }
@@ -0,0 +1,75 @@
+package io.onedev.server.rest;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+import io.onedev.server.search.code.SearchManager;
+import io.onedev.server.search.code.hit.ProjectScopedQueryHit;
+import io.onedev.server.search.code.query.BlobQuery;
+import io.onedev.server.search.code.query.FileQuery;
+import io.onedev.server.search.code.query.TextQuery;
+import io.onedev.server.search.code.query.TooGeneralQueryException;
+
+/**
+ * Search code on default branches of all projects with code read permission
+ */
+@Path("/code-search")
+@Consumes(MediaType.WILDCARD)
+@Produces(MediaType.APPLICATION_JSON)
+@Singleton
+public class CodeSearchResource {
+
+	private static final long MAX_TIMEOUT = 30000;
+
+	private final SearchManager searchManager;
+
+	@Inject
+	public CodeSearchResource(SearchManager searchManager) {
+		this.searchManager = searchManager;
+	}
+
+	@GET
+    public List<ProjectScopedQueryHit> search(@QueryParam("term") String term,
+    		@QueryParam("type") @DefaultValue("text") String type,
+    		@QueryParam("regex") boolean regex, @QueryParam("wholeWord") boolean wholeWord,
+    		@QueryParam("caseSensitive") boolean caseSensitive, @QueryParam("fileNames") String fileNames,
+    		@QueryParam("count") Integer count, @QueryParam("timeout") Long timeout) {
+		if (term == null)
+			throw new BadRequestException("Query parameter 'term' is required");
+
+    	if (count == null || count <= 0 || count > RestConstants.PAGE_SIZE)
+    		count = RestConstants.PAGE_SIZE;
+    	if (timeout == null || timeout <= 0 || timeout > MAX_TIMEOUT)
+    		timeout = MAX_TIMEOUT;
+
+    	BlobQuery query;
+    	if (type.equals("text")) {
+    		query = new TextQuery.Builder().term(term).regex(regex).wholeWord(wholeWord)
+    				.caseSensitive(caseSensitive).fileNames(fileNames).count(count).build();
+    	} else if (type.equals("file")) {
+    		query = new FileQuery.Builder().fileNames(term).caseSensitive(caseSensitive)
+    				.count(count).build();
+    	} else {
+    		throw new BadRequestException("Unsupported search type: " + type);
+    	}
+
+    	try {
+			return searchManager.searchGlobally(query, timeout, null);
+		} catch (TooGeneralQueryException e) {
+			throw new BadRequestException("Search term is too general");
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+    }
+
+}
@@ -6,6 +6,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -22,6 +23,8 @@ import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.model.Project;
 import io.onedev.server.persistence.dao.EntityCriteria;
 import io.onedev.server.rest.jersey.ValidQueryParams;
+import io.onedev.server.search.code.IndexManager;
+import io.onedev.server.search.code.IndexStats;
 import io.onedev.server.security.SecurityUtils;
 
 @Path("/projects")
@@ -32,9 +35,12 @@ public class ProjectResource {
 
 	private final ProjectManager projectManager;
 	
+	private final IndexManager indexManager;
+	
 	@Inject
-	public ProjectResource(ProjectManager projectManager) {
+	public ProjectResource(ProjectManager projectManager, IndexManager indexManager) {
 		this.projectManager = projectManager;
+		this.indexManager = indexManager;
 	}
 	
 	@ValidQueryParams
@@ -70,4 +76,17 @@ public class ProjectResource {
     		return project;
     }
 	
+	@Path("/{projectId}/code-index-stats")
+    @GET
+    public IndexStats getCodeIndexStats(@PathParam("projectId") Long projectId) {
+    	Project project = projectManager.load(projectId);
+    	if (!SecurityUtils.canManage(project))
+			throw new UnauthorizedException("Unauthorized access to project " + project.getName());
+    	
+    	IndexStats stats = indexManager.getIndexStats(project);
+    	if (stats == null)
+    		throw new NotFoundException("Code of project " + project.getName() + " is not indexed yet");
+    	return stats;
+    }
+	
 }
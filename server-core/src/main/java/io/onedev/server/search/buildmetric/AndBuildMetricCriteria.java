@@ -26,6 +26,18 @@ public class AndBuildMetricCriteria extends BuildMetricCriteria {
 		return builder.and(predicates.toArray(new Predicate[0]));
 	}
 
+	@Override
+	public Predicate getRollupPredicate(Root<?> rollupRoot, CriteriaBuilder builder) {
+		List<Predicate> predicates = new ArrayList<>();
+		for (BuildMetricCriteria criteria: criterias) {
+			Predicate predicate = criteria.getRollupPredicate(rollupRoot, builder);
+			if (predicate == null)
+				return null;
+			predicates.add(predicate);
+		}
+		return builder.and(predicates.toArray(new Predicate[0]));
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return new AndBuildMetricCriteria(criterias).toStringWithoutParens();
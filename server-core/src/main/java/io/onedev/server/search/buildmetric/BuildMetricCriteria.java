@@ -2,6 +2,7 @@ package io.onedev.server.search.buildmetric;
 
 import java.io.Serializable;
 
+import javax.annotation.Nullable;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
@@ -22,6 +23,20 @@ public abstract class BuildMetricCriteria implements Serializable {
 
 	public abstract Predicate getPredicate(Root<?> metrixRoot, Join<?, ?> buildJoin, CriteriaBuilder builder);
 	
+	/**
+	 * Get predicate against daily rollups of build metrics
+	 * 
+	 * @param rollupRoot
+	 * 			root of {@link io.onedev.server.model.support.BuildMetricRollup}
+	 * @return
+	 * 			predicate against rollups, or <tt>null</tt> if this criteria involves 
+	 * 			dimensions not available in rollups
+	 */
+	@Nullable
+	public Predicate getRollupPredicate(Root<?> rollupRoot, CriteriaBuilder builder) {
+		return null;
+	}
+	
 	public static String quote(String value) {
 		return "\"" + StringUtils.escape(value, "\"") + "\"";
 	}
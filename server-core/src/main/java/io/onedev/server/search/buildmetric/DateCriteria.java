@@ -8,8 +8,12 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.joda.time.DateTime;
+
 import io.onedev.server.model.Build;
+import io.onedev.server.model.support.BuildMetricRollup;
 import io.onedev.server.search.entity.EntityQuery;
+import io.onedev.server.util.Day;
 
 public class DateCriteria extends BuildMetricCriteria {
 
@@ -36,6 +40,24 @@ public class DateCriteria extends BuildMetricCriteria {
 			return builder.greaterThan(attribute, date);
 	}
 
+	/*
+	 * Rollups can only be filtered by dates at start of a day, as builds finished 
+	 * in same day are rolled up together
+	 */
+	@Override
+	public Predicate getRollupPredicate(Root<?> rollupRoot, CriteriaBuilder builder) {
+		if (new DateTime(date).getMillisOfDay() == 0) {
+			Path<Integer> attribute = rollupRoot.get(BuildMetricRollup.PROP_DAY);
+			int day = new Day(date).getValue();
+			if (operator == BuildMetricQueryLexer.Until)
+				return builder.lessThan(attribute, day);
+			else
+				return builder.greaterThanOrEqualTo(attribute, day);
+		} else {
+			return null;
+		}
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return BuildMetricQuery.getRuleName(operator) + " " + quote(value);
@@ -20,6 +20,12 @@ public class NotBuildMetricCriteria extends BuildMetricCriteria {
 		return criteria.getPredicate(metricRoot, buildJoin, builder).not();
 	}
 
+	@Override
+	public Predicate getRollupPredicate(Root<?> rollupRoot, CriteriaBuilder builder) {
+		Predicate predicate = criteria.getRollupPredicate(rollupRoot, builder);
+		return predicate!=null? predicate.not(): null;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return new NotBuildMetricCriteria(criteria).toStringWithoutParens();
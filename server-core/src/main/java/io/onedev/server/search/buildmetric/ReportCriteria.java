@@ -7,6 +7,7 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import io.onedev.server.model.support.BuildMetric;
+import io.onedev.server.model.support.BuildMetricRollup;
 
 public class ReportCriteria extends BuildMetricCriteria {
 
@@ -25,6 +26,13 @@ public class ReportCriteria extends BuildMetricCriteria {
 		return builder.like(builder.lower(attribute), normalized);
 	}
 
+	@Override
+	public Predicate getRollupPredicate(Root<?> rollupRoot, CriteriaBuilder builder) {
+		Path<String> attribute = rollupRoot.get(BuildMetricRollup.PROP_REPORT);
+		String normalized = value.toLowerCase().replace("*", "%");
+		return builder.like(builder.lower(attribute), normalized);
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(BuildMetric.PROP_REPORT) + " " 
@@ -0,0 +1,105 @@
+package io.onedev.server.search.code;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterDirectoryReader;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * A view of the index only containing documents of blobs live at specified commit.
+ * Documents of other blobs are hidden via live docs of the segments, so that queries
+ * skip them before collecting.
+ */
+class CommitDirectoryReader extends FilterDirectoryReader {
+
+	private final Repository repository;
+
+	private final ObjectId commitId;
+
+	private final LiveBlobDocsCache liveBlobDocsCache;
+
+	public CommitDirectoryReader(DirectoryReader in, Repository repository, ObjectId commitId,
+			LiveBlobDocsCache liveBlobDocsCache) throws IOException {
+		super(in, new SubReaderWrapper() {
+
+			@Override
+			public LeafReader wrap(LeafReader reader) {
+				try {
+					return new CommitLeafReader(reader, liveBlobDocsCache.getLiveDocs(repository, reader, commitId));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+		});
+		this.repository = repository;
+		this.commitId = commitId;
+		this.liveBlobDocsCache = liveBlobDocsCache;
+	}
+
+	@Override
+	protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) throws IOException {
+		return new CommitDirectoryReader(in, repository, commitId, liveBlobDocsCache);
+	}
+
+	@Override
+	public CacheHelper getReaderCacheHelper() {
+		// documents visible here depend on the commit, so do not share cache with the
+		// underlying reader
+		return null;
+	}
+
+	private static class CommitLeafReader extends FilterLeafReader {
+
+		private final FixedBitSet liveDocs;
+
+		private final int numDocs;
+
+		public CommitLeafReader(LeafReader in, FixedBitSet liveBlobDocs) {
+			super(in);
+
+			Bits inLiveDocs = in.getLiveDocs();
+			if (inLiveDocs != null) {
+				liveDocs = liveBlobDocs.clone();
+				int doc = liveDocs.nextSetBit(0);
+				while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+					if (!inLiveDocs.get(doc))
+						liveDocs.clear(doc);
+					doc = doc+1<liveDocs.length()? liveDocs.nextSetBit(doc+1): DocIdSetIterator.NO_MORE_DOCS;
+				}
+			} else {
+				liveDocs = liveBlobDocs;
+			}
+			numDocs = liveDocs.cardinality();
+		}
+
+		@Override
+		public Bits getLiveDocs() {
+			return liveDocs;
+		}
+
+		@Override
+		public int numDocs() {
+			return numDocs;
+		}
+
+		@Override
+		public CacheHelper getCoreCacheHelper() {
+			return null;
+		}
+
+		@Override
+		public CacheHelper getReaderCacheHelper() {
+			return null;
+		}
+
+	}
+
+}
@@ -18,18 +18,22 @@ import static io.onedev.server.search.code.IndexConstants.MAX_INDEXABLE_SIZE;
 import static io.onedev.server.search.code.IndexConstants.NGRAM_SIZE;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.Serializable;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.lang.SerializationUtils;
 import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
@@ -43,13 +47,18 @@ import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.eclipse.jgit.lib.AnyObjectId;
@@ -61,6 +70,8 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.ScheduleBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,19 +87,25 @@ import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.model.Project;
 import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.ContentDetector;
 import io.onedev.server.util.IndexResult;
+import io.onedev.server.util.ServerConfig;
 import io.onedev.server.util.concurrent.Prioritized;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
 import io.onedev.server.util.work.BatchWorkManager;
 import io.onedev.server.util.work.BatchWorker;
 
 @Singleton
-public class DefaultIndexManager implements IndexManager {
+public class DefaultIndexManager implements IndexManager, SchedulableTask {
 	
 	private static final Logger logger = LoggerFactory.getLogger(DefaultIndexManager.class);
 
@@ -96,7 +113,19 @@ public class DefaultIndexManager implements IndexManager {
 	
 	private static final int BACKEND_INDEXING_PRIORITY = 50;
 	
-	private static final int DATA_VERSION = 5;
+	private static final int DATA_VERSION = 6;
+	
+	private static final int SEGMENTS_PER_TIER = 10;
+	
+	private static final double FLOOR_SEGMENT_MB = 4;
+	
+	private static final double MAX_MERGED_SEGMENT_MB = 2048;
+	
+	private static final double FORCE_MERGE_DELETES_PCT_ALLOWED = 5;
+	
+	private static final double RAM_BUFFER_SIZE_MB = 32;
+	
+	private static final int MAX_SEGMENTS_AFTER_OPTIMIZE = 5;
 	
 	private final StorageManager storageManager;
 	
@@ -108,14 +137,25 @@ public class DefaultIndexManager implements IndexManager {
 	
 	private final ListenerRegistry listenerRegistry;
 	
+	private final TaskScheduler taskScheduler;
+	
+	private final ServerConfig serverConfig;
+	
+	private final Map<Long, ProjectIndex> indexes = new ConcurrentHashMap<>();
+	
+	private String taskId;
+	
 	@Inject
 	public DefaultIndexManager(ListenerRegistry listenerRegistry, StorageManager storageManager, 
-			BatchWorkManager batchWorkManager, SessionManager sessionManager, ProjectManager projectManager) {
+			BatchWorkManager batchWorkManager, SessionManager sessionManager, ProjectManager projectManager, 
+			TaskScheduler taskScheduler, ServerConfig serverConfig) {
 		this.listenerRegistry = listenerRegistry;
 		this.storageManager = storageManager;
 		this.batchWorkManager = batchWorkManager;
 		this.sessionManager = sessionManager;
 		this.projectManager = projectManager;
+		this.taskScheduler = taskScheduler;
+		this.serverConfig = serverConfig;
 	}
 
 	private String getCommitIndexVersion(final IndexSearcher searcher, AnyObjectId commitId) throws IOException {
@@ -282,7 +322,7 @@ public class DefaultIndexManager implements IndexManager {
 								document.add(new StringField(fieldName, fieldValue, Store.NO));
 							}
 						}
-						byte[] bytesOfSymbols = SerializationUtils.serialize((Serializable) symbols);
+						byte[] bytesOfSymbols = SymbolListCodec.encode(symbols);
 						document.add(new StoredField(BLOB_SYMBOL_LIST.name(), bytesOfSymbols));
 					}
 				} 
@@ -320,40 +360,87 @@ public class DefaultIndexManager implements IndexManager {
 		};
 	}
 
-	private IndexResult doIndex(Project project, ObjectId commit, Directory directory, IndexSearcher searcher) {
-		IndexWriterConfig writerConfig = new IndexWriterConfig(new NGramAnalyzer(NGRAM_SIZE, NGRAM_SIZE));
-		writerConfig.setOpenMode(OpenMode.CREATE_OR_APPEND);
-		try (IndexWriter writer = new IndexWriter(directory, writerConfig)) {
-			try {
-				logger.debug("Indexing commit (project: {}, commit: {})", project.getName(), commit.getName());
-				IndexResult indexResult = index(project.getRepository(), commit, writer, searcher);
-				writer.commit();
-				return indexResult;
-			} catch (Exception e) {
-				writer.rollback();
-				throw ExceptionUtils.unchecked(e);
+	private Directory openDirectory(Long projectId) throws IOException {
+		File indexDir = storageManager.getProjectIndexDir(projectId);
+		if (serverConfig.isIndexMMap())
+			return new MMapDirectory(indexDir.toPath());
+		else
+			return FSDirectory.open(indexDir.toPath());
+	}
+	
+	@Nullable
+	private ProjectIndex getIndex(Long projectId, boolean createIfNotExist) throws IOException {
+		ProjectIndex index = indexes.get(projectId);
+		if (index == null) synchronized (indexes) {
+			index = indexes.get(projectId);
+			if (index == null) {
+				Directory directory = openDirectory(projectId);
+				if (createIfNotExist || DirectoryReader.indexExists(directory)) {
+					try {
+						index = new ProjectIndex(directory);
+					} catch (Exception e) {
+						directory.close();
+						throw e;
+					}
+					indexes.put(projectId, index);
+				} else {
+					directory.close();
+				}
 			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+		}
+		return index;
+	}
+	
+	private void closeIndex(Long projectId) {
+		synchronized (indexes) {
+			ProjectIndex index = indexes.remove(projectId);
+			if (index != null) 
+				index.close();
 		}
 	}
 	
 	private IndexResult doIndex(Project project, ObjectId commit) {
-		try (Directory directory = FSDirectory.open(storageManager.getProjectIndexDir(project.getId()).toPath())) {
-			if (DirectoryReader.indexExists(directory)) {
-				try (IndexReader reader = DirectoryReader.open(directory)) {
-					IndexSearcher searcher = new IndexSearcher(reader);
-					if (getIndexVersion().equals(getCommitIndexVersion(searcher, commit)))
-						return new IndexResult(0, 0);
-					else
-						return doIndex(project, commit, directory, searcher);
-				}
-			} else {
-				return doIndex(project, commit, directory, null);
-			}
+		ProjectIndex index;
+		try {
+			index = getIndex(project.getId(), true);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+		
+		try {
+			IndexSearcher searcher = index.searcherManager.acquire();
+			try {
+				if (getIndexVersion().equals(getCommitIndexVersion(searcher, commit))) 
+					return new IndexResult(0, 0);
+				
+				logger.debug("Indexing commit (project: {}, commit: {})", project.getName(), commit.getName());
+				IndexResult indexResult = index(project.getRepository(), commit, index.writer, searcher);
+				index.writer.commit();
+				index.refresh();
+				return indexResult;
+			} finally {
+				index.searcherManager.release(searcher);
+			}
+		} catch (Exception e) {
+			/*
+			 * Rolling back changes of this run also closes the writer, so we discard 
+			 * the index here and a fresh one will be opened on next access. This is 
+			 * done while holding the lock so that the fresh writer can only be opened 
+			 * after write lock of the old one is released. Searchers acquired from the 
+			 * old index remain usable until released, see ProjectIndex.close()
+			 */
+			synchronized (indexes) {
+				if (indexes.get(project.getId()) == index) 
+					indexes.remove(project.getId());
+				try {
+					index.writer.rollback();
+				} catch (Exception e2) {
+					logger.error("Error rolling back index writer", e2);
+				}
+			}
+			index.close();
+			throw ExceptionUtils.unchecked(e);
+		}
 	}
 
 	@Override
@@ -373,12 +460,14 @@ public class DefaultIndexManager implements IndexManager {
 
 	@Override
 	public boolean isIndexed(Project project, ObjectId commit) {
-		File indexDir = storageManager.getProjectIndexDir(project.getId());
-		try (Directory directory = FSDirectory.open(indexDir.toPath())) {
-			if (DirectoryReader.indexExists(directory)) {
-				try (IndexReader reader = DirectoryReader.open(directory)) {
-					IndexSearcher searcher = new IndexSearcher(reader);
+		try {
+			ProjectIndex index = getIndex(project.getId(), false);
+			if (index != null) {
+				IndexSearcher searcher = index.searcherManager.acquire();
+				try {
 					return getIndexVersion().equals(getCommitIndexVersion(searcher, commit));
+				} finally {
+					index.searcherManager.release(searcher);
 				}
 			} else {
 				return false;
@@ -388,6 +477,64 @@ public class DefaultIndexManager implements IndexManager {
 		}
 	}
 
+	@Override
+	public SearcherManager getSearcherManager(Project project) throws InterruptedException {
+		try {
+			ProjectIndex index = getIndex(project.getId(), false);
+			if (index != null)
+				return index.searcherManager;
+			else
+				return null;
+		} catch (ClosedByInterruptException e) {
+			// catch this exception and convert to normal InterruptedException as 
+			// we do not want to throw the original exception to surprise the user
+			// when they searches by typing fast (and subsequent typing will cancel 
+			// search of previous typing by interrupting previous search thread 
+			// which may be opening the index if it is not opened yet
+			throw new InterruptedException();
+		} catch (IOException e) {
+			throw ExceptionUtils.unchecked(e);
+		}
+	}
+	
+	@Override
+	public IndexStats getIndexStats(Project project) {
+		try {
+			ProjectIndex index = getIndex(project.getId(), false);
+			if (index != null) 
+				return index.getStats();
+			else
+				return null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public void execute() {
+		for (Map.Entry<Long, ProjectIndex> entry: indexes.entrySet()) {
+			ProjectIndex index = entry.getValue();
+			try {
+				if (index.getSegmentCount() > MAX_SEGMENTS_AFTER_OPTIMIZE) {
+					logger.debug("Optimizing index (project id: {})...", entry.getKey());
+					index.writer.forceMergeDeletes();
+					index.writer.forceMerge(MAX_SEGMENTS_AFTER_OPTIMIZE);
+					index.writer.commit();
+					index.refresh();
+				}
+			} catch (AlreadyClosedException e) {
+				// index closed due to project deletion or indexing failure, just ignore
+			} catch (Exception e) {
+				logger.error("Error optimizing index (project id: " + entry.getKey() + ")", e);
+			}
+		}
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return CronScheduleBuilder.dailyAtHourAndMinute(3, 0);
+	}
+
 	@Sessional
 	@Listen
 	public void on(RefUpdated event) {
@@ -405,7 +552,7 @@ public class DefaultIndexManager implements IndexManager {
 		for (Project project: projectManager.query()) {
 			File indexDir = storageManager.getProjectIndexDir(project.getId());
 			if (indexDir.exists()) {
-				try (Directory directory = FSDirectory.open(indexDir.toPath())) {
+				try (Directory directory = openDirectory(project.getId())) {
 					if (DirectoryReader.indexExists(directory)) {
 						try (IndexReader reader = DirectoryReader.open(directory)) {
 						} catch (IndexFormatTooOldException e) {
@@ -417,6 +564,25 @@ public class DefaultIndexManager implements IndexManager {
 				}
 			}
 		}
+		taskId = taskScheduler.schedule(this);
+	}
+	
+	@Listen
+	public void on(SystemStopping event) {
+		if (taskId != null)
+			taskScheduler.unschedule(taskId);
+		synchronized (indexes) {
+			for (ProjectIndex index: indexes.values()) 
+				index.close();
+			indexes.clear();
+		}
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) 
+			closeIndex(event.getEntity().getId());
 	}
 	
 	@Sessional
@@ -431,6 +597,139 @@ public class DefaultIndexManager implements IndexManager {
 		batchWorkManager.submit(getBatchWorker(project.getId()), work);
 	}
 	
+	private static class ProjectIndex {
+		
+		private final Directory directory;
+		
+		private final IndexWriter writer;
+		
+		private final SearcherManager searcherManager;
+		
+		private volatile long lastRefreshLatency;
+		
+		private long totalRefreshLatency;
+		
+		private long refreshCount;
+		
+		private int openReaders;
+		
+		private boolean closed;
+		
+		public ProjectIndex(Directory directory) throws IOException {
+			this.directory = directory;
+			
+			TieredMergePolicy mergePolicy = new TieredMergePolicy();
+			mergePolicy.setSegmentsPerTier(SEGMENTS_PER_TIER);
+			mergePolicy.setFloorSegmentMB(FLOOR_SEGMENT_MB);
+			mergePolicy.setMaxMergedSegmentMB(MAX_MERGED_SEGMENT_MB);
+			mergePolicy.setForceMergeDeletesPctAllowed(FORCE_MERGE_DELETES_PCT_ALLOWED);
+			
+			IndexWriterConfig writerConfig = new IndexWriterConfig(new NGramAnalyzer(NGRAM_SIZE, NGRAM_SIZE));
+			writerConfig.setOpenMode(OpenMode.CREATE_OR_APPEND);
+			writerConfig.setMergePolicy(mergePolicy);
+			writerConfig.setRAMBufferSizeMB(RAM_BUFFER_SIZE_MB);
+			writer = new IndexWriter(directory, writerConfig);
+			try {
+				searcherManager = new SearcherManager(writer, new SearcherFactory() {
+
+					@Override
+					public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+						synchronized (ProjectIndex.this) {
+							openReaders++;
+						}
+						reader.getReaderCacheHelper().addClosedListener(key -> onReaderClosed());
+						return super.newSearcher(reader, previousReader);
+					}
+					
+				});
+			} catch (Exception e) {
+				writer.close();
+				throw e;
+			}
+		}
+		
+		public void refresh() throws IOException {
+			long time = System.currentTimeMillis();
+			searcherManager.maybeRefreshBlocking();
+			lastRefreshLatency = System.currentTimeMillis() - time;
+			synchronized (this) {
+				totalRefreshLatency += lastRefreshLatency;
+				refreshCount++;
+			}
+		}
+		
+		public int getSegmentCount() throws IOException {
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				return searcher.getIndexReader().leaves().size();
+			} finally {
+				searcherManager.release(searcher);
+			}
+		}
+		
+		public IndexStats getStats() throws IOException {
+			long size = 0;
+			for (String fileName: directory.listAll()) {
+				try {
+					size += directory.fileLength(fileName);
+				} catch (FileNotFoundException|NoSuchFileException e) {
+					// file removed by merge concurrently
+				}
+			}
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				IndexReader reader = searcher.getIndexReader();
+				long averageRefreshLatency;
+				synchronized (this) {
+					averageRefreshLatency = refreshCount!=0? totalRefreshLatency/refreshCount: 0;
+				}
+				return new IndexStats(size, reader.leaves().size(), reader.numDocs(), 
+						lastRefreshLatency, averageRefreshLatency);
+			} finally {
+				searcherManager.release(searcher);
+			}
+		}
+		
+		private synchronized void onReaderClosed() {
+			if (--openReaders == 0 && closed)
+				closeDirectory();
+		}
+		
+		private void closeDirectory() {
+			try {
+				directory.close();
+			} catch (Exception e) {
+				logger.error("Error closing index directory", e);
+			}
+		}
+		
+		/**
+		 * Close this index. Searchers acquired before closing can still be used and 
+		 * should be released as usual. Directory of the index is closed after reader 
+		 * of the last searcher is closed
+		 */
+		public void close() {
+			try {
+				searcherManager.close();
+			} catch (Exception e) {
+				logger.error("Error closing searcher manager", e);
+			}
+			try {
+				writer.close();
+			} catch (AlreadyClosedException e) {
+				// writer already rolled back
+			} catch (Exception e) {
+				logger.error("Error closing index writer", e);
+			}
+			synchronized (this) {
+				closed = true;
+				if (openReaders == 0)
+					closeDirectory();
+			}
+		}
+		
+	}
+	
 	private static class IndexWork extends Prioritized {
 
 		private final ObjectId commitId;
@@ -6,33 +6,42 @@ import static io.onedev.server.search.code.FieldConstants.BLOB_PATH;
 import static io.onedev.server.search.code.FieldConstants.BLOB_SYMBOL_LIST;
 
 import java.io.IOException;
-import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.apache.commons.lang.SerializationUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.SimpleCollector;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -45,71 +54,77 @@ import io.onedev.commons.jsymbol.Symbol;
 import io.onedev.commons.jsymbol.SymbolExtractorRegistry;
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.ExceptionUtils;
-import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.model.Project;
-import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.search.code.hit.ProjectScopedQueryHit;
 import io.onedev.server.search.code.hit.QueryHit;
 import io.onedev.server.search.code.query.BlobQuery;
-import io.onedev.server.storage.StorageManager;
+import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.security.permission.ReadCode;
+import io.onedev.server.util.Pair;
+import io.onedev.server.util.concurrent.PrioritizedCallable;
+import io.onedev.server.util.work.WorkExecutor;
 
 @Singleton
 public class DefaultSearchManager implements SearchManager {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultSearchManager.class);
 	
-	private final StorageManager storageManager;
+	private static final int VERIFY_PRIORITY = 5;
 	
-	private final Map<Long, SearcherManager> searcherManagers = new ConcurrentHashMap<>();
+	private static final int VERIFY_BATCH_SIZE = Runtime.getRuntime().availableProcessors() * 4;
+	
+	/*
+	 * Projects are searched in a dedicated pool instead of the work executor, as each 
+	 * project search verifies its candidates via the work executor 
+	 */
+	private static final int GLOBAL_SEARCH_CONCURRENCY = Runtime.getRuntime().availableProcessors();
 	
 	private final IndexManager indexManager;
 	
+	private final WorkExecutor workExecutor;
+	
+	private final ProjectManager projectManager;
+	
+	private final LiveBlobDocsCache liveBlobDocsCache = new LiveBlobDocsCache();
+	
+	private final ThreadPoolExecutor globalSearchExecutor = new ThreadPoolExecutor(
+			GLOBAL_SEARCH_CONCURRENCY, GLOBAL_SEARCH_CONCURRENCY, 
+			60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+	
 	@Inject
-	public DefaultSearchManager(StorageManager storageManager, IndexManager indexManager) {
-		this.storageManager = storageManager;
+	public DefaultSearchManager(IndexManager indexManager, WorkExecutor workExecutor, 
+			ProjectManager projectManager) {
 		this.indexManager = indexManager;
-	}
-	
-	@Nullable
-	private SearcherManager getSearcherManager(Project project) throws InterruptedException {
-		try {
-			SearcherManager searcherManager = searcherManagers.get(project.getId());
-			if (searcherManager == null) synchronized (searcherManagers) {
-				searcherManager = searcherManagers.get(project.getId());
-				if (searcherManager == null) {
-					Directory directory = FSDirectory.open(storageManager.getProjectIndexDir(project.getId()).toPath());
-					if (DirectoryReader.indexExists(directory)) {
-						searcherManager = new SearcherManager(directory, null);
-						searcherManagers.put(project.getId(), searcherManager);
-					}
-				}
-			}
-			return searcherManager;
-		} catch (ClosedByInterruptException e) {
-			// catch this exception and convert to normal InterruptedException as 
-			// we do not want to throw the original exception to surprise the user
-			// when they searches by typing fast (and subsequent typing will cancel 
-			// search of previous typing by interrupting previous search thread 
-			// which may creating the searcher manager if it does not exist yet
-			throw new InterruptedException();
-		} catch (IOException e) {
-			throw ExceptionUtils.unchecked(e);
-		}
+		this.workExecutor = workExecutor;
+		this.projectManager = projectManager;
+		globalSearchExecutor.allowCoreThreadTimeOut(true);
 	}
 	
 	@Override
 	public List<QueryHit> search(Project project, ObjectId commit, final BlobQuery query) 
 			throws InterruptedException {
+		return search(project.getForkRoot(), project.getRepository(), commit, query);
+	}
+	
+	private List<QueryHit> search(Project indexProject, Repository repository, ObjectId commit, 
+			BlobQuery query) throws InterruptedException {
 		List<QueryHit> hits = new ArrayList<>();
 
-		SearcherManager searcherManager = getSearcherManager(project.getForkRoot());
+		SearcherManager searcherManager = indexManager.getSearcherManager(indexProject);
 		if (searcherManager != null) {
 			try {
-				final IndexSearcher searcher = searcherManager.acquire();
+				IndexSearcher searcherOfIndex = searcherManager.acquire();
 				try {
-					try (RevWalk revWalk = new RevWalk(project.getRepository())){
+					DirectoryReader reader = (DirectoryReader) searcherOfIndex.getIndexReader();
+					final IndexSearcher searcher = new IndexSearcher(new CommitDirectoryReader(
+							reader, repository, commit, liveBlobDocsCache));
+					try (RevWalk revWalk = new RevWalk(repository)){
 						final RevTree revTree = revWalk.parseCommit(commit).getTree();
 						final Set<String> checkedBlobPaths = new HashSet<>();
+						final List<String> pendingBlobPaths = new ArrayList<>();
 						
 						searcher.search(query.asLuceneQuery(), new SimpleCollector() {
 	
@@ -121,17 +136,20 @@ public class DefaultSearchManager implements SearchManager {
 									Preconditions.checkState(blobPathValues.advanceExact(doc));
 									String blobPath = blobPathValues.binaryValue().utf8ToString();
 									
-									if (!checkedBlobPaths.contains(blobPath)) {
-										TreeWalk treeWalk = TreeWalk.forPath(project.getRepository(), blobPath, revTree);									
-										if (treeWalk != null)
-											query.collect(searcher, treeWalk, hits);
-										checkedBlobPaths.add(blobPath);
+									if (checkedBlobPaths.add(blobPath)) {
+										pendingBlobPaths.add(blobPath);
+										if (pendingBlobPaths.size() >= VERIFY_BATCH_SIZE)
+											verify(repository, revTree, searcher, query, pendingBlobPaths, hits);
 									}
+								} else {
+									throw new CollectionTerminatedException();
 								}
 							}
 	
 							@Override
 							protected void doSetNextReader(LeafReaderContext context) throws IOException {
+								if (hits.size() >= query.getCount() || Thread.currentThread().isInterrupted())
+									throw new CollectionTerminatedException();
 								blobPathValues  = context.reader().getBinaryDocValues(FieldConstants.BLOB_PATH.name());
 							}
 
@@ -141,9 +159,12 @@ public class DefaultSearchManager implements SearchManager {
 							}
 	
 						});
+						
+						if (hits.size() < query.getCount() && !Thread.currentThread().isInterrupted())
+							verify(repository, revTree, searcher, query, pendingBlobPaths, hits);
 					}
 				} finally {
-					searcherManager.release(searcher);
+					searcherManager.release(searcherOfIndex);
 				}
 			} catch (IOException e) {
 				throw ExceptionUtils.unchecked(e);
@@ -155,15 +176,156 @@ public class DefaultSearchManager implements SearchManager {
 		return hits;
 	}
 
+	@Sessional
+	@Override
+	public List<ProjectScopedQueryHit> searchGlobally(BlobQuery query, long timeout, 
+			@Nullable Consumer<List<ProjectScopedQueryHit>> hitsListener) throws InterruptedException {
+		// check query before any work to fail fast if it is too general
+		query.asLuceneQuery();
+		
+		List<Project> projects = new ArrayList<>(projectManager.getPermittedProjects(new ReadCode()));
+		projects.sort(Comparator.comparing(Project::getName));
+		
+		/*
+		 * Resolve everything needed by searches in current thread, as project entities 
+		 * can not be accessed from search threads
+		 */
+		List<Callable<Pair<Integer, List<ProjectScopedQueryHit>>>> searches = new ArrayList<>();
+		Set<String> searchKeys = new HashSet<>();
+		for (Project project: projects) {
+			String defaultBranch = project.getDefaultBranch();
+			ObjectId commitId = defaultBranch!=null? project.getObjectId(defaultBranch, false): null;
+			if (commitId == null)
+				continue;
+			
+			Project indexProject = project.getForkRoot();
+			if (!searchKeys.add(indexProject.getId() + ":" + commitId.name()))
+				continue;
+			
+			int rank = searches.size();
+			Long projectId = project.getId();
+			String projectName = project.getName();
+			Repository repository = project.getRepository();
+			searches.add(new Callable<Pair<Integer, List<ProjectScopedQueryHit>>>() {
+
+				@Override
+				public Pair<Integer, List<ProjectScopedQueryHit>> call() throws Exception {
+					List<ProjectScopedQueryHit> hits = new ArrayList<>();
+					try {
+						for (QueryHit hit: search(indexProject, repository, commitId, query)) 
+							hits.add(new ProjectScopedQueryHit(projectId, projectName, commitId.name(), hit));
+					} catch (InterruptedException e) {
+						// search canceled due to time or hit budget
+					}
+					return new Pair<>(rank, hits);
+				}
+				
+			});
+		}
+		
+		CompletionService<Pair<Integer, List<ProjectScopedQueryHit>>> completionService = 
+				new ExecutorCompletionService<>(globalSearchExecutor);
+		List<Future<Pair<Integer, List<ProjectScopedQueryHit>>>> futures = new ArrayList<>();
+		for (Callable<Pair<Integer, List<ProjectScopedQueryHit>>> search: searches) 
+			futures.add(completionService.submit(SecurityUtils.inheritSubject(search)));
+		
+		Map<Integer, List<ProjectScopedQueryHit>> hitsOfRanks = new TreeMap<>();
+		try {
+			long deadline = System.currentTimeMillis() + timeout;
+			int hitCount = 0;
+			for (int i=0; i<futures.size() && hitCount<query.getCount(); i++) {
+				long remaining = deadline - System.currentTimeMillis();
+				Future<Pair<Integer, List<ProjectScopedQueryHit>>> future = 
+						remaining>0? completionService.poll(remaining, TimeUnit.MILLISECONDS): null;
+				if (future == null) {
+					logger.debug("Time budget exhausted for global code search, {} of {} projects searched", 
+							i, futures.size());
+					break;
+				}
+				try {
+					Pair<Integer, List<ProjectScopedQueryHit>> result = future.get();
+					if (!result.getSecond().isEmpty()) {
+						hitsOfRanks.put(result.getFirst(), result.getSecond());
+						hitCount += result.getSecond().size();
+						if (hitsListener != null)
+							hitsListener.accept(result.getSecond());
+					}
+				} catch (ExecutionException e) {
+					logger.error("Error searching project", e.getCause());
+				}
+			}
+		} finally {
+			for (Future<?> future: futures)
+				future.cancel(true);
+		}
+		
+		List<ProjectScopedQueryHit> hits = new ArrayList<>();
+		for (List<ProjectScopedQueryHit> hitsOfRank: hitsOfRanks.values()) {
+			for (ProjectScopedQueryHit hit: hitsOfRank) {
+				if (hits.size() < query.getCount())
+					hits.add(hit);
+			}
+		}
+		return hits;
+	}
+	
+	/*
+	 * Verify candidate blobs in parallel and add hits in order of candidates, until 
+	 * the hit limit is reached 
+	 */
+	private void verify(Repository repository, RevTree revTree, IndexSearcher searcher, BlobQuery query, 
+			List<String> blobPaths, List<QueryHit> hits) {
+		List<PrioritizedCallable<List<QueryHit>>> verifiers = new ArrayList<>();
+		for (String blobPath: blobPaths) {
+			verifiers.add(new PrioritizedCallable<List<QueryHit>>(VERIFY_PRIORITY) {
+
+				@Override
+				public List<QueryHit> call() throws Exception {
+					List<QueryHit> hitsOfBlob = new ArrayList<>();
+					TreeWalk treeWalk = TreeWalk.forPath(repository, blobPath, revTree);
+					if (treeWalk != null)
+						query.collect(searcher, treeWalk, hitsOfBlob);
+					return hitsOfBlob;
+				}
+				
+			});
+		}
+		blobPaths.clear();
+		
+		try {
+			for (Future<List<QueryHit>> future: workExecutor.invokeAll(verifiers)) {
+				for (QueryHit hit: future.get()) {
+					if (hits.size() < query.getCount())
+						hits.add(hit);
+					else
+						return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else
+				throw new RuntimeException(e.getCause());
+		}
+	}
+	
 	@Override
 	public List<Symbol> getSymbols(Project project, ObjectId blobId, String blobPath) {
+		return getSymbols(project, blobId, blobPath, null);
+	}
+	
+	@Override
+	public List<Symbol> getSymbols(Project project, ObjectId blobId, String blobPath, 
+			Predicate<String> symbolNameFilter) {
 		try {
-			SearcherManager searcherManager = getSearcherManager(project.getForkRoot());
+			SearcherManager searcherManager = indexManager.getSearcherManager(project.getForkRoot());
 			if (searcherManager != null) {
 				try {
 					IndexSearcher searcher = searcherManager.acquire();
 					try {
-						return getSymbols(searcher, blobId, blobPath);
+						return getSymbols(searcher, blobId, blobPath, symbolNameFilter);
 					} finally {
 						searcherManager.release(searcher);
 					}
@@ -180,6 +342,12 @@ public class DefaultSearchManager implements SearchManager {
 	
 	@Override
 	public List<Symbol> getSymbols(IndexSearcher searcher, ObjectId blobId, String blobPath) {
+		return getSymbols(searcher, blobId, blobPath, null);
+	}
+	
+	@Override
+	public List<Symbol> getSymbols(IndexSearcher searcher, ObjectId blobId, String blobPath, 
+			Predicate<String> symbolNameFilter) {
 		BooleanQuery.Builder builder = new BooleanQuery.Builder();
 		builder.add(BLOB_HASH.query(blobId.name()), Occur.MUST);
 		builder.add(BLOB_PATH.query(blobPath), Occur.MUST);
@@ -194,7 +362,6 @@ public class DefaultSearchManager implements SearchManager {
 
 					private LeafReaderContext context;
 
-					@SuppressWarnings("unchecked")
 					@Override
 					public void collect(int doc) throws IOException {
 						Document document = searcher.doc(context.docBase+doc);
@@ -202,9 +369,10 @@ public class DefaultSearchManager implements SearchManager {
 							BytesRef bytesRef = document.getBinaryValue(BLOB_SYMBOL_LIST.name());
 							if (bytesRef != null) {
 								try {
-									symbolsRef.set((List<Symbol>) SerializationUtils.deserialize(bytesRef.bytes));
+									symbolsRef.set(SymbolListCodec.decode(bytesRef.bytes, bytesRef.offset, 
+											bytesRef.length, symbolNameFilter));
 								} catch (Exception e) {
-									logger.error("Error deserializing symbols", e);
+									logger.error("Error decoding symbols", e);
 								}
 							}
 						}
@@ -231,45 +399,28 @@ public class DefaultSearchManager implements SearchManager {
 	
 	@Listen
 	public void on(CommitIndexed event) {
+		// Calculate live blob documents of newly indexed commit (mostly branch heads) 
+		// so that subsequent searches against it do not need to wait
 		try {
-			SearcherManager searcherManager = getSearcherManager(event.getProject().getForkRoot()); 
-			if (searcherManager != null)
-				searcherManager.maybeRefresh();
-		} catch (InterruptedException | IOException e) {
-			throw ExceptionUtils.unchecked(e);
-		}
-	}
-
-	@Transactional
-	@Listen
-	public void on(EntityRemoved event) {
-		if (event.getEntity() instanceof Project) {
-			synchronized (searcherManagers) {
-				Long projectId = event.getEntity().getId();						
-				SearcherManager searcherManager = searcherManagers.remove(projectId);
-				if (searcherManager != null) {
-					try {
-						searcherManager.close();
-					} catch (IOException e) {
-						throw ExceptionUtils.unchecked(e);
-					}
+			Project project = event.getProject();
+			SearcherManager searcherManager = indexManager.getSearcherManager(project.getForkRoot());
+			if (searcherManager != null) {
+				IndexSearcher searcher = searcherManager.acquire();
+				try {
+					for (LeafReaderContext context: searcher.getIndexReader().leaves()) 
+						liveBlobDocsCache.getLiveDocs(project.getRepository(), context.reader(), event.getCommitId());
+				} finally {
+					searcherManager.release(searcher);
 				}
 			}
+		} catch (Exception e) {
+			logger.error("Error calculating live blob documents", e);
 		}
 	}
-
+	
 	@Listen
 	public void on(SystemStopping event) {
-		synchronized (searcherManagers) {
-			for (SearcherManager searcherManager: searcherManagers.values()) {
-				try {
-					searcherManager.close();
-				} catch (IOException e) {
-					throw ExceptionUtils.unchecked(e);
-				}
-			}
-			searcherManagers.clear();
-		}
+		globalSearchExecutor.shutdownNow();
 	}
 
 }
@@ -2,6 +2,7 @@ package io.onedev.server.search.code;
 
 import javax.annotation.Nullable;
 
+import org.apache.lucene.search.SearcherManager;
 import org.eclipse.jgit.lib.ObjectId;
 
 import io.onedev.commons.jsymbol.Symbol;
@@ -18,4 +19,28 @@ public interface IndexManager {
 	
 	String getIndexVersion(@Nullable SymbolExtractor<Symbol> extractor);
 	
+	/**
+	 * Get near-real-time searcher manager of index of specified project. The searcher 
+	 * manager is backed by the long-lived index writer of the project, and is refreshed 
+	 * each time a commit is indexed.
+	 * 
+	 * @return
+	 * 			searcher manager of specified project, or <tt>null</tt> if the project 
+	 * 			is not indexed yet
+	 * @throws 
+	 * 			InterruptedException if current thread is interrupted while opening the index
+	 */
+	@Nullable
+	SearcherManager getSearcherManager(Project project) throws InterruptedException;
+	
+	/**
+	 * Get statistics of index of specified project.
+	 * 
+	 * @return
+	 * 			statistics of index of specified project, or <tt>null</tt> if the project 
+	 * 			is not indexed yet
+	 */
+	@Nullable
+	IndexStats getIndexStats(Project project);
+	
 }
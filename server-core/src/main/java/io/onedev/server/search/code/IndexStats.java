@@ -0,0 +1,61 @@
+package io.onedev.server.search.code;
+
+import java.io.Serializable;
+
+public class IndexStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long size;
+	
+	private final int segmentCount;
+	
+	private final int documentCount;
+	
+	private final long lastRefreshLatency;
+	
+	private final long averageRefreshLatency;
+	
+	public IndexStats(long size, int segmentCount, int documentCount, 
+			long lastRefreshLatency, long averageRefreshLatency) {
+		this.size = size;
+		this.segmentCount = segmentCount;
+		this.documentCount = documentCount;
+		this.lastRefreshLatency = lastRefreshLatency;
+		this.averageRefreshLatency = averageRefreshLatency;
+	}
+
+	/**
+	 * @return
+	 * 			size of index files in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+
+	public int getDocumentCount() {
+		return documentCount;
+	}
+
+	/**
+	 * @return
+	 * 			latency in milliseconds of last near-real-time searcher refresh
+	 */
+	public long getLastRefreshLatency() {
+		return lastRefreshLatency;
+	}
+
+	/**
+	 * @return
+	 * 			average latency in milliseconds of near-real-time searcher refreshes 
+	 * 			since the index is opened
+	 */
+	public long getAverageRefreshLatency() {
+		return averageRefreshLatency;
+	}
+
+}
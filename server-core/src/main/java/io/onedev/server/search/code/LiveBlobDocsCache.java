@@ -0,0 +1,171 @@
+package io.onedev.server.search.code;
+
+import static io.onedev.server.search.code.FieldConstants.BLOB_HASH;
+import static io.onedev.server.search.code.FieldConstants.BLOB_PATH;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Caches bitsets of blob documents live at particular commits. Bitsets are maintained
+ * per index segment, so that they remain valid when the near-real-time searcher is
+ * refreshed, and are dropped when the segment is closed. Bitset of a new commit is
+ * derived from the most recently used bitset of the same segment by only looking up
+ * documents of changed blobs.
+ */
+class LiveBlobDocsCache {
+
+	private static final int MAX_COMMITS_PER_SEGMENT = 20;
+
+	private final Map<IndexReader.CacheKey, Map<ObjectId, FixedBitSet>> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * Get bitset of documents of blobs live at specified commit in specified segment.
+	 *
+	 * @return
+	 * 			bitset of live blob documents. Note that the returned bitset should not be
+	 * 			modified as it may be shared by other callers
+	 */
+	public FixedBitSet getLiveDocs(Repository repository, LeafReader reader, ObjectId commitId)
+			throws IOException {
+		IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+		if (cacheHelper == null)
+			return calcLiveDocs(repository, reader, commitId, null, null);
+
+		Map<ObjectId, FixedBitSet> liveDocsOfCommits = cache.get(cacheHelper.getKey());
+		if (liveDocsOfCommits == null) {
+			liveDocsOfCommits = Collections.synchronizedMap(new LinkedHashMap<ObjectId, FixedBitSet>(
+					MAX_COMMITS_PER_SEGMENT, 0.75f, true) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ObjectId, FixedBitSet> eldest) {
+					return size() > MAX_COMMITS_PER_SEGMENT;
+				}
+
+			});
+			Map<ObjectId, FixedBitSet> existing = cache.putIfAbsent(cacheHelper.getKey(), liveDocsOfCommits);
+			if (existing == null)
+				cacheHelper.addClosedListener(key -> cache.remove(key));
+			else
+				liveDocsOfCommits = existing;
+		}
+
+		FixedBitSet liveDocs = liveDocsOfCommits.get(commitId);
+		if (liveDocs == null) {
+			ObjectId baseCommitId = null;
+			FixedBitSet baseLiveDocs = null;
+			synchronized (liveDocsOfCommits) {
+				// entries are in access order, so the last one is the most recently used
+				Iterator<Map.Entry<ObjectId, FixedBitSet>> it = liveDocsOfCommits.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<ObjectId, FixedBitSet> entry = it.next();
+					baseCommitId = entry.getKey();
+					baseLiveDocs = entry.getValue();
+				}
+			}
+			liveDocs = calcLiveDocs(repository, reader, commitId, baseCommitId, baseLiveDocs);
+			liveDocsOfCommits.put(commitId.copy(), liveDocs);
+		}
+		return liveDocs;
+	}
+
+	/**
+	 * Get commits with cached bitsets of specified segment, used to inspect the cache in tests
+	 * 
+	 * @return
+	 * 			commits in access order with most recently used one at last, or <tt>null</tt> 
+	 * 			if nothing is cached for the segment
+	 */
+	@Nullable
+	List<ObjectId> getCachedCommits(IndexReader.CacheKey segmentKey) {
+		Map<ObjectId, FixedBitSet> liveDocsOfCommits = cache.get(segmentKey);
+		if (liveDocsOfCommits != null) {
+			synchronized (liveDocsOfCommits) {
+				return new ArrayList<>(liveDocsOfCommits.keySet());
+			}
+		} else {
+			return null;
+		}
+	}
+
+	private FixedBitSet calcLiveDocs(Repository repository, LeafReader reader, ObjectId commitId,
+			@Nullable ObjectId baseCommitId, @Nullable FixedBitSet baseLiveDocs) throws IOException {
+		FixedBitSet liveDocs;
+		Terms terms = reader.terms(BLOB_HASH.name());
+		TermsEnum termsEnum = terms!=null? terms.iterator(): null;
+		try (	RevWalk revWalk = new RevWalk(repository);
+				TreeWalk treeWalk = new TreeWalk(repository)) {
+			treeWalk.setRecursive(true);
+			if (baseLiveDocs != null && repository.getObjectDatabase().has(baseCommitId)) {
+				liveDocs = baseLiveDocs.clone();
+				treeWalk.addTree(revWalk.parseCommit(baseCommitId).getTree());
+				treeWalk.addTree(revWalk.parseCommit(commitId).getTree());
+				treeWalk.setFilter(TreeFilter.ANY_DIFF);
+				while (treeWalk.next()) {
+					String blobPath = treeWalk.getPathString();
+					if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE)
+						markDocs(reader, termsEnum, liveDocs, blobPath, treeWalk.getObjectId(0), false);
+					if ((treeWalk.getRawMode(1) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE)
+						markDocs(reader, termsEnum, liveDocs, blobPath, treeWalk.getObjectId(1), true);
+				}
+			} else {
+				liveDocs = new FixedBitSet(reader.maxDoc());
+				treeWalk.addTree(revWalk.parseCommit(commitId).getTree());
+				while (treeWalk.next()) {
+					if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE) {
+						markDocs(reader, termsEnum, liveDocs, treeWalk.getPathString(),
+								treeWalk.getObjectId(0), true);
+					}
+				}
+			}
+		}
+		return liveDocs;
+	}
+
+	private void markDocs(LeafReader reader, @Nullable TermsEnum termsEnum, FixedBitSet liveDocs,
+			String blobPath, ObjectId blobId, boolean live) throws IOException {
+		if (termsEnum != null && termsEnum.seekExact(new BytesRef(blobId.name()))) {
+			BinaryDocValues blobPathValues = reader.getBinaryDocValues(BLOB_PATH.name());
+			if (blobPathValues != null) {
+				BytesRef blobPathBytes = new BytesRef(blobPath);
+				PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+				int doc;
+				while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+					if (blobPathValues.advanceExact(doc) && blobPathValues.binaryValue().equals(blobPathBytes)) {
+						if (live)
+							liveDocs.set(doc);
+						else
+							liveDocs.clear(doc);
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -1,6 +1,8 @@
 package io.onedev.server.search.code;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import javax.annotation.Nullable;
 
@@ -9,6 +11,7 @@ import org.eclipse.jgit.lib.ObjectId;
 
 import io.onedev.commons.jsymbol.Symbol;
 import io.onedev.server.model.Project;
+import io.onedev.server.search.code.hit.ProjectScopedQueryHit;
 import io.onedev.server.search.code.hit.QueryHit;
 import io.onedev.server.search.code.query.BlobQuery;
 import io.onedev.server.search.code.query.TooGeneralQueryException;
@@ -27,10 +30,52 @@ public interface SearchManager {
 	List<QueryHit> search(Project project, ObjectId commit, BlobQuery query) 
 			throws InterruptedException, TooGeneralQueryException;
 	
+	/**
+	 * Search default branches of all projects with code readable by current user. Projects 
+	 * are searched in parallel, and forks sharing the same index and default branch 
+	 * commit are only searched once.
+	 * 
+	 * @param query
+	 * 			query to search. Its count is used as hit budget of the whole search
+	 * @param timeout
+	 * 			time budget of the whole search in milliseconds. Projects not searched 
+	 * 			within this time will be skipped
+	 * @param hitsListener
+	 * 			if not <tt>null</tt>, hits of each project will be passed to this 
+	 * 			listener in calling thread as soon as they are available
+	 * @return
+	 * 			hits of all searched projects, ordered by project name, and then by 
+	 * 			relevance inside each project
+	 * @throws 
+	 * 			TooGeneralQueryException if supplied query term is too general to possibly cause query slow
+	 * 			InterruptedException if the search process is interrupted
+	 */
+	List<ProjectScopedQueryHit> searchGlobally(BlobQuery query, long timeout, 
+			@Nullable Consumer<List<ProjectScopedQueryHit>> hitsListener) 
+			throws InterruptedException, TooGeneralQueryException;
+	
 	@Nullable
 	List<Symbol> getSymbols(Project project, ObjectId blobId, String blobPath);
 	
+	/**
+	 * Get symbols of specified blob with names accepted by specified filter. Only 
+	 * accepted symbols and their parents will be decoded from the index.
+	 * 
+	 * @param symbolNameFilter
+	 * 			filter to accept symbol names, or <tt>null</tt> to get all symbols
+	 * @return
+	 * 			symbols of specified blob, or <tt>null</tt> if symbols of the blob is 
+	 * 			not indexed
+	 */
+	@Nullable
+	List<Symbol> getSymbols(Project project, ObjectId blobId, String blobPath, 
+			@Nullable Predicate<String> symbolNameFilter);
+	
 	@Nullable
 	List<Symbol> getSymbols(IndexSearcher searcher, ObjectId blobId, String blobPath);
 	
+	@Nullable
+	List<Symbol> getSymbols(IndexSearcher searcher, ObjectId blobId, String blobPath, 
+			@Nullable Predicate<String> symbolNameFilter);
+	
 }
\ No newline at end of file
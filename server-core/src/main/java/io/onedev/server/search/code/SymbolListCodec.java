@@ -0,0 +1,374 @@
+package io.onedev.server.search.code;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+
+import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
+import com.thoughtworks.xstream.core.JVM;
+
+import io.onedev.commons.jsymbol.Symbol;
+import io.onedev.commons.utils.LinearRange;
+import io.onedev.commons.utils.PlanarRange;
+
+/**
+ * Compact binary encoding of symbol lists stored in code index. Compared with Java
+ * serialization, class names, field names and string values are written only once
+ * into a string table, numbers are written as variable length integers, and symbol
+ * references are written as indexes into the list.
+ * <p>
+ * Layout of the encoded bytes:
+ * <pre>
+ * format version
+ * string table: count, strings
+ * symbol table: count, (name ref, parent ref, record length) of each symbol
+ * symbol records: class ref, field count, (field name ref, defining class ref, value) of each field
+ * </pre>
+ * Since the symbol table records name and parent of each symbol, symbols with particular
+ * names can be decoded without decoding the whole list.
+ */
+public class SymbolListCodec {
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int TAG_NULL = 0;
+
+	private static final int TAG_STRING = 1;
+
+	private static final int TAG_INT = 2;
+
+	private static final int TAG_LONG = 3;
+
+	private static final int TAG_TRUE = 4;
+
+	private static final int TAG_FALSE = 5;
+
+	private static final int TAG_ENUM = 6;
+
+	private static final int TAG_PLANAR_RANGE = 7;
+
+	private static final int TAG_LINEAR_RANGE = 8;
+
+	private static final int TAG_SYMBOL = 9;
+
+	private static final int TAG_LIST = 10;
+
+	private static final int TAG_SERIALIZED = 11;
+
+	private static final ReflectionProvider reflectionProvider = JVM.newReflectionProvider();
+
+	private static final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+
+	public static byte[] encode(List<Symbol> symbols) {
+		try {
+			Encoder encoder = new Encoder(symbols);
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutput output = new OutputStreamDataOutput(baos);
+			output.writeVInt(FORMAT_VERSION);
+			output.writeVInt(encoder.strings.size());
+			for (String string: encoder.strings)
+				output.writeString(string);
+			output.writeVInt(symbols.size());
+			for (int i=0; i<symbols.size(); i++) {
+				Symbol symbol = symbols.get(i);
+				output.writeVInt(encoder.stringRef(symbol.getName()));
+				output.writeVInt(encoder.symbolRef(symbol.getParent()));
+				output.writeVInt(encoder.records.get(i).length);
+			}
+			for (byte[] record: encoder.records)
+				output.writeBytes(record, record.length);
+			return baos.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static List<Symbol> decode(byte[] bytes, int offset, int length) {
+		return decode(bytes, offset, length, null);
+	}
+
+	/**
+	 * Decode symbols from specified bytes.
+	 *
+	 * @param symbolNameFilter
+	 * 			if not <tt>null</tt>, only symbols with names accepted by this filter
+	 * 			will be returned, and only these symbols and their parents will be
+	 * 			decoded
+	 * @return
+	 * 			decoded symbols in the same order as they are encoded
+	 */
+	public static List<Symbol> decode(byte[] bytes, int offset, int length,
+			@Nullable Predicate<String> symbolNameFilter) {
+		Decoder decoder = new Decoder(bytes, offset, length);
+		List<Symbol> symbols = new ArrayList<>();
+		for (int i=0; i<decoder.names.length; i++) {
+			if (symbolNameFilter == null || decoder.names[i] != null && symbolNameFilter.test(decoder.names[i]))
+				symbols.add(decoder.getSymbol(i));
+		}
+		return symbols;
+	}
+
+	private static Class<?> loadClass(String className) {
+		return classes.computeIfAbsent(className, key -> {
+			try {
+				return Class.forName(key, true, Symbol.class.getClassLoader());
+			} catch (ClassNotFoundException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+	private static class Encoder {
+
+		private final List<String> strings = new ArrayList<>();
+
+		private final Map<String, Integer> stringIndexes = new HashMap<>();
+
+		private final Map<Symbol, Integer> symbolIndexes = new IdentityHashMap<>();
+
+		private final List<byte[]> records = new ArrayList<>();
+
+		public Encoder(List<Symbol> symbols) throws IOException {
+			for (int i=0; i<symbols.size(); i++)
+				symbolIndexes.put(symbols.get(i), i);
+			for (Symbol symbol: symbols)
+				records.add(encodeRecord(symbol));
+		}
+
+		public int stringRef(@Nullable String string) {
+			if (string != null) {
+				Integer index = stringIndexes.get(string);
+				if (index == null) {
+					index = strings.size();
+					strings.add(string);
+					stringIndexes.put(string, index);
+				}
+				return index + 1;
+			} else {
+				return 0;
+			}
+		}
+
+		public int symbolRef(@Nullable Symbol symbol) {
+			if (symbol != null) {
+				Integer index = symbolIndexes.get(symbol);
+				if (index != null)
+					return index + 1;
+			}
+			return 0;
+		}
+
+		private byte[] encodeRecord(Symbol symbol) throws IOException {
+			List<Object[]> fields = new ArrayList<>();
+			reflectionProvider.visitSerializableFields(symbol, new ReflectionProvider.Visitor() {
+
+				@SuppressWarnings("rawtypes")
+				@Override
+				public void visit(String name, Class type, Class definedIn, Object value) {
+					fields.add(new Object[] {name, definedIn, value});
+				}
+
+			});
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutput output = new OutputStreamDataOutput(baos);
+			output.writeVInt(stringRef(symbol.getClass().getName()));
+			output.writeVInt(fields.size());
+			for (Object[] field: fields) {
+				output.writeVInt(stringRef((String) field[0]));
+				output.writeVInt(stringRef(((Class<?>) field[1]).getName()));
+				writeValue(output, field[2]);
+			}
+			return baos.toByteArray();
+		}
+
+		private void writeValue(DataOutput output, @Nullable Object value) throws IOException {
+			if (value == null) {
+				output.writeVInt(TAG_NULL);
+			} else if (value instanceof String) {
+				output.writeVInt(TAG_STRING);
+				output.writeVInt(stringRef((String) value));
+			} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				output.writeVInt(TAG_INT);
+				output.writeVInt(stringRef(value.getClass().getName()));
+				output.writeZInt(((Number) value).intValue());
+			} else if (value instanceof Long) {
+				output.writeVInt(TAG_LONG);
+				output.writeZLong((Long) value);
+			} else if (value instanceof Boolean) {
+				output.writeVInt((Boolean) value? TAG_TRUE: TAG_FALSE);
+			} else if (value instanceof Enum) {
+				Enum<?> enumValue = (Enum<?>) value;
+				output.writeVInt(TAG_ENUM);
+				output.writeVInt(stringRef(enumValue.getDeclaringClass().getName()));
+				output.writeVInt(stringRef(enumValue.name()));
+			} else if (value.getClass() == PlanarRange.class) {
+				PlanarRange range = (PlanarRange) value;
+				output.writeVInt(TAG_PLANAR_RANGE);
+				output.writeZInt(range.getFromRow());
+				output.writeZInt(range.getFromColumn());
+				output.writeZInt(range.getToRow());
+				output.writeZInt(range.getToColumn());
+			} else if (value.getClass() == LinearRange.class) {
+				LinearRange range = (LinearRange) value;
+				output.writeVInt(TAG_LINEAR_RANGE);
+				output.writeZInt(range.getFrom());
+				output.writeZInt(range.getTo());
+			} else if (value instanceof Symbol && symbolIndexes.containsKey(value)) {
+				output.writeVInt(TAG_SYMBOL);
+				output.writeVInt(symbolIndexes.get(value));
+			} else if (value.getClass() == ArrayList.class) {
+				List<?> list = (List<?>) value;
+				output.writeVInt(TAG_LIST);
+				output.writeVInt(list.size());
+				for (Object element: list)
+					writeValue(output, element);
+			} else {
+				byte[] bytes = SerializationUtils.serialize((Serializable) value);
+				output.writeVInt(TAG_SERIALIZED);
+				output.writeVInt(bytes.length);
+				output.writeBytes(bytes, bytes.length);
+			}
+		}
+
+	}
+
+	private static class Decoder {
+
+		private final ByteArrayDataInput input;
+
+		private final String[] strings;
+
+		private final String[] names;
+
+		private final int[] parents;
+
+		private final int[] offsets;
+
+		private final Symbol[] symbols;
+
+		public Decoder(byte[] bytes, int offset, int length) {
+			input = new ByteArrayDataInput(bytes, offset, length);
+			int version = input.readVInt();
+			if (version != FORMAT_VERSION)
+				throw new IllegalStateException("Unexpected symbol list format version: " + version);
+
+			strings = new String[input.readVInt()];
+			for (int i=0; i<strings.length; i++)
+				strings[i] = input.readString();
+
+			int count = input.readVInt();
+			names = new String[count];
+			parents = new int[count];
+			offsets = new int[count];
+			symbols = new Symbol[count];
+			int[] lengths = new int[count];
+			for (int i=0; i<count; i++) {
+				names[i] = string(input.readVInt());
+				parents[i] = input.readVInt();
+				lengths[i] = input.readVInt();
+			}
+			int recordOffset = input.getPosition();
+			for (int i=0; i<count; i++) {
+				offsets[i] = recordOffset;
+				recordOffset += lengths[i];
+			}
+		}
+
+		@Nullable
+		private String string(int ref) {
+			return ref != 0? strings[ref-1]: null;
+		}
+
+		public Symbol getSymbol(int index) {
+			Symbol symbol = symbols[index];
+			if (symbol == null) {
+				// make sure parents are decoded first so that references can be resolved
+				if (parents[index] != 0)
+					getSymbol(parents[index]-1);
+
+				input.setPosition(offsets[index]);
+				Class<?> symbolClass = loadClass(string(input.readVInt()));
+				symbol = (Symbol) reflectionProvider.newInstance(symbolClass);
+				symbols[index] = symbol;
+
+				int fieldCount = input.readVInt();
+				for (int i=0; i<fieldCount; i++) {
+					String fieldName = string(input.readVInt());
+					Class<?> definedIn = loadClass(string(input.readVInt()));
+					reflectionProvider.writeField(symbol, fieldName, readValue(), definedIn);
+				}
+			}
+			return symbol;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Nullable
+		private Object readValue() {
+			int tag = input.readVInt();
+			switch (tag) {
+			case TAG_NULL:
+				return null;
+			case TAG_STRING:
+				return string(input.readVInt());
+			case TAG_INT:
+				String typeName = string(input.readVInt());
+				int intValue = input.readZInt();
+				if (typeName.equals(Short.class.getName()))
+					return (short) intValue;
+				else if (typeName.equals(Byte.class.getName()))
+					return (byte) intValue;
+				else
+					return intValue;
+			case TAG_LONG:
+				return input.readZLong();
+			case TAG_TRUE:
+				return true;
+			case TAG_FALSE:
+				return false;
+			case TAG_ENUM:
+				Class enumClass = loadClass(string(input.readVInt()));
+				return Enum.valueOf(enumClass, string(input.readVInt()));
+			case TAG_PLANAR_RANGE:
+				return new PlanarRange(input.readZInt(), input.readZInt(), input.readZInt(), input.readZInt());
+			case TAG_LINEAR_RANGE:
+				return new LinearRange(input.readZInt(), input.readZInt());
+			case TAG_SYMBOL:
+				int index = input.readVInt();
+				int position = input.getPosition();
+				Symbol symbol = getSymbol(index);
+				input.setPosition(position);
+				return symbol;
+			case TAG_LIST:
+				int size = input.readVInt();
+				List<Object> list = new ArrayList<>(size);
+				for (int i=0; i<size; i++)
+					list.add(readValue());
+				return list;
+			case TAG_SERIALIZED:
+				byte[] bytes = new byte[input.readVInt()];
+				input.readBytes(bytes, 0, bytes.length);
+				return SerializationUtils.deserialize(bytes);
+			default:
+				throw new IllegalStateException("Unexpected value tag: " + tag);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,40 @@
+package io.onedev.server.search.code.hit;
+
+import java.io.Serializable;
+
+public class ProjectScopedQueryHit implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Long projectId;
+	
+	private final String projectName;
+	
+	private final String commitHash;
+	
+	private final QueryHit hit;
+	
+	public ProjectScopedQueryHit(Long projectId, String projectName, String commitHash, QueryHit hit) {
+		this.projectId = projectId;
+		this.projectName = projectName;
+		this.commitHash = commitHash;
+		this.hit = hit;
+	}
+
+	public Long getProjectId() {
+		return projectId;
+	}
+
+	public String getProjectName() {
+		return projectName;
+	}
+
+	public String getCommitHash() {
+		return commitHash;
+	}
+
+	public QueryHit getHit() {
+		return hit;
+	}
+	
+}
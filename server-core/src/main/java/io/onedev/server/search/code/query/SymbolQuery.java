@@ -62,7 +62,9 @@ public class SymbolQuery extends BlobQuery {
 		String blobPath = treeWalk.getPathString();
 		ObjectId blobId = treeWalk.getObjectId(0);
 		
-		List<Symbol> symbols = OneDev.getInstance(SearchManager.class).getSymbols(searcher, blobId, blobPath);
+		String normalizedTermForFilter = caseSensitive? term: term.toLowerCase();
+		List<Symbol> symbols = OneDev.getInstance(SearchManager.class).getSymbols(searcher, blobId, blobPath, 
+				name -> WildcardUtils.matchString(normalizedTermForFilter, caseSensitive? name: name.toLowerCase()));
 		if (symbols != null) {
 			for (Symbol symbol: symbols) {
 				if (hits.size() < getCount()) {
@@ -5,6 +5,7 @@ import static io.onedev.server.search.code.FieldConstants.BLOB_TEXT;
 import static io.onedev.server.search.code.IndexConstants.NGRAM_SIZE;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -34,6 +35,14 @@ import io.onedev.server.util.ContentDetector;
 public class TextQuery extends BlobQuery {
 
 	private static int MAX_LINE_LEN = 1024;
+	
+	private static final int MAX_REGEX_LEN = 1024;
+	
+	/*
+	 * Matches a group containing a quantifier which is quantified again, such as 
+	 * "(a+)+" or "(\\w*\\s?)*", which may cause catastrophic backtracking 
+	 */
+	private static final Pattern NESTED_QUANTIFIER = Pattern.compile("\\((?:[^()\\\\]|\\\\.)*[*+}](?:[^()\\\\]|\\\\.)*\\)[*+{]");
 
 	private final String term;
 	
@@ -47,6 +56,8 @@ public class TextQuery extends BlobQuery {
 	
 	private transient Pattern pattern;
 	
+	private transient List<List<String>> requiredLiterals;
+	
 	private TextQuery(String term, boolean regex, boolean caseSensitive, boolean wholeWord, 
 			@Nullable String directory, @Nullable String fileNames, int count) {
 		super(directory, count);
@@ -80,6 +91,41 @@ public class TextQuery extends BlobQuery {
 		}
 	}
 	
+	private List<List<String>> getRequiredLiterals() {
+		if (requiredLiterals == null) {
+			List<List<String>> requiredLiterals = new ArrayList<>();
+			for (List<String> row: new RegexLiterals(term).getRequiredLiterals()) {
+				List<String> normalizedRow = new ArrayList<>();
+				for (String literal: row)
+					normalizedRow.add(literal.toLowerCase());
+				requiredLiterals.add(normalizedRow);
+			}
+			this.requiredLiterals = requiredLiterals;
+		}
+		return requiredLiterals;
+	}
+	
+	/*
+	 * Check if specified line contains all required literals of some alternative of 
+	 * the regex. Lines failing this check can not match the regex and do not need to 
+	 * be scanned by the regex engine
+	 */
+	private boolean mayMatch(String line) {
+		String normalizedLine = line.toLowerCase();
+		for (List<String> row: getRequiredLiterals()) {
+			boolean containsAll = true;
+			for (String literal: row) {
+				if (!normalizedLine.contains(literal)) {
+					containsAll = false;
+					break;
+				}
+			}
+			if (containsAll)
+				return true;
+		}
+		return false;
+	}
+	
 	@Override
 	public void collect(IndexSearcher searcher, TreeWalk treeWalk, List<QueryHit> hits) {
 		ObjectLoader objectLoader;
@@ -93,7 +139,7 @@ public class TextQuery extends BlobQuery {
 					if (pattern != null) {
 						int lineNo = 0;
 						for (String line: Splitter.on('\n').split(content)) {
-							if (line.length() <= MAX_LINE_LEN) {
+							if (line.length() <= MAX_LINE_LEN && mayMatch(line)) {
 								Matcher matcher = pattern.matcher(line);
 								while (matcher.find()) {
 									LinearRange range = new LinearRange(matcher.start(), matcher.end());
@@ -183,12 +229,15 @@ public class TextQuery extends BlobQuery {
 				builder.add(subQuery, Occur.MUST);
 		}
 
-		if (regex) 
+		if (regex) {
+			if (term.length() > MAX_REGEX_LEN || NESTED_QUANTIFIER.matcher(term).find())
+				throw new TooGeneralQueryException();
 			builder.add(new RegexLiterals(term).asNGramQuery(BLOB_TEXT.name(), NGRAM_SIZE), Occur.MUST);
-		else if (term.length() >= NGRAM_SIZE)
+		} else if (term.length() >= NGRAM_SIZE) {
 			builder.add(new NGramLuceneQuery(BLOB_TEXT.name(), term, NGRAM_SIZE), Occur.MUST);
-		else 
+		} else { 
 			throw new TooGeneralQueryException();
+		}
 	}
 	
 	public static class Builder {
@@ -2,6 +2,7 @@ package io.onedev.server.search.code.query.regex;
 
 import static io.onedev.server.search.code.IndexConstants.NGRAM_SIZE;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.antlr.v4.runtime.BaseErrorListener;
@@ -20,6 +21,7 @@ import com.google.common.base.Strings;
 
 import io.onedev.server.search.code.query.NGramLuceneQuery;
 import io.onedev.server.search.code.query.TooGeneralQueryException;
+import io.onedev.server.search.code.query.regex.PCREParser.ParseContext;
 
 public class RegexLiterals {
 	
@@ -27,26 +29,48 @@ public class RegexLiterals {
 	
 	private final List<List<LeafLiterals>> rows;
 	
+	/**
+	 * Extract literals of specified regex. Regex not understood by the parser is treated 
+	 * as requiring no literals, as literals extracted from a partial parse tree are not 
+	 * reliable. In that case {@link #asNGramQuery(String, int)} throws 
+	 * {@link TooGeneralQueryException}, and {@link #getRequiredLiterals()} returns a 
+	 * single empty row, both of which result in a full scan
+	 * 
+	 * @param regex
+	 */
 	public RegexLiterals(String regex) {
 		CharStream stream = CharStreams.fromString(regex);
+		ErrorListener errorListener = new ErrorListener();
 		PCRELexer lexer = new PCRELexer(stream);
 		lexer.removeErrorListeners();
-		lexer.addErrorListener(ErrorListener.INSTANCE);
+		lexer.addErrorListener(errorListener);
 		CommonTokenStream tokens = new CommonTokenStream(lexer);
 		
 		PCREParser parser = new PCREParser(tokens);
 		parser.removeErrorListeners();
-		parser.addErrorListener(ErrorListener.INSTANCE);
+		parser.addErrorListener(errorListener);
 		
-		OrLiterals orLiterals = (OrLiterals) new LiteralVisitor().visit(parser.parse());
-		rows = orLiterals.flattern(true);
+		ParseContext parseContext = parser.parse();
+		if (errorListener.error == null) {
+			OrLiterals orLiterals = (OrLiterals) new LiteralVisitor().visit(parseContext);
+			rows = orLiterals.flattern(true);
+		} else {
+			logger.debug("Unable to extract literals of regex '{}': {}", regex, errorListener.error);
+			rows = new ArrayList<>();
+			rows.add(new ArrayList<>());
+		}
 	}
 
 	/**
+	 * Compile literals into intersections and unions of n-gram postings. 
+	 * 
 	 * @param fieldName
 	 * @param gramSize
 	 * @return
 	 * @throws TooGeneralQueryException
+	 * 			if some alternative of the regex does not require any literal long 
+	 * 			enough to be looked up from n-gram index, as that alternative can 
+	 * 			match any content
 	 */
 	public Query asNGramQuery(String fieldName, int gramSize) throws TooGeneralQueryException {
 		BooleanQuery.Builder orQueryBuilder = new BooleanQuery.Builder();
@@ -59,6 +83,8 @@ public class RegexLiterals {
 			BooleanQuery andQuery = andQueryBuilder.build();
 			if (andQuery.clauses().size() != 0)
 				orQueryBuilder.add(andQuery, Occur.SHOULD);
+			else
+				throw new TooGeneralQueryException();
 		}
 		BooleanQuery orQuery = orQueryBuilder.build();
 		if (orQuery.clauses().size() != 0)
@@ -66,6 +92,26 @@ public class RegexLiterals {
 		else
 			throw new TooGeneralQueryException();
 	}
+	
+	/**
+	 * Get literals required by the regex. Any text matching the regex contains all 
+	 * literals of at least one of the returned rows. 
+	 * 
+	 * @return
+	 * 			rows of non-empty literals
+	 */
+	public List<List<String>> getRequiredLiterals() {
+		List<List<String>> requiredLiterals = new ArrayList<>();
+		for (List<LeafLiterals> row: rows) {
+			List<String> requiredRow = new ArrayList<>();
+			for (LeafLiterals literals: row) {
+				if (!Strings.isNullOrEmpty(literals.getLiteral()))
+					requiredRow.add(literals.getLiteral());
+			}
+			requiredLiterals.add(requiredRow);
+		}
+		return requiredLiterals;
+	}
 
 	@Override
 	public String toString() {
@@ -88,7 +134,7 @@ public class RegexLiterals {
 
 	private static class ErrorListener extends BaseErrorListener {
 
-		private static final ErrorListener INSTANCE = new ErrorListener();
+		private String error;
 		
 		@Override
 		public void syntaxError(Recognizer<?, ?> recognizer,
@@ -97,7 +143,8 @@ public class RegexLiterals {
 								int charPositionInLine,
 								String msg,
 								RecognitionException e) {
-			logger.error("line " + line + ":" + charPositionInLine + " " + msg);
+			if (error == null)
+				error = "line " + line + ":" + charPositionInLine + " " + msg;
 		}
 		
 	}
@@ -0,0 +1,63 @@
+package io.onedev.server.storage;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.model.Build;
+import io.onedev.server.util.patternset.PatternSet;
+
+/**
+ * Stores build artifacts as content addressed blobs. Artifact files of builds are hard 
+ * links to blobs, so that identical artifacts published by different builds occupy disk 
+ * space only once. Blobs no longer referenced by any build are removed periodically.
+ */
+public interface ArtifactStorageManager {
+
+	/**
+	 * Publish specified files as artifacts of specified build. Caller should hold write 
+	 * lock of build artifacts
+	 * 
+	 * @param baseDir
+	 * 			base directory of specified files. Artifact path of each file is calculated 
+	 * 			relative to this directory
+	 * @param files
+	 * 			files to be published
+	 */
+	void publish(Build build, File baseDir, Collection<File> files);
+	
+	/**
+	 * Get content digest of specified artifact
+	 * 
+	 * @param artifactPath
+	 * 			path of the artifact relative to artifacts directory of the build, using 
+	 * 			"/" as separator
+	 * @return
+	 * 			SHA-256 digest of artifact content in hex, or <tt>null</tt> if artifact 
+	 * 			does not exist or is published before artifact storage is content addressed
+	 */
+	@Nullable
+	String getDigest(Build build, String artifactPath);
+	
+	/**
+	 * Write artifacts of specified build as zip archive to specified stream. Entries are 
+	 * written as soon as they are ready without using temp files, and files already 
+	 * compressed are stored without compression
+	 * 
+	 * @param dirPath
+	 * 			path of directory to archive relative to artifacts directory of the build, or 
+	 * 			<tt>null</tt> to archive all artifacts
+	 * @param patternSet
+	 * 			pattern set to filter archived files relative to the directory, or <tt>null</tt> 
+	 * 			to archive all files under the directory
+	 */
+	void zip(Build build, @Nullable String dirPath, @Nullable PatternSet patternSet, OutputStream os);
+	
+	/**
+	 * Copy artifacts of specified build matching specified pattern set into specified directory
+	 */
+	void retrieve(Build build, PatternSet patternSet, File targetDir);
+	
+}
@@ -0,0 +1,518 @@
+package io.onedev.server.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.ScheduleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.ExplicitException;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LockUtils;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.Build;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.FilenameUtils;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.patternset.PatternSet;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+@Singleton
+public class DefaultArtifactStorageManager implements ArtifactStorageManager, SchedulableTask {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultArtifactStorageManager.class);
+
+	private static final String DIGESTS_FILE = "artifacts.digests";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final long TEMP_PRESERVE_PERIOD = 24*3600*1000L;
+
+	private static final int ZIP_CONCURRENCY = Runtime.getRuntime().availableProcessors();
+
+	// Number of entries prepared ahead of the one being written, to bound memory usage
+	private static final int ZIP_WINDOW = ZIP_CONCURRENCY * 2;
+
+	// Files not exceeding this size are deflated into memory by compression pool
+	private static final long IN_MEMORY_DEFLATE_LIMIT = 1024*1024;
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	private static final int MAX_CACHED_DIGESTS = 1000;
+
+	private static final Set<String> COMPRESSED_EXTENSIONS = Sets.newHashSet(
+			"zip", "jar", "war", "ear", "apk", "aar", "whl", "nupkg", "gz", "tgz", "bz2", "xz",
+			"7z", "rar", "zst", "lz4", "png", "jpg", "jpeg", "gif", "webp", "mp3", "mp4", "mkv",
+			"webm", "woff", "woff2", "docx", "xlsx", "pptx");
+
+	private final Dao dao;
+
+	private final StorageManager storageManager;
+
+	private final TaskScheduler taskScheduler;
+
+	private final ThreadPoolExecutor compressionExecutor = new ThreadPoolExecutor(
+			ZIP_CONCURRENCY, ZIP_CONCURRENCY, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+	private String taskId;
+
+	private volatile Boolean linkSupported;
+
+	/*
+	 * Digests of recently accessed builds keyed by build id, to avoid parsing digests 
+	 * file on every artifact download. Entries are validated against modification 
+	 * time of the file in case publish dir is deleted or rewritten, for instance when 
+	 * build is resubmitted
+	 */
+	private final Cache<Long, CachedDigests> digestsCache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHED_DIGESTS)
+			.build();
+
+	@Inject
+	public DefaultArtifactStorageManager(Dao dao, StorageManager storageManager, TaskScheduler taskScheduler) {
+		this.dao = dao;
+		this.storageManager = storageManager;
+		this.taskScheduler = taskScheduler;
+		compressionExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	private File getBlobFile(String digest) {
+		return new File(storageManager.getArtifactBlobsDir(), digest.substring(0, 2) + "/" + digest);
+	}
+
+	private String getBlobLockKey(String digest) {
+		return "artifact-blob:" + digest;
+	}
+
+	private Properties readDigests(File digestsFile) {
+		Properties digests = new Properties();
+		if (digestsFile.exists()) {
+			try (Reader reader = new InputStreamReader(new FileInputStream(digestsFile), StandardCharsets.UTF_8)) {
+				digests.load(reader);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return digests;
+	}
+
+	private void writeDigests(File digestsFile, Properties digests) {
+		File tempFile = new File(digestsFile.getParentFile(), digestsFile.getName() + TEMP_SUFFIX);
+		try {
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+				digests.store(writer, null);
+			}
+			Files.move(tempFile.toPath(), digestsFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Separated out so that file systems without hard link support can be simulated
+	 */
+	protected void createLink(File link, File existing) throws IOException {
+		Files.createLink(link.toPath(), existing.toPath());
+	}
+	
+	/*
+	 * Check once whether files in blobs dir can be hard linked from artifact dirs. 
+	 * Storing artifacts as blobs only saves space if they can be linked
+	 */
+	private boolean isLinkSupported(File targetDir) {
+		if (linkSupported == null) {
+			synchronized (this) {
+				if (linkSupported == null) {
+					File blobsDir = storageManager.getArtifactBlobsDir();
+					FileUtils.createDir(blobsDir);
+					String probeName = "link-probe-" + UUID.randomUUID().toString() + TEMP_SUFFIX;
+					File probeFile = new File(blobsDir, probeName);
+					File probeLink = new File(targetDir, probeName);
+					try {
+						Files.createFile(probeFile.toPath());
+						createLink(probeLink, probeFile);
+						linkSupported = true;
+					} catch (IOException | UnsupportedOperationException e) {
+						logger.warn("Hard link not supported, artifacts will be stored without deduplication", e);
+						linkSupported = false;
+					} finally {
+						FileUtils.deleteFile(probeLink);
+						FileUtils.deleteFile(probeFile);
+					}
+				}
+			}
+		}
+		return linkSupported;
+	}
+
+	/*
+	 * Link target file to blob of source content, creating the blob if necessary.
+	 * Target file is deleted first instead of being overwritten, as it may be a link
+	 * to blob shared with other builds
+	 */
+	private String store(File source, File target) throws IOException {
+		String digest;
+		try (InputStream is = new FileInputStream(source)) {
+			digest = DigestUtils.sha256Hex(is);
+		}
+
+		if (target.exists())
+			FileUtils.deleteFile(target);
+		else
+			FileUtils.createDir(target.getParentFile());
+
+		if (!isLinkSupported(target.getParentFile())) {
+			FileUtils.copyFile(source, target);
+			return digest;
+		}
+		
+		File blobFile = getBlobFile(digest);
+		Lock lock = LockUtils.getLock(getBlobLockKey(digest));
+		lock.lock();
+		try {
+			if (!blobFile.exists()) {
+				FileUtils.createDir(blobFile.getParentFile());
+				File tempFile = new File(blobFile.getParentFile(),
+						digest + "-" + UUID.randomUUID().toString() + TEMP_SUFFIX);
+				FileUtils.copyFile(source, tempFile);
+				Files.move(tempFile.toPath(), blobFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			try {
+				createLink(target, blobFile);
+			} catch (IOException | UnsupportedOperationException e) {
+				// Blobs dir is on a different file system than this artifact dir
+				logger.debug("Unable to link artifact to blob, copying instead", e);
+				FileUtils.copyFile(blobFile, target);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return digest;
+	}
+
+	@Override
+	public void publish(Build build, File baseDir, Collection<File> files) {
+		File publishDir = build.getPublishDir();
+		File artifactsDir = build.getArtifactsDir();
+		File digestsFile = new File(publishDir, DIGESTS_FILE);
+		Properties digests = readDigests(digestsFile);
+		int baseLen = baseDir.getAbsolutePath().length() + 1;
+		for (File file: files) {
+			String artifactPath = file.getAbsolutePath().substring(baseLen);
+			try {
+				String digest = store(file, new File(artifactsDir, artifactPath));
+				digests.setProperty(artifactPath.replace('\\', '/'), digest);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		writeDigests(digestsFile, digests);
+		digestsCache.put(build.getId(), new CachedDigests(digestsFile.lastModified(), digests));
+	}
+
+	@Nullable
+	@Override
+	public String getDigest(Build build, String artifactPath) {
+		File digestsFile = new File(build.getPublishDir(), DIGESTS_FILE);
+		long lastModified = digestsFile.lastModified();
+		if (lastModified == 0) {
+			digestsCache.invalidate(build.getId());
+			return null;
+		}
+		CachedDigests cached = digestsCache.getIfPresent(build.getId());
+		if (cached == null || cached.lastModified != lastModified) {
+			cached = new CachedDigests(lastModified, readDigests(digestsFile));
+			digestsCache.put(build.getId(), cached);
+		}
+		return cached.digests.getProperty(artifactPath);
+	}
+
+	private File getArtifactDir(Build build, @Nullable String dirPath) {
+		File artifactsDir = build.getArtifactsDir();
+		if (dirPath != null) {
+			File dir = new File(artifactsDir, dirPath);
+			try {
+				if (!dir.getCanonicalFile().toPath().startsWith(artifactsDir.getCanonicalFile().toPath()))
+					throw new ExplicitException("Invalid artifact path: " + dirPath);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return dir;
+		} else {
+			return artifactsDir;
+		}
+	}
+
+	private Collection<File> listArtifacts(File dir, @Nullable PatternSet patternSet) {
+		if (dir.isDirectory()) {
+			if (patternSet == null)
+				patternSet = new PatternSet(Sets.newHashSet("**"), new HashSet<>());
+			return patternSet.listFiles(dir);
+		} else {
+			return new ArrayList<>();
+		}
+	}
+
+	/*
+	 * Calculate everything needed to write entry of specified file, so that the
+	 * writing thread only needs to copy bytes
+	 */
+	private PreparedEntry prepare(File file, String entryName) throws IOException {
+		ZipArchiveEntry entry = new ZipArchiveEntry(entryName);
+		entry.setTime(file.lastModified());
+		entry.setSize(file.length());
+		String extension = FilenameUtils.getExtension(file.getName()).toLowerCase();
+		if (COMPRESSED_EXTENSIONS.contains(extension)) {
+			entry.setMethod(ZipEntry.STORED);
+			CRC32 crc = new CRC32();
+			try (InputStream is = new FileInputStream(file)) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int count;
+				while ((count = is.read(buffer)) != -1)
+					crc.update(buffer, 0, count);
+			}
+			entry.setCrc(crc.getValue());
+			return new PreparedEntry(entry, file, null);
+		} else if (file.length() <= IN_MEMORY_DEFLATE_LIMIT) {
+			entry.setMethod(ZipEntry.DEFLATED);
+			CRC32 crc = new CRC32();
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try (
+					InputStream is = new FileInputStream(file);
+					DeflaterOutputStream dos = new DeflaterOutputStream(baos, deflater, BUFFER_SIZE)) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int count;
+				while ((count = is.read(buffer)) != -1) {
+					crc.update(buffer, 0, count);
+					dos.write(buffer, 0, count);
+				}
+			} finally {
+				deflater.end();
+			}
+			entry.setCrc(crc.getValue());
+			entry.setCompressedSize(baos.size());
+			return new PreparedEntry(entry, file, baos.toByteArray());
+		} else {
+			entry.setMethod(ZipEntry.DEFLATED);
+			return new PreparedEntry(entry, file, null);
+		}
+	}
+
+	private void write(ZipArchiveOutputStream zos, PreparedEntry prepared) throws IOException {
+		if (prepared.deflated != null) {
+			zos.addRawArchiveEntry(prepared.entry, new ByteArrayInputStream(prepared.deflated));
+		} else {
+			zos.putArchiveEntry(prepared.entry);
+			try (InputStream is = new FileInputStream(prepared.file)) {
+				IOUtils.copy(is, zos, BUFFER_SIZE);
+			}
+			zos.closeArchiveEntry();
+		}
+	}
+
+	@Override
+	public void zip(Build build, @Nullable String dirPath, @Nullable PatternSet patternSet, OutputStream os) {
+		LockUtils.read(build.getArtifactsLockKey(), new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				File dir = getArtifactDir(build, dirPath);
+				int baseLen = dir.getAbsolutePath().length() + 1;
+				Deque<Future<PreparedEntry>> pendings = new ArrayDeque<>();
+				try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(new CloseShieldOutputStream(os))) {
+					zos.setUseZip64(Zip64Mode.AsNeeded);
+					for (File file: listArtifacts(dir, patternSet)) {
+						String entryName = file.getAbsolutePath().substring(baseLen).replace('\\', '/');
+						pendings.add(compressionExecutor.submit(new Callable<PreparedEntry>() {
+
+							@Override
+							public PreparedEntry call() throws Exception {
+								return prepare(file, entryName);
+							}
+
+						}));
+						if (pendings.size() >= ZIP_WINDOW)
+							write(zos, pendings.remove().get());
+					}
+					while (!pendings.isEmpty())
+						write(zos, pendings.remove().get());
+				} finally {
+					for (Future<PreparedEntry> pending: pendings)
+						pending.cancel(true);
+				}
+				return null;
+			}
+
+		});
+	}
+
+	@Override
+	public void retrieve(Build build, PatternSet patternSet, File targetDir) {
+		LockUtils.read(build.getArtifactsLockKey(), new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				File artifactsDir = build.getArtifactsDir();
+				int baseLen = artifactsDir.getAbsolutePath().length() + 1;
+				for (File file: listArtifacts(artifactsDir, patternSet))
+					FileUtils.copyFile(file, new File(targetDir, file.getAbsolutePath().substring(baseLen)));
+				return null;
+			}
+
+		});
+	}
+
+	@Sessional
+	protected List<Long> queryProjectIds() {
+		return dao.getSession().createQuery("select id from Project", Long.class).list();
+	}
+
+	/*
+	 * Blobs are removed if not referenced by digests of any build. Artifacts of a build
+	 * being published while collecting referenced digests may link to a blob removed
+	 * here. This is harmless as artifact content is retained by the hard link, and the
+	 * blob will be re-created when same content is published again
+	 */
+	@Override
+	public void execute() {
+		try {
+			Set<String> referencedDigests = new HashSet<>();
+			for (Long projectId: queryProjectIds()) {
+				File[] buildDirs = storageManager.getBuildsDir(projectId).listFiles();
+				if (buildDirs != null) {
+					for (File buildDir: buildDirs) {
+						for (Object digest: readDigests(new File(buildDir, DIGESTS_FILE)).values())
+							referencedDigests.add((String) digest);
+					}
+				}
+			}
+
+			int removed = 0;
+			for (File prefixDir: storageManager.getArtifactBlobsDir().listFiles()) {
+				File[] blobFiles = prefixDir.listFiles();
+				if (blobFiles == null)
+					continue;
+				for (File blobFile: blobFiles) {
+					String digest = blobFile.getName();
+					if (digest.endsWith(TEMP_SUFFIX)) {
+						if (System.currentTimeMillis() - blobFile.lastModified() > TEMP_PRESERVE_PERIOD)
+							FileUtils.deleteFile(blobFile);
+					} else if (!referencedDigests.contains(digest)) {
+						Lock lock = LockUtils.getLock(getBlobLockKey(digest));
+						lock.lock();
+						try {
+							FileUtils.deleteFile(blobFile);
+							removed++;
+						} finally {
+							lock.unlock();
+						}
+					}
+				}
+			}
+			if (removed != 0)
+				logger.info("Removed {} unreferenced artifact blobs", removed);
+		} catch (Exception e) {
+			logger.error("Error removing unreferenced artifact blobs", e);
+		}
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return CronScheduleBuilder.dailyAtHourAndMinute(2, 0);
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		taskScheduler.unschedule(taskId);
+		compressionExecutor.shutdownNow();
+	}
+
+	private static class CachedDigests {
+		
+		final long lastModified;
+		
+		final Properties digests;
+		
+		CachedDigests(long lastModified, Properties digests) {
+			this.lastModified = lastModified;
+			this.digests = digests;
+		}
+		
+	}
+	
+	private static class PreparedEntry {
+
+		final ZipArchiveEntry entry;
+
+		final File file;
+
+		@Nullable
+		final byte[] deflated;
+
+		PreparedEntry(ZipArchiveEntry entry, File file, @Nullable byte[] deflated) {
+			this.entry = entry;
+			this.file = file;
+			this.deflated = deflated;
+		}
+
+	}
+
+}
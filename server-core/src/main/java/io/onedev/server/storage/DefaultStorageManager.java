@@ -150,7 +150,8 @@ public class DefaultStorageManager implements StorageManager {
         return infoDir;
     }
 
-	private File getBuildsDir(Long projectId) {
+	@Override
+	public File getBuildsDir(Long projectId) {
         File buildsDir = new File(getProjectDir(projectId), "builds");
         FileUtils.createDir(buildsDir);
         return buildsDir;
@@ -163,4 +164,11 @@ public class DefaultStorageManager implements StorageManager {
 		return buildDir;
 	}
 
+	@Override
+	public File getArtifactBlobsDir() {
+		File blobsDir = new File(Bootstrap.getSiteDir(), "artifact-blobs");
+		FileUtils.createDir(blobsDir);
+		return blobsDir;
+	}
+
 }
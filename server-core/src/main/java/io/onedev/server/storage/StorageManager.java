@@ -47,4 +47,21 @@ public interface StorageManager {
      */
     File getBuildDir(Long projectId, Long buildNumber);
     
+    /**
+     * Get directory containing directories of all builds of specified project
+     * 
+     * @return
+     * 			directory containing build directories. The directory will be exist after calling this method
+     */
+    File getBuildsDir(Long projectId);
+    
+    /**
+     * Get directory to store content addressed blobs of build artifacts. Blobs are shared by all 
+     * projects, and are hard linked into artifact directories of builds
+     * 
+     * @return
+     * 			directory to store artifact blobs. The directory will be exist after calling this method
+     */
+    File getArtifactBlobsDir();
+    
 }
@@ -1,5 +1,6 @@
 package io.onedev.server.util;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,4 +44,21 @@ public abstract class MatrixRunner<T> {
 	
 	protected abstract void run(Map<String, T> paramMap);
 	
+	/**
+	 * Expand specified param matrix into all combinations, so that they can be processed 
+	 * in a batch instead of one by one
+	 */
+	public static <T> List<Map<String, T>> getCombinations(Map<String, List<T>> paramMatrix) {
+		List<Map<String, T>> combinations = new ArrayList<>();
+		new MatrixRunner<T>(paramMatrix) {
+
+			@Override
+			protected void run(Map<String, T> paramMap) {
+				combinations.add(paramMap);
+			}
+			
+		}.run();
+		return combinations;
+	}
+	
 }
@@ -0,0 +1,88 @@
+package io.onedev.server.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Shared and size bounded cache of parse results of matcher languages such as pattern
+ * set, user match and job match. Results are keyed by language, input string and parse
+ * options, and are shared by all callers, so they must never be modified. Callers
+ * needing to modify a parse result, for instance to rename a user, should parse the
+ * input again without the cache, and invalidate the cached entry afterwards.
+ */
+public class ParseCache {
+
+	private static final int MAX_ENTRIES = 10000;
+
+	private static final Cache<List<Object>, Object> cache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_ENTRIES).recordStats().build();
+
+	private static List<Object> getKey(Class<?> language, String input, Object... options) {
+		List<Object> key = new ArrayList<>();
+		key.add(language);
+		key.add(input);
+		key.addAll(Arrays.asList(options));
+		return key;
+	}
+
+	/**
+	 * Get parse result of specified input
+	 *
+	 * @param language
+	 * 			language of the input, normally class of the parse result
+	 * @param input
+	 * 			input to be parsed. Parser will be called directly without caching if
+	 * 			input is <tt>null</tt>
+	 * @param parser
+	 * 			parser to be called if input is not parsed yet. Exception thrown from the
+	 * 			parser will be propagated as is, and failed parses are not cached
+	 * @param options
+	 * 			parse options affecting parse result
+	 * @return
+	 * 			shared parse result which should not be modified
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(Class<?> language, @Nullable String input, Callable<T> parser, Object... options) {
+		try {
+			if (input != null)
+				return (T) cache.get(getKey(language, input, options), parser);
+			else
+				return parser.call();
+		} catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			else if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			else
+				throw new RuntimeException(e.getCause());
+		} catch (Exception e) {
+			throw ExceptionUtils.unchecked(e);
+		}
+	}
+
+	/**
+	 * Invalidate cached parse result of specified input. This should be called when
+	 * input of a language is rewritten, for instance when a user or group referenced by
+	 * the input is renamed, so that the stale entry does not occupy the cache
+	 */
+	public static void invalidate(Class<?> language, @Nullable String input, Object... options) {
+		if (input != null)
+			cache.invalidate(getKey(language, input, options));
+	}
+
+	public static CacheStats getStats() {
+		return cache.stats();
+	}
+
+}
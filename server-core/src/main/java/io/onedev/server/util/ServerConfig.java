@@ -44,5 +44,24 @@ public interface ServerConfig {
      *          ssh port of the server
      */
     int getSshPort();
+    
+	/**
+	 * Whether or not to access code search indexes via memory mapped files.
+	 * <p>
+	 * @return
+	 * 			<tt>true</tt> to always use memory mapped index directories, <tt>false</tt> to 
+	 * 			let Lucene pick the directory implementation for current platform
+	 */
+	boolean isIndexMMap();
+	
+	/**
+	 * Whether or not to maintain n-gram indexes of finished build logs to speed up log 
+	 * matching.
+	 * <p>
+	 * @return
+	 * 			<tt>true</tt> to index build logs when builds are finished, <tt>false</tt> to 
+	 * 			always scan build logs
+	 */
+	boolean isLogIndexEnabled();
 	
 }
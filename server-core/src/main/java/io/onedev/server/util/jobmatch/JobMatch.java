@@ -2,6 +2,7 @@ package io.onedev.server.util.jobmatch;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.BaseErrorListener;
@@ -16,6 +17,7 @@ import io.onedev.commons.codeassist.FenceAware;
 import io.onedev.commons.utils.ExplicitException;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.model.Build;
+import io.onedev.server.util.ParseCache;
 import io.onedev.server.util.criteria.AndCriteria;
 import io.onedev.server.util.criteria.Criteria;
 import io.onedev.server.util.criteria.NotCriteria;
@@ -43,7 +45,22 @@ public class JobMatch extends Criteria<Build> {
 		return StringUtils.unescape(FenceAware.unfence(token));
 	}
 	
+	/**
+	 * Parse specified job match string. Returned job match is shared via {@link ParseCache} 
+	 * and should not be modified
+	 */
 	public static JobMatch parse(String jobMatchString) {
+		return ParseCache.get(JobMatch.class, jobMatchString, new Callable<JobMatch>() {
+
+			@Override
+			public JobMatch call() {
+				return doParse(jobMatchString);
+			}
+			
+		});
+	}
+	
+	private static JobMatch doParse(String jobMatchString) {
 		CharStream is = CharStreams.fromString(jobMatchString); 
 		JobMatchLexer lexer = new JobMatchLexer(is);
 		lexer.removeErrorListeners();
@@ -149,6 +166,24 @@ public class JobMatch extends Criteria<Build> {
 		criteria.onRenameUser(oldName, newName);
 	}
 
+	public static String onRenameUser(String jobMatchString, String oldName, String newName) {
+		JobMatch jobMatch = doParse(jobMatchString);
+		jobMatch.onRenameUser(oldName, newName);
+		String newJobMatchString = jobMatch.toString();
+		if (!newJobMatchString.equals(jobMatchString))
+			ParseCache.invalidate(JobMatch.class, jobMatchString);
+		return newJobMatchString;
+	}
+	
+	public static String onRenameProject(String jobMatchString, String oldName, String newName) {
+		JobMatch jobMatch = doParse(jobMatchString);
+		jobMatch.onRenameProject(oldName, newName);
+		String newJobMatchString = jobMatch.toString();
+		if (!newJobMatchString.equals(jobMatchString))
+			ParseCache.invalidate(JobMatch.class, jobMatchString);
+		return newJobMatchString;
+	}
+
 	@Override
 	public void onRenameProject(String oldName, String newName) {
 		criteria.onRenameProject(oldName, newName);
@@ -4,8 +4,10 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
 
@@ -20,6 +22,7 @@ import org.apache.tools.ant.DirectoryScanner;
 
 import io.onedev.commons.codeassist.FenceAware;
 import io.onedev.commons.utils.StringUtils;
+import io.onedev.server.util.ParseCache;
 import io.onedev.server.util.match.Matcher;
 import io.onedev.server.util.patternset.PatternSetParser.PatternContext;
 import io.onedev.server.util.patternset.PatternSetParser.PatternsContext;
@@ -45,6 +48,14 @@ public class PatternSet implements Serializable {
 		return excludes;
 	}
 
+	/**
+	 * Get a modifiable copy of this pattern set. Pattern set returned by {@link #parse(String)}
+	 * is shared and can not be modified directly
+	 */
+	public PatternSet copy() {
+		return new PatternSet(new HashSet<>(includes), new HashSet<>(excludes));
+	}
+	
 	public boolean matches(Matcher matcher, String value) {
 		for (String exclude: excludes) {
 			if (matcher.matches(exclude, value))
@@ -75,7 +86,22 @@ public class PatternSet implements Serializable {
 		return files;
 	}
 	
+	/**
+	 * Parse specified pattern set string. Returned pattern set is shared via {@link ParseCache}, 
+	 * call {@link #copy()} to get a modifiable copy
+	 */
 	public static PatternSet parse(@Nullable String patternSetString) {
+		return ParseCache.get(PatternSet.class, patternSetString, new Callable<PatternSet>() {
+
+			@Override
+			public PatternSet call() {
+				return doParse(patternSetString);
+			}
+			
+		});
+	}
+	
+	private static PatternSet doParse(@Nullable String patternSetString) {
 		Set<String> includes = new HashSet<>();
 		Set<String> excludes = new HashSet<>();
 		
@@ -113,7 +139,7 @@ public class PatternSet implements Serializable {
 			}			
 		}
 		
-		return new PatternSet(includes, excludes);
+		return new PatternSet(Collections.unmodifiableSet(includes), Collections.unmodifiableSet(excludes));
 	}
 
 	public static String quoteIfNecessary(String pattern) {
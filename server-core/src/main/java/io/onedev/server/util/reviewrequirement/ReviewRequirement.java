@@ -1,9 +1,12 @@
 package io.onedev.server.util.reviewrequirement;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
 
@@ -24,6 +27,7 @@ import io.onedev.server.entitymanager.GroupManager;
 import io.onedev.server.entitymanager.UserManager;
 import io.onedev.server.model.Group;
 import io.onedev.server.model.User;
+import io.onedev.server.util.ParseCache;
 import io.onedev.server.util.reviewrequirement.ReviewRequirementParser.CountContext;
 import io.onedev.server.util.reviewrequirement.ReviewRequirementParser.CriteriaContext;
 import io.onedev.server.util.reviewrequirement.ReviewRequirementParser.RequirementContext;
@@ -44,63 +48,93 @@ public class ReviewRequirement {
 		Map<Group, Integer> groups = new LinkedHashMap<>();
 		
 		if (requirementString != null) {
-			CharStream is = CharStreams.fromString(requirementString); 
-			ReviewRequirementLexer lexer = new ReviewRequirementLexer(is);
-			lexer.removeErrorListeners();
-			lexer.addErrorListener(new BaseErrorListener() {
+			/*
+			 * Only syntax of the requirement is cached as users and groups are entities 
+			 * which should be resolved in current session
+			 */
+			ParsedRequirement parsedRequirement = ParseCache.get(ReviewRequirement.class, requirementString, 
+					new Callable<ParsedRequirement>() {
 
 				@Override
-				public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
-						int charPositionInLine, String msg, RecognitionException e) {
-					throw new RuntimeException("Malformed review requirement");
+				public ParsedRequirement call() {
+					return parseRequirement(requirementString);
 				}
 				
 			});
-			CommonTokenStream tokens = new CommonTokenStream(lexer);
-			ReviewRequirementParser parser = new ReviewRequirementParser(tokens);
-			parser.removeErrorListeners();
-			parser.setErrorHandler(new BailErrorStrategy());
 			
-			RequirementContext requirementContext = parser.requirement();
-			
-			for (CriteriaContext criteria: requirementContext.criteria()) {
-				if (criteria.userCriteria() != null) {
-					String userName = getValue(criteria.userCriteria().Value());
-					User user = OneDev.getInstance(UserManager.class).findByName(userName);
-					if (user != null) {
-						if (!users.contains(user)) 
-							users.add(user);
-						else if (validate)
-							throw new ExplicitException("User '" + userName + "' is included multiple times");
-					} else if (validate) {
-						throw new ExplicitException("Unable to find user '" + userName + "'");
-					}
-				} else if (criteria.groupCriteria() != null) {
-					String groupName = getValue(criteria.groupCriteria().Value());
-					Group group = OneDev.getInstance(GroupManager.class).find(groupName);
-					if (group != null) {
-						if (!groups.containsKey(group)) {
-							CountContext count = criteria.groupCriteria().count();
-							if (count != null) {
-								if (count.DIGIT() != null)
-									groups.put(group, Integer.parseInt(count.DIGIT().getText()));
-								else
-									groups.put(group, 0);
-							} else {
-								groups.put(group, 1);
-							}
-						} else if (validate) {
-							throw new ExplicitException("Group '" + groupName + "' is included multiple times");
-						}
-					} else if (validate) {
-						throw new ExplicitException("Unable to find group '" + groupName + "'");
-					}
+			for (String userName: parsedRequirement.userNames) {
+				User user = OneDev.getInstance(UserManager.class).findByName(userName);
+				if (user != null) {
+					if (!users.contains(user)) 
+						users.add(user);
+					else if (validate)
+						throw new ExplicitException("User '" + userName + "' is included multiple times");
+				} else if (validate) {
+					throw new ExplicitException("Unable to find user '" + userName + "'");
+				}
+			}
+			for (Map.Entry<String, Integer> entry: parsedRequirement.groupCounts) {
+				String groupName = entry.getKey();
+				Group group = OneDev.getInstance(GroupManager.class).find(groupName);
+				if (group != null) {
+					if (!groups.containsKey(group)) 
+						groups.put(group, entry.getValue());
+					else if (validate) 
+						throw new ExplicitException("Group '" + groupName + "' is included multiple times");
+				} else if (validate) {
+					throw new ExplicitException("Unable to find group '" + groupName + "'");
 				}
-			}			
+			}
 		}
 		
 		return new ReviewRequirement(users, groups);
 	}
+	
+	private static ParsedRequirement parseRequirement(String requirementString) {
+		List<String> userNames = new ArrayList<>();
+		List<Map.Entry<String, Integer>> groupCounts = new ArrayList<>();
+		
+		CharStream is = CharStreams.fromString(requirementString); 
+		ReviewRequirementLexer lexer = new ReviewRequirementLexer(is);
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(new BaseErrorListener() {
+
+			@Override
+			public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+					int charPositionInLine, String msg, RecognitionException e) {
+				throw new RuntimeException("Malformed review requirement");
+			}
+			
+		});
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		ReviewRequirementParser parser = new ReviewRequirementParser(tokens);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		
+		RequirementContext requirementContext = parser.requirement();
+		
+		for (CriteriaContext criteria: requirementContext.criteria()) {
+			if (criteria.userCriteria() != null) {
+				userNames.add(getValue(criteria.userCriteria().Value()));
+			} else if (criteria.groupCriteria() != null) {
+				String groupName = getValue(criteria.groupCriteria().Value());
+				CountContext count = criteria.groupCriteria().count();
+				int groupCount;
+				if (count != null) {
+					if (count.DIGIT() != null)
+						groupCount = Integer.parseInt(count.DIGIT().getText());
+					else
+						groupCount = 0;
+				} else {
+					groupCount = 1;
+				}
+				groupCounts.add(new AbstractMap.SimpleImmutableEntry<>(groupName, groupCount));
+			}
+		}			
+		
+		return new ParsedRequirement(Collections.unmodifiableList(userNames), 
+				Collections.unmodifiableList(groupCounts));
+	}
 
 	private static String getValue(TerminalNode terminal) {
 		return StringUtils.unescape(FenceAware.unfence(terminal.getText()));
@@ -121,6 +155,7 @@ public class ReviewRequirement {
 			if (group.getName().equals(oldName))
 				group.setName(newName);
 		}
+		ParseCache.invalidate(ReviewRequirement.class, reviewRequirementString);
 		return reviewRequirement.toString();
 	}
 
@@ -130,6 +165,7 @@ public class ReviewRequirement {
 			if (user.getName().equals(oldName))
 				user.setName(newName);
 		}
+		ParseCache.invalidate(ReviewRequirement.class, reviewRequirementString);
 		return reviewRequirement.toString();
 	}
 	
@@ -197,4 +233,17 @@ public class ReviewRequirement {
 		}
 	}
 	
+	private static class ParsedRequirement {
+		
+		final List<String> userNames;
+		
+		final List<Map.Entry<String, Integer>> groupCounts;
+		
+		ParsedRequirement(List<String> userNames, List<Map.Entry<String, Integer>> groupCounts) {
+			this.userNames = userNames;
+			this.groupCounts = groupCounts;
+		}
+		
+	}
+	
 }
@@ -2,7 +2,9 @@ package io.onedev.server.util.usermatch;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
@@ -21,6 +23,7 @@ import io.onedev.commons.utils.ExplicitException;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
+import io.onedev.server.util.ParseCache;
 import io.onedev.server.util.usermatch.UserMatchParser.CriteriaContext;
 import io.onedev.server.util.usermatch.UserMatchParser.ExceptCriteriaContext;
 import io.onedev.server.util.usermatch.UserMatchParser.UserMatchContext;
@@ -76,7 +79,24 @@ public class UserMatch implements Serializable {
 		}
 	}
 	
+	/**
+	 * Parse specified user match string. Returned user match is shared via {@link ParseCache} 
+	 * and should not be modified
+	 */
 	public static UserMatch parse(@Nullable String userMatchString) {
+		return ParseCache.get(UserMatch.class, userMatchString, new Callable<UserMatch>() {
+
+			@Override
+			public UserMatch call() {
+				UserMatch userMatch = doParse(userMatchString);
+				return new UserMatch(Collections.unmodifiableList(userMatch.getCriterias()), 
+						Collections.unmodifiableList(userMatch.getExceptCriterias()));
+			}
+			
+		});
+	}
+	
+	private static UserMatch doParse(@Nullable String userMatchString) {
 		List<UserMatchCriteria> criterias = new ArrayList<>();
 		List<UserMatchCriteria> exceptCriterias = new ArrayList<>();
 		
@@ -145,10 +165,13 @@ public class UserMatch implements Serializable {
 	}
 	
 	public static String onRenameGroup(String userMatchString, String oldName, String newName) {
-		UserMatch userMatch = parse(userMatchString);
+		UserMatch userMatch = doParse(userMatchString);
 		onRenameGroup(userMatch.getCriterias(), oldName, newName);
 		onRenameGroup(userMatch.getExceptCriterias(), oldName, newName);
-		return userMatch.toString();
+		String newUserMatchString = userMatch.toString();
+		if (!newUserMatchString.equals(userMatchString))
+			ParseCache.invalidate(UserMatch.class, userMatchString);
+		return newUserMatchString;
 	}
 
 	private static void onRenameUser(List<UserMatchCriteria> criterias, String oldName, String newName) {
@@ -162,10 +185,13 @@ public class UserMatch implements Serializable {
 	}
 	
 	public static String onRenameUser(String userMatchString, String oldName, String newName) {
-		UserMatch userMatch = parse(userMatchString);
+		UserMatch userMatch = doParse(userMatchString);
 		onRenameUser(userMatch.getCriterias(), oldName, newName);
 		onRenameUser(userMatch.getExceptCriterias(), oldName, newName);
-		return userMatch.toString();
+		String newUserMatchString = userMatch.toString();
+		if (!newUserMatchString.equals(userMatchString))
+			ParseCache.invalidate(UserMatch.class, userMatchString);
+		return newUserMatchString;
 	}
 
 	private static boolean isUsingUser(List<UserMatchCriteria> criterias, String userName) {
@@ -107,6 +107,7 @@ import io.onedev.server.web.page.simple.security.PasswordResetPage;
 import io.onedev.server.web.page.simple.security.SignUpPage;
 import io.onedev.server.web.page.simple.serverinit.ServerInitPage;
 import io.onedev.server.web.resource.ArchiveResourceReference;
+import io.onedev.server.web.resource.ArtifactArchiveResourceReference;
 import io.onedev.server.web.resource.ArtifactResourceReference;
 import io.onedev.server.web.resource.AttachmentResourceReference;
 import io.onedev.server.web.resource.BuildLogResourceReference;
@@ -155,6 +156,8 @@ public class BaseUrlMapper extends CompoundRequestMapper {
 		add(new BaseResourceMapper("projects/${project}/attachment/${uuid}/${attachment}", new AttachmentResourceReference()));
 		add(new DynamicPathResourceMapper("downloads/projects/${project}/builds/${build}/artifacts/${path}", 
 				new ArtifactResourceReference()));
+		add(new BaseResourceMapper("downloads/projects/${project}/builds/${build}/artifact-archive", 
+				new ArtifactArchiveResourceReference()));
 		add(new BaseResourceMapper(SvgSpriteResourceReference.DEFAULT_MOUNT_PATH, new SvgSpriteResourceReference(IconScope.class)));
 	}
 	
@@ -209,7 +209,7 @@ public abstract class SymbolTooltipPanel extends Panel {
 					if (symbolHits.size() < QUERY_ENTRIES) {
 						// first find in current file for matched symbols
 						List<Symbol> symbols = OneDev.getInstance(SearchManager.class).getSymbols(getProject(), 
-								blob.getBlobId(), getBlobPath());
+								blob.getBlobId(), getBlobPath(), symbolName::equals);
 						if (symbols != null) {
 							for (Symbol symbol: symbols) {
 								if (symbolHits.size() < QUERY_ENTRIES 
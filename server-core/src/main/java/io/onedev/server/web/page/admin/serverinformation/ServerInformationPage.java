@@ -1,7 +1,9 @@
 package io.onedev.server.web.page.admin.serverinformation;
 
 import java.util.Date;
+import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.wicket.Component;
 import org.apache.wicket.markup.ComponentTag;
 import org.apache.wicket.markup.html.basic.Label;
@@ -9,7 +11,16 @@ import org.apache.wicket.markup.html.link.Link;
 import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
+import io.onedev.server.OneDev;
+import io.onedev.server.buildspec.BuildSpec;
+import io.onedev.server.buildspec.job.JobManager;
+import io.onedev.server.buildspec.job.SchedulerStats;
+import io.onedev.server.buildspec.job.cache.CacheStats;
+import io.onedev.server.buildspec.job.cache.JobCacheManager;
+import io.onedev.server.buildspec.job.log.LogManager;
+import io.onedev.server.buildspec.job.log.LogStats;
 import io.onedev.server.util.DateUtils;
+import io.onedev.server.util.ParseCache;
 import io.onedev.server.web.page.admin.AdministrationPage;
 
 @SuppressWarnings("serial")
@@ -67,6 +78,75 @@ public class ServerInformationPage extends AdministrationPage {
 		
 		add(new Label("osUserName", System.getProperty("user.name")));
 		
+		add(new Label("jobScheduler", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				SchedulerStats stats = OneDev.getInstance(JobManager.class).getSchedulerStats();
+				return String.format("%d pending checks, %d running executions, "
+						+ "scheduling latency %d ms (average %d ms), queue wait %d ms (average %d ms)", 
+						stats.getPendingChecks(), stats.getRunningExecutions(), 
+						stats.getLastSchedulingLatency(), stats.getAverageSchedulingLatency(), 
+						stats.getLastQueueWait(), stats.getAverageQueueWait());
+			}
+			
+		}));
+		
+		add(new Label("buildLogs", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				LogStats stats = OneDev.getInstance(LogManager.class).getLogStats();
+				return String.format("%d logs compressed (%s to %s, ratio %.1f), read latency %d ms (average %d ms)", 
+						stats.getCompressedLogs(), FileUtils.byteCountToDisplaySize(stats.getUncompressedBytes()), 
+						FileUtils.byteCountToDisplaySize(stats.getCompressedBytes()), stats.getCompressionRatio(), 
+						stats.getLastReadLatency(), stats.getAverageReadLatency());
+			}
+			
+		}));
+		
+		add(new Label("jobCaches", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				Map<String, CacheStats> statsOfKeys = OneDev.getInstance(JobCacheManager.class).getStats();
+				long hits = 0, misses = 0, evictions = 0;
+				for (CacheStats stats: statsOfKeys.values()) {
+					hits += stats.getHits();
+					misses += stats.getMisses();
+					evictions += stats.getEvictions();
+				}
+				CacheStats total = new CacheStats(hits, misses, evictions);
+				return String.format("%d cache keys, %d hits, %d misses (hit ratio %.0f%%), %d evictions", 
+						statsOfKeys.size(), total.getHits(), total.getMisses(), 
+						total.getHitRatio()*100, total.getEvictions());
+			}
+			
+		}));
+		
+		add(new Label("buildSpecs", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				com.google.common.cache.CacheStats stats = BuildSpec.getSharedCacheStats();
+				return String.format("%d hits, %d misses (hit ratio %.0f%%), %d evictions, average parse time %.1f ms", 
+						stats.hitCount(), stats.missCount(), stats.hitRate()*100, stats.evictionCount(), 
+						stats.averageLoadPenalty()/1000000);
+			}
+			
+		}));
+		
+		add(new Label("parseCache", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				com.google.common.cache.CacheStats stats = ParseCache.getStats();
+				return String.format("%d hits, %d misses (hit ratio %.0f%%), %d evictions", 
+						stats.hitCount(), stats.missCount(), stats.hitRate()*100, stats.evictionCount());
+			}
+			
+		}));
+		
 		add(new Link<Void>("gc") {
 
 			@Override
@@ -44,7 +44,7 @@ public class BuildSpecBlobViewPanel extends BlobViewPanel {
 		
 		try {
 			Blob blob = context.getProject().getBlob(context.getBlobIdent(), true);
-			BuildSpec buildSpec = BuildSpec.parse(blob.getBytes());
+			BuildSpec buildSpec = BuildSpec.get(blob);
 			
 			if (buildSpec != null) {
 				Fragment validFrag = new Fragment("content", "validFrag", this);			
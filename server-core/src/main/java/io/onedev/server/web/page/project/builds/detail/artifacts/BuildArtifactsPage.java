@@ -39,6 +39,8 @@ import io.onedev.server.util.DateUtils;
 import io.onedev.server.web.behavior.NoRecordsBehavior;
 import io.onedev.server.web.component.svg.SpriteImage;
 import io.onedev.server.web.page.project.builds.detail.BuildDetailPage;
+import io.onedev.server.web.resource.ArtifactArchiveResource;
+import io.onedev.server.web.resource.ArtifactArchiveResourceReference;
 import io.onedev.server.web.resource.ArtifactResource;
 import io.onedev.server.web.resource.ArtifactResourceReference;
 
@@ -62,9 +64,14 @@ public class BuildArtifactsPage extends BuildDetailPage {
 				@Override
 				public void populateItem(Item<ICellPopulator<File>> cellItem, String componentId, IModel<File> rowModel) {
 					File file = rowModel.getObject();
-					if (file.isDirectory())
-						cellItem.add(new Label(componentId, ""));
-					else
+					if (file.isDirectory()) {
+						Fragment fragment = new Fragment(componentId, "archiveFrag", BuildArtifactsPage.this);
+						String dirPath = getBuild().getArtifactsDir().toURI().relativize(file.toURI()).getPath();
+						PageParameters params = ArtifactArchiveResource.paramsOf(
+								getBuild().getProject(), getBuild().getNumber(), dirPath);
+						fragment.add(new ResourceLink<Void>("archive", new ArtifactArchiveResourceReference(), params));
+						cellItem.add(fragment);
+					} else
 						cellItem.add(new Label(componentId, FileUtils.byteCountToDisplaySize(file.length())));
 				}
 				
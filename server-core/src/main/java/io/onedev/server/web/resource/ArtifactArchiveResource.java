@@ -0,0 +1,107 @@
+package io.onedev.server.web.resource;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityNotFoundException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.authz.UnauthorizedException;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.AbstractResource;
+
+import io.onedev.server.OneDev;
+import io.onedev.server.entitymanager.BuildManager;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.model.Build;
+import io.onedev.server.model.Project;
+import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.storage.ArtifactStorageManager;
+
+/**
+ * Download artifacts of a build, or artifacts under a directory of a build as zip archive. 
+ * Archive is streamed to the response while being created.
+ */
+public class ArtifactArchiveResource extends AbstractResource {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String PARAM_PROJECT = "project";
+
+	private static final String PARAM_BUILD = "build";
+
+	private static final String PARAM_PATH = "path";
+	
+	private static final String MIME_TYPE = "application/zip";
+	
+	@Override
+	protected ResourceResponse newResourceResponse(Attributes attributes) {
+		PageParameters params = attributes.getParameters();
+
+		String projectName = params.get(PARAM_PROJECT).toString();
+		if (StringUtils.isBlank(projectName))
+			throw new IllegalArgumentException("project name has to be specified");
+		
+		Project project = OneDev.getInstance(ProjectManager.class).find(projectName);
+		
+		if (project == null) 
+			throw new EntityNotFoundException("Unable to find project: " + projectName);
+		
+		Long buildNumber = params.get(PARAM_BUILD).toOptionalLong();
+		
+		if (buildNumber == null)
+			throw new IllegalArgumentException("build number has to be specified");
+		
+		Build build = OneDev.getInstance(BuildManager.class).find(project, buildNumber);
+
+		if (build == null) {
+			String message = String.format("Unable to find build (project: %s, build number: %d)", 
+					project.getName(), buildNumber);
+			throw new EntityNotFoundException(message);
+		}
+		
+		if (!SecurityUtils.canAccess(build))
+			throw new UnauthorizedException();
+		
+		String dirPath = StringUtils.trimToNull(StringUtils.strip(params.get(PARAM_PATH).toString(), "/"));
+		
+		ResourceResponse response = new ResourceResponse();
+		response.setContentType(MIME_TYPE);
+		response.disableCaching();
+		
+		try {
+			String fileName = project.getName() + "-" + buildNumber;
+			if (dirPath != null)
+				fileName += "-" + StringUtils.substringAfterLast("/" + dirPath, "/");
+			fileName += "-artifacts.zip";
+			response.setFileName(URLEncoder.encode(fileName, StandardCharsets.UTF_8.name()));
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		
+		response.setWriteCallback(new WriteCallback() {
+
+			@Override
+			public void writeData(Attributes attributes) throws IOException {
+				OneDev.getInstance(ArtifactStorageManager.class).zip(build, dirPath, null, 
+						attributes.getResponse().getOutputStream());
+			}			
+			
+		});
+
+		return response;
+	}
+
+	public static PageParameters paramsOf(Project project, Long buildNumber, @Nullable String dirPath) {
+		PageParameters params = new PageParameters();
+		params.set(PARAM_PROJECT, project.getName());
+		params.set(PARAM_BUILD, buildNumber);
+		if (dirPath != null)
+			params.set(PARAM_PATH, dirPath);
+		return params;
+	}
+
+}
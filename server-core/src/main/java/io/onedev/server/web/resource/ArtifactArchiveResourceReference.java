@@ -0,0 +1,19 @@
+package io.onedev.server.web.resource;
+
+import org.apache.wicket.request.resource.IResource;
+import org.apache.wicket.request.resource.ResourceReference;
+
+public class ArtifactArchiveResourceReference extends ResourceReference {
+
+	private static final long serialVersionUID = 1L;
+
+	public ArtifactArchiveResourceReference() {
+		super("artifact-archive");
+	}
+
+	@Override
+	public IResource getResource() {
+		return new ArtifactArchiveResource();
+	}
+
+}
@@ -4,23 +4,34 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
 import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.authz.UnauthorizedException;
-import org.apache.tika.io.IOUtils;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.resource.AbstractResource;
+import org.eclipse.jetty.io.EofException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 
+import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.ExplicitException;
 import io.onedev.commons.utils.LockUtils;
 import io.onedev.server.OneDev;
@@ -29,18 +40,25 @@ import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.Project;
 import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.storage.ArtifactStorageManager;
 import io.onedev.server.util.ContentDetector;
 
 public class ArtifactResource extends AbstractResource {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final Logger logger = LoggerFactory.getLogger(ArtifactResource.class);
+	
+	private static final int BUFFER_SIZE = 64*1024;
+
 	private static final String PARAM_PROJECT = "project";
 
 	private static final String PARAM_BUILD = "build";
 
 	private static final String PARAM_PATH = "path";
 	
+	private static final Pattern RANGE_PATTERN = Pattern.compile("\\s*(\\d*)\\s*-\\s*(\\d*)\\s*");
+	
 	@Override
 	protected ResourceResponse newResourceResponse(Attributes attributes) {
 		PageParameters params = attributes.getParameters();
@@ -94,6 +112,26 @@ public class ArtifactResource extends AbstractResource {
 		}
 			
 		ResourceResponse response = new ResourceResponse();
+		HttpServletRequest request = (HttpServletRequest) attributes.getRequest().getContainerRequest();
+		
+		/*
+		 * Artifact content is addressed by its digest, which serves as a strong entity tag 
+		 * so that clients can revalidate downloaded artifacts and resume interrupted 
+		 * downloads safely
+		 */
+		String etag = null;
+		String digest = OneDev.getInstance(ArtifactStorageManager.class).getDigest(build, artifactPath);
+		if (digest != null) {
+			etag = "\"" + digest + "\"";
+			response.getHeaders().addHeader("ETag", etag);
+			String ifNoneMatch = request.getHeader("If-None-Match");
+			if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") 
+					|| Splitter.on(',').trimResults().splitToList(ifNoneMatch).contains(etag))) {
+				response.setStatusCode(HttpServletResponse.SC_NOT_MODIFIED);
+				return response;
+			}
+		}
+		
 		try (InputStream is = new FileInputStream(artifactFile)) {
 			response.setContentType(ContentDetector.detectMediaType(is, artifactPath).toString());
 		} catch (Exception e) {
@@ -108,8 +146,44 @@ public class ArtifactResource extends AbstractResource {
 			throw new RuntimeException(e);
 		}
 		
-		response.setContentLength(artifactFile.length());
+		long length = artifactFile.length();
+		response.setAcceptRange(ContentRangeType.BYTES);
 		
+		/*
+		 * Range of a changed artifact should not be served to client holding a stale copy
+		 */
+		String ifRange = request.getHeader("If-Range");
+		ByteRange range;
+		if (ifRange == null || ifRange.trim().equals(etag)) {
+			try {
+				range = parseRange(request.getHeader("Range"), length);
+			} catch (RangeNotSatisfiableException e) {
+				response.setStatusCode(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				response.getHeaders().addHeader("Content-Range", "bytes */" + length);
+				response.setContentLength(0);
+				response.setWriteCallback(new WriteCallback() {
+
+					@Override
+					public void writeData(Attributes attributes) throws IOException {
+					}
+					
+				});
+				return response;
+			}
+		} else {
+			range = null;
+		}
+		
+		if (range != null) {
+			response.setStatusCode(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.getHeaders().addHeader("Content-Range", 
+					"bytes " + range.getStart() + "-" + range.getEnd() + "/" + length);
+		} else {
+			range = new ByteRange(0, length - 1);
+		}
+		response.setContentLength(range.getLength());
+		
+		ByteRange rangeToWrite = range;
 		response.setWriteCallback(new WriteCallback() {
 
 			@Override
@@ -118,8 +192,14 @@ public class ArtifactResource extends AbstractResource {
 
 					@Override
 					public Void call() throws Exception {
-						try (InputStream is = new FileInputStream(artifactFile)) {
-							IOUtils.copy(is, attributes.getResponse().getOutputStream());
+						try {
+							copy(artifactFile, rangeToWrite, attributes.getResponse().getOutputStream());
+						} catch (Exception e) {
+							EofException eofException = ExceptionUtils.find(e, EofException.class);
+							if (eofException != null) 
+								logger.trace("EOF while writing data", eofException);
+							else 
+								throw e;
 						}
 						return null;
 					}
@@ -132,6 +212,78 @@ public class ArtifactResource extends AbstractResource {
 		return response;
 	}
 
+	/*
+	 * Range header is parsed by this resource itself, as Wicket fails on malformed ranges 
+	 * and does not understand suffix ranges
+	 */
+	@Override
+	protected void setRequestMetaData(Attributes attributes) {
+	}
+	
+	/**
+	 * Parse byte range requested by the client as per RFC 7233. Only a single range is 
+	 * supported, and the whole content is served for multiple ranges as the RFC allows 
+	 * 
+	 * @param rangeHeader
+	 * 			value of the range header, or <tt>null</tt> if not specified
+	 * @param length
+	 * 			length of the content
+	 * @return
+	 * 			range to serve, or <tt>null</tt> if whole content should be served, which is 
+	 * 			the case when range is not specified, malformed, or asks for multiple ranges
+	 * @throws RangeNotSatisfiableException
+	 * 			if requested range does not overlap with the content
+	 */
+	@Nullable
+	static ByteRange parseRange(@Nullable String rangeHeader, long length) 
+			throws RangeNotSatisfiableException {
+		if (rangeHeader == null || !rangeHeader.trim().toLowerCase().startsWith("bytes="))
+			return null;
+		String rangeSpec = rangeHeader.trim().substring("bytes=".length());
+		if (rangeSpec.contains(","))
+			return null;
+		Matcher matcher = RANGE_PATTERN.matcher(rangeSpec);
+		if (!matcher.matches())
+			return null;
+		String first = matcher.group(1);
+		String last = matcher.group(2);
+		try {
+			if (first.length() == 0) {
+				if (last.length() == 0)
+					return null;
+				long suffixLength = Long.parseLong(last);
+				if (suffixLength == 0 || length == 0)
+					throw new RangeNotSatisfiableException();
+				return new ByteRange(Math.max(0, length - suffixLength), length - 1);
+			} else {
+				long start = Long.parseLong(first);
+				long end = last.length() != 0? Long.parseLong(last): Long.MAX_VALUE;
+				if (end < start)
+					return null;
+				if (start >= length)
+					throw new RangeNotSatisfiableException();
+				return new ByteRange(start, Math.min(end, length - 1));
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	static void copy(File file, ByteRange range, OutputStream os) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			raf.seek(range.getStart());
+			long bytesToCopy = range.getLength();
+			byte buffer[] = new byte[BUFFER_SIZE];
+			while (bytesToCopy > 0) {
+				int bytesRead = raf.read(buffer, 0, (int) Math.min(buffer.length, bytesToCopy));
+				if (bytesRead == -1)
+					break;
+				os.write(buffer, 0, bytesRead);
+				bytesToCopy -= bytesRead;
+			}
+		}
+	}
+	
 	public static PageParameters paramsOf(Project project, Long buildNumber, String path) {
 		PageParameters params = new PageParameters();
 		params.set(PARAM_PROJECT, project.getName());
@@ -140,4 +292,35 @@ public class ArtifactResource extends AbstractResource {
 		return params;
 	}
 
+	static class ByteRange {
+		
+		private final long start;
+		
+		private final long end;
+		
+		ByteRange(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+		
+		public long getLength() {
+			return end - start + 1;
+		}
+		
+	}
+	
+	static class RangeNotSatisfiableException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+		
+	}
+	
 }
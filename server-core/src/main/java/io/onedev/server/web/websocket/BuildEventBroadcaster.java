@@ -1,10 +1,14 @@
 package io.onedev.server.web.websocket;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.server.event.build.BuildEvent;
+import io.onedev.server.event.build.BuildsSubmitted;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.Project;
 
@@ -32,4 +36,17 @@ public class BuildEventBroadcaster {
 		webSocketManager.notifyObservableChange(observable);
 	}
 
+	@Listen
+	public void on(BuildsSubmitted event) {
+		Project project = event.getProject();
+		Set<String> observables = new LinkedHashSet<>();
+		for (Build build: event.getBuilds()) {
+			observables.add(Build.getWebSocketObservable(build.getId()));
+			observables.add("commit-status:" + project.getId() + ":" + build.getCommitHash());
+			observables.add("job-status:" + project.getId() + ":" + build.getCommitHash() + ":" + build.getJobName());
+		}
+		for (String observable: observables)
+			webSocketManager.notifyObservableChange(observable);
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,249 @@
+package io.onedev.server.buildspec.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyCollectionOf;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.validation.Validator;
+
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.eclipse.jgit.lib.ObjectId;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.commons.launcher.loader.ListenerRegistry;
+import io.onedev.server.buildspec.BuildSpec;
+import io.onedev.server.buildspec.job.cache.JobCacheManager;
+import io.onedev.server.buildspec.job.log.LogManager;
+import io.onedev.server.buildspec.job.paramspec.TextParam;
+import io.onedev.server.entitymanager.BuildManager;
+import io.onedev.server.entitymanager.BuildMetricManager;
+import io.onedev.server.entitymanager.BuildParamManager;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.entitymanager.SettingManager;
+import io.onedev.server.entitymanager.UserManager;
+import io.onedev.server.event.build.BuildsSubmitted;
+import io.onedev.server.model.Build;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.PullRequest;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
+
+public class DefaultJobManagerTest {
+
+	private static final ObjectId COMMIT_ID = ObjectId.fromString("1111111111111111111111111111111111111111");
+
+	private Project project;
+
+	private BuildManager buildManager;
+
+	private TransactionManager transactionManager;
+
+	/*
+	 * Builds persisted by the fake build manager keyed by the unique build key, mimicking
+	 * the unique constraint of database
+	 */
+	private final Map<String, Build> builds = new ConcurrentHashMap<>();
+
+	private final AtomicInteger violations = new AtomicInteger();
+
+	private String getKey(Build build) {
+		return build.getProject().getId() + ":" + build.getCommitHash() + ":" + build.getJobName()
+				+ ":" + build.getRefName() + ":" + build.getParamsHash();
+	}
+
+	@Before
+	public void before() {
+		Job job = new Job();
+		job.setName("ci");
+		TextParam param = new TextParam();
+		param.setName("index");
+		job.setParamSpecs(Lists.newArrayList(param));
+		BuildSpec buildSpec = new BuildSpec();
+		buildSpec.setJobs(Lists.newArrayList(job));
+
+		project = mock(Project.class);
+		when(project.getId()).thenReturn(1L);
+		when(project.getBuildSpec(any())).thenReturn(buildSpec);
+
+		transactionManager = mock(TransactionManager.class);
+		Transaction transaction = mock(Transaction.class);
+		when(transactionManager.getTransaction()).thenReturn(transaction);
+		when(transactionManager.call(any())).thenAnswer((InvocationOnMock invocation) -> {
+			return ((Callable<?>) invocation.getArguments()[0]).call();
+		});
+
+		buildManager = mock(BuildManager.class);
+	}
+
+	private DefaultJobManager newJobManager() {
+		return newJobManager(mock(ListenerRegistry.class));
+	}
+	
+	private DefaultJobManager newJobManager(ListenerRegistry listenerRegistry) {
+		SessionManager sessionManager = mock(SessionManager.class);
+		when(sessionManager.getSession()).thenReturn(mock(Session.class));
+		ProjectManager projectManager = mock(ProjectManager.class);
+		when(projectManager.load(1L)).thenReturn(project);
+		return new DefaultJobManager(buildManager, mock(UserManager.class), listenerRegistry,
+				mock(SettingManager.class), transactionManager, mock(LogManager.class),
+				mock(ExecutorService.class), sessionManager, mock(BuildParamManager.class),
+				projectManager, mock(Validator.class), mock(BuildMetricManager.class),
+				mock(JobCacheManager.class));
+	}
+
+	private SubmitReason newReason() {
+		return new SubmitReason() {
+
+			@Override
+			public String getRefName() {
+				return "refs/heads/master";
+			}
+
+			@Override
+			public PullRequest getPullRequest() {
+				return null;
+			}
+
+			@Override
+			public String getDescription() {
+				return "Submitted concurrently";
+			}
+
+		};
+	}
+
+	@Test
+	public void shouldReturnWinningBuildWhenSameBuildIsSubmittedConcurrently() throws Exception {
+		/*
+		 * Both submissions check existence of the build before any of them creates it,
+		 * so that one of them has to lose at database level
+		 */
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		Map<Thread, Boolean> checked = new ConcurrentHashMap<>();
+		when(buildManager.find(any(Project.class), any(ObjectId.class), anyString(), anyString(), anyString()))
+				.thenAnswer((InvocationOnMock invocation) -> {
+			if (checked.put(Thread.currentThread(), true) == null)
+				barrier.await(10, TimeUnit.SECONDS);
+			String key = ((Project)invocation.getArguments()[0]).getId() + ":"
+					+ ((ObjectId)invocation.getArguments()[1]).name() + ":" + invocation.getArguments()[2]
+					+ ":" + invocation.getArguments()[3] + ":" + invocation.getArguments()[4];
+			return builds.get(key);
+		});
+		doAnswer((InvocationOnMock invocation) -> {
+			Build build = (Build) invocation.getArguments()[0];
+			if (builds.putIfAbsent(getKey(build), build) != null) {
+				violations.incrementAndGet();
+				throw new ConstraintViolationException("Duplicate build", null, "build_key");
+			}
+			return null;
+		}).when(buildManager).create(any(Build.class));
+
+		DefaultJobManager jobManager = newJobManager();
+		Subject subject = mock(Subject.class);
+		when(subject.getPrincipal()).thenReturn(0L);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Callable<Build> submission = new Callable<Build>() {
+
+				@Override
+				public Build call() throws Exception {
+					ThreadContext.bind(subject);
+					try {
+						return jobManager.submit(project, COMMIT_ID, "ci", new HashMap<>(), newReason());
+					} finally {
+						ThreadContext.unbindSubject();
+					}
+				}
+
+			};
+			Future<Build> future1 = executor.submit(submission);
+			Future<Build> future2 = executor.submit(submission);
+			Build build1 = future1.get(10, TimeUnit.SECONDS);
+			Build build2 = future2.get(10, TimeUnit.SECONDS);
+
+			assertNotNull(build1);
+			assertTrue(build1 == build2);
+			assertEquals(1, builds.size());
+			assertEquals(1, violations.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void shouldCreateAndPostBatchOnceWhenParamMatrixIsSubmitted() {
+		Subject subject = mock(Subject.class);
+		when(subject.getPrincipal()).thenReturn(0L);
+		ThreadContext.bind(subject);
+		try {
+			for (int combinations: new int[] {10, 100, 1000}) {
+				List<Collection<Build>> createdBatches = new ArrayList<>();
+				doAnswer((InvocationOnMock invocation) -> {
+					@SuppressWarnings("unchecked")
+					Collection<Build> batch = (Collection<Build>) invocation.getArguments()[0];
+					createdBatches.add(batch);
+					return null;
+				}).when(buildManager).create(anyCollectionOf(Build.class));
+				
+				List<Object> events = new ArrayList<>();
+				ListenerRegistry listenerRegistry = mock(ListenerRegistry.class);
+				doAnswer((InvocationOnMock invocation) -> {
+					events.add(invocation.getArguments()[0]);
+					return null;
+				}).when(listenerRegistry).post(any());
+				
+				List<Map<String, List<String>>> paramMaps = new ArrayList<>();
+				for (int i=0; i<combinations; i++) {
+					Map<String, List<String>> paramMap = new HashMap<>();
+					paramMap.put("index", Lists.newArrayList(String.valueOf(i)));
+					paramMaps.add(paramMap);
+				}
+				
+				List<Build> submitted = newJobManager(listenerRegistry).submit(
+						project, COMMIT_ID, "ci", paramMaps, newReason());
+				
+				assertEquals(combinations, submitted.size());
+				assertEquals(1, createdBatches.size());
+				assertEquals(combinations, createdBatches.get(0).size());
+				assertEquals(1, events.size());
+				assertTrue(events.get(0) instanceof BuildsSubmitted);
+				assertEquals(combinations, ((BuildsSubmitted)events.get(0)).getBuilds().size());
+				verify(buildManager, never()).create(any(Build.class));
+			}
+		} finally {
+			ThreadContext.unbindSubject();
+		}
+	}
+	
+}
@@ -0,0 +1,65 @@
+package io.onedev.server.buildspec.job;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class DependencyTrackerTest {
+
+	private Map<Long, Boolean> dependencies(Object... dependencyIdsAndRequireSuccessful) {
+		Map<Long, Boolean> dependencies = new HashMap<>();
+		for (int i=0; i<dependencyIdsAndRequireSuccessful.length; i+=2) 
+			dependencies.put((Long)dependencyIdsAndRequireSuccessful[i], (Boolean)dependencyIdsAndRequireSuccessful[i+1]);
+		return dependencies;
+	}
+	
+	@Test
+	public void shouldResolveWhenAllDependenciesFinished() {
+		DependencyTracker tracker = new DependencyTracker();
+		tracker.track(10L, dependencies(1L, true, 2L, false));
+		tracker.track(11L, dependencies(2L, true));
+		
+		assertTrue(tracker.onFinished(1L, true).isEmpty());
+		assertEquals(Sets.newHashSet(2L), Sets.newHashSet(tracker.getRemainingDependencies(10L)));
+		
+		Map<Long, Boolean> resolved = tracker.onFinished(2L, true);
+		assertEquals(2, resolved.size());
+		assertTrue(resolved.get(10L));
+		assertTrue(resolved.get(11L));
+		assertFalse(tracker.isTracked(10L));
+		assertTrue(tracker.getRemainingDependencies().isEmpty());
+	}
+	
+	@Test
+	public void shouldFailFastOnRequiredDependencyFailure() {
+		DependencyTracker tracker = new DependencyTracker();
+		tracker.track(10L, dependencies(1L, false, 2L, true, 3L, false));
+		
+		assertTrue(tracker.onFinished(1L, false).isEmpty());
+		assertFalse(tracker.onFinished(2L, false).get(10L));
+		assertFalse(tracker.isTracked(10L));
+		assertTrue(tracker.onFinished(3L, true).isEmpty());
+	}
+	
+	@Test
+	public void shouldDropMissedDependencies() {
+		DependencyTracker tracker = new DependencyTracker();
+		tracker.track(10L, dependencies(1L, true, 2L, true));
+		tracker.track(11L, dependencies(2L, true));
+		tracker.track(12L, dependencies(3L, true));
+		
+		assertEquals(Sets.newHashSet(10L), Sets.newHashSet(tracker.retain(Sets.newHashSet(2L, 3L, 10L, 11L))));
+		assertFalse(tracker.isTracked(10L));
+		assertTrue(tracker.isTracked(11L));
+		assertFalse(tracker.isTracked(12L));
+		
+		assertEquals(Sets.newHashSet(11L), Sets.newHashSet(tracker.onDeleted(2L)));
+		assertTrue(tracker.getRemainingDependencies().isEmpty());
+	}
+	
+}
@@ -0,0 +1,199 @@
+package io.onedev.server.buildspec.job.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.k8shelper.CacheInstance;
+import io.onedev.server.buildspec.job.CacheSpec;
+import io.onedev.server.buildspec.job.JobContext;
+
+public class DefaultJobCacheManagerTest {
+
+	private static final long DAY = 24L*3600L*1000L;
+	
+	private static final long GB = 1024L*1024L*1024L;
+	
+	private CacheSpec newCacheSpec(String key, String path) {
+		CacheSpec cacheSpec = new CacheSpec();
+		cacheSpec.setKey(key);
+		cacheSpec.setPath(path);
+		return cacheSpec;
+	}
+	
+	private JobContext newJobContext(String projectName, List<CacheSpec> cacheSpecs, 
+			int cacheTTL, int cacheSizeLimit) {
+		JobContext jobContext = mock(JobContext.class);
+		when(jobContext.getProjectName()).thenReturn(projectName);
+		when(jobContext.getCacheSpecs()).thenReturn(cacheSpecs);
+		when(jobContext.getCacheTTL()).thenReturn(cacheTTL);
+		when(jobContext.getCacheSizeLimit()).thenReturn(cacheSizeLimit);
+		when(jobContext.getCacheCounts()).thenReturn(new HashMap<>());
+		return jobContext;
+	}
+	
+	@Test
+	public void shouldCountHitsAndMissesByCacheKey() {
+		DefaultJobCacheManager cacheManager = new DefaultJobCacheManager();
+		CacheSpec cacheSpec = newCacheSpec("m2", "/root/.m2");
+		Date now = new Date();
+		
+		Map<CacheInstance, String> allocations = cacheManager.allocate("job1", 
+				newJobContext("project1", Lists.newArrayList(cacheSpec), 7, 0), now, new HashMap<>(), null);
+		assertEquals(1, allocations.size());
+		CacheInstance instance = allocations.keySet().iterator().next();
+		assertEquals(cacheSpec.getAddress("project1"), instance.getCacheKey());
+		assertEquals("/root/.m2", allocations.get(instance));
+		
+		// not reused until released
+		Map<CacheInstance, Date> cacheInstances = new HashMap<>();
+		cacheInstances.put(instance, now);
+		allocations = cacheManager.allocate("job2", 
+				newJobContext("project1", Lists.newArrayList(cacheSpec), 7, 0), now, cacheInstances, null);
+		assertFalse(allocations.containsKey(instance));
+		cacheManager.release("job2");
+		
+		cacheManager.release("job1");
+		allocations = cacheManager.allocate("job3", 
+				newJobContext("project1", Lists.newArrayList(cacheSpec), 7, 0), now, cacheInstances, null);
+		assertEquals("/root/.m2", allocations.get(instance));
+		
+		// cache of another project has different address, but is counted under same key
+		allocations = cacheManager.allocate("job4", 
+				newJobContext("project2", Lists.newArrayList(cacheSpec), 7, 0), now, cacheInstances, null);
+		assertFalse(allocations.containsKey(instance));
+		assertEquals(cacheSpec.getAddress("project2"), allocations.keySet().iterator().next().getCacheKey());
+		
+		Map<String, CacheStats> stats = cacheManager.getStats();
+		assertEquals(1, stats.size());
+		assertEquals(1, stats.get("m2").getHits());
+		assertEquals(3, stats.get("m2").getMisses());
+		assertEquals(0, stats.get("m2").getEvictions());
+	}
+	
+	@Test
+	public void shouldEvictLeastRecentlyUsedCachesExceedingSizeLimit() {
+		DefaultJobCacheManager cacheManager = new DefaultJobCacheManager();
+		Date now = new Date();
+		CacheSpec npmSpec = newCacheSpec("npm", "/root/.npm");
+		
+		Map<CacheInstance, Date> cacheInstances = new LinkedHashMap<>();
+		Map<CacheInstance, Long> cacheSizes = new HashMap<>();
+		List<CacheInstance> idleInstances = new ArrayList<>();
+		for (int i=0; i<3; i++) {
+			CacheInstance instance = new CacheInstance("idle" + i, newCacheSpec("m2", "/root/.m2" + i).getAddress("project"));
+			idleInstances.add(instance);
+			cacheInstances.put(instance, new Date(now.getTime() - (3-i)*1000L));
+			cacheSizes.put(instance, 400L*1024L*1024L);
+		}
+		// the oldest one, but is used by current job
+		CacheInstance npmInstance = new CacheInstance("npm", npmSpec.getAddress("project"));
+		cacheInstances.put(npmInstance, new Date(now.getTime() - 10000L));
+		cacheSizes.put(npmInstance, GB/2);
+		
+		Map<CacheInstance, String> allocations = cacheManager.allocate("job", 
+				newJobContext("project", Lists.newArrayList(npmSpec), 7, 1), now, cacheInstances, cacheSizes);
+		
+		// total size 1.67G, idle instances are deleted from least recently used one until 
+		// total size drops below 1G
+		assertEquals("/root/.npm", allocations.get(npmInstance));
+		assertTrue(allocations.containsKey(idleInstances.get(0)));
+		assertNull(allocations.get(idleInstances.get(0)));
+		assertTrue(allocations.containsKey(idleInstances.get(1)));
+		assertNull(allocations.get(idleInstances.get(1)));
+		assertFalse(allocations.containsKey(idleInstances.get(2)));
+		assertEquals(2, cacheManager.getStats().get("m2").getEvictions());
+		
+		// instances being deleted are not allocated to other jobs
+		CacheSpec m2Spec = newCacheSpec("m2", "/root/.m20");
+		allocations = cacheManager.allocate("job2", 
+				newJobContext("project", Lists.newArrayList(m2Spec), 7, 0), now, cacheInstances, cacheSizes);
+		assertFalse(allocations.containsKey(idleInstances.get(0)));
+	}
+	
+	@Test
+	public void shouldEvictExpiredCaches() {
+		DefaultJobCacheManager cacheManager = new DefaultJobCacheManager();
+		Date now = new Date();
+		Map<CacheInstance, Date> cacheInstances = new HashMap<>();
+		CacheInstance expired = new CacheInstance("expired", newCacheSpec("m2", "/a").getAddress("project"));
+		cacheInstances.put(expired, new Date(now.getTime() - 8*DAY));
+		CacheInstance live = new CacheInstance("live", newCacheSpec("m2", "/b").getAddress("project"));
+		cacheInstances.put(live, new Date(now.getTime() - 6*DAY));
+		
+		Map<CacheInstance, String> allocations = cacheManager.allocate("job", 
+				newJobContext("project", new ArrayList<>(), 7, 0), now, cacheInstances, null);
+		assertEquals(1, allocations.size());
+		assertTrue(allocations.containsKey(expired));
+		assertNull(allocations.get(expired));
+	}
+	
+	@Test
+	public void shouldNotAllocateSameCacheConcurrently() throws Exception {
+		DefaultJobCacheManager cacheManager = new DefaultJobCacheManager();
+		CacheSpec cacheSpec = newCacheSpec("m2", "/root/.m2");
+		Date now = new Date();
+		Map<CacheInstance, Date> cacheInstances = new HashMap<>();
+		for (int i=0; i<4; i++) 
+			cacheInstances.put(new CacheInstance("instance" + i, cacheSpec.getAddress("project")), now);
+		
+		int jobs = 16;
+		CountDownLatch latch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(jobs);
+		try {
+			List<Future<Map<CacheInstance, String>>> futures = new ArrayList<>();
+			for (int i=0; i<jobs; i++) {
+				String jobToken = "job" + i;
+				futures.add(executor.submit(new Callable<Map<CacheInstance, String>>() {
+
+					@Override
+					public Map<CacheInstance, String> call() throws Exception {
+						latch.await();
+						return cacheManager.allocate(jobToken, newJobContext("project", 
+								Lists.newArrayList(cacheSpec), 7, 0), now, cacheInstances, null);
+					}
+					
+				}));
+			}
+			latch.countDown();
+			
+			Set<String> allocatedNames = new HashSet<>();
+			for (Future<Map<CacheInstance, String>> future: futures) {
+				Map<CacheInstance, String> allocations = future.get(10, TimeUnit.SECONDS);
+				assertEquals(1, allocations.size());
+				assertTrue(allocatedNames.add(allocations.keySet().iterator().next().getName()));
+			}
+			for (CacheInstance instance: cacheInstances.keySet())
+				assertTrue(allocatedNames.contains(instance.getName()));
+			
+			CacheStats stats = cacheManager.getStats().get("m2");
+			assertEquals(4, stats.getHits());
+			assertEquals(jobs-4, stats.getMisses());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+}
@@ -0,0 +1,137 @@
+package io.onedev.server.buildspec.job.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+
+public class LogFileTest {
+
+	private File dir;
+
+	@Before
+	public void before() {
+		dir = FileUtils.createTempDir();
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteDir(dir);
+	}
+
+	private List<JobLogEntry> newEntries(int from, int count) {
+		List<JobLogEntry> entries = new ArrayList<>();
+		for (int i=from; i<from+count; i++)
+			entries.add(new JobLogEntry(new Date(i), "line " + i + (i%7==3?"\n\u4e2d\u6587":"")));
+		return entries;
+	}
+
+	@Test
+	public void shouldReadRangesAndTail() {
+		LogFile logFile = new LogFile(dir);
+		assertFalse(logFile.exists());
+		assertEquals(0, logFile.count());
+
+		int count = LogFile.INDEX_INTERVAL*2 + 123;
+		for (int i=0; i<count; i+=500)
+			logFile.append(newEntries(i, Math.min(500, count-i)));
+
+		assertEquals(count, logFile.count());
+		assertEquals(3, logFile.getIndexFile().length()/8);
+
+		List<JobLogEntry> entries = logFile.read(LogFile.INDEX_INTERVAL-1, 3);
+		assertEquals(3, entries.size());
+		assertEquals("line " + (LogFile.INDEX_INTERVAL+1), entries.get(2).getMessage());
+		assertEquals(LogFile.INDEX_INTERVAL+1, entries.get(2).getDate().getTime());
+
+		assertEquals(23, logFile.read(count-23, 0).size());
+		assertEquals(0, logFile.read(count, 10).size());
+
+		LogSnippet snippet = logFile.readTail(5);
+		assertEquals(count-5, snippet.offset);
+		assertEquals("line " + (count-1), snippet.entries.get(4).getMessage());
+
+		snippet = logFile.readTail(count+10);
+		assertEquals(0, snippet.offset);
+		assertEquals(count, snippet.entries.size());
+	}
+
+	@Test
+	public void shouldReadCompressedLog() {
+		LogFile logFile = new LogFile(dir);
+		int count = LogFile.INDEX_INTERVAL*3 + 5;
+		logFile.append(newEntries(0, count));
+		long uncompressedSize = logFile.size();
+		logFile.compress();
+
+		assertTrue(logFile.isCompressed());
+		assertFalse(logFile.getDataFile().exists());
+		assertTrue(logFile.size() < uncompressedSize);
+		assertEquals(count, logFile.count());
+
+		List<JobLogEntry> entries = logFile.read(LogFile.INDEX_INTERVAL*2-1, 2);
+		assertEquals("line " + (LogFile.INDEX_INTERVAL*2-1), entries.get(0).getMessage());
+		assertEquals("line " + LogFile.INDEX_INTERVAL*2, entries.get(1).getMessage());
+
+		LogSnippet snippet = logFile.readTail(6);
+		assertEquals(count-6, snippet.offset);
+		assertEquals(6, snippet.entries.size());
+		assertEquals("line " + (count-1), snippet.entries.get(5).getMessage());
+
+		logFile.append(newEntries(count, 1));
+		assertFalse(logFile.isCompressed());
+		assertEquals(count+1, logFile.count());
+		assertEquals(4, logFile.getIndexFile().length()/8);
+		assertEquals("line " + LogFile.INDEX_INTERVAL*3, 
+				logFile.read(LogFile.INDEX_INTERVAL*3, 1).get(0).getMessage());
+		assertEquals("line " + count, logFile.readTail(1).entries.get(0).getMessage());
+	}
+
+	@Test
+	public void shouldRecoverFromPartialWrites() throws IOException {
+		LogFile logFile = new LogFile(dir);
+		logFile.append(newEntries(0, LogFile.INDEX_INTERVAL+10));
+		try (RandomAccessFile raf = new RandomAccessFile(logFile.getDataFile(), "rw")) {
+			raf.setLength(raf.length()-3);
+		}
+		assertEquals(LogFile.INDEX_INTERVAL+9, logFile.count());
+
+		FileUtils.deleteFile(logFile.getIndexFile());
+		logFile.append(newEntries(LogFile.INDEX_INTERVAL+9, LogFile.INDEX_INTERVAL));
+		assertEquals(LogFile.INDEX_INTERVAL*2+9, logFile.count());
+		assertEquals(3, logFile.getIndexFile().length()/8);
+		assertEquals("line " + LogFile.INDEX_INTERVAL*2,
+				logFile.read(LogFile.INDEX_INTERVAL*2, 1).get(0).getMessage());
+	}
+
+	@Test
+	public void shouldMigrateLegacyLog() throws IOException {
+		File legacyFile = new File(dir, "build.log");
+		try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(legacyFile))) {
+			for (JobLogEntry entry: newEntries(0, 1500))
+				oos.writeObject(entry);
+		}
+		assertTrue(LogFile.getLegacyFile(dir) != null);
+
+		LogFile logFile = new LogFile(dir);
+		logFile.migrate(legacyFile);
+		assertFalse(legacyFile.exists());
+		assertEquals(1500, logFile.count());
+		assertEquals("line 1499", logFile.readTail(1).entries.get(0).getMessage());
+	}
+
+}
@@ -0,0 +1,36 @@
+package io.onedev.server.buildspec.job.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import io.onedev.server.model.support.inputspec.SecretInput;
+
+public class SecretMaskerTest {
+
+	private static final String MASK = SecretInput.MASK;
+
+	@Test
+	public void test() {
+		SecretMasker masker = new SecretMasker(Arrays.asList("secret", "token123", "", null));
+		String text = "no sensitive data here";
+		assertSame(text, masker.mask(text));
+		assertEquals("password: " + MASK, masker.mask("password: secret"));
+		assertEquals(MASK + " and " + MASK + "!", masker.mask("token123 and secret!"));
+		assertEquals("sec" + MASK + "ret", masker.mask("secsecretret"));
+
+		masker = new SecretMasker(Arrays.asList("abcd", "bc", "cdef", "xx"));
+		assertEquals("a" + MASK + "e", masker.mask("abce"));
+		assertEquals(MASK, masker.mask("abcdef"));
+		assertEquals("z" + MASK + "z", masker.mask("zabcdefz"));
+		assertEquals(MASK + "y" + MASK, masker.mask("xxyxxx"));
+
+		masker = new SecretMasker(Collections.emptyList());
+		assertSame(text, masker.mask(text));
+	}
+
+}
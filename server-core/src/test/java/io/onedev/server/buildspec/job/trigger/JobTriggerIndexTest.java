@@ -0,0 +1,70 @@
+package io.onedev.server.buildspec.job.trigger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.server.buildspec.job.Job;
+import io.onedev.server.buildspec.job.JobTriggerMatch;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.model.Project;
+
+public class JobTriggerIndexTest {
+
+	private Job newJob(String name, JobTrigger... triggers) {
+		Job job = new Job();
+		job.setName(name);
+		job.setTriggers(Lists.newArrayList(triggers));
+		return job;
+	}
+
+	@Test
+	public void shouldOnlyMatchTriggersOfEventType() {
+		BranchUpdateTrigger masterTrigger = new BranchUpdateTrigger();
+		masterTrigger.setBranches("master");
+		BranchUpdateTrigger anyBranchTrigger = new BranchUpdateTrigger();
+		TagCreateTrigger releaseTagTrigger = new TagCreateTrigger();
+		releaseTagTrigger.setTags("v*");
+		BranchUpdateTrigger forkTrigger = new BranchUpdateTrigger();
+		forkTrigger.setProjects("-test");
+
+		List<Job> jobs = new ArrayList<>();
+		jobs.add(newJob("ci", masterTrigger, anyBranchTrigger));
+		jobs.add(newJob("release", releaseTagTrigger));
+		jobs.add(newJob("fork", forkTrigger));
+		jobs.add(newJob("manual"));
+		JobTriggerIndex index = new JobTriggerIndex(jobs);
+
+		Project project = new Project();
+		project.setName("test");
+		ObjectId commitId = ObjectId.fromString("1111111111111111111111111111111111111111");
+
+		Map<Job, JobTriggerMatch> matches = index.getMatches(
+				new RefUpdated(project, "refs/heads/master", ObjectId.zeroId(), commitId));
+		assertEquals(1, matches.size());
+		assertTrue(matches.get(jobs.get(0)).getTrigger() == masterTrigger);
+
+		matches = index.getMatches(new RefUpdated(project, "refs/heads/dev", ObjectId.zeroId(), commitId));
+		assertEquals(1, matches.size());
+		assertTrue(matches.get(jobs.get(0)).getTrigger() == anyBranchTrigger);
+
+		matches = index.getMatches(new RefUpdated(project, "refs/tags/v1.0", ObjectId.zeroId(), commitId));
+		assertEquals(1, matches.size());
+		assertTrue(matches.get(jobs.get(1)).getTrigger() == releaseTagTrigger);
+
+		matches = index.getMatches(new RefUpdated(project, "refs/tags/nightly", ObjectId.zeroId(), commitId));
+		assertTrue(matches.isEmpty());
+
+		matches = index.getMatches(new RefUpdated(project, "refs/notes/commits", ObjectId.zeroId(), commitId));
+		assertTrue(matches.isEmpty());
+	}
+
+}
@@ -0,0 +1,149 @@
+package io.onedev.server.entitymanager.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import io.onedev.server.buildspec.job.log.LogIndexManager;
+import io.onedev.server.entitymanager.BuildDependenceManager;
+import io.onedev.server.entitymanager.BuildMetricManager;
+import io.onedev.server.entitymanager.BuildParamManager;
+import io.onedev.server.entitymanager.GroupManager;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+public class DefaultBuildManagerTest {
+
+	/*
+	 * Fake build table of each project, mapping build id to build number
+	 */
+	private final Map<Long, NavigableMap<Long, Long>> builds = new ConcurrentHashMap<>();
+	
+	private final Map<Long, List<Long>> queriedAfterIds = new ConcurrentHashMap<>();
+	
+	private final Map<Long, List<List<Long>>> deletedBatches = new ConcurrentHashMap<>();
+	
+	private long maxId;
+	
+	private DefaultBuildManager newBuildManager(Set<Long> preservedIds, Set<Long> preserveAllProjectIds, 
+			Set<Long> failingProjectIds) {
+		return new DefaultBuildManager(mock(Dao.class), mock(BuildParamManager.class), mock(TaskScheduler.class), 
+				mock(BuildDependenceManager.class), mock(GroupManager.class), mock(StorageManager.class), 
+				mock(ProjectManager.class), mock(SessionManager.class), mock(TransactionManager.class), 
+				mock(LogIndexManager.class), mock(BuildMetricManager.class)) {
+
+			@Override
+			protected long getMaxId() {
+				return maxId;
+			}
+
+			@Override
+			protected List<Long> queryProjectIds() {
+				return new ArrayList<>(builds.keySet());
+			}
+
+			@Override
+			protected List<PreservedBuilds> getPreservedBuilds(Long projectId) {
+				if (preserveAllProjectIds.contains(projectId))
+					return null;
+				else
+					return new ArrayList<>();
+			}
+
+			@Override
+			protected List<Object[]> queryDeletableBuilds(Long projectId, List<PreservedBuilds> preservedBuilds,
+					long afterId, long maxId) {
+				if (failingProjectIds.contains(projectId))
+					throw new RuntimeException("Database error");
+				queriedAfterIds.computeIfAbsent(projectId, it->Collections.synchronizedList(new ArrayList<>())).add(afterId);
+				List<Object[]> deletableBuilds = new ArrayList<>();
+				for (Map.Entry<Long, Long> entry: builds.get(projectId).subMap(afterId, false, maxId, true).entrySet()) {
+					if (!preservedIds.contains(entry.getKey())) {
+						deletableBuilds.add(new Object[] {entry.getKey(), entry.getValue(), "ci", null});
+						if (deletableBuilds.size() == 500)
+							break;
+					}
+				}
+				return deletableBuilds;
+			}
+
+			@Override
+			protected void deleteBuilds(Long projectId, List<Object[]> deletableBuilds) {
+				List<Long> buildIds = new ArrayList<>();
+				for (Object[] fields: deletableBuilds) {
+					buildIds.add((Long) fields[0]);
+					builds.get(projectId).remove(fields[0]);
+				}
+				deletedBatches.computeIfAbsent(projectId, it->Collections.synchronizedList(new ArrayList<>())).add(buildIds);
+			}
+			
+		};
+	}
+	
+	private void addBuilds(Long projectId, long fromId, long toId) {
+		NavigableMap<Long, Long> buildsOfProject = builds.computeIfAbsent(projectId, it->new ConcurrentSkipListMap<>());
+		for (long id=fromId; id<=toId; id++)
+			buildsOfProject.put(id, (long)buildsOfProject.size()+1);
+	}
+	
+	@Test
+	public void shouldDeleteBuildsBatchByBatchUsingKeyset() {
+		// builds of different projects interleave in id space
+		addBuilds(1L, 1, 1200);
+		addBuilds(2L, 1201, 1300);
+		addBuilds(3L, 1301, 1400);
+		addBuilds(4L, 1401, 1500);
+		addBuilds(1L, 1501, 1600);
+		maxId = 1550;
+		
+		Set<Long> preservedIds = Sets.newHashSet(10L, 600L, 1250L);
+		newBuildManager(preservedIds, Sets.newHashSet(3L), Sets.newHashSet(4L)).execute();
+
+		// builds created after cleanup starts and preserved builds are retained 
+		List<Long> retainedIds = new ArrayList<>(builds.get(1L).keySet());
+		List<Long> expectedIds = Lists.newArrayList(10L, 600L);
+		for (long id=1551; id<=1600; id++)
+			expectedIds.add(id);
+		assertEquals(expectedIds, retainedIds);
+		assertEquals(Lists.newArrayList(1250L), new ArrayList<>(builds.get(2L).keySet()));
+		
+		// each query continues from last deleted build of previous batch
+		List<List<Long>> batches = deletedBatches.get(1L);
+		assertEquals(3, batches.size());
+		assertEquals(500, batches.get(0).size());
+		assertEquals(500, batches.get(1).size());
+		assertEquals(1250-2-500-500, batches.get(2).size());
+		List<Long> afterIds = queriedAfterIds.get(1L);
+		assertEquals(0L, (long) afterIds.get(0));
+		for (int i=1; i<afterIds.size(); i++) {
+			List<Long> previousBatch = batches.get(i-1);
+			assertEquals(previousBatch.get(previousBatch.size()-1), afterIds.get(i));
+		}
+		
+		// projects preserving all builds are not touched, and failure of a project does 
+		// not affect others
+		assertEquals(100, builds.get(3L).size());
+		assertFalse(queriedAfterIds.containsKey(3L));
+		assertEquals(100, builds.get(4L).size());
+		assertEquals(1, deletedBatches.get(2L).size());
+	}
+	
+}
@@ -0,0 +1,38 @@
+package io.onedev.server.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class BuildTest {
+
+	@Test
+	public void shouldCanonicalizeParamsHash() {
+		Map<String, List<String>> paramMap1 = new LinkedHashMap<>();
+		paramMap1.put("os", Lists.newArrayList("linux", "windows"));
+		paramMap1.put("arch", new ArrayList<>());
+
+		Map<String, List<String>> paramMap2 = new LinkedHashMap<>();
+		paramMap2.put("arch", Lists.newArrayList((String)null));
+		paramMap2.put("os", Lists.newArrayList("windows", "linux"));
+
+		assertEquals(Build.getParamsHash(paramMap1), Build.getParamsHash(paramMap2));
+
+		paramMap2.put("os", Lists.newArrayList("linux"));
+		assertNotEquals(Build.getParamsHash(paramMap1), Build.getParamsHash(paramMap2));
+
+		Map<String, List<String>> paramMap3 = new LinkedHashMap<>();
+		paramMap3.put("a", Lists.newArrayList("b:c"));
+		Map<String, List<String>> paramMap4 = new LinkedHashMap<>();
+		paramMap4.put("a:b", Lists.newArrayList("c"));
+		assertNotEquals(Build.getParamsHash(paramMap3), Build.getParamsHash(paramMap4));
+	}
+
+}
@@ -0,0 +1,59 @@
+package io.onedev.server.search.buildmetric;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Root;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.server.model.support.BuildMetricRollup;
+
+public class BuildMetricRollupCriteriaTest {
+
+	private Root<?> rollupRoot;
+
+	private CriteriaBuilder builder;
+
+	@Before
+	public void before() {
+		rollupRoot = mock(Root.class, RETURNS_DEEP_STUBS);
+		builder = mock(CriteriaBuilder.class, RETURNS_DEEP_STUBS);
+	}
+
+	@Test
+	public void shouldEvaluateJobReportAndDayCriteriasAgainstRollups() {
+		assertNotNull(new JobCriteria("ci").getRollupPredicate(rollupRoot, builder));
+		verify(rollupRoot).get(BuildMetricRollup.PROP_JOB);
+
+		assertNotNull(new ReportCriteria("unit test").getRollupPredicate(rollupRoot, builder));
+		verify(rollupRoot).get(BuildMetricRollup.PROP_REPORT);
+
+		assertNotNull(new DateCriteria("2020-01-01 00:00:00", BuildMetricQueryLexer.Since)
+				.getRollupPredicate(rollupRoot, builder));
+		verify(rollupRoot).get(BuildMetricRollup.PROP_DAY);
+
+		BuildMetricCriteria criteria = new OrBuildMetricCriteria(Lists.newArrayList(
+				new AndBuildMetricCriteria(Lists.newArrayList(new JobCriteria("ci"), new ReportCriteria("*"))),
+				new NotBuildMetricCriteria(new JobCriteria("release"))));
+		assertNotNull(criteria.getRollupPredicate(rollupRoot, builder));
+	}
+
+	@Test
+	public void shouldFallBackToMetricsForCriteriasNotInRollups() {
+		assertNull(new BranchCriteria("master").getRollupPredicate(rollupRoot, builder));
+		assertNull(new DateCriteria("2020-01-01 10:30:00", BuildMetricQueryLexer.Since)
+				.getRollupPredicate(rollupRoot, builder));
+
+		assertNull(new AndBuildMetricCriteria(Lists.newArrayList(new JobCriteria("ci"), new BranchCriteria("master")))
+				.getRollupPredicate(rollupRoot, builder));
+		assertNull(new OrBuildMetricCriteria(Lists.newArrayList(new BranchCriteria("master"), new JobCriteria("ci")))
+				.getRollupPredicate(rollupRoot, builder));
+		assertNull(new NotBuildMetricCriteria(new BranchCriteria("master")).getRollupPredicate(rollupRoot, builder));
+	}
+
+}
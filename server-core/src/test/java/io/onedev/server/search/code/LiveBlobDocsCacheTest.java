@@ -0,0 +1,227 @@
+package io.onedev.server.search.code;
+
+import static io.onedev.server.search.code.FieldConstants.BLOB_HASH;
+import static io.onedev.server.search.code.FieldConstants.BLOB_PATH;
+import static io.onedev.server.search.code.IndexConstants.NGRAM_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.git.AbstractGitTest;
+
+public class LiveBlobDocsCacheTest extends AbstractGitTest {
+
+	private File indexDir;
+	
+	private Directory directory;
+	
+	@Override
+	protected void setup() {
+		super.setup();
+		indexDir = FileUtils.createTempDir();
+		try {
+			directory = FSDirectory.open(indexDir.toPath());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Index documents of all blobs of specified commits into a single segment, the 
+	 * same way as DefaultIndexManager does, and return the resulting reader
+	 */
+	private DirectoryReader index(List<ObjectId> commitIds) throws IOException {
+		Map<String, ObjectId> blobs = new LinkedHashMap<>();
+		try (	RevWalk revWalk = new RevWalk(git.getRepository());
+				TreeWalk treeWalk = new TreeWalk(git.getRepository())) {
+			for (ObjectId commitId: commitIds) {
+				treeWalk.reset(revWalk.parseCommit(commitId).getTree());
+				treeWalk.setRecursive(true);
+				while (treeWalk.next()) 
+					blobs.put(treeWalk.getPathString() + ":" + treeWalk.getObjectId(0).name(), treeWalk.getObjectId(0));
+			}
+		}
+		IndexWriterConfig writerConfig = new IndexWriterConfig(new NGramAnalyzer(NGRAM_SIZE, NGRAM_SIZE));
+		try (IndexWriter writer = new IndexWriter(directory, writerConfig)) {
+			for (Map.Entry<String, ObjectId> entry: blobs.entrySet()) {
+				String blobPath = entry.getKey().substring(0, entry.getKey().indexOf(':'));
+				Document document = new Document();
+				document.add(new StringField(BLOB_HASH.name(), entry.getValue().name(), Store.NO));
+				document.add(new StringField(BLOB_PATH.name(), blobPath, Store.NO));
+				document.add(new BinaryDocValuesField(BLOB_PATH.name(), 
+						new BytesRef(blobPath.getBytes(StandardCharsets.UTF_8))));
+				writer.addDocument(document);
+			}
+			writer.forceMerge(1);
+			writer.commit();
+		}
+		return DirectoryReader.open(directory);
+	}
+	
+	private int getDoc(IndexReader reader, String blobPath, ObjectId blobId) throws IOException {
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(BLOB_HASH.query(blobId.name()), Occur.MUST);
+		builder.add(BLOB_PATH.query(blobPath), Occur.MUST);
+		ScoreDoc[] scoreDocs = new IndexSearcher(reader).search(builder.build(), 10).scoreDocs;
+		assertEquals(1, scoreDocs.length);
+		return scoreDocs[0].doc;
+	}
+	
+	private ObjectId getBlobId(ObjectId commitId, String blobPath) throws IOException {
+		try (RevWalk revWalk = new RevWalk(git.getRepository())) {
+			try (TreeWalk treeWalk = TreeWalk.forPath(git.getRepository(), blobPath, 
+					revWalk.parseCommit(commitId).getTree())) {
+				return treeWalk.getObjectId(0);
+			}
+		}
+	}
+	
+	private List<Integer> getDocs(FixedBitSet bitSet) {
+		List<Integer> docs = new ArrayList<>();
+		for (int i=0; i<bitSet.length(); i++) {
+			if (bitSet.get(i))
+				docs.add(i);
+		}
+		return docs;
+	}
+	
+	private List<Integer> getExpectedDocs(IndexReader reader, ObjectId commitId, String...blobPaths) 
+			throws IOException {
+		List<Integer> docs = new ArrayList<>();
+		for (String blobPath: blobPaths) 
+			docs.add(getDoc(reader, blobPath, getBlobId(commitId, blobPath)));
+		docs.sort(null);
+		return docs;
+	}
+	
+	@Test
+	public void shouldDeriveLiveDocsFromTreeDiff() throws IOException {
+		List<ObjectId> commitIds = new ArrayList<>();
+		addFile("a.txt", "a1");
+		addFile("b.txt", "b");
+		commitIds.add(ObjectId.fromString(commit("add a and b")));
+		
+		addFile("a.txt", "a2");
+		commitIds.add(ObjectId.fromString(removeFileAndCommit("b.txt", "modify a and remove b")));
+		
+		// re-add deleted blob at original path, and also at another path
+		addFile("b.txt", "b");
+		createDir("c");
+		addFile("c/d.txt", "b");
+		commitIds.add(ObjectId.fromString(addFileAndCommit("c/e.txt", "e", "re-add b")));
+		
+		try (DirectoryReader reader = index(commitIds)) {
+			assertEquals(1, reader.leaves().size());
+			LeafReader leafReader = reader.leaves().get(0).reader();
+			
+			List<List<Integer>> expectedDocs = new ArrayList<>();
+			expectedDocs.add(getExpectedDocs(reader, commitIds.get(0), "a.txt", "b.txt"));
+			expectedDocs.add(getExpectedDocs(reader, commitIds.get(1), "a.txt"));
+			expectedDocs.add(getExpectedDocs(reader, commitIds.get(2), "a.txt", "b.txt", "c/d.txt", "c/e.txt"));
+			
+			// each bitset is derived from bitset of previous commit
+			LiveBlobDocsCache cache = new LiveBlobDocsCache();
+			for (int i=0; i<commitIds.size(); i++) {
+				FixedBitSet liveDocs = cache.getLiveDocs(git.getRepository(), leafReader, commitIds.get(i));
+				assertEquals(expectedDocs.get(i), getDocs(liveDocs));
+			}
+			
+			// derive bitsets backwards, with blobs added by the diff deleted and vice versa
+			cache = new LiveBlobDocsCache();
+			for (int i=commitIds.size()-1; i>=0; i--) {
+				FixedBitSet liveDocs = cache.getLiveDocs(git.getRepository(), leafReader, commitIds.get(i));
+				assertEquals(expectedDocs.get(i), getDocs(liveDocs));
+			}
+			
+			// cached bitsets are returned for visited commits
+			Map<ObjectId, FixedBitSet> liveDocsOfCommits = new HashMap<>();
+			for (ObjectId commitId: commitIds)
+				liveDocsOfCommits.put(commitId, cache.getLiveDocs(git.getRepository(), leafReader, commitId));
+			for (ObjectId commitId: commitIds) {
+				assertTrue(liveDocsOfCommits.get(commitId) 
+						== cache.getLiveDocs(git.getRepository(), leafReader, commitId));
+			}
+		}
+	}
+	
+	@Test
+	public void shouldEvictLiveDocs() throws IOException {
+		List<ObjectId> commitIds = new ArrayList<>();
+		for (int i=0; i<25; i++) 
+			commitIds.add(ObjectId.fromString(addFileAndCommit("file" + i + ".txt", "content" + i, "commit " + i)));
+		
+		LiveBlobDocsCache cache = new LiveBlobDocsCache();
+		DirectoryReader reader = index(commitIds);
+		IndexReader.CacheKey segmentKey;
+		try {
+			LeafReader leafReader = reader.leaves().get(0).reader();
+			segmentKey = leafReader.getCoreCacheHelper().getKey();
+			for (int i=0; i<commitIds.size(); i++) {
+				FixedBitSet liveDocs = cache.getLiveDocs(git.getRepository(), leafReader, commitIds.get(i));
+				assertEquals(i+1, liveDocs.cardinality());
+			}
+			
+			// least recently used commits are evicted
+			List<ObjectId> cachedCommitIds = cache.getCachedCommits(segmentKey);
+			assertEquals(commitIds.subList(5, 25), cachedCommitIds);
+			
+			// access moves the commit to the end 
+			cache.getLiveDocs(git.getRepository(), leafReader, commitIds.get(5));
+			cache.getLiveDocs(git.getRepository(), leafReader, commitIds.get(0));
+			cachedCommitIds = cache.getCachedCommits(segmentKey);
+			assertEquals(20, cachedCommitIds.size());
+			assertEquals(commitIds.get(7), cachedCommitIds.get(0));
+			assertEquals(commitIds.get(5), cachedCommitIds.get(18));
+			assertEquals(commitIds.get(0), cachedCommitIds.get(19));
+		} finally {
+			reader.close();
+		}
+		
+		// bitsets are dropped with the segment
+		assertNull(cache.getCachedCommits(segmentKey));
+	}
+	
+	@Override
+	protected void teardown() {
+		try {
+			directory.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		deleteDir(indexDir, 3);
+		super.teardown();
+	}
+	
+}
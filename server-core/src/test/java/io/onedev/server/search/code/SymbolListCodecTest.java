@@ -0,0 +1,97 @@
+package io.onedev.server.search.code;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.junit.Test;
+
+import io.onedev.commons.jsymbol.Symbol;
+import io.onedev.commons.jsymbol.SymbolExtractor;
+import io.onedev.commons.jsymbol.SymbolExtractorRegistry;
+
+public class SymbolListCodecTest {
+
+	private static final String SOURCE = ""
+			+ "package test;\n"
+			+ "\n"
+			+ "import java.util.List;\n"
+			+ "\n"
+			+ "public class Outer<T> {\n"
+			+ "\n"
+			+ "	private static final int COUNT = 10;\n"
+			+ "\n"
+			+ "	private List<T> items;\n"
+			+ "\n"
+			+ "	public Outer(List<T> items) {\n"
+			+ "		this.items = items;\n"
+			+ "	}\n"
+			+ "\n"
+			+ "	public List<T> getItems() {\n"
+			+ "		return items;\n"
+			+ "	}\n"
+			+ "\n"
+			+ "	protected static class Inner {\n"
+			+ "\n"
+			+ "		String name;\n"
+			+ "\n"
+			+ "		void setName(String name) {\n"
+			+ "			this.name = name;\n"
+			+ "		}\n"
+			+ "	}\n"
+			+ "\n"
+			+ "	enum Kind {ONE, TWO}\n"
+			+ "}\n";
+	
+	private List<Symbol> extract() {
+		SymbolExtractor<Symbol> extractor = SymbolExtractorRegistry.getExtractor("Outer.java");
+		return extractor.extract("Outer.java", SOURCE);
+	}
+	
+	@Test
+	public void testRoundTrip() {
+		List<Symbol> symbols = extract();
+		assertTrue(!symbols.isEmpty());
+		
+		byte[] bytes = SymbolListCodec.encode(symbols);
+		List<Symbol> decoded = SymbolListCodec.decode(bytes, 0, bytes.length);
+		assertEquals(symbols.size(), decoded.size());
+		for (int i=0; i<symbols.size(); i++) {
+			Symbol symbol = symbols.get(i);
+			Symbol decodedSymbol = decoded.get(i);
+			assertSame(symbol.getClass(), decodedSymbol.getClass());
+			assertEquals(symbol.getName(), decodedSymbol.getName());
+			assertEquals(symbol.getFQN(), decodedSymbol.getFQN());
+			assertEquals(symbol.getPosition(), decodedSymbol.getPosition());
+			assertEquals(symbol.isPrimary(), decodedSymbol.isPrimary());
+			assertEquals(symbol.isSearchable(), decodedSymbol.isSearchable());
+			if (symbol.getParent() != null) 
+				assertSame(decoded.get(symbols.indexOf(symbol.getParent())), decodedSymbol.getParent());
+		}
+		
+		// encoding is lossless if decoded symbols encode to the same bytes
+		assertArrayEquals(bytes, SymbolListCodec.encode(decoded));
+		
+		byte[] serialized = SerializationUtils.serialize((Serializable) symbols);
+		assertTrue(bytes.length < serialized.length);
+	}
+	
+	@Test
+	public void testDecodeByName() {
+		List<Symbol> symbols = extract();
+		byte[] bytes = SymbolListCodec.encode(symbols);
+		
+		List<Symbol> decoded = SymbolListCodec.decode(bytes, 0, bytes.length, "setName"::equals);
+		assertEquals(1, decoded.size());
+		Symbol symbol = decoded.get(0);
+		assertEquals("setName", symbol.getName());
+		assertEquals("Inner", symbol.getParent().getName());
+		assertEquals("Outer", symbol.getParent().getParent().getName());
+	}
+	
+}
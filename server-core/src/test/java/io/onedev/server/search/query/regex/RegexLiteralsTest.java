@@ -2,11 +2,20 @@ package io.onedev.server.search.query.regex;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.List;
+
+import org.apache.lucene.search.BooleanQuery;
 import org.junit.Test;
 
 import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 
+import io.onedev.server.search.code.IndexConstants;
+import io.onedev.server.search.code.query.TextQuery;
+import io.onedev.server.search.code.query.TooGeneralQueryException;
 import io.onedev.server.search.code.query.regex.RegexLiterals;
 
 public class RegexLiteralsTest {
@@ -31,4 +40,72 @@ public class RegexLiteralsTest {
 			assertTrue(each.contains("cd&hello"));
 	}
 
+	@Test
+	public void shouldRequireNoLiteralsIfRegexCanNotBeParsed() {
+		RegexLiterals literals = new RegexLiterals("(hello");
+		assertEquals(1, literals.getRequiredLiterals().size());
+		assertTrue(literals.getRequiredLiterals().get(0).isEmpty());
+		try {
+			literals.asNGramQuery("text", IndexConstants.NGRAM_SIZE);
+			fail("Unparsable regex should not be looked up from n-gram index");
+		} catch (TooGeneralQueryException e) {
+		}
+	}
+
+	@Test
+	public void shouldRejectAlternativeWithoutNGram() {
+		BooleanQuery query = (BooleanQuery) new RegexLiterals("hello|world")
+				.asNGramQuery("text", IndexConstants.NGRAM_SIZE);
+		assertEquals(2, query.clauses().size());
+		
+		for (String regex: new String[] {"hello|ab", "hello|.*", "ab.cd|world"}) {
+			try {
+				new RegexLiterals(regex).asNGramQuery("text", IndexConstants.NGRAM_SIZE);
+				fail("Regex '" + regex + "' has an alternative matching any content");
+			} catch (TooGeneralQueryException e) {
+			}
+		}
+	}
+	
+	@Test
+	public void shouldGetRequiredLiterals() {
+		assertEquals(Lists.newArrayList(Lists.newArrayList("ab", "cd")), 
+				new RegexLiterals("ab.cd").getRequiredLiterals());
+		assertEquals(Lists.newArrayList(Lists.newArrayList("hello"), Lists.newArrayList("world")), 
+				new RegexLiterals("hello|world").getRequiredLiterals());
+		assertEquals(Lists.newArrayList(Lists.newArrayList("a", "b")), 
+				new RegexLiterals("a\\d+\\wb").getRequiredLiterals());
+		List<List<String>> requiredLiterals = new RegexLiterals("a*b*c*").getRequiredLiterals();
+		assertEquals(1, requiredLiterals.size());
+		assertTrue(requiredLiterals.get(0).isEmpty());
+	}
+	
+	private TextQuery newRegexQuery(String regex) {
+		return new TextQuery.Builder().term(regex).regex(true).count(10).build();
+	}
+	
+	@Test
+	public void shouldRejectNestedQuantifier() {
+		for (String regex: new String[] {"(hello+)+", "(hello\\w*\\s?)*", "(hello.*){2,}", "(hello){1,3}(a+)*"}) {
+			try {
+				newRegexQuery(regex).asLuceneQuery();
+				fail("Regex '" + regex + "' contains nested quantifier");
+			} catch (TooGeneralQueryException e) {
+			}
+		}
+		newRegexQuery("(hello)+world").asLuceneQuery();
+		newRegexQuery("(hello+)world").asLuceneQuery();
+		newRegexQuery("\\(hello+\\)+").asLuceneQuery();
+	}
+	
+	@Test
+	public void shouldRejectTooLongRegex() {
+		newRegexQuery(Strings.repeat("a", 1024)).asLuceneQuery();
+		try {
+			newRegexQuery(Strings.repeat("a", 1025)).asLuceneQuery();
+			fail("Regex longer than 1024 characters should be rejected");
+		} catch (TooGeneralQueryException e) {
+		}
+	}
+
 }
@@ -0,0 +1,217 @@
+package io.onedev.server.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.model.Build;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+public class DefaultArtifactStorageManagerTest {
+
+	private File tempDir;
+	
+	private File buildsDir;
+	
+	private File blobsDir;
+	
+	private File sourceDir;
+	
+	private StorageManager storageManager;
+	
+	@Before
+	public void before() {
+		tempDir = FileUtils.createTempDir();
+		buildsDir = new File(tempDir, "builds");
+		blobsDir = new File(tempDir, "blobs");
+		sourceDir = new File(tempDir, "source");
+		storageManager = mock(StorageManager.class);
+		when(storageManager.getBuildsDir(1L)).thenReturn(buildsDir);
+		when(storageManager.getArtifactBlobsDir()).thenReturn(blobsDir);
+	}
+	
+	@After
+	public void after() {
+		FileUtils.deleteDir(tempDir);
+	}
+	
+	private DefaultArtifactStorageManager newStorageManager(AtomicInteger allowedLinks) {
+		return new DefaultArtifactStorageManager(mock(Dao.class), storageManager, mock(TaskScheduler.class)) {
+
+			@Override
+			protected List<Long> queryProjectIds() {
+				return Lists.newArrayList(1L);
+			}
+
+			@Override
+			protected void createLink(File link, File existing) throws IOException {
+				if (allowedLinks.getAndDecrement() > 0)
+					super.createLink(link, existing);
+				else
+					throw new IOException("Hard link not allowed");
+			}
+			
+		};
+	}
+	
+	private Build newBuild(Long buildId, Long buildNumber) {
+		File publishDir = new File(buildsDir, String.valueOf(buildNumber));
+		Build build = mock(Build.class);
+		when(build.getId()).thenReturn(buildId);
+		when(build.getPublishDir()).thenReturn(publishDir);
+		when(build.getArtifactsDir()).thenReturn(new File(publishDir, Build.ARTIFACTS_DIR));
+		when(build.getArtifactsLockKey()).thenReturn("build-artifacts:" + buildId);
+		return build;
+	}
+	
+	private List<File> writeSources(String...pathsAndContents) {
+		FileUtils.deleteDir(sourceDir);
+		List<File> files = new ArrayList<>();
+		for (int i=0; i<pathsAndContents.length; i+=2) {
+			File file = new File(sourceDir, pathsAndContents[i]);
+			FileUtils.createDir(file.getParentFile());
+			FileUtils.writeFile(file, pathsAndContents[i+1]);
+			files.add(file);
+		}
+		return files;
+	}
+	
+	private List<File> listBlobs() {
+		List<File> blobs = new ArrayList<>();
+		File[] prefixDirs = blobsDir.listFiles();
+		if (prefixDirs != null) {
+			for (File prefixDir: prefixDirs) {
+				for (File blob: prefixDir.listFiles())
+					blobs.add(blob);
+			}
+		}
+		return blobs;
+	}
+	
+	@Test
+	public void shouldLinkIdenticalArtifactsToSameBlob() throws IOException {
+		DefaultArtifactStorageManager artifactStorageManager = newStorageManager(new AtomicInteger(Integer.MAX_VALUE));
+		Build build1 = newBuild(1L, 1L);
+		Build build2 = newBuild(2L, 2L);
+		artifactStorageManager.publish(build1, sourceDir, writeSources("lib/app.jar", "app", "readme.txt", "v1"));
+		artifactStorageManager.publish(build2, sourceDir, writeSources("lib/app.jar", "app", "readme.txt", "v2"));
+		
+		File artifact1 = new File(build1.getArtifactsDir(), "lib/app.jar");
+		File artifact2 = new File(build2.getArtifactsDir(), "lib/app.jar");
+		assertEquals("app", FileUtils.readFileToString(artifact2, "UTF-8"));
+		assertTrue(Files.isSameFile(artifact1.toPath(), artifact2.toPath()));
+		assertFalse(Files.isSameFile(new File(build1.getArtifactsDir(), "readme.txt").toPath(), 
+				new File(build2.getArtifactsDir(), "readme.txt").toPath()));
+		assertEquals(3, listBlobs().size());
+		
+		// republishing replaces the link instead of overwriting shared blob
+		artifactStorageManager.publish(build2, sourceDir, writeSources("lib/app.jar", "app2"));
+		assertEquals("app", FileUtils.readFileToString(artifact1, "UTF-8"));
+		assertEquals("app2", FileUtils.readFileToString(artifact2, "UTF-8"));
+	}
+	
+	@Test
+	public void shouldCopyArtifactsIfHardLinkIsNotSupported() throws IOException {
+		// link probe fails
+		DefaultArtifactStorageManager artifactStorageManager = newStorageManager(new AtomicInteger(0));
+		Build build1 = newBuild(1L, 1L);
+		Build build2 = newBuild(2L, 2L);
+		artifactStorageManager.publish(build1, sourceDir, writeSources("app.jar", "app"));
+		artifactStorageManager.publish(build2, sourceDir, writeSources("app.jar", "app"));
+		File artifact1 = new File(build1.getArtifactsDir(), "app.jar");
+		File artifact2 = new File(build2.getArtifactsDir(), "app.jar");
+		assertEquals("app", FileUtils.readFileToString(artifact2, "UTF-8"));
+		assertFalse(Files.isSameFile(artifact1.toPath(), artifact2.toPath()));
+		assertTrue(listBlobs().isEmpty());
+		assertEquals(DigestUtils.sha256Hex("app"), artifactStorageManager.getDigest(build2, "app.jar"));
+		
+		// link probe succeeds, but linking artifact to blob fails
+		FileUtils.cleanDir(buildsDir);
+		artifactStorageManager = newStorageManager(new AtomicInteger(1));
+		artifactStorageManager.publish(build1, sourceDir, writeSources("app.jar", "app"));
+		artifact1 = new File(build1.getArtifactsDir(), "app.jar");
+		assertEquals("app", FileUtils.readFileToString(artifact1, "UTF-8"));
+		assertEquals(1, listBlobs().size());
+		assertFalse(Files.isSameFile(artifact1.toPath(), listBlobs().get(0).toPath()));
+	}
+	
+	@Test
+	public void shouldRecordDigests() {
+		DefaultArtifactStorageManager artifactStorageManager = newStorageManager(new AtomicInteger(Integer.MAX_VALUE));
+		Build build = newBuild(1L, 1L);
+		assertNull(artifactStorageManager.getDigest(build, "dir/a.txt"));
+		
+		artifactStorageManager.publish(build, sourceDir, writeSources("dir/a.txt", "a", "b.txt", "b"));
+		assertEquals(DigestUtils.sha256Hex("a"), artifactStorageManager.getDigest(build, "dir/a.txt"));
+		assertEquals(DigestUtils.sha256Hex("b"), artifactStorageManager.getDigest(build, "b.txt"));
+		assertNull(artifactStorageManager.getDigest(build, "c.txt"));
+		
+		// publishing again updates cached digests and retains digests of other artifacts
+		artifactStorageManager.publish(build, sourceDir, writeSources("dir/a.txt", "a2", "c.txt", "c"));
+		assertEquals(DigestUtils.sha256Hex("a2"), artifactStorageManager.getDigest(build, "dir/a.txt"));
+		assertEquals(DigestUtils.sha256Hex("b"), artifactStorageManager.getDigest(build, "b.txt"));
+		assertEquals(DigestUtils.sha256Hex("c"), artifactStorageManager.getDigest(build, "c.txt"));
+		
+		// digests are gone with publish dir, for instance when build is resubmitted
+		FileUtils.deleteDir(build.getPublishDir());
+		assertNull(artifactStorageManager.getDigest(build, "dir/a.txt"));
+	}
+	
+	@Test
+	public void shouldRemoveUnreferencedBlobs() throws IOException {
+		DefaultArtifactStorageManager artifactStorageManager = newStorageManager(new AtomicInteger(Integer.MAX_VALUE));
+		Build build1 = newBuild(1L, 1L);
+		Build build2 = newBuild(2L, 2L);
+		artifactStorageManager.publish(build1, sourceDir, writeSources("shared.txt", "shared", "own.txt", "own1"));
+		artifactStorageManager.publish(build2, sourceDir, writeSources("shared.txt", "shared", "own.txt", "own2"));
+		
+		File prefixDir = listBlobs().get(0).getParentFile();
+		File staleTemp = new File(prefixDir, "stale.tmp");
+		FileUtils.writeFile(staleTemp, "stale");
+		assertTrue(staleTemp.setLastModified(System.currentTimeMillis() - 48*3600*1000L));
+		File freshTemp = new File(prefixDir, "fresh.tmp");
+		FileUtils.writeFile(freshTemp, "fresh");
+		
+		FileUtils.deleteDir(build1.getPublishDir());
+		artifactStorageManager.execute();
+		
+		List<String> blobNames = new ArrayList<>();
+		for (File blob: listBlobs())
+			blobNames.add(blob.getName());
+		blobNames.sort(null);
+		List<String> expectedNames = Lists.newArrayList(DigestUtils.sha256Hex("shared"), 
+				DigestUtils.sha256Hex("own2"), "fresh.tmp");
+		expectedNames.sort(null);
+		assertEquals(expectedNames, blobNames);
+		
+		// artifacts survive removal of blobs they link to
+		FileUtils.deleteFile(freshTemp);
+		artifactStorageManager.publish(build1, sourceDir, writeSources("own.txt", "own1"));
+		FileUtils.deleteFile(new File(build2.getPublishDir(), "artifacts.digests"));
+		artifactStorageManager.execute();
+		assertEquals(1, listBlobs().size());
+		assertEquals(DigestUtils.sha256Hex("own1"), listBlobs().get(0).getName());
+		assertEquals("shared", FileUtils.readFileToString(new File(build2.getArtifactsDir(), "shared.txt"), "UTF-8"));
+		assertEquals("own2", FileUtils.readFileToString(new File(build2.getArtifactsDir(), "own.txt"), "UTF-8"));
+	}
+	
+}
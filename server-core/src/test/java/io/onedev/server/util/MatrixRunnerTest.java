@@ -64,4 +64,20 @@ public class MatrixRunnerTest {
 		assertEquals(params, usedParams.get(3));
 	}
 
+	@Test
+	public void shouldGetCombinations() {
+		Map<String, List<String>> matrix = new LinkedHashMap<>();
+		assertEquals(1, MatrixRunner.getCombinations(matrix).size());
+		
+		matrix.put("db", Lists.newArrayList("oracle", "mysql"));
+		matrix.put("os", Lists.newArrayList("windows", "linux", "macos"));
+		List<Map<String, String>> combinations = MatrixRunner.getCombinations(matrix);
+		assertEquals(6, combinations.size());
+		
+		Map<String, String> params = new HashMap<>();
+		params.put("db", "mysql");
+		params.put("os", "macos");
+		assertEquals(params, combinations.get(5));
+	}
+	
 }
@@ -0,0 +1,76 @@
+package io.onedev.server.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+import io.onedev.server.util.patternset.PatternSet;
+
+public class ParseCacheTest {
+
+	@Test
+	public void shouldShareParseResults() {
+		AtomicInteger parseCount = new AtomicInteger(0);
+		Callable<String> parser = new Callable<String>() {
+
+			@Override
+			public String call() {
+				return "parsed" + parseCount.incrementAndGet();
+			}
+
+		};
+		assertEquals("parsed1", ParseCache.get(ParseCacheTest.class, "input", parser));
+		assertEquals("parsed1", ParseCache.get(ParseCacheTest.class, "input", parser));
+		assertEquals("parsed2", ParseCache.get(ParseCacheTest.class, "input", parser, true));
+		assertEquals("parsed3", ParseCache.get(ParseCacheTest.class, null, parser));
+
+		ParseCache.invalidate(ParseCacheTest.class, "input");
+		assertEquals("parsed4", ParseCache.get(ParseCacheTest.class, "input", parser));
+		assertEquals("parsed2", ParseCache.get(ParseCacheTest.class, "input", parser, true));
+	}
+
+	@Test
+	public void shouldNotCacheFailures() {
+		AtomicInteger parseCount = new AtomicInteger(0);
+		Callable<String> parser = new Callable<String>() {
+
+			@Override
+			public String call() {
+				parseCount.incrementAndGet();
+				throw new IllegalStateException("Malformed input");
+			}
+
+		};
+		for (int i=0; i<2; i++) {
+			try {
+				ParseCache.get(ParseCacheTest.class, "malformed", parser);
+				fail();
+			} catch (IllegalStateException e) {
+				assertEquals("Malformed input", e.getMessage());
+			}
+		}
+		assertEquals(2, parseCount.get());
+	}
+
+	@Test
+	public void shouldProtectSharedPatternSets() {
+		PatternSet patternSet = PatternSet.parse("file1 -file2");
+		assertSame(patternSet, PatternSet.parse("file1 -file2"));
+		try {
+			patternSet.getIncludes().add("file3");
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+
+		PatternSet copy = patternSet.copy();
+		copy.getIncludes().add("file3");
+		assertEquals(Sets.newHashSet("file1", "file3"), copy.getIncludes());
+		assertEquals(Sets.newHashSet("file1"), PatternSet.parse("file1 -file2").getIncludes());
+	}
+
+}
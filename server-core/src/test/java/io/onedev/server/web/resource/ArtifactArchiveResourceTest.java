@@ -0,0 +1,143 @@
+package io.onedev.server.web.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Response;
+import org.apache.wicket.request.resource.AbstractResource.ResourceResponse;
+import org.apache.wicket.request.resource.IResource.Attributes;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import io.onedev.commons.launcher.loader.AppLoader;
+import io.onedev.commons.launcher.loader.AppLoaderMocker;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.entitymanager.BuildManager;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.model.Build;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.storage.ArtifactStorageManager;
+import io.onedev.server.storage.DefaultArtifactStorageManager;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+public class ArtifactArchiveResourceTest extends AppLoaderMocker {
+
+	private File artifactsDir;
+
+	private Project project;
+
+	@Override
+	protected void setup() {
+		artifactsDir = FileUtils.createTempDir();
+		writeArtifact("readme.txt", "readme");
+		writeArtifact("lib/app.jar", "app");
+		writeArtifact("lib/native/app.so", "native");
+
+		project = mock(Project.class);
+		when(project.getName()).thenReturn("test");
+		ProjectManager projectManager = mock(ProjectManager.class);
+		when(projectManager.find("test")).thenReturn(project);
+		Mockito.when(AppLoader.getInstance(ProjectManager.class)).thenReturn(projectManager);
+
+		Build build = mock(Build.class);
+		when(build.getId()).thenReturn(1L);
+		when(build.getProject()).thenReturn(project);
+		when(build.getNumber()).thenReturn(1L);
+		when(build.getArtifactsDir()).thenReturn(artifactsDir);
+		when(build.getArtifactsLockKey()).thenReturn("build-artifacts:1");
+		BuildManager buildManager = mock(BuildManager.class);
+		when(buildManager.find(project, 1L)).thenReturn(build);
+		Mockito.when(AppLoader.getInstance(BuildManager.class)).thenReturn(buildManager);
+
+		Mockito.when(AppLoader.getInstance(ArtifactStorageManager.class)).thenReturn(
+				new DefaultArtifactStorageManager(mock(Dao.class), mock(StorageManager.class), mock(TaskScheduler.class)));
+
+		Subject subject = mock(Subject.class);
+		when(subject.isPermitted(any(Permission.class))).thenReturn(true);
+		ThreadContext.bind(subject);
+	}
+
+	@Override
+	protected void teardown() {
+		ThreadContext.unbindSubject();
+		FileUtils.deleteDir(artifactsDir);
+	}
+
+	private void writeArtifact(String path, String content) {
+		File file = new File(artifactsDir, path);
+		FileUtils.createDir(file.getParentFile());
+		FileUtils.writeFile(file, content);
+	}
+
+	private Map<String, String> respond(String dirPath, String expectedFileName) throws IOException {
+		/*
+		 * Servlet container closes the response stream, the archive should only finish
+		 * the zip without closing it
+		 */
+		boolean closed[] = new boolean[1];
+		ByteArrayOutputStream baos = new ByteArrayOutputStream() {
+
+			@Override
+			public void close() throws IOException {
+				closed[0] = true;
+				super.close();
+			}
+
+		};
+		Response response = mock(Response.class);
+		when(response.getOutputStream()).thenReturn(baos);
+		Attributes attributes = new Attributes(mock(Request.class), response,
+				ArtifactArchiveResource.paramsOf(project, 1L, dirPath));
+		ResourceResponse resourceResponse = new ArtifactArchiveResource().newResourceResponse(attributes);
+		assertEquals("application/zip", resourceResponse.getContentType());
+		assertEquals(expectedFileName, resourceResponse.getFileName());
+
+		resourceResponse.getWriteCallback().writeData(attributes);
+		assertFalse(closed[0]);
+
+		Map<String, String> entries = new HashMap<>();
+		try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+			ZipEntry entry;
+			while ((entry = zis.getNextEntry()) != null)
+				entries.put(entry.getName(), IOUtils.toString(zis, StandardCharsets.UTF_8));
+		}
+		return entries;
+	}
+
+	@Test
+	public void shouldStreamAllArtifactsAsZip() throws IOException {
+		Map<String, String> entries = respond(null, "test-1-artifacts.zip");
+		assertEquals(3, entries.size());
+		assertEquals("readme", entries.get("readme.txt"));
+		assertEquals("app", entries.get("lib/app.jar"));
+		assertEquals("native", entries.get("lib/native/app.so"));
+	}
+
+	@Test
+	public void shouldStreamArtifactDirAsZip() throws IOException {
+		Map<String, String> entries = respond("/lib/native/", "test-1-native-artifacts.zip");
+		assertEquals(1, entries.size());
+		assertEquals("native", entries.get("app.so"));
+	}
+
+}
@@ -0,0 +1,191 @@
+package io.onedev.server.web.resource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Response;
+import org.apache.wicket.request.resource.AbstractResource.ResourceResponse;
+import org.apache.wicket.request.resource.IResource.Attributes;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import io.onedev.commons.launcher.loader.AppLoader;
+import io.onedev.commons.launcher.loader.AppLoaderMocker;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.entitymanager.BuildManager;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.model.Build;
+import io.onedev.server.model.Project;
+import io.onedev.server.storage.ArtifactStorageManager;
+import io.onedev.server.web.resource.ArtifactResource.ByteRange;
+import io.onedev.server.web.resource.ArtifactResource.RangeNotSatisfiableException;
+
+public class ArtifactResourceTest extends AppLoaderMocker {
+
+	private static final String CONTENT = "0123456789";
+
+	private File artifactsDir;
+
+	private Project project;
+
+	@Override
+	protected void setup() {
+		artifactsDir = FileUtils.createTempDir();
+		FileUtils.writeFile(new File(artifactsDir, "digits.txt"), CONTENT);
+
+		project = mock(Project.class);
+		when(project.getName()).thenReturn("test");
+		ProjectManager projectManager = mock(ProjectManager.class);
+		when(projectManager.find("test")).thenReturn(project);
+		Mockito.when(AppLoader.getInstance(ProjectManager.class)).thenReturn(projectManager);
+
+		Build build = mock(Build.class);
+		when(build.getProject()).thenReturn(project);
+		when(build.getNumber()).thenReturn(1L);
+		when(build.getArtifactsDir()).thenReturn(artifactsDir);
+		when(build.getArtifactsLockKey()).thenReturn("build-artifacts:1");
+		BuildManager buildManager = mock(BuildManager.class);
+		when(buildManager.find(project, 1L)).thenReturn(build);
+		Mockito.when(AppLoader.getInstance(BuildManager.class)).thenReturn(buildManager);
+
+		ArtifactStorageManager artifactStorageManager = mock(ArtifactStorageManager.class);
+		when(artifactStorageManager.getDigest(build, "digits.txt")).thenReturn("digest");
+		Mockito.when(AppLoader.getInstance(ArtifactStorageManager.class)).thenReturn(artifactStorageManager);
+
+		Subject subject = mock(Subject.class);
+		when(subject.isPermitted(any(Permission.class))).thenReturn(true);
+		ThreadContext.bind(subject);
+	}
+
+	@Override
+	protected void teardown() {
+		ThreadContext.unbindSubject();
+		FileUtils.deleteDir(artifactsDir);
+	}
+
+	private ByteRange parse(String rangeHeader, long length) {
+		try {
+			return ArtifactResource.parseRange(rangeHeader, length);
+		} catch (RangeNotSatisfiableException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void assertRange(long start, long end, ByteRange range) {
+		assertEquals(start, range.getStart());
+		assertEquals(end, range.getEnd());
+	}
+
+	private void assertNotSatisfiable(String rangeHeader, long length) {
+		try {
+			ArtifactResource.parseRange(rangeHeader, length);
+			fail("Range should not be satisfiable: " + rangeHeader);
+		} catch (RangeNotSatisfiableException e) {
+		}
+	}
+
+	@Test
+	public void shouldParseRange() {
+		assertNull(parse(null, 10));
+		assertRange(0, 4, parse("bytes=0-4", 10));
+		assertRange(2, 9, parse("bytes=2-", 10));
+		assertRange(5, 9, parse("bytes=5-100", 10));
+		assertRange(9, 9, parse(" bytes=9 - 9 ", 10));
+
+		// suffix ranges
+		assertRange(7, 9, parse("bytes=-3", 10));
+		assertRange(0, 9, parse("bytes=-100", 10));
+
+		// malformed or multiple ranges are ignored to serve whole content
+		assertNull(parse("bytes=abc-", 10));
+		assertNull(parse("bytes=-", 10));
+		assertNull(parse("bytes=5-2", 10));
+		assertNull(parse("bytes=99999999999999999999-", 10));
+		assertNull(parse("items=0-4", 10));
+		assertNull(parse("bytes=0-1,4-5", 10));
+
+		assertNotSatisfiable("bytes=10-", 10);
+		assertNotSatisfiable("bytes=20-30", 10);
+		assertNotSatisfiable("bytes=-0", 10);
+		assertNotSatisfiable("bytes=-5", 0);
+	}
+
+	@Test
+	public void shouldCopyRange() throws IOException {
+		File file = new File(artifactsDir, "digits.txt");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ArtifactResource.copy(file, new ByteRange(3, 6), baos);
+		assertEquals("3456", new String(baos.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	private ResourceResponse respond(String rangeHeader, ByteArrayOutputStream baos) throws IOException {
+		HttpServletRequest httpRequest = mock(HttpServletRequest.class);
+		when(httpRequest.getHeader("Range")).thenReturn(rangeHeader);
+		Request request = mock(Request.class);
+		when(request.getContainerRequest()).thenReturn(httpRequest);
+		Response response = mock(Response.class);
+		when(response.getOutputStream()).thenReturn(baos);
+
+		Attributes attributes = new Attributes(request, response,
+				ArtifactResource.paramsOf(project, 1L, "digits.txt"));
+		ResourceResponse resourceResponse = new ArtifactResource().newResourceResponse(attributes);
+		resourceResponse.getWriteCallback().writeData(attributes);
+		return resourceResponse;
+	}
+
+	@Test
+	public void shouldServePartialContent() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ResourceResponse response = respond("bytes=2-5", baos);
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatusCode().intValue());
+		assertEquals("bytes 2-5/10", response.getHeaders().getHeader("Content-Range"));
+		assertEquals(4, response.getContentLength());
+		assertEquals("2345", new String(baos.toByteArray(), StandardCharsets.UTF_8));
+
+		baos = new ByteArrayOutputStream();
+		response = respond("bytes=-3", baos);
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatusCode().intValue());
+		assertEquals("bytes 7-9/10", response.getHeaders().getHeader("Content-Range"));
+		assertEquals(3, response.getContentLength());
+		assertEquals("789", new String(baos.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void shouldServeWholeContentForInvalidRange() throws IOException {
+		for (String rangeHeader: Arrays.asList(null, "bytes=abc-", "bytes=5-2", "bytes=0-1,4-5")) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ResourceResponse response = respond(rangeHeader, baos);
+			assertNull(response.getHeaders().getHeader("Content-Range"));
+			assertEquals(10, response.getContentLength());
+			assertArrayEquals(CONTENT.getBytes(StandardCharsets.UTF_8), baos.toByteArray());
+		}
+	}
+
+	@Test
+	public void shouldRejectUnsatisfiableRange() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ResourceResponse response = respond("bytes=10-", baos);
+		assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode().intValue());
+		assertEquals("bytes */10", response.getHeaders().getHeader("Content-Range"));
+		assertEquals(0, baos.size());
+	}
+
+}
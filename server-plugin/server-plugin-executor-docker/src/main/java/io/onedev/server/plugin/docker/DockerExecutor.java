@@ -7,18 +7,25 @@ import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import javax.validation.ConstraintValidatorContext;
+import javax.validation.constraints.Min;
 
 import org.apache.commons.lang3.SystemUtils;
 import org.hibernate.validator.constraints.NotEmpty;
@@ -82,6 +89,21 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 	
 	private String dockerExecutable;
 	
+	private int referenceRepositorySizeLimit;
+	
+	private static volatile ReferenceRepositoryCache referenceRepositoryCache;
+	
+	/*
+	 * Sizes of cache instances on this host keyed by instance name. Size of a cache 
+	 * instance only changes while it is used by a job, so it is measured once and 
+	 * invalidated when the instance is allocated and when the job is finished
+	 */
+	private static final Map<String, Long> cacheSizes = new ConcurrentHashMap<>();
+	
+	private static final long INITIAL_READINESS_CHECK_INTERVAL = 250;
+	
+	private static final long MAX_READINESS_CHECK_INTERVAL = 10000;
+	
 	private transient CapacityRunner capacityRunner;
 	
 	private transient volatile String outerInstallPath;
@@ -115,6 +137,20 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 		this.runOptions = runOptions;
 	}
 
+	@Editable(order=50030, group="More Settings", description="Optionally mirror source of projects on OneDev server to "
+			+ "speed up populating of job workspaces. Objects in mirrors are shared by workspaces of jobs instead "
+			+ "of being copied into each of them, and mirrors are mounted read-only into job containers. Specify maximum total size of these mirrors in "
+			+ "gigabytes to enable mirroring. When exceeded, least recently used mirrors not in use will be removed. "
+			+ "Leave it as <tt>0</tt> to clone job workspaces from project repositories directly")
+	@Min(0)
+	public int getReferenceRepositorySizeLimit() {
+		return referenceRepositorySizeLimit;
+	}
+
+	public void setReferenceRepositorySizeLimit(int referenceRepositorySizeLimit) {
+		this.referenceRepositorySizeLimit = referenceRepositorySizeLimit;
+	}
+
 	@Editable(order=50100, group="More Settings", description="Optionally specify docker executable, for instance <i>/usr/local/bin/docker</i>. "
 			+ "Leave empty to use docker executable in PATH")
 	@NameOfEmptyValue("Use default")
@@ -126,6 +162,18 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 		this.dockerExecutable = dockerExecutable;
 	}
 
+	private static ReferenceRepositoryCache getReferenceRepositoryCache() {
+		if (referenceRepositoryCache == null) {
+			synchronized (DockerExecutor.class) {
+				if (referenceRepositoryCache == null) {
+					File cacheDir = new File(Bootstrap.getSiteDir(), "reference-repos");
+					referenceRepositoryCache = new ReferenceRepositoryCache(cacheDir);
+				}
+			}
+		}
+		return referenceRepositoryCache;
+	}
+	
 	private Commandline newDocker() {
 		if (getDockerExecutable() != null)
 			return new Commandline(getDockerExecutable());
@@ -241,7 +289,7 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 		}).checkReturnCode();
 	}
 	
-	private void clearNetwork(String network, SimpleLogger jobLogger) {
+	void clearNetwork(String network, SimpleLogger jobLogger) {
 		Commandline docker = newDocker();
 		
 		List<String> containerIds = new ArrayList<>();
@@ -262,9 +310,10 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 			
 		}).checkReturnCode();
 		
-		for (String container: containerIds) {
+		if (!containerIds.isEmpty()) {
 			docker.clearArgs();
-			docker.addArgs("container", "stop", container);
+			docker.addArgs("container", "stop");
+			docker.addArgs(containerIds.toArray(new String[0]));
 			docker.execute(new LineConsumer() {
 
 				@Override
@@ -282,7 +331,8 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 			}).checkReturnCode();
 			
 			docker.clearArgs();
-			docker.addArgs("container", "rm", container);
+			docker.addArgs("container", "rm");
+			docker.addArgs(containerIds.toArray(new String[0]));
 			docker.execute(new LineConsumer() {
 
 				@Override
@@ -303,7 +353,9 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 	
 	@SuppressWarnings("resource")
 	private void startService(String network, JobService jobService, SimpleLogger jobLogger) {
-		jobLogger.log("Pulling service image...") ;
+		long startTime = System.currentTimeMillis();
+		String serviceName = jobService.getName();
+		jobLogger.log("Pulling service image (service: " + serviceName + ")...") ;
 		Commandline docker = newDocker();
 		docker.addArgs("pull", jobService.getImage());
 		docker.execute(new LineConsumer() {
@@ -322,7 +374,7 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 			
 		}).checkReturnCode();
 		
-		jobLogger.log("Creating service container...");
+		jobLogger.log("Creating service container (service: " + serviceName + ")...");
 		
 		String containerName = network + "-service-" + jobService.getName();
 		docker.clearArgs();
@@ -352,10 +404,16 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 			
 		}).checkReturnCode();
 
-		jobLogger.log("Waiting for service to be ready...");
+		jobLogger.log("Waiting for service to be ready (service: " + serviceName + ")...");
 		
 		boolean isWindows = getImageOS(jobLogger, jobService.getImage()).equalsIgnoreCase("windows");
 		ObjectMapper jsonReader = OneDev.getInstance(ObjectMapper.class);		
+		
+		/*
+		 * Most services get ready within a few seconds, so we probe frequently at start 
+		 * and back off exponentially to avoid overloading slow services  
+		 */
+		long readinessCheckInterval = INITIAL_READINESS_CHECK_INTERVAL;
 		while (true) {
 			StringBuilder builder = new StringBuilder();
 			docker.clearArgs();
@@ -395,19 +453,19 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 
 					@Override
 					public void consume(String line) {
-						jobLogger.log("Service readiness check: " + line);
+						jobLogger.log("Service readiness check (service: " + serviceName + "): " + line);
 					}
 					
 				}, new LineConsumer() {
 
 					@Override
 					public void consume(String line) {
-						jobLogger.log("Service readiness check: " + line);
+						jobLogger.log("Service readiness check (service: " + serviceName + "): " + line);
 					}
 					
 				});
 				if (result.getReturnCode() == 0) {
-					jobLogger.log("Service is ready");
+					logTiming(jobLogger, "Service '" + serviceName + "' is ready", startTime);
 					break;
 				}
 			} else if (stateNode.get("Status").asText().equals("exited")) {
@@ -438,16 +496,70 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 			}
 			
 			try {
-				Thread.sleep(10000);
+				Thread.sleep(readinessCheckInterval);
 			} catch (InterruptedException e) {
 				throw new RuntimeException(e);
 			}
+			readinessCheckInterval = Math.min(readinessCheckInterval*2, MAX_READINESS_CHECK_INTERVAL);
 		}		
 	}
 	
+	private void startServices(String network, List<JobService> jobServices, SimpleLogger jobLogger) {
+		for (JobService jobService: jobServices) 
+			jobLogger.log("Starting service (name: " + jobService.getName() + ", image: " + jobService.getImage() + ")...");
+		
+		if (jobServices.size() == 1) {
+			startService(network, jobServices.iterator().next(), jobLogger);
+		} else if (!jobServices.isEmpty()) {
+			/*
+			 * Services are independent of each other, so we start them concurrently to 
+			 * avoid accumulating image pulling and readiness waiting time 
+			 */
+			ExecutorService executorService = OneDev.getInstance(ExecutorService.class);
+			List<Future<?>> futures = new ArrayList<>();
+			for (JobService jobService: jobServices) {
+				futures.add(executorService.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						startService(network, jobService, jobLogger);
+					}
+					
+				}));
+			}
+			
+			RuntimeException exception = null;
+			for (Future<?> future: futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					for (Future<?> each: futures)
+						each.cancel(true);
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					if (exception == null) {
+						if (e.getCause() instanceof RuntimeException)
+							exception = (RuntimeException) e.getCause();
+						else
+							exception = new RuntimeException(e.getCause());
+					}
+				}
+			}
+			if (exception != null)
+				throw exception;
+		}
+	}
+	
+	private void logTiming(SimpleLogger jobLogger, String message, long startTime) {
+		jobLogger.log(String.format("%s (took %.1f seconds)", message, 
+				(System.currentTimeMillis() - startTime) / 1000.0));
+	}
+	
 	@Override
 	public void execute(String jobToken, JobContext jobContext) {
 		File hostBuildHome = FileUtils.createTempDir("onedev-build");
+		Collection<CacheInstance> allocatedCaches = new HashSet<>();
+		AtomicReference<File> referenceRepositoryRef = new AtomicReference<>();
 		try {
 			SimpleLogger jobLogger = jobContext.getLogger();
 			getCapacityRunner().call(new Callable<Void>() {
@@ -465,7 +577,16 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 					
 					jobLogger.log("Allocating job caches...") ;
 					Map<CacheInstance, Date> cacheInstances = KubernetesHelper.getCacheInstances(hostCacheHome);
-					Map<CacheInstance, String> cacheAllocations = jobManager.allocateJobCaches(jobToken, new Date(), cacheInstances);
+					Map<CacheInstance, Long> sizesOfCacheInstances;
+					if (getCacheSizeLimit() != 0) {
+						sizesOfCacheInstances = getCacheSizes(hostCacheHome, cacheInstances.keySet());
+					} else {
+						sizesOfCacheInstances = null;
+					}
+					Map<CacheInstance, String> cacheAllocations = jobManager.allocateJobCaches(
+							jobToken, new Date(), cacheInstances, sizesOfCacheInstances);
+					allocatedCaches.addAll(cacheAllocations.keySet());
+					invalidateCacheSizes(allocatedCaches);
 					KubernetesHelper.preprocess(hostCacheHome, cacheAllocations, new Consumer<File>() {
 	
 						@Override
@@ -478,6 +599,7 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 					login(jobLogger);
 
 					jobLogger.log("Pulling job image...") ;
+					long pullStartTime = System.currentTimeMillis();
 					Commandline docker = newDocker();
 					docker.addArgs("pull", jobContext.getImage());
 					docker.execute(new LineConsumer() {
@@ -496,13 +618,18 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 						
 					}).checkReturnCode();
 					
+					logTiming(jobLogger, "Job image pulled", pullStartTime);
+					
 					boolean isWindows = getImageOS(jobLogger, jobContext.getImage()).equalsIgnoreCase("windows");
 
+					long networkStartTime = System.currentTimeMillis();
 					String network = createNetwork(jobContext, isWindows, jobLogger);
+					logTiming(jobLogger, "Job network prepared", networkStartTime);
 					try {
-						for (JobService jobService: jobContext.getServices()) {
-							jobLogger.log("Starting service (name: " + jobService.getName() + ", image: " + jobService.getImage() + ")...");
-							startService(network, jobService, jobLogger);
+						if (!jobContext.getServices().isEmpty()) {
+							long servicesStartTime = System.currentTimeMillis();
+							startServices(network, jobContext.getServices(), jobLogger);
+							logTiming(jobLogger, "All services are ready", servicesStartTime);
 						}
 						
 						File workspaceCache = null;
@@ -534,6 +661,7 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 
 							if (jobContext.isRetrieveSource()) {
 								jobLogger.log("Retrieving source code...");
+								long retrieveStartTime = System.currentTimeMillis();
 								hostHome = FileUtils.createTempDir();
 								Commandline git = new Commandline(AppLoader.getInstance(GitConfig.class).getExecutable());	
 								git.workingDir(hostWorkspace).environments().put("HOME", hostHome.getAbsolutePath());
@@ -562,8 +690,28 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 
 								Integer cloneDepth = jobContext.getCloneDepth();
 								
-								KubernetesHelper.clone(hostWorkspace, jobContext.getProjectGitDir().getAbsolutePath(), 
-										jobContext.getCommitId().name(), cloneDepth, git, logger, logger);
+								/*
+								 * Cached workspace outlives the job, and should not borrow objects 
+								 * from reference repository which might be evicted afterwards
+								 */
+								if (getReferenceRepositorySizeLimit() != 0 && workspaceCache == null) {
+									File workspace = hostWorkspace;
+									referenceRepositoryRef.set(getReferenceRepositoryCache().populate(
+											AppLoader.getInstance(GitConfig.class).getExecutable(), 
+											jobContext.getProjectGitDir(), jobContext.getCommitId().name(), 
+											hostWorkspace, jobLogger, new Runnable() {
+	
+										@Override
+										public void run() {
+											KubernetesHelper.clone(workspace, jobContext.getProjectGitDir().getAbsolutePath(), 
+													jobContext.getCommitId().name(), cloneDepth, git, logger, logger);
+										}
+										
+									}));
+								} else {
+									KubernetesHelper.clone(hostWorkspace, jobContext.getProjectGitDir().getAbsolutePath(), 
+											jobContext.getCommitId().name(), cloneDepth, git, logger, logger);
+								}
 								
 								git.clearArgs();
 								git.addArgs("remote", "add", "origin", jobContext.getCloneInfo().getCloneUrl());
@@ -588,7 +736,10 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 										String homeOuterPath = getOuterPath(hostHome.getAbsolutePath());
 										String workspaceOuterPath = getOuterPath(hostWorkspace.getAbsolutePath());
 										cmd.addArgs("run", "--name=" + containerName, "-v", homeOuterPath + ":/root", 
-												"-v", workspaceOuterPath+ ":/git", "--rm", "alpine/git", 
+												"-v", workspaceOuterPath+ ":/git");
+										if (referenceRepositoryRef.get() != null)
+											cmd.addArgs("-v", getReferenceRepositoryMount(referenceRepositoryRef.get()));
+										cmd.addArgs("--rm", "alpine/git", 
 												"submodule", "update", "--init", "--recursive", "--force", "--quiet");	
 										if (cloneDepth != null)
 											cmd.addArgs("--depth=" + cloneDepth);						
@@ -622,14 +773,17 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 										}).checkReturnCode();
 									}
 								}								
+								logTiming(jobLogger, "Source code retrieved", retrieveStartTime);
 							}
 						
 							jobLogger.log("Copying job dependencies...");
+							long copyStartTime = System.currentTimeMillis();
 							try {
 								FileUtils.copyDirectory(jobContext.getServerWorkspace(), hostWorkspace);
 							} catch (IOException e) {
 								throw new RuntimeException(e);
 							}
+							logTiming(jobLogger, "Job dependencies copied", copyStartTime);
 	
 							String containerBuildHome;
 							String containerWorkspace;
@@ -687,6 +841,9 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 								}
 							}
 							
+							if (referenceRepositoryRef.get() != null)
+								docker.addArgs("-v", getReferenceRepositoryMount(referenceRepositoryRef.get()));
+							
 							if (SystemUtils.IS_OS_LINUX) 
 								docker.addArgs("-v", "/var/run/docker.sock:/var/run/docker.sock");
 							
@@ -766,10 +923,42 @@ public class DockerExecutor extends JobExecutor implements Testable<TestData>, V
 				
 			});
 		} finally {
+			if (referenceRepositoryRef.get() != null) {
+				getReferenceRepositoryCache().release(referenceRepositoryRef.get(), 
+						getReferenceRepositorySizeLimit());
+			}
+			invalidateCacheSizes(allocatedCaches);
 			cleanDirAsRoot(hostBuildHome);
 			FileUtils.deleteDir(hostBuildHome);
 		}
 	}
+	
+	/*
+	 * Reference repository is mounted read-only at the same path, so that alternates of 
+	 * workspace also resolves inside containers
+	 */
+	private String getReferenceRepositoryMount(File referenceRepository) {
+		return getOuterPath(referenceRepository.getAbsolutePath()) + ":" 
+				+ referenceRepository.getAbsolutePath() + ":ro";
+	}
+	
+	private Map<CacheInstance, Long> getCacheSizes(File hostCacheHome, Collection<CacheInstance> cacheInstances) {
+		Set<String> instanceNames = new HashSet<>();
+		Map<CacheInstance, Long> sizes = new HashMap<>();
+		for (CacheInstance cacheInstance: cacheInstances) {
+			instanceNames.add(cacheInstance.getName());
+			File cacheDir = cacheInstance.getDirectory(hostCacheHome);
+			sizes.put(cacheInstance, cacheSizes.computeIfAbsent(cacheInstance.getName(), 
+					k->org.apache.commons.io.FileUtils.sizeOfDirectory(cacheDir)));
+		}
+		cacheSizes.keySet().retainAll(instanceNames);
+		return sizes;
+	}
+	
+	private void invalidateCacheSizes(Collection<CacheInstance> cacheInstances) {
+		for (CacheInstance cacheInstance: cacheInstances)
+			cacheSizes.remove(cacheInstance.getName());
+	}
 
 	private void login(SimpleLogger jobLogger) {
 		for (RegistryLogin login: getRegistryLogins()) {
@@ -0,0 +1,243 @@
+package io.onedev.server.plugin.docker;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.ExecutionResult;
+import io.onedev.commons.utils.command.LineConsumer;
+import io.onedev.server.util.SimpleLogger;
+
+/**
+ * Executor side cache of bare mirrors of project repositories. A job workspace borrows
+ * objects from mirror of its project via alternates, so that only objects not yet in the 
+ * mirror need to be transferred from project repository, and objects in the mirror are 
+ * shared by workspaces of all jobs instead of being copied into each of them. Mirror is 
+ * mounted read-only into job containers at the same path for the alternates to resolve. 
+ * Mirrors are updated incrementally when requested commit is missing, and least recently 
+ * used mirrors not in use by any job are deleted when total size exceeds the limit.
+ */
+public class ReferenceRepositoryCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReferenceRepositoryCache.class);
+
+	private static final String ALTERNATES_PATH = ".git/objects/info/alternates";
+
+	private final File cacheDir;
+
+	/*
+	 * Lock held while a mirror is being checked, updated or deleted
+	 */
+	private final Map<String, Lock> updateLocks = new ConcurrentHashMap<>();
+	
+	/*
+	 * Number of jobs using each mirror. Access should be synchronized on this cache
+	 */
+	private final Map<String, Integer> usages = new HashMap<>();
+
+	public ReferenceRepositoryCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	private Lock getUpdateLock(String mirrorName) {
+		return updateLocks.computeIfAbsent(mirrorName, it->new ReentrantLock());
+	}
+
+	private String getMirrorName(File sourceGitDir) {
+		return DigestUtils.sha1Hex(sourceGitDir.getAbsolutePath());
+	}
+
+	/**
+	 * Populate specified workspace with help of mirror of specified repository. Workspace 
+	 * borrows objects from returned mirror until the job is finished, and {@link #release(File, int)} 
+	 * should be called then
+	 *
+	 * @param gitExecutable
+	 * 			git executable to run commands against mirror
+	 * @param sourceGitDir
+	 * 			git directory of the repository to be mirrored
+	 * @param commitHash
+	 * 			commit to be checked out in workspace
+	 * @param workspace
+	 * 			workspace directory to be populated
+	 * @param jobLogger
+	 * 			logger to record cache hit or miss
+	 * @param populator
+	 * 			runnable to populate the workspace, for instance by fetching specified
+	 * 			commit from source repository. It will be run when alternates of the workspace
+	 * 			points to the mirror
+	 * @return
+	 * 			directory of the mirror, which should be mounted read-only into job containers 
+	 * 			at the same path
+	 */
+	public File populate(String gitExecutable, File sourceGitDir, String commitHash, File workspace,
+			SimpleLogger jobLogger, Runnable populator) {
+		String mirrorName = getMirrorName(sourceGitDir);
+		File mirrorDir = new File(cacheDir, mirrorName);
+		LineConsumer debugLogger = newDebugLogger();
+
+		synchronized (this) {
+			usages.merge(mirrorName, 1, Integer::sum);
+		}
+		boolean populated = false;
+		try {
+			Lock updateLock = getUpdateLock(mirrorName);
+			updateLock.lock();
+			try {
+				if (hasCommit(gitExecutable, mirrorDir, commitHash)) {
+					jobLogger.log("Reference repository cache hit");
+				} else {
+					jobLogger.log("Reference repository cache miss, updating reference repository...");
+					update(gitExecutable, sourceGitDir, mirrorDir);
+				}
+				mirrorDir.setLastModified(System.currentTimeMillis());
+			} finally {
+				updateLock.unlock();
+			}
+
+			Commandline git = new Commandline(gitExecutable);
+			git.workingDir(workspace);
+			if (!new File(workspace, ".git").exists()) {
+				git.addArgs("init", "--quiet");
+				git.execute(debugLogger, newErrorLogger()).checkReturnCode();
+			}
+			File alternatesFile = new File(workspace, ALTERNATES_PATH);
+			FileUtils.createDir(alternatesFile.getParentFile());
+			FileUtils.writeFile(alternatesFile, new File(mirrorDir, "objects").getAbsolutePath() + "\n");
+			populator.run();
+			populated = true;
+			return mirrorDir;
+		} finally {
+			if (!populated)
+				release(mirrorDir);
+		}
+	}
+
+	private void release(File mirrorDir) {
+		synchronized (this) {
+			String mirrorName = mirrorDir.getName();
+			if (usages.merge(mirrorName, -1, Integer::sum) <= 0)
+				usages.remove(mirrorName);
+		}
+	}
+	
+	/**
+	 * Release mirror returned by {@link #populate(String, File, String, File, SimpleLogger, Runnable)} 
+	 * after the job is finished, and evict least recently used mirrors if necessary
+	 * 
+	 * @param mirrorDir
+	 * 			mirror to release
+	 * @param sizeLimit
+	 * 			max total size of mirrors in giga bytes
+	 */
+	public void release(File mirrorDir, int sizeLimit) {
+		release(mirrorDir);
+		evict(sizeLimit * 1024L * 1024L * 1024L);
+	}
+
+	private boolean hasCommit(String gitExecutable, File mirrorDir, String commitHash) {
+		if (!new File(mirrorDir, "objects").exists())
+			return false;
+		Commandline git = new Commandline(gitExecutable);
+		git.workingDir(mirrorDir);
+		git.addArgs("cat-file", "-e", commitHash + "^{commit}");
+		ExecutionResult result = git.execute(newDebugLogger(), newDebugLogger());
+		return result.getReturnCode() == 0;
+	}
+
+	/*
+	 * Fetch only adds objects to the mirror as long as auto gc is disabled, so it is safe 
+	 * to update the mirror while it is borrowed by workspaces of other jobs
+	 */
+	private void update(String gitExecutable, File sourceGitDir, File mirrorDir) {
+		Commandline git = new Commandline(gitExecutable);
+		if (!new File(mirrorDir, "objects").exists()) {
+			FileUtils.cleanDir(mirrorDir);
+			git.workingDir(mirrorDir);
+			git.addArgs("init", "--bare", "--quiet");
+			git.execute(newDebugLogger(), newErrorLogger()).checkReturnCode();
+		} else {
+			git.workingDir(mirrorDir);
+		}
+		git.clearArgs();
+		git.addArgs("-c", "gc.auto=0", "fetch", "--quiet", "--prune", "--force", 
+				sourceGitDir.getAbsolutePath(), "+refs/*:refs/*");
+		git.execute(newDebugLogger(), newErrorLogger()).checkReturnCode();
+	}
+
+	/*
+	 * Delete least recently used mirrors until total size is within the limit. Mirrors
+	 * being used or updated by other jobs are skipped
+	 */
+	private void evict(long sizeLimit) {
+		File[] mirrorDirs = cacheDir.listFiles();
+		if (mirrorDirs == null)
+			return;
+
+		List<File> mirrorDirList = new ArrayList<>();
+		long totalSize = 0;
+		for (File mirrorDir: mirrorDirs) {
+			if (mirrorDir.isDirectory()) {
+				mirrorDirList.add(mirrorDir);
+				totalSize += FileUtils.sizeOfDirectory(mirrorDir);
+			}
+		}
+		mirrorDirList.sort(Comparator.comparing(File::lastModified));
+
+		for (File mirrorDir: mirrorDirList) {
+			if (totalSize <= sizeLimit)
+				break;
+			Lock updateLock = getUpdateLock(mirrorDir.getName());
+			boolean locked;
+			synchronized (this) {
+				locked = !usages.containsKey(mirrorDir.getName()) && updateLock.tryLock();
+			}
+			if (locked) {
+				try {
+					long size = FileUtils.sizeOfDirectory(mirrorDir);
+					FileUtils.deleteDir(mirrorDir);
+					totalSize -= size;
+					logger.debug("Evicted reference repository: " + mirrorDir.getAbsolutePath());
+				} finally {
+					updateLock.unlock();
+				}
+			}
+		}
+	}
+
+	private LineConsumer newDebugLogger() {
+		return new LineConsumer(StandardCharsets.UTF_8.name()) {
+
+			@Override
+			public void consume(String line) {
+				logger.debug(line);
+			}
+
+		};
+	}
+
+	private LineConsumer newErrorLogger() {
+		return new LineConsumer(StandardCharsets.UTF_8.name()) {
+
+			@Override
+			public void consume(String line) {
+				logger.error(line);
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,72 @@
+package io.onedev.server.plugin.docker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.util.SimpleLogger;
+
+public class DockerExecutorTest {
+
+	private File tempDir;
+
+	private File invocationsFile;
+
+	private DockerExecutor executor;
+
+	@Before
+	public void before() {
+		assumeFalse(SystemUtils.IS_OS_WINDOWS);
+
+		tempDir = FileUtils.createTempDir();
+		invocationsFile = new File(tempDir, "invocations");
+
+		// Fake docker binary recording invocations, and listing two containers for "ps"
+		File dockerFile = new File(tempDir, "docker");
+		FileUtils.writeFile(dockerFile, ""
+				+ "#!/bin/sh\n"
+				+ "echo \"$@\" >> " + invocationsFile.getAbsolutePath() + "\n"
+				+ "if [ \"$1\" = \"ps\" ]; then\n"
+				+ "  echo container1\n"
+				+ "  echo container2\n"
+				+ "fi\n");
+		dockerFile.setExecutable(true);
+
+		executor = new DockerExecutor();
+		executor.setDockerExecutable(dockerFile.getAbsolutePath());
+	}
+
+	@After
+	public void after() {
+		if (tempDir != null)
+			FileUtils.deleteDir(tempDir);
+	}
+
+	@Test
+	public void shouldClearNetworkWithBatchedCommands() throws IOException {
+		executor.clearNetwork("test-network", new SimpleLogger() {
+
+			@Override
+			public void log(String message) {
+			}
+
+		});
+
+		List<String> invocations = FileUtils.readLines(invocationsFile, StandardCharsets.UTF_8);
+		assertEquals(3, invocations.size());
+		assertEquals("ps -a -q --filter network=test-network", invocations.get(0));
+		assertEquals("container stop container1 container2", invocations.get(1));
+		assertEquals("container rm container1 container2", invocations.get(2));
+	}
+
+}
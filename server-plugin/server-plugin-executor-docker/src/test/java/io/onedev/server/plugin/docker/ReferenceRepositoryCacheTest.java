@@ -0,0 +1,127 @@
+package io.onedev.server.plugin.docker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.LineConsumer;
+import io.onedev.server.util.SimpleLogger;
+
+public class ReferenceRepositoryCacheTest {
+
+	private File tempDir;
+
+	private File sourceDir;
+
+	private List<String> jobLogs;
+
+	private SimpleLogger jobLogger;
+
+	@Before
+	public void before() {
+		tempDir = FileUtils.createTempDir();
+		sourceDir = new File(tempDir, "source");
+		FileUtils.createDir(sourceDir);
+		git(sourceDir, "init", "--bare", "--quiet");
+
+		jobLogs = new ArrayList<>();
+		jobLogger = new SimpleLogger() {
+
+			@Override
+			public void log(String message) {
+				jobLogs.add(message);
+			}
+
+		};
+	}
+
+	@After
+	public void after() {
+		FileUtils.deleteDir(tempDir);
+	}
+
+	private String git(File workingDir, String... args) {
+		StringBuilder output = new StringBuilder();
+		Commandline git = new Commandline("git");
+		git.workingDir(workingDir).addArgs(args);
+		git.execute(new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				output.append(line);
+			}
+
+		}, new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+			}
+
+		}).checkReturnCode();
+		return output.toString();
+	}
+
+	private String commit(String fileName) {
+		File workDir = new File(tempDir, "work");
+		if (!workDir.exists()) {
+			FileUtils.createDir(workDir);
+			git(workDir, "init", "--quiet");
+			git(workDir, "config", "user.name", "test");
+			git(workDir, "config", "user.email", "test@example.com");
+		}
+		FileUtils.writeFile(new File(workDir, fileName), fileName);
+		git(workDir, "add", fileName);
+		git(workDir, "commit", "--quiet", "-m", fileName);
+		git(workDir, "push", "--quiet", sourceDir.getAbsolutePath(), "HEAD:refs/heads/master");
+		return git(workDir, "rev-parse", "HEAD");
+	}
+
+	private File populate(ReferenceRepositoryCache cache, String commitHash, String workspaceName) {
+		File workspace = new File(tempDir, workspaceName);
+		FileUtils.createDir(workspace);
+		cache.populate("git", sourceDir, commitHash, workspace, 0, jobLogger, new Runnable() {
+
+			@Override
+			public void run() {
+				assertTrue(new File(workspace, ".git/objects/info/alternates").exists());
+				git(workspace, "fetch", "--quiet", sourceDir.getAbsolutePath(), commitHash);
+				git(workspace, "checkout", "--quiet", commitHash);
+			}
+
+		});
+		return workspace;
+	}
+
+	@Test
+	public void shouldReuseMirror() {
+		ReferenceRepositoryCache cache = new ReferenceRepositoryCache(new File(tempDir, "cache"));
+
+		String commitHash = commit("file1");
+		File workspace = populate(cache, commitHash, "workspace1");
+		assertEquals("Reference repository cache miss, updating reference repository...", jobLogs.get(0));
+		assertTrue(new File(workspace, "file1").exists());
+		assertFalse(new File(workspace, ".git/objects/info/alternates").exists());
+		git(workspace, "fsck", "--connectivity-only");
+
+		workspace = populate(cache, commitHash, "workspace2");
+		assertEquals("Reference repository cache hit", jobLogs.get(1));
+		assertTrue(new File(workspace, "file1").exists());
+
+		commitHash = commit("file2");
+		workspace = populate(cache, commitHash, "workspace3");
+		assertEquals("Reference repository cache miss, updating reference repository...", jobLogs.get(2));
+		assertTrue(new File(workspace, "file2").exists());
+		git(workspace, "fsck", "--connectivity-only");
+	}
+
+}
@@ -11,16 +11,19 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.hibernate.validator.constraints.NotEmpty;
 import org.slf4j.Logger;
@@ -81,6 +84,20 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 	
 	private static final long NAMESPACE_DELETION_TIMEOUT = 120;
 	
+	private static final String EXECUTOR_LABEL = "onedev-executor";
+	
+	private static final int MAX_LABEL_VALUE_LEN = 63;
+	
+	private static final long INITIAL_READINESS_CHECK_INTERVAL = 250;
+	
+	private static final long MAX_READINESS_CHECK_INTERVAL = 10000;
+	
+	/*
+	 * Watchers are shared by executor instances with same name and cluster access settings, 
+	 * as executor settings are re-created when edited 
+	 */
+	private static final Map<String, KubernetesWatcher> watchers = new ConcurrentHashMap<>();
+	
 	private List<NodeSelectorEntry> nodeSelector = new ArrayList<>();
 	
 	private String clusterRole;
@@ -183,6 +200,40 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 		execute(testData.getDockerImage(), KubernetesResource.TEST_JOB_TOKEN, jobLogger, null);
 	}
 	
+	private KubernetesWatcher getWatcher() {
+		String watcherKey = getName() + ":" + getKubeCtlPath() + ":" + getConfigFile();
+		return watchers.computeIfAbsent(watcherKey, it -> new KubernetesWatcher(
+				OneDev.getInstance(ObjectMapper.class), EXECUTOR_LABEL + "=" + getExecutorLabelValue()) {
+
+			@Override
+			protected Commandline newKubeCtl() {
+				return KubernetesExecutor.this.newKubeCtl();
+			}
+			
+		});
+	}
+	
+	/*
+	 * Label value only allows alphanumerics, '-', '_' and '.', and is at most 63 characters. 
+	 * Executor name is sanitized and appended with its hash if it does not qualify, so that 
+	 * different executors still get different label values
+	 */
+	private String getExecutorLabelValue() {
+		String labelValue = getName().replaceAll("[^a-zA-Z0-9\\-_.]", "-");
+		if (!labelValue.equals(getName()) || labelValue.length() > MAX_LABEL_VALUE_LEN 
+				|| !Character.isLetterOrDigit(labelValue.charAt(0)) 
+				|| !Character.isLetterOrDigit(labelValue.charAt(labelValue.length()-1))) {
+			String hash = DigestUtils.sha1Hex(getName()).substring(0, 8);
+			labelValue = labelValue.substring(0, Math.min(labelValue.length(), MAX_LABEL_VALUE_LEN - hash.length() - 1));
+			labelValue = labelValue.replaceAll("^[^a-zA-Z0-9]+", "");
+			if (labelValue.length() != 0)
+				labelValue += "-" + hash;
+			else
+				labelValue = hash;
+		}
+		return labelValue;
+	}
+	
 	private Commandline newKubeCtl() {
 		String kubectl = getKubeCtlPath();
 		if (kubectl == null)
@@ -326,6 +377,15 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 		return namespace;
 	}
 	
+	/*
+	 * Name part of a label can not exceed 63 characters, while cache address contains 
+	 * user specified cache key of arbitrary length. So we use digest of the address 
+	 * as label name
+	 */
+	private static String getCacheLabel(String cacheAddress) {
+		return CACHE_LABEL_PREFIX + DigestUtils.sha1Hex(cacheAddress);
+	}
+	
 	@Nullable
 	private Map<Object, Object> getAffinity(@Nullable JobContext jobContext) {
 		Map<Object, Object> nodeAffinity = new LinkedHashMap<>();
@@ -352,7 +412,7 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 						 "weight", i, 
 						 "preference", CollectionUtils.newLinkedHashMap("matchExpressions",
 								 Lists.<Object>newArrayList(CollectionUtils.newLinkedHashMap(
-										 "key", CACHE_LABEL_PREFIX + cacheSpec.getKey(), 
+										 "key", getCacheLabel(cacheSpec.getAddress(jobContext.getProjectName())), 
 										 "operator", "In", 
 										 "values", Lists.newArrayList(String.valueOf(i))))))); 
 				 }
@@ -360,7 +420,7 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 						"weight", MAX_AFFINITY_WEIGHT,
 						"preference", CollectionUtils.newLinkedHashMap(
 								"matchExpressions", Lists.<Object>newArrayList(CollectionUtils.newLinkedHashMap(
-										"key", CACHE_LABEL_PREFIX + cacheSpec.getKey(), 
+										"key", getCacheLabel(cacheSpec.getAddress(jobContext.getProjectName())), 
 										"operator", "Gt", 
 										"values", Lists.newArrayList(String.valueOf(MAX_AFFINITY_WEIGHT-1)))))));
 			}
@@ -574,7 +634,8 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 						"name", podName, 
 						"namespace", namespace, 
 						"labels", CollectionUtils.newLinkedHashMap(
-								"service", jobService.getName())), 
+								"service", jobService.getName(), 
+								EXECUTOR_LABEL, getExecutorLabelValue())), 
 				"spec", podSpec);
 		createResource(podDef, Sets.newHashSet(), jobLogger);		
 		
@@ -595,87 +656,86 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 		checkEventError(namespace, podName, jobLogger);
 
 		OsInfo baselineOsInfo = getBaselineOsInfo(nodeSelector, jobLogger);
-		ObjectMapper mapper = OneDev.getInstance(ObjectMapper.class);
+		
+		/*
+		 * Most services get ready within a few seconds, so we probe frequently at start 
+		 * and back off exponentially to avoid overloading slow services  
+		 */
+		long readinessCheckInterval = INITIAL_READINESS_CHECK_INTERVAL;
 		while (true) {
-			Commandline kubectl = newKubeCtl();
-			kubectl.addArgs("get", "pod", podName, "-n", namespace, "-o", "json");
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			kubectl.execute(baos, new LineConsumer() {
+			JsonNode stateNode = getWatcher().await(namespace, podName, new KubernetesWatcher.Checker<JsonNode>() {
 
 				@Override
-				public void consume(String line) {
-					jobLogger.log("Kubernetes: " + line);
+				public JsonNode check(JsonNode podNode, List<JsonNode> eventNodes) {
+					if (podNode != null) {
+						JsonNode containerStatusesNode = podNode.get("status").get("containerStatuses");
+						if (containerStatusesNode != null) {
+							JsonNode stateNode = containerStatusesNode.iterator().next().get("state");
+							if (stateNode.get("running") != null || stateNode.get("terminated") != null)
+								return stateNode;
+						}
+					}
+					return null;
 				}
 				
-			}).checkReturnCode();
-
-			JsonNode statusNode;
-			try {
-				statusNode = mapper.readTree(baos.toString()).get("status");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+			});
 			
-			JsonNode containerStatusesNode = statusNode.get("containerStatuses");
-			if (containerStatusesNode != null) {
-				JsonNode containerStatusNode = containerStatusesNode.iterator().next();
-				JsonNode stateNode = containerStatusNode.get("state");
-				if (stateNode.get("running") != null) {
-					kubectl.clearArgs();
-					kubectl.addArgs("exec", podName, "-n", namespace, "--");
-					if (baselineOsInfo.isLinux())
-						kubectl.addArgs("bash", "-c");
-					else 
-						kubectl.addArgs("cmd.exe", "/c");
-					kubectl.addArgs(jobService.getReadinessCheckCommand());
-					ExecutionResult result = kubectl.execute(new LineConsumer() {
-
-						@Override
-						public void consume(String line) {
-							jobLogger.log("Service readiness check: " + line);
-						}
-						
-					}, new LineConsumer() {
+			if (stateNode.get("running") != null) {
+				Commandline kubectl = newKubeCtl();
+				kubectl.addArgs("exec", podName, "-n", namespace, "--");
+				if (baselineOsInfo.isLinux())
+					kubectl.addArgs("bash", "-c");
+				else 
+					kubectl.addArgs("cmd.exe", "/c");
+				kubectl.addArgs(jobService.getReadinessCheckCommand());
+				ExecutionResult result = kubectl.execute(new LineConsumer() {
 
-						@Override
-						public void consume(String line) {
-							jobLogger.log("Service readiness check: " + line);
-						}
-						
-					});
-					if (result.getReturnCode() == 0) {
-						jobLogger.log("Service is ready");
-						break;
+					@Override
+					public void consume(String line) {
+						jobLogger.log("Service readiness check: " + line);
 					}
-				} else if (stateNode.get("terminated") != null) {
-					JsonNode terminatedNode = stateNode.get("terminated");							
-					JsonNode reasonNode = terminatedNode.get("reason");
-					String reason = null;
-					if (reasonNode != null && !reasonNode.asText().equals("Error") && !reasonNode.asText().equals("Completed"))
-						reason = reasonNode.asText();
+					
+				}, new LineConsumer() {
 
-					JsonNode messageNode = terminatedNode.get("message");
-					if (messageNode != null) { 
-						if (reason != null)
-							reason += ": " + messageNode.asText();
-						else
-							reason = messageNode.asText();
+					@Override
+					public void consume(String line) {
+						jobLogger.log("Service readiness check: " + line);
 					}
 					
+				});
+				if (result.getReturnCode() == 0) {
+					jobLogger.log("Service is ready");
+					break;
+				}
+			} else {
+				JsonNode terminatedNode = stateNode.get("terminated");							
+				JsonNode reasonNode = terminatedNode.get("reason");
+				String reason = null;
+				if (reasonNode != null && !reasonNode.asText().equals("Error") && !reasonNode.asText().equals("Completed"))
+					reason = reasonNode.asText();
+
+				JsonNode messageNode = terminatedNode.get("message");
+				if (messageNode != null) { 
 					if (reason != null)
-						jobLogger.log(reason);
-					
-					collectContainerLog(namespace, podName, "default", null, jobLogger);
-					String message = "Service '" + jobService.getName() + "' is stopped unexpectedly";
-					throw new ExplicitException(message);
+						reason += ": " + messageNode.asText();
+					else
+						reason = messageNode.asText();
 				}
+				
+				if (reason != null)
+					jobLogger.log(reason);
+				
+				collectContainerLog(namespace, podName, "default", null, jobLogger);
+				String message = "Service '" + jobService.getName() + "' is stopped unexpectedly";
+				throw new ExplicitException(message);
 			}
 			
 			try {
-				Thread.sleep(10000);
+				Thread.sleep(readinessCheckInterval);
 			} catch (InterruptedException e) {
 				throw new RuntimeException(e);
 			}
+			readinessCheckInterval = Math.min(readinessCheckInterval*2, MAX_READINESS_CHECK_INTERVAL);
 		}
 	}
 	
@@ -714,6 +774,8 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 			namespace += "executor-test";
 		}
 		
+		KubernetesWatcher watcher = getWatcher();
+		watcher.register(namespace);
 		if (getClusterRole() != null)
 			createClusterRoleBinding(namespace, jobLogger);
 		try {
@@ -890,7 +952,9 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 						"kind", "Pod", 
 						"metadata", CollectionUtils.newLinkedHashMap(
 								"name", podName, 
-								"namespace", namespace), 
+								"namespace", namespace, 
+								"labels", CollectionUtils.newLinkedHashMap(
+										EXECUTOR_LABEL, getExecutorLabelValue())), 
 						"spec", podSpec);
 				
 				createResource(podDef, Sets.newHashSet(), jobLogger);
@@ -918,27 +982,15 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 				if (jobContext != null)
 					jobContext.notifyJobRunning();
 				
-				AtomicReference<String> nodeNameRef = new AtomicReference<>(null);
-				
-				kubectl.clearArgs();
-				kubectl.addArgs("get", "pod", podName, "-n", namespace, "-o", "jsonpath={.spec.nodeName}");
-				kubectl.execute(new LineConsumer() {
+				String nodeName = watcher.await(namespace, podName, new KubernetesWatcher.Checker<String>() {
 
 					@Override
-					public void consume(String line) {
-						nodeNameRef.set(line);
+					public String check(JsonNode podNode, List<JsonNode> eventNodes) {
+						JsonNode nodeNameNode = podNode!=null? podNode.get("spec").get("nodeName"): null;
+						return nodeNameNode!=null? nodeNameNode.asText(): null;
 					}
 					
-				}, new LineConsumer() {
-
-					@Override
-					public void consume(String line) {
-						jobLogger.log("Kubernetes: " + line);
-					}
-					
-				}).checkReturnCode();
-				
-				String nodeName = Preconditions.checkNotNull(nodeNameRef.get());
+				});
 				jobLogger.log("Running job pod on node " + nodeName + "...");
 				
 				logger.debug("Collecting init container log (pod: {})...", podFQN);
@@ -1014,8 +1066,12 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 				deleteNamespace(namespace, jobLogger);
 			}			
 		} finally {
-			if (getClusterRole() != null)
-				deleteClusterRoleBinding(namespace, jobLogger);
+			try {
+				if (getClusterRole() != null)
+					deleteClusterRoleBinding(namespace, jobLogger);
+			} finally {
+				watcher.unregister(namespace);
+			}
 		}
 	}
 	
@@ -1120,13 +1176,17 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 		
 		List<String> labelUpdates = new ArrayList<>();
 
+		Map<String, Integer> cacheCounts = new HashMap<>();
+		for (Map.Entry<String, Integer> entry: jobContext.getCacheCounts().entrySet())
+			cacheCounts.put(getCacheLabel(entry.getKey()), entry.getValue());
+		jobContext.getCacheCounts().clear();
+		
 		Iterator<Map.Entry<String, JsonNode>> it = nodeNode.get("metadata").get("labels").fields();
 		while (it.hasNext()) {
 			Map.Entry<String, JsonNode> entry = it.next();
 			if (entry.getKey().startsWith(CACHE_LABEL_PREFIX)) {
-				String cacheKey = entry.getKey().substring(CACHE_LABEL_PREFIX.length());
 				int labelValue = entry.getValue().asInt();
-				Integer count = jobContext.getCacheCounts().remove(cacheKey);
+				Integer count = cacheCounts.remove(entry.getKey());
 				if (count == null)
 					labelUpdates.add(entry.getKey() + "-");
 				else if (count != labelValue)
@@ -1134,10 +1194,8 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 			}
 		}
 		
-		for (Map.Entry<String, Integer> entry: jobContext.getCacheCounts().entrySet())
-			labelUpdates.add(CACHE_LABEL_PREFIX + entry.getKey() + "=" + entry.getValue());
-		
-		jobContext.getCacheCounts().clear();
+		for (Map.Entry<String, Integer> entry: cacheCounts.entrySet())
+			labelUpdates.add(entry.getKey() + "=" + entry.getValue());
 		
 		for (List<String> partition: Lists.partition(labelUpdates, LABEL_UPDATE_BATCH)) {
 			kubectl.clearArgs();
@@ -1168,176 +1226,103 @@ public class KubernetesExecutor extends JobExecutor implements Testable<TestData
 	}
 	
 	private void watchPod(String namespace, String podName, StatusChecker statusChecker, SimpleLogger jobLogger) {
-		Commandline kubectl = newKubeCtl();
-		
-		ObjectMapper mapper = OneDev.getInstance(ObjectMapper.class);
-		
-		AtomicReference<StopWatch> stopWatchRef = new AtomicReference<>(null); 
-		
-		StringBuilder json = new StringBuilder();
-		kubectl.addArgs("get", "pod", podName, "-n", namespace, "--watch", "-o", "json");
-		
-		Thread thread = Thread.currentThread();
-		try {
-			kubectl.execute(new LineConsumer() {
-	
-				@Override
-				public void consume(String line) {
-					if (line.startsWith("{")) {
-						json.append("{").append("\n");
-					} else if (line.startsWith("}")) {
-						json.append("}");
-						logger.trace("Pod watching output:\n" + json.toString());
-						try {
-							process(mapper.readTree(json.toString()));
-						} catch (Exception e) {
-							logger.error("Error processing pod watching output", e);
-						}
-						json.setLength(0);
-					} else {
-						json.append(line).append("\n");
-					}
-				}
+		StopWatch stopWatch = getWatcher().await(namespace, podName, new KubernetesWatcher.Checker<StopWatch>() {
 
-				private void process(JsonNode podNode) {
-					String errorMessage = null;
-					JsonNode statusNode = podNode.get("status");
-					JsonNode conditionsNode = statusNode.get("conditions");
-					if (conditionsNode != null) {
-						for (JsonNode conditionNode: conditionsNode) {
-							if (conditionNode.get("type").asText().equals("PodScheduled") 
-									&& conditionNode.get("status").asText().equals("False")
-									&& conditionNode.get("reason").asText().equals("Unschedulable")) {
-								jobLogger.log("Kubernetes: " + conditionNode.get("message").asText());
-							}
+			private String lastResourceVersion;
+			
+			@Override
+			public StopWatch check(JsonNode podNode, List<JsonNode> eventNodes) {
+				if (podNode == null)
+					return null;
+				
+				// Checker is also called for updates of other pods in the namespace
+				String resourceVersion = podNode.get("metadata").get("resourceVersion").asText();
+				if (resourceVersion.equals(lastResourceVersion))
+					return null;
+				lastResourceVersion = resourceVersion;
+				
+				String errorMessage = null;
+				JsonNode statusNode = podNode.get("status");
+				JsonNode conditionsNode = statusNode.get("conditions");
+				if (conditionsNode != null) {
+					for (JsonNode conditionNode: conditionsNode) {
+						if (conditionNode.get("type").asText().equals("PodScheduled") 
+								&& conditionNode.get("status").asText().equals("False")
+								&& conditionNode.get("reason").asText().equals("Unschedulable")) {
+							jobLogger.log("Kubernetes: " + conditionNode.get("message").asText());
 						}
 					}
-					
-					Collection<JsonNode> containerStatusNodes = new ArrayList<>();
-					JsonNode initContainerStatusesNode = statusNode.get("initContainerStatuses");
-					if (initContainerStatusesNode != null) {
-						for (JsonNode containerStatusNode: initContainerStatusesNode)
-							containerStatusNodes.add(containerStatusNode);
-					}
-					JsonNode containerStatusesNode = statusNode.get("containerStatuses");
-					if (containerStatusesNode != null) {
-						for (JsonNode containerStatusNode: containerStatusesNode)
-							containerStatusNodes.add(containerStatusNode);
-					}
-					
-					for (JsonNode containerStatusNode: containerStatusNodes) {
-						JsonNode stateNode = containerStatusNode.get("state");
-						JsonNode waitingNode = stateNode.get("waiting");
-						if (waitingNode != null) {
-							String reason = waitingNode.get("reason").asText();
-							if (reason.equals("ErrImagePull") || reason.equals("InvalidImageName") 
-									|| reason.equals("ImageInspectError") || reason.equals("ErrImageNeverPull")
-									|| reason.equals("RegistryUnavailable")) {
-								JsonNode messageNode = waitingNode.get("message");
-								if (messageNode != null)
-									errorMessage = messageNode.asText();
-								else
-									errorMessage = reason;
-								break;
-							}
-						} 
-					}
-					if (errorMessage != null) 
-						stopWatchRef.set(new StopWatch(new ExplicitException(errorMessage)));
-					else 
-						stopWatchRef.set(statusChecker.check(statusNode));
-					if (stopWatchRef.get() != null) 
-						thread.interrupt();
 				}
 				
-			}, new LineConsumer() {
-	
-				@Override
-				public void consume(String line) {
-					jobLogger.log("Kubernetes: " + line);
+				Collection<JsonNode> containerStatusNodes = new ArrayList<>();
+				JsonNode initContainerStatusesNode = statusNode.get("initContainerStatuses");
+				if (initContainerStatusesNode != null) {
+					for (JsonNode containerStatusNode: initContainerStatusesNode)
+						containerStatusNodes.add(containerStatusNode);
+				}
+				JsonNode containerStatusesNode = statusNode.get("containerStatuses");
+				if (containerStatusesNode != null) {
+					for (JsonNode containerStatusNode: containerStatusesNode)
+						containerStatusNodes.add(containerStatusNode);
 				}
 				
-			}).checkReturnCode();
-			
-			throw new ExplicitException("Unexpected end of pod watching");
-		} catch (Exception e) {
-			StopWatch stopWatch = stopWatchRef.get();
-			if (stopWatch != null) {
-				if (stopWatch.getException() != null)
-					throw stopWatch.getException();
-			} else { 
-				throw ExceptionUtils.unchecked(e);
+				for (JsonNode containerStatusNode: containerStatusNodes) {
+					JsonNode stateNode = containerStatusNode.get("state");
+					JsonNode waitingNode = stateNode.get("waiting");
+					if (waitingNode != null) {
+						String reason = waitingNode.get("reason").asText();
+						if (reason.equals("ErrImagePull") || reason.equals("InvalidImageName") 
+								|| reason.equals("ImageInspectError") || reason.equals("ErrImageNeverPull")
+								|| reason.equals("RegistryUnavailable")) {
+							JsonNode messageNode = waitingNode.get("message");
+							if (messageNode != null)
+								errorMessage = messageNode.asText();
+							else
+								errorMessage = reason;
+							break;
+						}
+					} 
+				}
+				if (errorMessage != null) 
+					return new StopWatch(new ExplicitException(errorMessage));
+				else 
+					return statusChecker.check(statusNode);
 			}
-		}		
+			
+		});
+		if (stopWatch.getException() != null)
+			throw stopWatch.getException();
 	}
 	
 	private void checkEventError(String namespace, String podName, SimpleLogger jobLogger) {
-		Commandline kubectl = newKubeCtl();
-		
-		ObjectMapper mapper = OneDev.getInstance(ObjectMapper.class);
-		
-		StringBuilder json = new StringBuilder();
-		kubectl.addArgs("get", "event", "-n", namespace, "--field-selector", 
-				"involvedObject.kind=Pod,involvedObject.name=" + podName, "--watch", 
-				"-o", "json");
-		Thread thread = Thread.currentThread();
-		AtomicReference<StopWatch> stopWatchRef = new AtomicReference<>(null);
-		try {
-			kubectl.execute(new LineConsumer() {
-	
-				@Override
-				public void consume(String line) {
-					if (stopWatchRef.get() == null) {
-						if (line.startsWith("{")) {
-							json.append("{").append("\n");
-						} else if (line.startsWith("}")) {
-							json.append("}");
-							logger.trace("Checking event:\n" + json.toString());
-							try {
-								JsonNode eventNode = mapper.readTree(json.toString()); 
-								String type = eventNode.get("type").asText();
-								String reason = eventNode.get("reason").asText();
-								JsonNode messageNode = eventNode.get("message");
-								String message = messageNode!=null? messageNode.asText(): reason;
-								if (type.equals("Warning")) {
-									if (reason.equals("FailedScheduling"))
-										jobLogger.log("Kubernetes: " + message);
-									else 
-										stopWatchRef.set(new StopWatch(new ExplicitException(message)));
-								} else if (type.equals("Normal") && reason.equals("Started")) {
-									stopWatchRef.set(new StopWatch(null));
-								}
-								if (stopWatchRef.get() != null)
-									thread.interrupt();
-							} catch (Exception e) {
-								logger.error("Error processing event watching record", e);
-							}
-							json.setLength(0);
-						} else {
-							json.append(line).append("\n");
-						}
+		StopWatch stopWatch = getWatcher().await(namespace, podName, new KubernetesWatcher.Checker<StopWatch>() {
+
+			private int eventIndex;
+			
+			@Override
+			public StopWatch check(JsonNode podNode, List<JsonNode> eventNodes) {
+				for (; eventIndex<eventNodes.size(); eventIndex++) {
+					JsonNode eventNode = eventNodes.get(eventIndex);
+					logger.trace("Checking event:\n" + eventNode.toString());
+					String type = eventNode.get("type").asText();
+					String reason = eventNode.get("reason").asText();
+					JsonNode messageNode = eventNode.get("message");
+					String message = messageNode!=null? messageNode.asText(): reason;
+					if (type.equals("Warning")) {
+						if (reason.equals("FailedScheduling"))
+							jobLogger.log("Kubernetes: " + message);
+						else 
+							return new StopWatch(new ExplicitException(message));
+					} else if (type.equals("Normal") && reason.equals("Started")) {
+						return new StopWatch(null);
 					}
 				}
-				
-			}, new LineConsumer() {
-	
-				@Override
-				public void consume(String line) {
-					jobLogger.log("Kubernetes: " + line);
-				}
-				
-			}).checkReturnCode();
-			
-			throw new ExplicitException("Unexpected end of event watching");
-		} catch (Exception e) {
-			StopWatch stopWatch = stopWatchRef.get();
-			if (stopWatch != null) {
-				if (stopWatch.getException() != null)
-					throw stopWatch.getException();
-			} else { 
-				throw ExceptionUtils.unchecked(e);
+				return null;
 			}
-		}		
+			
+		});
+		if (stopWatch.getException() != null)
+			throw stopWatch.getException();
 	}
 	
 	private void collectContainerLog(String namespace, String podName, String containerName, 
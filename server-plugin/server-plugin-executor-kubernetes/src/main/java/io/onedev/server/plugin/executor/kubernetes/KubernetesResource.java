@@ -1,5 +1,10 @@
 package io.onedev.server.plugin.executor.kubernetes;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -7,8 +12,14 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -16,20 +27,27 @@ import javax.inject.Singleton;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.StreamingOutput;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang.SerializationUtils;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 
 import io.onedev.commons.utils.ExplicitException;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LockUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.commons.utils.TarUtils;
 import io.onedev.k8shelper.CacheAllocationRequest;
@@ -45,8 +63,14 @@ public class KubernetesResource {
 
 	public static final String TEST_JOB_TOKEN = UUID.randomUUID().toString();
 	
+	private static final int BUFFER_SIZE = 64*1024;
+	
+	private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+	
 	private final JobManager jobManager;
 	
+	private final Map<String, File> dependenciesSpoolFiles = new ConcurrentHashMap<>();
+	
     @Context
     private HttpServletRequest request;
     
@@ -58,7 +82,7 @@ public class KubernetesResource {
 	@Path("/job-context")
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
     @POST
-    public byte[] getJobContext(@Nullable String jobWorkspace) {
+    public StreamingOutput getJobContext(@Nullable String jobWorkspace) {
 		JobContext context = jobManager.getJobContext(getJobToken(), true);
 		if (StringUtils.isNotBlank(jobWorkspace))
 			context.reportJobWorkspace(jobWorkspace);		
@@ -71,17 +95,17 @@ public class KubernetesResource {
 		contextMap.put("commitHash", context.getCommitId().name());
 		contextMap.put("collectFiles.includes", context.getCollectFiles().getIncludes());
 		contextMap.put("collectFiles.excludes", context.getCollectFiles().getExcludes());
-		return SerializationUtils.serialize((Serializable) contextMap);
+		return serialize((Serializable) contextMap);
     }
 	
 	@Path("/allocate-job-caches")
 	@Consumes(MediaType.APPLICATION_OCTET_STREAM)
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
     @POST
-    public byte[] allocateJobCaches(String cacheAllocationRequestString) {
+    public StreamingOutput allocateJobCaches(String cacheAllocationRequestString) {
 		CacheAllocationRequest cacheAllocationRequest = CacheAllocationRequest.fromString(cacheAllocationRequestString);
-		return SerializationUtils.serialize((Serializable) jobManager.allocateJobCaches(
-				getJobToken(), cacheAllocationRequest.getCurrentTime(), cacheAllocationRequest.getInstances()));
+		return serialize((Serializable) jobManager.allocateJobCaches(
+				getJobToken(), cacheAllocationRequest.getCurrentTime(), cacheAllocationRequest.getInstances(), null));
     }
 	
 	@Path("/report-job-caches")
@@ -94,33 +118,146 @@ public class KubernetesResource {
 		jobManager.reportJobCaches(getJobToken(), cacheInstances);
 	}
 	
+	/**
+	 * Dependencies are spooled into a tar file on first download, so that interrupted 
+	 * downloads can be resumed with range requests against identical content. Full 
+	 * downloads are compressed by Jetty's gzip handler if accepted by the client 
+	 */
 	@Path("/download-dependencies")
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
 	@GET
-	public Response downloadDependencies() {
+	public Response downloadDependencies(@HeaderParam("Range") @Nullable String range) {
+		String jobToken = getJobToken();
+		JobContext context = jobManager.getJobContext(jobToken, true);
+		File spoolFile = getDependenciesSpoolFile(jobToken, context);
+		
+		long length = spoolFile.length();
+		long start = 0;
+		boolean partial = false;
+		Matcher matcher = range!=null? RANGE_PATTERN.matcher(range.trim()): null;
+		if (matcher != null && matcher.matches()) {
+			partial = true;
+			start = Long.parseLong(matcher.group(1));
+			long end = length - 1;
+			if (matcher.group(2).length() != 0)
+				end = Math.min(end, Long.parseLong(matcher.group(2)));
+			if (start > end) {
+				return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+						.header("Content-Range", "bytes */" + length)
+						.build();
+			}
+			length = end - start + 1;
+		}
+		
+		long offset = start;
+		long count = length;
 		StreamingOutput os = new StreamingOutput() {
 
 			@Override
-		   public void write(OutputStream output) throws IOException {
-				JobContext context = jobManager.getJobContext(getJobToken(), true);
-				TarUtils.tar(context.getServerWorkspace(), Lists.newArrayList("**"), 
-						new ArrayList<>(), output);
+			public void write(OutputStream output) throws IOException {
+				long time = System.currentTimeMillis();
+				try (InputStream is = new FileInputStream(spoolFile)) {
+					IOUtils.copyLarge(is, output, offset, count, new byte[BUFFER_SIZE]);
+				}
 				output.flush();
-		   }				   
+				logTransfer(context, "Downloaded job dependencies", count, time);
+			}				   
 		   
 		};
-		return Response.ok(os).build();
+		
+		ResponseBuilder builder;
+		if (partial) {
+			builder = Response.status(Response.Status.PARTIAL_CONTENT)
+					.header("Content-Range", "bytes " + start + "-" + (start+length-1) + "/" + spoolFile.length());
+		} else {
+			builder = Response.ok();
+		}
+		return builder.entity(os)
+				.header(HttpHeaders.CONTENT_LENGTH, length)
+				.header("Accept-Ranges", "bytes")
+				.build();
+	}
+	
+	private File getDependenciesSpoolFile(String jobToken, JobContext context) {
+		// Clean up spool files of finished jobs
+		for (Iterator<Map.Entry<String, File>> it = dependenciesSpoolFiles.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, File> entry = it.next();
+			if (jobManager.getJobContext(entry.getKey(), false) == null) {
+				FileUtils.deleteFile(entry.getValue());
+				it.remove();
+			}
+		}
+		
+		Lock lock = LockUtils.getLock("k8s-job-dependencies:" + jobToken);
+		lock.lock();
+		try {
+			File spoolFile = dependenciesSpoolFiles.get(jobToken);
+			if (spoolFile == null) {
+				spoolFile = File.createTempFile("job-dependencies", ".tar");
+				try (OutputStream os = new BufferedOutputStream(new FileOutputStream(spoolFile), BUFFER_SIZE)) {
+					TarUtils.tar(context.getServerWorkspace(), Lists.newArrayList("**"), 
+							new ArrayList<>(), os);
+				} catch (Exception e) {
+					FileUtils.deleteFile(spoolFile);
+					throw e;
+				}
+				dependenciesSpoolFiles.put(jobToken, spoolFile);
+				context.addTempFile(spoolFile);
+			}
+			return spoolFile;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			lock.unlock();
+		}
 	}
 	
 	@POST
 	@Path("/upload-outcomes")
 	@Consumes(MediaType.APPLICATION_OCTET_STREAM)	
-	public Response uploadOutcomes(InputStream is) {
-		JobContext context = jobManager.getJobContext(getJobToken(), true);
-		TarUtils.untar(is, context.getServerWorkspace());
+	public Response uploadOutcomes(@HeaderParam(HttpHeaders.CONTENT_ENCODING) @Nullable String contentEncoding, 
+			InputStream is) {
+		String jobToken = getJobToken();
+		JobContext context = jobManager.getJobContext(jobToken, true);
+		
+		// Dependencies will not be downloaded again once job starts to upload outcomes
+		File spoolFile = dependenciesSpoolFiles.remove(jobToken);
+		if (spoolFile != null)
+			FileUtils.deleteFile(spoolFile);
+		
+		long time = System.currentTimeMillis();
+		try {
+			CountingInputStream countingIs = new CountingInputStream(is);
+			InputStream untarIs = countingIs;
+			if (contentEncoding != null && contentEncoding.trim().equalsIgnoreCase("gzip"))
+				untarIs = new GZIPInputStream(countingIs, BUFFER_SIZE);
+			TarUtils.untar(new BufferedInputStream(untarIs, BUFFER_SIZE), context.getServerWorkspace());
+			logTransfer(context, "Uploaded job outcomes", countingIs.getByteCount(), time);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 		return Response.ok().build();
 	}
 	
+	private void logTransfer(JobContext context, String message, long bytes, long startTime) {
+		long duration = Math.max(System.currentTimeMillis() - startTime, 1);
+		context.getLogger().log(String.format("%s (%s in %.1f seconds, %s/s)", message, 
+				FileUtils.byteCountToDisplaySize(bytes), duration/1000.0, 
+				FileUtils.byteCountToDisplaySize(bytes*1000/duration)));
+	}
+	
+	private StreamingOutput serialize(Serializable object) {
+		return new StreamingOutput() {
+
+			@Override
+			public void write(OutputStream output) throws IOException {
+				SerializationUtils.serialize(object, output);
+				output.flush();
+			}
+			
+		};
+	}
+	
 	@GET
 	@Path("/test")
 	public Response test() {
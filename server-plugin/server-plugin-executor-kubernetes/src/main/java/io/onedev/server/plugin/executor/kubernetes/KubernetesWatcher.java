@@ -0,0 +1,375 @@
+package io.onedev.server.plugin.executor.kubernetes;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.LineConsumer;
+
+/**
+ * Multiplexes pod updates of all job namespaces of an executor over a single long running 
+ * watch stream selected by executor label, and event updates of each job namespace over 
+ * a watch stream of that namespace, instead of running separate <tt>kubectl --watch</tt> 
+ * processes for each pod. Pod stream is started when the first namespace is registered 
+ * and stopped when the last namespace is unregistered. Broken streams are reconnected 
+ * automatically, resuming from last seen resource version, or from a fresh listing if 
+ * that version is too old.
+ */
+public abstract class KubernetesWatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(KubernetesWatcher.class);
+
+	private static final long INITIAL_RECONNECT_DELAY = 1000;
+
+	private static final long MAX_RECONNECT_DELAY = 30000;
+
+	private static final int HTTP_GONE = 410;
+
+	private final ObjectMapper mapper;
+
+	private final String podLabelSelector;
+
+	private final Map<String, NamespaceState> namespaces = new HashMap<>();
+
+	private WatchStream podStream;
+
+	/**
+	 * @param podLabelSelector
+	 * 			label selector of pods to be watched
+	 */
+	public KubernetesWatcher(ObjectMapper mapper, String podLabelSelector) {
+		this.mapper = mapper;
+		this.podLabelSelector = podLabelSelector;
+	}
+
+	protected abstract Commandline newKubeCtl();
+
+	/**
+	 * Start collecting pod and event updates of specified namespace. This should be called
+	 * before any pod is created in the namespace
+	 */
+	public synchronized void register(String namespace) {
+		NamespaceState state = new NamespaceState();
+		namespaces.put(namespace, state);
+		if (podStream == null) {
+			podStream = new WatchStream("pods", "labelSelector=" + encode(podLabelSelector)) {
+
+				@Override
+				void process(String type, JsonNode objectNode) {
+					onPod(type, objectNode);
+				}
+
+				@Override
+				void resync(List<JsonNode> objectNodes) {
+					onPods(objectNodes);
+				}
+
+			};
+			podStream.start();
+		}
+		state.eventStream = new WatchStream("namespaces/" + namespace + "/events", 
+				"fieldSelector=" + encode("involvedObject.kind=Pod")) {
+
+			@Override
+			void process(String type, JsonNode objectNode) {
+				onEvent(type, objectNode);
+			}
+
+			@Override
+			void resync(List<JsonNode> objectNodes) {
+				for (JsonNode objectNode: objectNodes)
+					onEvent("ADDED", objectNode);
+			}
+
+		};
+		state.eventStream.start();
+	}
+
+	public synchronized void unregister(String namespace) {
+		NamespaceState state = namespaces.remove(namespace);
+		if (state != null)
+			state.eventStream.stop();
+		notifyAll();
+		if (namespaces.isEmpty() && podStream != null) {
+			podStream.stop();
+			podStream = null;
+		}
+	}
+
+	/**
+	 * Wait until specified checker returns a non-null value for specified pod. The checker
+	 * is called with current state of the pod initially, and then again whenever there
+	 * is an update of the pod or its events
+	 *
+	 * @return
+	 * 			non-null value returned by the checker
+	 */
+	public <T> T await(String namespace, String podName, Checker<T> checker) {
+		synchronized (this) {
+			while (true) {
+				NamespaceState state = namespaces.get(namespace);
+				if (state == null)
+					throw new IllegalStateException("Namespace not registered: " + namespace);
+				List<JsonNode> eventNodes = state.events.get(podName);
+				if (eventNodes == null)
+					eventNodes = new ArrayList<>();
+				T result = checker.check(state.pods.get(podName), eventNodes);
+				if (result != null)
+					return result;
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	private synchronized void onPod(String type, JsonNode podNode) {
+		JsonNode metadataNode = podNode.get("metadata");
+		NamespaceState state = namespaces.get(metadataNode.get("namespace").asText());
+		if (state != null) {
+			String podName = metadataNode.get("name").asText();
+			if (type.equals("DELETED"))
+				state.pods.remove(podName);
+			else
+				state.pods.put(podName, podNode);
+			notifyAll();
+		}
+	}
+
+	/*
+	 * Replace pods of all registered namespaces with listed pods, so that pods deleted 
+	 * while the watch was broken do not linger
+	 */
+	private synchronized void onPods(List<JsonNode> podNodes) {
+		for (NamespaceState state: namespaces.values())
+			state.pods.clear();
+		for (JsonNode podNode: podNodes) {
+			JsonNode metadataNode = podNode.get("metadata");
+			NamespaceState state = namespaces.get(metadataNode.get("namespace").asText());
+			if (state != null)
+				state.pods.put(metadataNode.get("name").asText(), podNode);
+		}
+		notifyAll();
+	}
+
+	private synchronized void onEvent(String type, JsonNode eventNode) {
+		JsonNode involvedObjectNode = eventNode.get("involvedObject");
+		NamespaceState state = namespaces.get(involvedObjectNode.get("namespace").asText());
+		if (state != null && !type.equals("DELETED")
+				&& state.eventUids.add(eventNode.get("metadata").get("uid").asText())) {
+			String podName = involvedObjectNode.get("name").asText();
+			List<JsonNode> eventNodes = state.events.get(podName);
+			if (eventNodes == null) {
+				eventNodes = new ArrayList<>();
+				state.events.put(podName, eventNodes);
+			}
+			eventNodes.add(eventNode);
+			notifyAll();
+		}
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static interface Checker<T> {
+
+		/**
+		 * @param podNode
+		 * 			json node of the pod, or <tt>null</tt> if pod is not seen yet
+		 * @param eventNodes
+		 * 			events of the pod in the order they are seen
+		 * @return
+		 * 			non-null value to stop waiting
+		 */
+		@Nullable
+		T check(@Nullable JsonNode podNode, List<JsonNode> eventNodes);
+
+	}
+
+	private static class NamespaceState {
+
+		final Map<String, JsonNode> pods = new HashMap<>();
+
+		final Map<String, List<JsonNode>> events = new HashMap<>();
+
+		final Set<String> eventUids = new HashSet<>();
+
+		WatchStream eventStream;
+
+	}
+
+	private abstract class WatchStream implements Runnable {
+
+		private final String resource;
+
+		private final String selector;
+
+		private volatile boolean stopped;
+
+		private volatile String resourceVersion;
+
+		private Thread thread;
+
+		WatchStream(String resource, String selector) {
+			this.resource = resource;
+			this.selector = selector;
+		}
+
+		void start() {
+			thread = new Thread(this, "Kubernetes " + resource + " watcher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void stop() {
+			stopped = true;
+			thread.interrupt();
+		}
+
+		abstract void process(String type, JsonNode objectNode);
+
+		/**
+		 * Process current objects listed when there is no valid resource version to resume from
+		 */
+		abstract void resync(List<JsonNode> objectNodes);
+
+		private void list() {
+			Commandline kubectl = newKubeCtl();
+			kubectl.addArgs("get", "--raw", "/api/v1/" + resource + "?" + selector);
+			StringBuilder output = new StringBuilder();
+			kubectl.execute(new LineConsumer(StandardCharsets.UTF_8.name()) {
+
+				@Override
+				public void consume(String line) {
+					output.append(line).append("\n");
+				}
+
+			}, new LineConsumer() {
+
+				@Override
+				public void consume(String line) {
+					logger.error("Kubernetes: " + line);
+				}
+
+			}).checkReturnCode();
+
+			try {
+				JsonNode listNode = mapper.readTree(output.toString());
+				List<JsonNode> objectNodes = new ArrayList<>();
+				for (JsonNode itemNode: listNode.get("items"))
+					objectNodes.add(itemNode);
+				resync(objectNodes);
+				resourceVersion = listNode.get("metadata").get("resourceVersion").asText();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void run() {
+			long reconnectDelay = INITIAL_RECONNECT_DELAY;
+			while (!stopped) {
+				if (resourceVersion == null) {
+					try {
+						list();
+					} catch (Exception e) {
+						if (stopped)
+							break;
+						logger.error("Error listing kubernetes " + resource, e);
+						try {
+							Thread.sleep(reconnectDelay);
+						} catch (InterruptedException e2) {
+							break;
+						}
+						reconnectDelay = Math.min(reconnectDelay*2, MAX_RECONNECT_DELAY);
+						continue;
+					}
+				}
+				String path = "/api/v1/" + resource + "?watch=1&allowWatchBookmarks=true&" + selector;
+				path += "&resourceVersion=" + resourceVersion;
+				Commandline kubectl = newKubeCtl();
+				kubectl.addArgs("get", "--raw", path);
+				AtomicBoolean received = new AtomicBoolean(false);
+				try {
+					kubectl.execute(new LineConsumer(StandardCharsets.UTF_8.name()) {
+
+						@Override
+						public void consume(String line) {
+							received.set(true);
+							try {
+								JsonNode watchEventNode = mapper.readTree(line);
+								String type = watchEventNode.get("type").asText();
+								JsonNode objectNode = watchEventNode.get("object");
+								if (type.equals("ERROR")) {
+									JsonNode codeNode = objectNode.get("code");
+									if (codeNode != null && codeNode.asInt() == HTTP_GONE) {
+										// Resource version too old, list current state before watching again
+										resourceVersion = null;
+									} else {
+										logger.error("Error watching kubernetes " + resource + ": " + line);
+									}
+								} else {
+									resourceVersion = objectNode.get("metadata").get("resourceVersion").asText();
+									if (!type.equals("BOOKMARK"))
+										process(type, objectNode);
+								}
+							} catch (Exception e) {
+								logger.error("Error processing kubernetes " + resource + " watching output", e);
+							}
+						}
+
+					}, new LineConsumer() {
+
+						@Override
+						public void consume(String line) {
+							logger.error("Kubernetes: " + line);
+						}
+
+					});
+				} catch (Exception e) {
+					if (stopped)
+						break;
+					logger.error("Error watching kubernetes " + resource, e);
+				}
+
+				if (!stopped) {
+					if (received.get())
+						reconnectDelay = INITIAL_RECONNECT_DELAY;
+					logger.debug("Reconnecting kubernetes {} watch stream...", resource);
+					try {
+						Thread.sleep(reconnectDelay);
+					} catch (InterruptedException e) {
+						break;
+					}
+					reconnectDelay = Math.min(reconnectDelay*2, MAX_RECONNECT_DELAY);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,100 @@
+package io.onedev.server.plugin.executor.kubernetes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Resources;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.command.Commandline;
+
+public class KubernetesWatcherTest {
+
+	private File tempDir;
+
+	private KubernetesWatcher watcher;
+
+	@Before
+	public void before() throws IOException {
+		assumeFalse(SystemUtils.IS_OS_WINDOWS);
+
+		tempDir = FileUtils.createTempDir();
+		File kubectlFile = new File(tempDir, "kubectl");
+		try (InputStream is = Resources.getResource(KubernetesWatcherTest.class, "fake-kubectl.sh").openStream()) {
+			FileUtils.copyInputStreamToFile(is, kubectlFile);
+		}
+		kubectlFile.setExecutable(true);
+
+		watcher = new KubernetesWatcher(new ObjectMapper(), "onedev-executor=test") {
+
+			@Override
+			protected Commandline newKubeCtl() {
+				return new Commandline(kubectlFile.getAbsolutePath());
+			}
+
+		};
+	}
+
+	@After
+	public void after() {
+		if (tempDir != null)
+			FileUtils.deleteDir(tempDir);
+	}
+
+	@Test
+	public void shouldDispatchUpdatesAndResumeWatching() throws IOException {
+		watcher.register("test");
+		try {
+			String nodeName = watcher.await("test", "job", new KubernetesWatcher.Checker<String>() {
+
+				@Override
+				public String check(JsonNode podNode, List<JsonNode> eventNodes) {
+					JsonNode nodeNameNode = podNode!=null? podNode.get("spec").get("nodeName"): null;
+					return nodeNameNode!=null? nodeNameNode.asText(): null;
+				}
+
+			});
+			assertEquals("node1", nodeName);
+
+			String reason = watcher.await("test", "job", new KubernetesWatcher.Checker<String>() {
+
+				@Override
+				public String check(JsonNode podNode, List<JsonNode> eventNodes) {
+					return !eventNodes.isEmpty()? eventNodes.get(0).get("reason").asText(): null;
+				}
+
+			});
+			assertEquals("Started", reason);
+		} finally {
+			watcher.unregister("test");
+		}
+
+		List<String> invocations = FileUtils.readLines(new File(tempDir, "invocations"), StandardCharsets.UTF_8);
+		int podWatches = 0;
+		for (String invocation: invocations) {
+			if (invocation.startsWith("/api/v1/pods")) {
+				assertTrue(invocation.contains("labelSelector=onedev-executor%3Dtest"));
+				if (podWatches++ == 0)
+					assertTrue(!invocation.contains("resourceVersion="));
+				else
+					assertTrue(invocation.contains("resourceVersion=100"));
+			}
+		}
+		assertEquals(2, podWatches);
+	}
+
+}
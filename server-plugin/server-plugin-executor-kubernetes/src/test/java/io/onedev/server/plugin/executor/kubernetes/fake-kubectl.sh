@@ -0,0 +1,20 @@
+#!/bin/sh
+# Fake kubectl emitting watch events. First pods watch ends after one event to
+# simulate a broken stream, and subsequent watches stay open until killed
+echo "$3" >> "$(dirname "$0")/invocations"
+case "$3" in
+	/api/v1/pods*)
+		if [ ! -f "$(dirname "$0")/pods-watched" ]; then
+			touch "$(dirname "$0")/pods-watched"
+			echo '{"type":"ADDED","object":{"metadata":{"name":"job","namespace":"test","resourceVersion":"100"},"spec":{},"status":{"phase":"Pending"}}}'
+			exit 0
+		fi
+		echo '{"type":"BOOKMARK","object":{"metadata":{"resourceVersion":"101"}}}'
+		echo '{"type":"MODIFIED","object":{"metadata":{"name":"job","namespace":"test","resourceVersion":"102"},"spec":{"nodeName":"node1"},"status":{"phase":"Running"}}}'
+		echo '{"type":"ADDED","object":{"metadata":{"name":"job","namespace":"other","resourceVersion":"103"},"spec":{},"status":{"phase":"Running"}}}'
+		;;
+	/api/v1/events*)
+		echo '{"type":"ADDED","object":{"metadata":{"uid":"event1","resourceVersion":"200"},"involvedObject":{"kind":"Pod","namespace":"test","name":"job"},"type":"Normal","reason":"Started"}}'
+		;;
+esac
+sleep 30
@@ -35,6 +35,10 @@ public class DefaultServerConfig implements ServerConfig {
 	
 	private static final String PROP_SESSION_TIMEOUT = "session_timeout";
 	
+	private static final String PROP_INDEX_MMAP = "index_mmap";
+	
+	private static final String PROP_LOG_INDEX = "log_index";
+	
 	private int httpPort;
 	
 	private int sessionTimeout;
@@ -49,6 +53,10 @@ public class DefaultServerConfig implements ServerConfig {
 	
 	private String keystorePassword;
 	
+	private boolean indexMMap;
+	
+	private boolean logIndexEnabled;
+	
 	@Inject
 	public DefaultServerConfig(ServerProperties props) {
 		String httpPortStr = System.getenv(PROP_HTTPPORT);
@@ -127,6 +135,18 @@ public class DefaultServerConfig implements ServerConfig {
 			sessionTimeout = Integer.parseInt(sessionTimeoutStr.trim());
 		else
 			throw new ExplicitException(PROP_SESSION_TIMEOUT + " should be specified");
+		
+		String indexMMapStr = System.getenv(PROP_INDEX_MMAP);
+		if (StringUtils.isBlank(indexMMapStr))
+			indexMMapStr = props.getProperty(PROP_INDEX_MMAP);
+		if (StringUtils.isNotBlank(indexMMapStr))
+			indexMMap = Boolean.parseBoolean(indexMMapStr.trim());
+		
+		String logIndexStr = System.getenv(PROP_LOG_INDEX);
+		if (StringUtils.isBlank(logIndexStr))
+			logIndexStr = props.getProperty(PROP_LOG_INDEX);
+		if (StringUtils.isNotBlank(logIndexStr))
+			logIndexEnabled = Boolean.parseBoolean(logIndexStr.trim());
 	}
 	
 	@Override
@@ -163,5 +183,15 @@ public class DefaultServerConfig implements ServerConfig {
     public int getSshPort() {
         return sshPort;
     }
+
+	@Override
+	public boolean isIndexMMap() {
+		return indexMMap;
+	}
+	
+	@Override
+	public boolean isLogIndexEnabled() {
+		return logIndexEnabled;
+	}
 	
 }